@@ -0,0 +1,49 @@
+package com.edtech.benchmarks;
+
+import com.edtech.kt.service.KnowledgeTracingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次 BKT 公式计算 (纯 CPU，不应有任何分配)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BktFormulaBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final double[] priors = new double[SIZE];
+    private final boolean[] outcomes = new boolean[SIZE];
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < SIZE; i++) {
+            priors[i] = 0.01 + random.nextDouble() * 0.98;
+            outcomes[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    public double calculateNewProbabilityBKT() {
+        int i = cursor++ & (SIZE - 1);
+        return KnowledgeTracingService.calculateNewProbabilityBKT(priors[i], outcomes[i], 0.1, 0.2, 0.1);
+    }
+}
@@ -0,0 +1,50 @@
+package com.edtech.benchmarks;
+
+import com.edtech.benchmarks.support.KtFixture;
+import com.edtech.kt.replay.KnowledgeStateReplayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全量重放: 流式读取合成答题日志 -> 按学生并行重算 -> 批量写回 (替身)
+ * 每次调用处理 students * answersPerStudent 行
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KnowledgeStateReplayBenchmark {
+
+    private static final int KNOWLEDGE_POINTS = 200;
+
+    @Param({"5000"})
+    public int students;
+
+    @Param({"40"})
+    public int answersPerStudent;
+
+    private KtFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new KtFixture(KNOWLEDGE_POINTS, 0, students, answersPerStudent);
+    }
+
+    @Benchmark
+    public KnowledgeStateReplayer.ReplayReport replay() {
+        return fixture.replayer.replay(false);
+    }
+}
@@ -0,0 +1,100 @@
+package com.edtech.benchmarks;
+
+import com.edtech.benchmarks.support.KtFixture;
+import com.edtech.kt.model.Answer;
+import com.edtech.kt.model.MasteryChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 答题写入热路径: 目录查找 -> 原子 BKT 步骤 -> 持久化
+ * <p>
+ * Mapper 与 Redis 均为内存替身，测得的是服务本身的 CPU 与分配 (配合 -prof gc 看 gc.alloc.rate.norm)。
+ * coldStudent=true 时每次都是新学生，覆盖 "Redis 未命中 -> 整体回源 MySQL 预热 -> 重试" 路径。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class KnowledgeTracingBenchmark {
+
+    private static final int KNOWLEDGE_POINTS = 200;
+    private static final int QUESTIONS = 5000;
+    private static final int STUDENTS = 1000;
+    private static final int SCRIPT = 4096;
+
+    @Param({"false", "true"})
+    public boolean coldStudent;
+
+    private KtFixture fixture;
+    private final long[] studentIds = new long[SCRIPT];
+    private final long[] questionIds = new long[SCRIPT];
+    private final boolean[] outcomes = new boolean[SCRIPT];
+    private int cursor;
+    private long nextColdStudent = STUDENTS + 1;
+
+    @Setup
+    public void setUp() {
+        fixture = new KtFixture(KNOWLEDGE_POINTS, QUESTIONS, 0, 0);
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < SCRIPT; i++) {
+            studentIds[i] = random.nextInt(STUDENTS) + 1;
+            questionIds[i] = random.nextInt(QUESTIONS) + 1;
+            outcomes[i] = random.nextInt(100) < 65;
+        }
+        // Warm the in-memory store so the warm variant takes the Redis-hit path
+        for (int i = 0; i < SCRIPT; i++) {
+            fixture.tracingService.updateKnowledgeState(studentIds[i], questionIds[i], outcomes[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void dropColdStudents() {
+        if (coldStudent) {
+            fixture.masteryStore.clear();
+        }
+    }
+
+    @Benchmark
+    public void updateKnowledgeState() {
+        int i = cursor++ & (SCRIPT - 1);
+        long studentId = coldStudent ? nextColdStudent++ : studentIds[i];
+        fixture.tracingService.updateKnowledgeState(studentId, questionIds[i], outcomes[i]);
+    }
+
+    @Benchmark
+    public List<MasteryChange> updateKnowledgeStates(Batch batch) {
+        int batchSize = batch.size;
+        List<Answer> answers = new ArrayList<>(batchSize);
+        long coldStudentId = coldStudent ? nextColdStudent++ : 0;
+        for (int n = 0; n < batchSize; n++) {
+            int i = cursor++ & (SCRIPT - 1);
+            answers.add(new Answer(coldStudent ? coldStudentId : studentIds[i], questionIds[i], outcomes[i]));
+        }
+        return fixture.tracingService.updateKnowledgeStates(answers);
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        @Param({"10", "100"})
+        public int size;
+    }
+}
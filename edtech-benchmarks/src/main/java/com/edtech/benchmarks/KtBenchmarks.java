@@ -0,0 +1,29 @@
+package com.edtech.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar 入口: 与 JMH 命令行参数相同，但总是附加 GC 分配分析 (-prof gc)，
+ * 热路径每次调用的分配字节数 (gc.alloc.rate.norm) 回退时能直接在结果中看到
+ * <p>
+ * 用法: java -jar edtech-benchmarks/target/benchmarks.jar [JMH 参数，如 KnowledgeTracing -p batchSize=100]
+ */
+public final class KtBenchmarks {
+
+    private KtBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build()).run();
+    }
+}
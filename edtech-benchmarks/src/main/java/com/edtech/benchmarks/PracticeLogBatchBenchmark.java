@@ -0,0 +1,91 @@
+package com.edtech.benchmarks;
+
+import com.edtech.benchmarks.support.MapperStandIns;
+import com.edtech.core.mq.PracticeLogBatchWriter;
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 答题日志消费落库: 逐条 (batchSize=1) 与批量写入的吞吐对比，结果单位为 消息/毫秒
+ * <p>
+ * Mapper 替身对每条语句忙等 statementMicros 模拟一次数据库往返 (0 时只剩聚合本身的开销)。
+ * batchSize=1 是新写入路径的逐条退化 (每条消息一次 INSERT，答错再一次错题 upsert)，
+ * 不是改造前的实现；改造前的逐条消费见 {@link PracticeLogLegacyBenchmark}，两者使用相同的消息与替身。
+ * 用法: java -jar edtech-benchmarks/target/benchmarks.jar PracticeLog
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PracticeLogBatchBenchmark {
+
+    static final int MESSAGES = 1000;
+    private static final int STUDENTS = 200;
+    private static final int QUESTIONS = 500;
+
+    @Param({"1", "20", "100"})
+    public int batchSize;
+
+    @Param({"0", "200"})
+    public int statementMicros;
+
+    private final AtomicLong statements = new AtomicLong();
+    private PracticeLogBatchWriter writer;
+    private List<List<PracticeLog>> batches;
+
+    @Setup
+    public void setUp() {
+        long statementNanos = TimeUnit.MICROSECONDS.toNanos(statementMicros);
+        writer = new PracticeLogBatchWriter(MapperStandIns.exerciseLogSink(statements, statementNanos),
+                MapperStandIns.mistakeBookSink(statements, statementNanos));
+
+        List<PracticeLog> logs = messages();
+        batches = new ArrayList<>();
+        for (int from = 0; from < MESSAGES; from += batchSize) {
+            batches.add(List.copyOf(logs.subList(from, Math.min(from + batchSize, MESSAGES))));
+        }
+    }
+
+    /**
+     * 确定性的消息序列 (65% 答对)，逐条对照组使用同一序列
+     */
+    static List<PracticeLog> messages() {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        List<PracticeLog> logs = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            logs.add(new PracticeLog((long) random.nextInt(STUDENTS) + 1, (long) random.nextInt(QUESTIONS) + 1,
+                    random.nextInt(100) < 65, 30, start.plusSeconds(i), null));
+        }
+        return logs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long consume() {
+        for (List<PracticeLog> batch : batches) {
+            writer.write(batch);
+        }
+        return statements.get();
+    }
+}
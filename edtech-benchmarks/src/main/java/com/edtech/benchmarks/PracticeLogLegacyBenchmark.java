@@ -0,0 +1,61 @@
+package com.edtech.benchmarks;
+
+import com.edtech.benchmarks.support.LegacyPracticeLogConsumer;
+import com.edtech.benchmarks.support.MapperStandIns;
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 改造前的逐条消费 ({@link LegacyPracticeLogConsumer}) 在同一组 Mapper 替身与消息上的吞吐，结果单位为 消息/毫秒
+ * <p>
+ * 与 {@link PracticeLogBatchBenchmark} 对照: 消息序列、语句耗时模拟完全相同。
+ * 错题替身保留已插入的行，稳定状态下重复答错走 SELECT + UPDATE 分支。
+ * 用法: java -jar edtech-benchmarks/target/benchmarks.jar PracticeLog
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PracticeLogLegacyBenchmark {
+
+    @Param({"0", "200"})
+    public int statementMicros;
+
+    private final AtomicLong statements = new AtomicLong();
+    private LegacyPracticeLogConsumer consumer;
+    private List<PracticeLog> logs;
+
+    @Setup
+    public void setUp() {
+        long statementNanos = TimeUnit.MICROSECONDS.toNanos(statementMicros);
+        consumer = new LegacyPracticeLogConsumer(MapperStandIns.exerciseLogSink(statements, statementNanos),
+                MapperStandIns.mistakeBookSink(statements, statementNanos));
+        logs = PracticeLogBatchBenchmark.messages();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PracticeLogBatchBenchmark.MESSAGES)
+    public long consume() {
+        for (PracticeLog log : logs) {
+            consumer.process(log);
+        }
+        return statements.get();
+    }
+}
@@ -0,0 +1,22 @@
+package com.edtech.benchmarks.support;
+
+import java.lang.reflect.Field;
+
+/**
+ * 为未经 Spring 注入的 @Value 字段赋值
+ */
+public final class Fields {
+
+    private Fields() {
+    }
+
+    public static void set(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + target.getClass().getSimpleName() + "." + name, e);
+        }
+    }
+}
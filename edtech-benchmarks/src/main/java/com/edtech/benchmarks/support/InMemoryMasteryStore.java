@@ -0,0 +1,208 @@
+package com.edtech.benchmarks.support;
+
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.kt.model.Propagation;
+import com.edtech.kt.store.MasteryCodec;
+import com.edtech.kt.store.MasteryStore;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis 掌握度存储的内存替身
+ * <p>
+ * 与 lua/bkt_step.lua、lua/mastery_warm.lua 相同的语义 (请求去重、缺失检测、预热标记、衰减、模型更新、传播、万分位编码)，
+ * 值仍以 {@link MasteryCodec} 字符串保存，保留编解码开销，只去掉网络往返。
+ * 薄弱/已掌握画像 ZSET 只服务于选题，基准不涉及，替身中不维护。
+ */
+public class InMemoryMasteryStore extends MasteryStore {
+
+    private final ForgettingCurve forgettingCurve;
+    private final Map<Long, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> traced = new ConcurrentHashMap<>();
+
+    public InMemoryMasteryStore(ForgettingCurve forgettingCurve) {
+        super(new RedisTemplate<>(), forgettingCurve, 0.8);
+        this.forgettingCurve = forgettingCurve;
+    }
+
+    @Override
+    public StepOutcome applySteps(List<BktStep> steps) {
+        boolean[] duplicate = new boolean[steps.size()];
+        Map<Long, Set<String>> seen = new HashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            BktStep step = steps.get(i);
+            duplicate[i] = step.requestId() != null
+                    && (traced.getOrDefault(step.studentId(), Set.of()).contains(step.requestId())
+                    || !seen.computeIfAbsent(step.studentId(), k -> new HashSet<>()).add(step.requestId()));
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            BktStep step = steps.get(i);
+            Map<String, String> hash = hash(step.studentId());
+            if (!duplicate[i] && step.fallback() == null && !hash.containsKey(WARM_FIELD)
+                    && (!hash.containsKey(step.kpId().toString()) || missesNeighbour(hash, step.propagation()))) {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            return new StepOutcome(missing.stream().mapToInt(Integer::intValue).toArray(), null, null, null, null, List.of());
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        double[] before = new double[steps.size()];
+        double[] after = new double[steps.size()];
+        long[] updatedAt = new long[steps.size()];
+        List<Propagated> propagated = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            BktStep step = steps.get(i);
+            if (duplicate[i]) {
+                before[i] = Double.NaN;
+                after[i] = Double.NaN;
+                continue;
+            }
+            if (step.requestId() != null) {
+                traced.computeIfAbsent(step.studentId(), k -> ConcurrentHashMap.newKeySet()).add(step.requestId());
+            }
+            long at = step.answeredAt() > 0 ? step.answeredAt() : now;
+            Map<String, String> hash = hash(step.studentId());
+            String field = step.kpId().toString();
+            Double stored = read(hash, field, at);
+            double p = stored != null ? stored : step.fallback() != null ? step.fallback() : step.params().pInit();
+            double next = step.model().update(p, step.correct(), step.params());
+            String encoded = MasteryCodec.encode(next, stamp(hash, field, at));
+            hash.put(field, encoded);
+            before[i] = MasteryCodec.toBasisPoints(p) / (double) MasteryCodec.SCALE;
+            after[i] = MasteryCodec.decode(encoded);
+            updatedAt[i] = MasteryCodec.decodeTimestamp(encoded);
+
+            Propagation propagation = step.propagation();
+            for (int j = 0; j < propagation.size(); j++) {
+                String nField = Long.toString(propagation.kpIds()[j]);
+                Double q = read(hash, nField, at);
+                if (q == null && hash.containsKey(WARM_FIELD)) {
+                    q = propagation.priors()[j];
+                }
+                if (q != null) {
+                    String nudged = MasteryCodec.encode(Propagation.nudge(q, propagation.weights()[j]),
+                            stamp(hash, nField, at));
+                    hash.put(nField, nudged);
+                    propagated.add(new Propagated(i, step.studentId(), propagation.kpIds()[j],
+                            MasteryCodec.decode(nudged), MasteryCodec.decodeTimestamp(nudged)));
+                }
+            }
+        }
+        return new StepOutcome(new int[0], before, after, updatedAt, duplicate, propagated);
+    }
+
+    @Override
+    public Double get(Long studentId, Long kpId) {
+        return read(hash(studentId), kpId.toString(), System.currentTimeMillis() / 1000);
+    }
+
+    @Override
+    public MasteryVector getWarmVector(Long studentId) {
+        Map<String, String> hash = hashes.get(studentId);
+        return hash != null && hash.containsKey(WARM_FIELD) ? getVector(studentId) : null;
+    }
+
+    @Override
+    public MasteryVector getWarmEntry(Long studentId, Long kpId) {
+        Map<String, String> hash = hashes.get(studentId);
+        if (hash == null || !hash.containsKey(WARM_FIELD)) {
+            return null;
+        }
+        String raw = hash.get(kpId.toString());
+        if (raw == null) {
+            return MasteryVector.EMPTY;
+        }
+        return new MasteryVector(new long[]{kpId}, new double[]{MasteryCodec.decode(raw)},
+                new long[]{MasteryCodec.decodeTimestamp(raw)});
+    }
+
+    @Override
+    public MasteryVector warm(Long studentId, MasteryVector vector) {
+        Map<String, String> hash = hash(studentId);
+        for (int i = 0; i < vector.size(); i++) {
+            hash.putIfAbsent(Long.toString(vector.kpIds()[i]),
+                    MasteryCodec.encode(vector.probabilities()[i], vector.updatedAt()[i]));
+        }
+        hash.put(WARM_FIELD, String.valueOf(System.currentTimeMillis() / 1000));
+        return getVector(studentId);
+    }
+
+    @Override
+    public MasteryVector getVector(Long studentId) {
+        Map<String, String> hash = hash(studentId);
+        long[] kpIds = new long[hash.size()];
+        double[] probs = new double[hash.size()];
+        long[] times = new long[hash.size()];
+        int n = 0;
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            if (WARM_FIELD.equals(entry.getKey())) {
+                continue;
+            }
+            kpIds[n] = Long.parseLong(entry.getKey());
+            probs[n] = MasteryCodec.decode(entry.getValue());
+            times[n] = MasteryCodec.decodeTimestamp(entry.getValue());
+            n++;
+        }
+        return new MasteryVector(Arrays.copyOf(kpIds, n), Arrays.copyOf(probs, n), Arrays.copyOf(times, n));
+    }
+
+    @Override
+    public void writeVectors(Map<Long, MasteryVector> byStudent, boolean replace) {
+        long now = System.currentTimeMillis() / 1000;
+        byStudent.forEach((studentId, vector) -> {
+            Map<String, String> hash = replace ? new HashMap<>() : hash(studentId);
+            if (replace) {
+                hash.put(WARM_FIELD, String.valueOf(now));
+            }
+            for (int i = 0; i < vector.size(); i++) {
+                long updatedAt = vector.updatedAt()[i] > 0 ? vector.updatedAt()[i] : now;
+                hash.put(Long.toString(vector.kpIds()[i]), MasteryCodec.encode(vector.probabilities()[i], updatedAt));
+            }
+            hashes.put(studentId, hash);
+        });
+    }
+
+    public void clear() {
+        hashes.clear();
+        traced.clear();
+    }
+
+    private Map<String, String> hash(Long studentId) {
+        return hashes.computeIfAbsent(studentId, k -> new HashMap<>());
+    }
+
+    private static boolean missesNeighbour(Map<String, String> hash, Propagation propagation) {
+        for (long kpId : propagation.kpIds()) {
+            if (!hash.containsKey(Long.toString(kpId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Late answers never move the stored timestamp backwards (same as bkt_step.lua)
+    private static long stamp(Map<String, String> hash, String field, long at) {
+        String raw = hash.get(field);
+        return raw == null ? at : Math.max(at, MasteryCodec.decodeTimestamp(raw));
+    }
+
+    private Double read(Map<String, String> hash, String field, long now) {
+        String raw = hash.get(field);
+        if (raw == null) {
+            return null;
+        }
+        return forgettingCurve.decay(MasteryCodec.decode(raw), MasteryCodec.decodeTimestamp(raw), now);
+    }
+}
@@ -0,0 +1,74 @@
+package com.edtech.benchmarks.support;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.MasteryPropagator;
+import com.edtech.kt.graph.PrerequisiteGraph;
+import com.edtech.kt.persistence.KnowledgeStateWriter;
+import com.edtech.kt.replay.KnowledgeStateReplayer;
+import com.edtech.kt.service.KnowledgeTracingService;
+import com.edtech.kt.service.MasteryQueryService;
+import com.edtech.kt.store.MasteryWarmLoader;
+import com.edtech.kt.tracing.BktModel;
+import com.edtech.kt.tracing.EloModel;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
+import com.edtech.kt.tracing.PfaModel;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 不启动 Spring 容器，按生产代码的依赖关系手工组装知识追踪服务，外部依赖全部替换为内存替身
+ */
+public final class KtFixture {
+
+    public final AtomicLong upsertedRows = new AtomicLong();
+    public final KnowledgeCatalog catalog;
+    public final InMemoryMasteryStore masteryStore;
+    public final KnowledgeTracingService tracingService;
+    public final KnowledgeStateReplayer replayer;
+
+    /**
+     * @param knowledgePoints 知识点数
+     * @param questions       预先登记到目录中的题目数 (题目 q 属于知识点 q % knowledgePoints + 1)
+     * @param replayStudents  重放日志中的学生数
+     * @param replayAnswers   每个学生的答题数
+     */
+    public KtFixture(int knowledgePoints, int questions, int replayStudents, int replayAnswers) {
+        KnowledgeStateMapper stateMapper = MapperStandIns.knowledgeStateMapper(upsertedRows);
+        StudentExerciseLogMapper logMapper = MapperStandIns.exerciseLogMapper(replayStudents, replayAnswers, knowledgePoints);
+
+        catalog = new KnowledgeCatalog(MapperStandIns.questionMapper(knowledgePoints), MapperStandIns.knowledgePointMapper());
+        for (long q = 1; q <= questions; q++) {
+            catalog.registerQuestion(q, q % knowledgePoints + 1);
+        }
+        for (long kp = 1; kp <= knowledgePoints; kp++) {
+            catalog.getParams(kp);
+        }
+
+        ForgettingCurve forgettingCurve = new ForgettingCurve(true, 30, 0.1);
+        masteryStore = new InMemoryMasteryStore(forgettingCurve);
+        KnowledgeStateWriter writer = new KnowledgeStateWriter(stateMapper, new SimpleMeterRegistry(),
+                false, 500, 1000, 64, 30000, 30000);
+        MasteryPropagator propagator = new MasteryPropagator(
+                new PrerequisiteGraph(MapperStandIns.knowledgePrerequisiteMapper()), catalog);
+        MasteryWarmLoader warmLoader = new MasteryWarmLoader(stateMapper, masteryStore, new SimpleMeterRegistry());
+        MasteryQueryService queryService = new MasteryQueryService(masteryStore, warmLoader, forgettingCurve);
+
+        KnowledgeTracingModels models = new KnowledgeTracingModels(List.of(
+                new BktModel(queryService, catalog),
+                new PfaModel(queryService, catalog, 0.2, -0.1),
+                new EloModel(queryService, catalog, 0.4)), catalog, queryService, "BKT", "");
+
+        tracingService = new KnowledgeTracingService(catalog, writer, masteryStore, warmLoader, propagator,
+                forgettingCurve, models);
+
+        replayer = new KnowledgeStateReplayer(logMapper, stateMapper, catalog, masteryStore, propagator,
+                forgettingCurve, models, new InMemoryStringRedisTemplate());
+        Fields.set(replayer, "studentsPerChunk", 2000);
+        Fields.set(replayer, "upsertBatchSize", 1000);
+    }
+}
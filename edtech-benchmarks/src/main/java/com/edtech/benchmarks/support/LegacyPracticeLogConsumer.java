@@ -0,0 +1,68 @@
+package com.edtech.benchmarks.support;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import com.edtech.model.entity.MistakeBook;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.MistakeBookMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+
+import java.time.LocalDateTime;
+
+/**
+ * 改造前 PracticeConsumer.processPracticeLog 的逐条落库逻辑 (基准对照组)
+ * <p>
+ * 与原实现相同的语句序列: 每条消息一次 INSERT 答题记录；答错时先 SELECT 错题，再 INSERT 或 UPDATE。
+ * 只去掉了逐条的 INFO 日志和 RabbitMQ 监听，事务的开始与提交在两组中都不计入。
+ */
+public class LegacyPracticeLogConsumer {
+
+    static {
+        // LambdaQueryWrapper resolves columns from the table metadata MyBatis-Plus builds at startup
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), MistakeBook.class);
+    }
+
+    private final StudentExerciseLogMapper logMapper;
+    private final MistakeBookMapper mistakeBookMapper;
+
+    public LegacyPracticeLogConsumer(StudentExerciseLogMapper logMapper, MistakeBookMapper mistakeBookMapper) {
+        this.logMapper = logMapper;
+        this.mistakeBookMapper = mistakeBookMapper;
+    }
+
+    public void process(PracticeLog message) {
+        // 1. Save Log to MySQL
+        StudentExerciseLog exerciseLog = new StudentExerciseLog();
+        exerciseLog.setStudentId(message.studentId());
+        exerciseLog.setQuestionId(message.questionId());
+        exerciseLog.setResult(message.correct() ? 1 : 0);
+        exerciseLog.setDuration(message.duration());
+        exerciseLog.setSubmitTime(message.submitTime());
+        logMapper.insert(exerciseLog);
+
+        // 2. Update Mistake Book (if wrong)
+        if (!message.correct()) {
+            MistakeBook mistake = mistakeBookMapper.selectOne(new LambdaQueryWrapper<MistakeBook>()
+                    .eq(MistakeBook::getStudentId, message.studentId())
+                    .eq(MistakeBook::getQuestionId, message.questionId()));
+
+            if (mistake == null) {
+                mistake = new MistakeBook();
+                mistake.setStudentId(message.studentId());
+                mistake.setQuestionId(message.questionId());
+                mistake.setErrorCount(1);
+                mistake.setIsResolved(0);
+                mistake.setLastErrorTime(LocalDateTime.now());
+                mistakeBookMapper.insert(mistake);
+            } else {
+                mistake.setErrorCount(mistake.getErrorCount() + 1);
+                mistake.setLastErrorTime(LocalDateTime.now());
+                mistake.setIsResolved(0);
+                mistakeBookMapper.updateById(mistake);
+            }
+        }
+    }
+}
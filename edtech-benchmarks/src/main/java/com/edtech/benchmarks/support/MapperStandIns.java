@@ -0,0 +1,259 @@
+package com.edtech.benchmarks.support;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.edtech.model.dto.AnswerTrace;
+import com.edtech.model.entity.KnowledgePoint;
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.entity.MistakeBook;
+import com.edtech.model.entity.Question;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.KnowledgePointMapper;
+import com.edtech.model.mapper.KnowledgePrerequisiteMapper;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import com.edtech.model.mapper.MistakeBookMapper;
+import com.edtech.model.mapper.QuestionMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * MyBatis Mapper 的内存替身 (JDK 动态代理)
+ * <p>
+ * 只实现热路径实际调用的方法，其余方法返回空值；基准测试测量的是服务自身的 CPU 与分配，不含数据库。
+ * 写入类替身可以对每条语句忙等固定时间，模拟一次数据库往返，用于比较语句数不同的写入方式。
+ */
+public final class MapperStandIns {
+
+    private MapperStandIns() {
+    }
+
+    /**
+     * 题目 q 属于知识点 (q % knowledgePoints) + 1
+     */
+    public static QuestionMapper questionMapper(int knowledgePoints) {
+        return proxy(QuestionMapper.class, (method, args) -> {
+            if ("selectById".equals(method.getName())) {
+                long id = ((Number) args[0]).longValue();
+                Question q = new Question();
+                q.setId(id);
+                q.setKnowledgePointId(id % knowledgePoints + 1);
+                return q;
+            }
+            return null;
+        });
+    }
+
+    public static KnowledgePointMapper knowledgePointMapper() {
+        return proxy(KnowledgePointMapper.class, (method, args) -> {
+            if ("selectById".equals(method.getName())) {
+                KnowledgePoint kp = new KnowledgePoint();
+                kp.setId(((Number) args[0]).longValue());
+                kp.setPInit(0.3);
+                kp.setPTransit(0.1);
+                kp.setPGuess(0.2);
+                kp.setPSlip(0.1);
+                return kp;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * knowledge_state 替身: 查询全部未命中，upsert 只计数，没有可删除的行
+     */
+    public static KnowledgeStateMapper knowledgeStateMapper(AtomicLong upsertedRows) {
+        return proxy(KnowledgeStateMapper.class, (method, args) -> {
+            if ("upsertBatch".equals(method.getName())) {
+                @SuppressWarnings("unchecked")
+                List<KnowledgeState> states = (List<KnowledgeState>) args[0];
+                upsertedRows.addAndGet(states.size());
+                return states.size();
+            }
+            if ("deleteExcept".equals(method.getName())) {
+                return 0;
+            }
+            return null;
+        });
+    }
+
+    public static KnowledgePrerequisiteMapper knowledgePrerequisiteMapper() {
+        return proxy(KnowledgePrerequisiteMapper.class, (method, args) -> null);
+    }
+
+    /**
+     * 答题日志替身: 学生 ID 为 1..students，按 (学生, 时间) 顺序推送确定性的合成轨迹 (每个学生独立的随机序列)
+     */
+    public static StudentExerciseLogMapper exerciseLogMapper(int students, int answersPerStudent, int knowledgePoints) {
+        return proxy(StudentExerciseLogMapper.class, (method, args) -> {
+            if ("selectStudentIdBoundary".equals(method.getName())) {
+                long afterStudentId = ((Number) args[0]).longValue();
+                int limit = ((Number) args[1]).intValue();
+                return afterStudentId >= students ? null : Math.min(students, afterStudentId + limit);
+            }
+            if (!"streamTracesByStudentRange".equals(method.getName())) {
+                return null;
+            }
+            long afterStudentId = ((Number) args[0]).longValue();
+            long upToStudentId = ((Number) args[1]).longValue();
+            @SuppressWarnings("unchecked")
+            ResultHandler<AnswerTrace> handler = (ResultHandler<AnswerTrace>) args[2];
+            LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+            TraceContext context = new TraceContext();
+            for (long studentId = afterStudentId + 1; studentId <= Math.min(students, upToStudentId); studentId++) {
+                SplittableRandom random = new SplittableRandom(studentId);
+                long id = (studentId - 1) * answersPerStudent;
+                for (int i = 0; i < answersPerStudent; i++) {
+                    AnswerTrace trace = new AnswerTrace();
+                    trace.setId(++id);
+                    trace.setStudentId(studentId);
+                    trace.setKnowledgePointId((long) random.nextInt(knowledgePoints) + 1);
+                    trace.setResult(random.nextInt(100) < 65 ? 1 : 0);
+                    trace.setSubmitTime(start.plusMinutes(i * 7L));
+                    context.next(trace);
+                    handler.handleResult(context);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 答题日志写入替身: insert / insertBatch / selectLoggedRequests 每次调用算一条语句，忙等 statementNanos；
+     * 没有已落库的 requestId
+     */
+    public static StudentExerciseLogMapper exerciseLogSink(AtomicLong statements, long statementNanos) {
+        return proxy(StudentExerciseLogMapper.class, (method, args) -> {
+            if ("insertBatch".equals(method.getName())) {
+                @SuppressWarnings("unchecked")
+                List<StudentExerciseLog> logs = (List<StudentExerciseLog>) args[0];
+                roundTrip(statements, statementNanos);
+                return logs.size();
+            }
+            if ("insert".equals(method.getName())) {
+                roundTrip(statements, statementNanos);
+                return 1;
+            }
+            if ("selectLoggedRequests".equals(method.getName())) {
+                roundTrip(statements, statementNanos);
+                return List.of();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 错题本写入替身: upsertErrors / selectOne / insert / updateById 每次调用算一条语句，忙等 statementNanos
+     * <p>
+     * 逐条路径 (改造前) 的 selectOne 按条件中的 (学生, 题目) 查找此前 insert 的行，因此重复答错走 UPDATE 分支
+     */
+    public static MistakeBookMapper mistakeBookSink(AtomicLong statements, long statementNanos) {
+        Map<List<Object>, MistakeBook> rows = new ConcurrentHashMap<>();
+        return proxy(MistakeBookMapper.class, (method, args) -> {
+            switch (method.getName()) {
+                case "upsertErrors" -> {
+                    @SuppressWarnings("unchecked")
+                    List<MistakeBook> mistakes = (List<MistakeBook>) args[0];
+                    roundTrip(statements, statementNanos);
+                    return mistakes.size();
+                }
+                case "selectOne" -> {
+                    roundTrip(statements, statementNanos);
+                    // eq(studentId).eq(questionId): the wrapper's generated parameters (MPGENVAL<n>) in call order
+                    Map<String, Object> params = ((AbstractWrapper<?, ?, ?>) args[0]).getParamNameValuePairs();
+                    List<Object> key = params.entrySet().stream()
+                            .sorted(Comparator.comparingInt(e -> Integer.parseInt(e.getKey().replaceAll("\\D", ""))))
+                            .map(Map.Entry::getValue)
+                            .toList();
+                    return rows.get(key);
+                }
+                case "insert" -> {
+                    roundTrip(statements, statementNanos);
+                    MistakeBook mistake = (MistakeBook) args[0];
+                    rows.put(List.of(mistake.getStudentId(), mistake.getQuestionId()), mistake);
+                    return 1;
+                }
+                case "updateById" -> {
+                    roundTrip(statements, statementNanos);
+                    return 1;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        });
+    }
+
+    private static void roundTrip(AtomicLong statements, long nanos) {
+        statements.incrementAndGet();
+        // Busy-wait: parkNanos cannot sleep for a few hundred microseconds reliably
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<Method, Object[], Object> body) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "StandIn";
+                };
+            }
+            Object result = body.apply(method, args);
+            if (result == null && List.class.isAssignableFrom(method.getReturnType())) {
+                return Collections.emptyList();
+            }
+            if (result == null && Map.class.isAssignableFrom(method.getReturnType())) {
+                return Collections.emptyMap();
+            }
+            return result;
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static final class TraceContext implements ResultContext<AnswerTrace> {
+
+        private AnswerTrace current;
+        private int count;
+
+        void next(AnswerTrace trace) {
+            current = trace;
+            count++;
+        }
+
+        @Override
+        public AnswerTrace getResultObject() {
+            return current;
+        }
+
+        @Override
+        public int getResultCount() {
+            return count;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return false;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
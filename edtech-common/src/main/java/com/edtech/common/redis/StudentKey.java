@@ -0,0 +1,125 @@
+package com.edtech.common.redis;
+
+/**
+ * 学生维度的 Redis key 统一命名
+ * <p>
+ * 新格式为 {@code student:{学生ID}:<类型>}，花括号是 Redis Cluster 的 hash tag:
+ * 同一学生的所有 key 落在同一个 slot，多 key 的 Lua 脚本和流水线可以在集群上原子执行。
+ * 旧格式 ({@code student:<学生ID>:<类型>}、{@code student:state:<学生ID>}) 只用于迁移期的双读，
+ * 切换到 Redis Cluster 前需完成迁移并关闭双读。
+ */
+public enum StudentKey {
+
+    /**
+     * 掌握度 hash (知识追踪)
+     */
+    STATE("state", "student:state:%s"),
+    /**
+     * 薄弱知识点 ZSET，score = 1 - p
+     */
+    WEAK_KPS("weak_kps", "student:%s:weak_kps"),
+    /**
+     * 已掌握知识点 ZSET，score = p
+     */
+    STRONG_KPS("strong_kps", "student:%s:strong_kps"),
+    /**
+     * 错题频次 ZSET
+     */
+    WRONG_FREQ("wrong_freq", "student:%s:wrong_freq"),
+    /**
+     * 纠错专项训练标记 (带过期时间的字符串)
+     */
+    DRILL_MODE("drill_mode", "student:%s:drill_mode"),
+    /**
+     * 间隔复习到期时间 ZSET，score = 到期时间 (epoch 秒)
+     */
+    REVIEW_DUE("review_due", "student:%s:review_due"),
+    /**
+     * 知识点常见错误 hash
+     */
+    COMMON_MISTAKES("common_mistakes", "student:%s:common_mistakes"),
+    /**
+     * 近期答过的题目 (序列化的 RoaringBitmap，按窗口轮换)；新增类型，没有旧格式数据
+     */
+    SEEN_RECENT("seen_recent", "student:%s:seen_recent"),
+    /**
+     * 答过的全部题目 (序列化的 RoaringBitmap，覆盖率)；新增类型，没有旧格式数据
+     */
+    SEEN_ALL("seen_all", "student:%s:seen_all"),
+    /**
+     * 预计算的下一批选题 (list，JSON 条目)；新增类型，没有旧格式数据
+     */
+    NEXT_QUESTIONS("next_questions", "student:%s:next_questions"),
+    /**
+     * 预取队列代号 (INCR 计数)，清空队列时递增，补齐只在代号未变时写入；新增类型，没有旧格式数据
+     */
+    NEXT_QUESTIONS_EPOCH("next_questions_epoch", "student:%s:next_questions_epoch"),
+    /**
+     * 已计入知识追踪的请求 ID ZSET，score = 生效时间 (epoch 秒)，保证重试与重放只生效一次；新增类型，没有旧格式数据
+     */
+    TRACED_REQUESTS("traced_requests", "student:%s:traced_requests");
+
+    public static final String PREFIX = "student:";
+
+    private final String suffix;
+    private final String legacyFormat;
+
+    StudentKey(String suffix, String legacyFormat) {
+        this.suffix = suffix;
+        this.legacyFormat = legacyFormat;
+    }
+
+    /**
+     * 带 hash tag 的 key，如 student:{42}:state
+     */
+    public String of(Object studentId) {
+        return hashTag(studentId) + ":" + suffix;
+    }
+
+    /**
+     * 迁移前的旧 key，如 student:state:42
+     */
+    public String legacy(Object studentId) {
+        return String.format(legacyFormat, studentId);
+    }
+
+    /**
+     * SCAN 匹配该类型全部新格式 key 的模式 (花括号在 glob 中是普通字符)
+     */
+    public String pattern() {
+        return PREFIX + "{*}:" + suffix;
+    }
+
+    /**
+     * SCAN 匹配该类型全部旧格式 key 的模式
+     */
+    public String legacyPattern() {
+        return String.format(legacyFormat, "*");
+    }
+
+    /**
+     * 学生的 hash tag 前缀 student:{id}
+     */
+    public static String hashTag(Object studentId) {
+        return PREFIX + "{" + studentId + "}";
+    }
+
+    /**
+     * 从旧格式 key 中解析学生 ID，不是该类型的旧 key 时返回 null
+     */
+    public String studentIdOfLegacy(String key) {
+        int marker = legacyFormat.indexOf("%s");
+        String head = legacyFormat.substring(0, marker);
+        String tail = legacyFormat.substring(marker + 2);
+        if (key.length() <= head.length() + tail.length() || !key.startsWith(head) || !key.endsWith(tail)) {
+            return null;
+        }
+        String id = key.substring(head.length(), key.length() - tail.length());
+        for (int i = 0; i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return null;
+            }
+        }
+        return id;
+    }
+}
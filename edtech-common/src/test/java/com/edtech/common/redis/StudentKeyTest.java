@@ -0,0 +1,37 @@
+package com.edtech.common.redis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StudentKeyTest {
+
+    @Test
+    void newKeysShareTheStudentsHashTag() {
+        assertThat(StudentKey.STATE.of(42L)).isEqualTo("student:{42}:state");
+        assertThat(StudentKey.WEAK_KPS.of(42L)).isEqualTo("student:{42}:weak_kps");
+        assertThat(StudentKey.STATE.pattern()).isEqualTo("student:{*}:state");
+    }
+
+    @Test
+    void parsesStudentIdFromLegacyKeys() {
+        assertThat(StudentKey.STATE.studentIdOfLegacy("student:state:42")).isEqualTo("42");
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy("student:7:weak_kps")).isEqualTo("7");
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy(StudentKey.WEAK_KPS.legacy(123456789L))).isEqualTo("123456789");
+    }
+
+    @Test
+    void rejectsKeysOfOtherTypesOrFormats() {
+        // Already migrated: the hash tag is not a legacy student id
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy("student:{7}:weak_kps")).isNull();
+        assertThat(StudentKey.STATE.studentIdOfLegacy("student:{42}:state")).isNull();
+        // Another type's legacy key
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy("student:7:wrong_freq")).isNull();
+        assertThat(StudentKey.WRONG_FREQ.studentIdOfLegacy("student:state:7")).isNull();
+        // Empty or non-numeric id
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy("student::weak_kps")).isNull();
+        assertThat(StudentKey.STATE.studentIdOfLegacy("student:state:")).isNull();
+        assertThat(StudentKey.WEAK_KPS.studentIdOfLegacy("student:7:x:weak_kps")).isNull();
+        assertThat(StudentKey.STATE.studentIdOfLegacy("student:state:abc")).isNull();
+    }
+}
@@ -0,0 +1,38 @@
+package com.edtech.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 答题轨迹行 (student_exercise_log 关联 question.knowledge_point_id)
+ * 仅用于流式读取，供 BKT 参数拟合和知识状态重放使用
+ */
+@Data
+public class AnswerTrace {
+
+    /**
+     * 日志主键
+     */
+    private Long id;
+
+    /**
+     * 学生 ID
+     */
+    private Long studentId;
+
+    /**
+     * 知识点 ID
+     */
+    private Long knowledgePointId;
+
+    /**
+     * 答题结果 (0:错, 1:对)
+     */
+    private Integer result;
+
+    /**
+     * 答题时间
+     */
+    private LocalDateTime submitTime;
+}
@@ -45,4 +45,9 @@ public class StudentExerciseLog implements Serializable {
      */
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime submitTime;
+
+    /**
+     * 客户端幂等键，(student_id, request_id) 唯一；未携带时为 NULL
+     */
+    private String requestId;
 }
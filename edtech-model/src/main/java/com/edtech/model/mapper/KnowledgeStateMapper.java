@@ -2,8 +2,40 @@ package com.edtech.model.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.edtech.model.entity.KnowledgeState;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface KnowledgeStateMapper extends BaseMapper<KnowledgeState> {
+
+    /**
+     * 多行 upsert，依赖唯一键 uk_student_kp (student_id, knowledge_point_id)
+     * updated_at 为空时取当前时间 (遗忘曲线以它作为最后练习时间)
+     */
+    @Insert({"<script>",
+            "INSERT INTO knowledge_state (student_id, knowledge_point_id, mastery_probability, updated_at) VALUES",
+            "<foreach collection='states' item='s' separator=','>",
+            "(#{s.studentId}, #{s.knowledgePointId}, #{s.masteryProbability}, COALESCE(#{s.updatedAt}, NOW()))",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE mastery_probability = VALUES(mastery_probability), updated_at = VALUES(updated_at)",
+            "</script>"})
+    int upsertBatch(@Param("states") List<KnowledgeState> states);
+
+    /**
+     * 删除给定学生中不在 keep 里的知识状态 (全量重放后清理日志中已不再出现的知识点)
+     * keep 中必须包含这些学生要保留的全部 (学生, 知识点)
+     */
+    @Delete({"<script>",
+            "DELETE FROM knowledge_state WHERE student_id IN",
+            "<foreach collection='studentIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "<if test='keep.size() > 0'>",
+            "AND (student_id, knowledge_point_id) NOT IN",
+            "<foreach collection='keep' item='s' open='(' separator=',' close=')'>(#{s.studentId}, #{s.knowledgePointId})</foreach>",
+            "</if>",
+            "</script>"})
+    int deleteExcept(@Param("studentIds") List<Long> studentIds, @Param("keep") List<KnowledgeState> keep);
 }
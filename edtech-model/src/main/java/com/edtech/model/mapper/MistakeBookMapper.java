@@ -2,8 +2,27 @@ package com.edtech.model.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.edtech.model.entity.MistakeBook;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface MistakeBookMapper extends BaseMapper<MistakeBook> {
+
+    /**
+     * 多行累加错误次数，依赖唯一键 uk_student_q (student_id, question_id)
+     * 新错题以 errorCount 插入，已有错题累加 errorCount 并重新打开
+     */
+    @Insert({"<script>",
+            "INSERT INTO mistake_book (student_id, question_id, error_count, last_error_time, is_resolved) VALUES",
+            "<foreach collection='mistakes' item='m' separator=','>",
+            "(#{m.studentId}, #{m.questionId}, #{m.errorCount}, COALESCE(#{m.lastErrorTime}, NOW()), 0)",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE error_count = error_count + VALUES(error_count),",
+            "last_error_time = GREATEST(COALESCE(last_error_time, VALUES(last_error_time)), VALUES(last_error_time)),",
+            "is_resolved = 0",
+            "</script>"})
+    int upsertErrors(@Param("mistakes") List<MistakeBook> mistakes);
 }
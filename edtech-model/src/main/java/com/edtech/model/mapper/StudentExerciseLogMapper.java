@@ -1,9 +1,90 @@
 package com.edtech.model.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.edtech.model.dto.AnswerTrace;
 import com.edtech.model.entity.StudentExerciseLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
 
 @Mapper
 public interface StudentExerciseLogMapper extends BaseMapper<StudentExerciseLog> {
+
+    /**
+     * 插入一条答题记录，(student_id, request_id) 已存在时不做改动 (唯一键 uk_student_request)，submit_time 为空时取当前时间。
+     * 只吸收唯一键冲突，其他错误 (截断、外键等) 照常抛出；返回值依赖连接参数 useAffectedRows=true
+     *
+     * @return 1 已插入，0 为重复提交
+     */
+    @Insert("INSERT INTO student_exercise_log (student_id, question_id, result, duration, submit_time, request_id) "
+            + "VALUES (#{studentId}, #{questionId}, #{result}, #{duration}, COALESCE(#{submitTime}, NOW()), #{requestId}) "
+            + "ON DUPLICATE KEY UPDATE id = id")
+    int insertIfAbsent(StudentExerciseLog log);
+
+    /**
+     * 多行插入答题记录 (离线批量同步、日志消费)，submit_time 为空时取当前时间；
+     * (student_id, request_id) 已存在的行保持不变，调用方应先用 {@link #selectLoggedRequests} 排除重复
+     */
+    @Insert({"<script>",
+            "INSERT INTO student_exercise_log (student_id, question_id, result, duration, submit_time, request_id) VALUES",
+            "<foreach collection='logs' item='l' separator=','>",
+            "(#{l.studentId}, #{l.questionId}, #{l.result}, #{l.duration}, COALESCE(#{l.submitTime}, NOW()), #{l.requestId})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE id = id",
+            "</script>"})
+    int insertBatch(@Param("logs") List<StudentExerciseLog> logs);
+
+    /**
+     * 已落库的幂等键: 返回 (student_id, request_id) 已存在的行 (只填充这两列)
+     *
+     * @param logs 带 requestId 的答题记录，不能为空
+     */
+    @Select({"<script>",
+            "SELECT student_id, request_id FROM student_exercise_log WHERE (student_id, request_id) IN",
+            "<foreach collection='logs' item='l' open='(' separator=',' close=')'>",
+            "(#{l.studentId}, #{l.requestId})",
+            "</foreach>",
+            "</script>"})
+    List<StudentExerciseLog> selectLoggedRequests(@Param("logs") List<StudentExerciseLog> logs);
+
+    /**
+     * 按 (知识点, 学生, 时间) 顺序流式读取全部答题轨迹
+     * fetchSize = Integer.MIN_VALUE 让 MySQL 驱动逐行返回，不在内存中缓存整个结果集
+     */
+    @Select("SELECT l.id, l.student_id, q.knowledge_point_id, l.result, l.submit_time "
+            + "FROM student_exercise_log l JOIN question q ON q.id = l.question_id "
+            + "ORDER BY q.knowledge_point_id, l.student_id, l.submit_time, l.id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(AnswerTrace.class)
+    void streamTracesByKnowledgePoint(ResultHandler<AnswerTrace> handler);
+
+    /**
+     * 学生 ID 大于 afterStudentId 的前 limit 个学生中最大的学生 ID (走 idx_student_q 索引)，用于知识状态重放分页
+     *
+     * @return 没有更多学生时返回 null
+     */
+    @Select("SELECT MAX(student_id) FROM (SELECT DISTINCT student_id FROM student_exercise_log "
+            + "WHERE student_id > #{afterStudentId} ORDER BY student_id LIMIT #{limit}) page")
+    Long selectStudentIdBoundary(@Param("afterStudentId") long afterStudentId, @Param("limit") int limit);
+
+    /**
+     * 按 (学生, 时间) 顺序流式读取学生 ID 在 (afterStudentId, upToStudentId] 内的答题轨迹，用于分页的知识状态重放
+     * 每页的游标在处理 (写 MySQL / Redis) 之前就已关闭，不会因处理耗时触发 net_write_timeout
+     */
+    @Select("SELECT l.id, l.student_id, q.knowledge_point_id, l.result, l.submit_time "
+            + "FROM student_exercise_log l JOIN question q ON q.id = l.question_id "
+            + "WHERE l.student_id > #{afterStudentId} AND l.student_id <= #{upToStudentId} "
+            + "ORDER BY l.student_id, l.submit_time, l.id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(AnswerTrace.class)
+    void streamTracesByStudentRange(@Param("afterStudentId") long afterStudentId,
+                                    @Param("upToStudentId") long upToStudentId,
+                                    ResultHandler<AnswerTrace> handler);
 }
@@ -198,7 +198,7 @@ public class ContentGenerationService {
         message.put("content", prompt);
 
         Map<String, Object> body = new HashMap<>();
-        body.put("model", MODEL);
+        body.put("model", model);
         body.put("messages", List.of(message));
         body.put("temperature", 0.7);
         body.put("max_tokens", 2000);
@@ -1,8 +1,12 @@
 package com.edtech.core.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,6 +17,7 @@ public class RabbitConfig {
 
     public static final String REPORT_QUEUE = "learning.report.queue";
     public static final String PRACTICE_LOG_QUEUE = "practice.log.queue";
+    public static final String PRACTICE_LOG_BATCH_FACTORY = "practiceLogBatchContainerFactory";
 
     @Bean
     public Queue reportQueue() {
@@ -29,4 +34,24 @@ public class RabbitConfig {
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
     }
+
+    /**
+     * 答题日志批量消费容器: 攒满 batch-size 条或等待 batch-timeout-ms 后交付一批，由监听器在事务提交后手动确认
+     */
+    @Bean(PRACTICE_LOG_BATCH_FACTORY)
+    public SimpleRabbitListenerContainerFactory practiceLogBatchContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${edtech.practice.log-consumer.batch-size:100}") int batchSize,
+            @Value("${edtech.practice.log-consumer.batch-timeout-ms:200}") long batchTimeoutMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchTimeoutMs);
+        // The broker must be able to hand over a full batch before the first ack
+        factory.setPrefetchCount(batchSize);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
 }
@@ -1,76 +1,134 @@
 package com.edtech.core.mq;
 
 import com.edtech.core.config.RabbitConfig;
-import com.edtech.model.entity.MistakeBook;
-import com.edtech.model.entity.StudentExerciseLog;
-import com.edtech.model.mapper.MistakeBookMapper;
-import com.edtech.model.mapper.StudentExerciseLogMapper;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import com.edtech.core.util.SubmissionDeduplicator;
+import com.edtech.core.util.SubmissionDeduplicator.Claim;
+import com.rabbitmq.client.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * 答题日志批量消费
+ * <p>
+ * 容器每次最多攒 batch-size 条消息或等待 batch-timeout-ms 后交付一批 (见 {@link RabbitConfig})，
+ * 整批经 {@link PracticeLogBatchWriter} 在一个事务内落库，事务提交后才一次性确认整批 (multiple ack)。
+ * 整批失败时逐条重试定位坏消息: 成功的逐条确认，仍失败的拒绝且不重新入队 (配置了死信队列时进入死信)。
+ * 重投的消息由 {@link SubmissionDeduplicator} 挡掉已完成的 requestId；处理中的登记 (上一个消费者崩溃) 照常写入，
+ * 由 {@link PracticeLogBatchWriter} 按数据库唯一键排除已落库的日志，因此重复投递不会重复计数。
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
 @ConditionalOnProperty(name = "spring.rabbitmq.enabled", havingValue = "true", matchIfMissing = false)
 public class PracticeConsumer {
 
-    private final StudentExerciseLogMapper logMapper;
-    private final MistakeBookMapper mistakeBookMapper;
+    private final PracticeLogBatchWriter batchWriter;
+    private final SubmissionDeduplicator submissionDeduplicator;
+    private final MessageConverter messageConverter;
 
-    @RabbitListener(queues = RabbitConfig.PRACTICE_LOG_QUEUE)
-    @Transactional(rollbackFor = Exception.class)
-    public void processPracticeLog(Map<String, Object> message) {
-        try {
-            Long studentId = Long.valueOf(message.get("studentId").toString());
-            Long questionId = Long.valueOf(message.get("questionId").toString());
-            boolean isCorrect = Boolean.parseBoolean(message.get("isCorrect").toString());
-            int duration = Integer.parseInt(message.get("duration").toString());
-            String submitTimeStr = message.get("submitTime").toString();
+    @RabbitListener(queues = RabbitConfig.PRACTICE_LOG_QUEUE, containerFactory = RabbitConfig.PRACTICE_LOG_BATCH_FACTORY)
+    public void processPracticeLogs(List<Message> messages, Channel channel) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long lastTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
 
-            log.info("Async processing practice log: Student {}, Question {}", studentId, questionId);
+        List<Message> parsed = new ArrayList<>(messages.size());
+        List<PracticeLog> logs = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                logs.add(decode(message));
+                parsed.add(message);
+            } catch (Exception e) {
+                log.error("Rejecting malformed practice log message", e);
+                channel.basicNack(message.getMessageProperties().getDeliveryTag(), false, false);
+            }
+        }
 
-            // 1. Save Log to MySQL
-            StudentExerciseLog exerciseLog = new StudentExerciseLog();
-            exerciseLog.setStudentId(studentId);
-            exerciseLog.setQuestionId(questionId);
-            exerciseLog.setResult(isCorrect ? 1 : 0);
-            exerciseLog.setDuration(duration);
-            exerciseLog.setSubmitTime(LocalDateTime.parse(submitTimeStr));
-            logMapper.insert(exerciseLog);
+        // Redelivered messages carry the same requestId
+        List<PracticeLog> pending = new ArrayList<>(logs.size());
+        List<PracticeLog> claimed = new ArrayList<>(logs.size());
+        for (PracticeLog practiceLog : logs) {
+            Claim claim = submissionDeduplicator.claim(practiceLog.studentId(), practiceLog.requestId());
+            if (claim != Claim.DONE) {
+                pending.add(practiceLog);
+            }
+            if (claim == Claim.NEW) {
+                claimed.add(practiceLog);
+            }
+        }
 
-            // 2. Update Mistake Book (if wrong)
-            if (!isCorrect) {
-                MistakeBook mistake = mistakeBookMapper.selectOne(new LambdaQueryWrapper<MistakeBook>()
-                        .eq(MistakeBook::getStudentId, studentId)
-                        .eq(MistakeBook::getQuestionId, questionId));
+        List<PracticeLog> written;
+        try {
+            written = batchWriter.write(pending);
+        } catch (Exception e) {
+            log.warn("Practice log batch of {} failed, retrying one by one: {}", pending.size(), e.getMessage());
+            // Rolled back: nothing was written, so the claims can go
+            release(claimed);
+            retryIndividually(parsed, logs, channel);
+            return;
+        }
+        complete(pending);
+        // Committed: acknowledge everything up to the last delivery in one frame
+        if (parsed.size() == messages.size()) {
+            channel.basicAck(lastTag, true);
+        } else {
+            for (Message message : parsed) {
+                channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+            }
+        }
+        log.info("Processed practice log batch: {} messages, {} duplicates", messages.size(), logs.size() - written.size());
+    }
 
-                if (mistake == null) {
-                    mistake = new MistakeBook();
-                    mistake.setStudentId(studentId);
-                    mistake.setQuestionId(questionId);
-                    mistake.setErrorCount(1);
-                    mistake.setIsResolved(0);
-                    mistake.setLastErrorTime(LocalDateTime.now());
-                    mistakeBookMapper.insert(mistake);
-                } else {
-                    mistake.setErrorCount(mistake.getErrorCount() + 1);
-                    mistake.setLastErrorTime(LocalDateTime.now());
-                    mistake.setIsResolved(0);
-                    mistakeBookMapper.updateById(mistake);
+    private void retryIndividually(List<Message> messages, List<PracticeLog> logs, Channel channel) throws IOException {
+        for (int i = 0; i < messages.size(); i++) {
+            long tag = messages.get(i).getMessageProperties().getDeliveryTag();
+            PracticeLog practiceLog = logs.get(i);
+            Claim claim = submissionDeduplicator.claim(practiceLog.studentId(), practiceLog.requestId());
+            if (claim == Claim.DONE) {
+                channel.basicAck(tag, false);
+                continue;
+            }
+            try {
+                batchWriter.write(List.of(practiceLog));
+                complete(List.of(practiceLog));
+                channel.basicAck(tag, false);
+            } catch (Exception e) {
+                log.error("Failed to process practice log: Student {}, Question {}",
+                        practiceLog.studentId(), practiceLog.questionId(), e);
+                if (claim == Claim.NEW) {
+                    release(List.of(practiceLog));
                 }
+                channel.basicNack(tag, false, false);
             }
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to process practice log", e);
-            // In production: DLQ or retry
+    private void complete(List<PracticeLog> logs) {
+        for (PracticeLog practiceLog : logs) {
+            submissionDeduplicator.complete(practiceLog.studentId(), practiceLog.requestId());
         }
     }
+
+    private void release(List<PracticeLog> logs) {
+        for (PracticeLog practiceLog : logs) {
+            submissionDeduplicator.release(practiceLog.studentId(), practiceLog.requestId());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PracticeLog decode(Message message) {
+        return PracticeLog.fromMessage((Map<String, Object>) messageConverter.fromMessage(message));
+    }
 }
@@ -0,0 +1,153 @@
+package com.edtech.core.mq;
+
+import com.edtech.model.entity.MistakeBook;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.MistakeBookMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 答题日志消息的批量落库
+ * <p>
+ * 一批消息在一个事务内写入: 答题记录多行 INSERT，错题按 (学生, 题目) 合并后一条
+ * INSERT ... ON DUPLICATE KEY UPDATE error_count = error_count + k (唯一键 uk_student_q)，
+ * 数据库往返次数与批大小无关。
+ * 携带 requestId 的日志先按唯一键 (student_id, request_id) 排除已落库的 (消息重投、客户端重试)，
+ * 重复的日志既不插入也不累加错题；多行 INSERT ... ON DUPLICATE KEY UPDATE id = id 兜底并发写入的竞争 (只吸收唯一键冲突)。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PracticeLogBatchWriter {
+
+    // Rows per multi-row INSERT, keeps statements well under max_allowed_packet
+    private static final int INSERT_CHUNK_SIZE = 500;
+
+    private final StudentExerciseLogMapper logMapper;
+    private final MistakeBookMapper mistakeBookMapper;
+
+    /**
+     * 一条答题日志消息
+     *
+     * @param requestId 幂等键，可为 null
+     */
+    public record PracticeLog(Long studentId, Long questionId, boolean correct, int duration,
+                              LocalDateTime submitTime, String requestId) {
+
+        /**
+         * 解析 {@link PracticeProducer} 发送的消息体
+         */
+        public static PracticeLog fromMessage(Map<String, Object> message) {
+            Object requestId = message.get("requestId");
+            return new PracticeLog(
+                    Long.valueOf(message.get("studentId").toString()),
+                    Long.valueOf(message.get("questionId").toString()),
+                    Boolean.parseBoolean(message.get("isCorrect").toString()),
+                    Integer.parseInt(message.get("duration").toString()),
+                    LocalDateTime.parse(message.get("submitTime").toString()),
+                    requestId == null ? null : requestId.toString());
+        }
+
+        public boolean hasRequestId() {
+            return requestId != null && !requestId.isBlank();
+        }
+    }
+
+    /**
+     * 在一个事务内写入一批答题日志，返回后事务已提交
+     *
+     * @return 实际写入的日志 (排除了已落库的重复日志)，顺序不变
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<PracticeLog> write(List<PracticeLog> logs) {
+        if (logs.isEmpty()) {
+            return logs;
+        }
+        List<PracticeLog> fresh = excludeLogged(logs);
+        List<StudentExerciseLog> rows = new ArrayList<>(fresh.size());
+        // Error counts per (student, question), stamped with the latest wrong answer
+        Map<Long, Map<Long, MistakeBook>> mistakes = new LinkedHashMap<>();
+        for (PracticeLog practiceLog : fresh) {
+            rows.add(toRow(practiceLog));
+
+            if (!practiceLog.correct()) {
+                MistakeBook mistake = mistakes.computeIfAbsent(practiceLog.studentId(), k -> new LinkedHashMap<>())
+                        .computeIfAbsent(practiceLog.questionId(), questionId -> {
+                            MistakeBook m = new MistakeBook();
+                            m.setStudentId(practiceLog.studentId());
+                            m.setQuestionId(questionId);
+                            m.setErrorCount(0);
+                            return m;
+                        });
+                mistake.setErrorCount(mistake.getErrorCount() + 1);
+                if (mistake.getLastErrorTime() == null || practiceLog.submitTime().isAfter(mistake.getLastErrorTime())) {
+                    mistake.setLastErrorTime(practiceLog.submitTime());
+                }
+            }
+        }
+
+        for (int from = 0; from < rows.size(); from += INSERT_CHUNK_SIZE) {
+            logMapper.insertBatch(rows.subList(from, Math.min(from + INSERT_CHUNK_SIZE, rows.size())));
+        }
+        List<MistakeBook> mistakeRows = new ArrayList<>();
+        mistakes.values().forEach(byQuestion -> mistakeRows.addAll(byQuestion.values()));
+        if (!mistakeRows.isEmpty()) {
+            mistakeBookMapper.upsertErrors(mistakeRows);
+        }
+        log.debug("Wrote {} practice logs ({} duplicates), {} mistake rows",
+                rows.size(), logs.size() - rows.size(), mistakeRows.size());
+        return fresh;
+    }
+
+    /**
+     * 排除 requestId 已落库的日志，以及同一批内重复的 requestId
+     */
+    private List<PracticeLog> excludeLogged(List<PracticeLog> logs) {
+        List<StudentExerciseLog> keyed = new ArrayList<>();
+        for (PracticeLog practiceLog : logs) {
+            if (practiceLog.hasRequestId()) {
+                keyed.add(toRow(practiceLog));
+            }
+        }
+        if (keyed.isEmpty()) {
+            return logs;
+        }
+        Set<String> seen = new HashSet<>();
+        for (int from = 0; from < keyed.size(); from += INSERT_CHUNK_SIZE) {
+            for (StudentExerciseLog row : logMapper.selectLoggedRequests(
+                    keyed.subList(from, Math.min(from + INSERT_CHUNK_SIZE, keyed.size())))) {
+                seen.add(row.getStudentId() + ":" + row.getRequestId());
+            }
+        }
+        List<PracticeLog> fresh = new ArrayList<>(logs.size());
+        for (PracticeLog practiceLog : logs) {
+            if (!practiceLog.hasRequestId() || seen.add(practiceLog.studentId() + ":" + practiceLog.requestId())) {
+                fresh.add(practiceLog);
+            }
+        }
+        return fresh;
+    }
+
+    private static StudentExerciseLog toRow(PracticeLog practiceLog) {
+        StudentExerciseLog exerciseLog = new StudentExerciseLog();
+        exerciseLog.setStudentId(practiceLog.studentId());
+        exerciseLog.setQuestionId(practiceLog.questionId());
+        exerciseLog.setResult(practiceLog.correct() ? 1 : 0);
+        exerciseLog.setDuration(practiceLog.duration());
+        exerciseLog.setSubmitTime(practiceLog.submitTime());
+        // Blank ids are stored as NULL so they never collide on uk_student_request
+        exerciseLog.setRequestId(practiceLog.hasRequestId() ? practiceLog.requestId() : null);
+        return exerciseLog;
+    }
+}
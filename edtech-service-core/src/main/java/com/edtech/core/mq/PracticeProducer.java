@@ -18,6 +18,13 @@ public class PracticeProducer {
     private RabbitTemplate rabbitTemplate;
 
     public void sendPracticeLog(Long studentId, Long questionId, boolean isCorrect, int duration) {
+        sendPracticeLog(studentId, questionId, isCorrect, duration, null);
+    }
+
+    /**
+     * @param requestId 幂等键，消费端据此丢弃重投的消息，可为 null
+     */
+    public void sendPracticeLog(Long studentId, Long questionId, boolean isCorrect, int duration, String requestId) {
         if (rabbitTemplate == null) {
             log.warn("RabbitMQ disabled, skipping practice log for student: {}", studentId);
             return;
@@ -28,6 +35,9 @@ public class PracticeProducer {
         message.put("isCorrect", isCorrect);
         message.put("duration", duration);
         message.put("submitTime", LocalDateTime.now().toString());
+        if (requestId != null) {
+            message.put("requestId", requestId);
+        }
 
         log.info("Sending practice log for student: {}, question: {}", studentId, questionId);
         rabbitTemplate.convertAndSend(RabbitConfig.PRACTICE_LOG_QUEUE, message);
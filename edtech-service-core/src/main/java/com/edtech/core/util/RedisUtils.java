@@ -1,19 +1,223 @@
 package com.edtech.core.util;
 
+import com.edtech.common.redis.StudentKey;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Component
+@Slf4j
 @RequiredArgsConstructor
 public class RedisUtils {
 
+    private static final int MIGRATED_CACHE_LIMIT = 100_000;
+
     private final RedisTemplate<String, Object> redisTemplate;
 
+    // Registered scripts by classpath location; executed via EVALSHA (EVAL only on NOSCRIPT)
+    private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+    // Students whose legacy keys were already checked by this process
+    private final Set<String> migratedStudents = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 迁移期双读: 首次访问某学生的 key 时把旧格式 key 改名为带 hash tag 的新格式。
+     * 切换到 Redis Cluster 前先调用 {@link #migrateLegacyStudentKeys()} 完成全量迁移并关闭此开关。
+     */
+    @Value("${edtech.redis.legacy-student-keys:true}")
+    private boolean legacyStudentKeys;
+
+    // --- Per-student keys (hash-tagged, see StudentKey) ---
+
+    /**
+     * 学生维度的 key；同一学生的所有 key 在同一 slot，可放进同一个流水线或 Lua 脚本
+     */
+    public String studentKey(StudentKey type, Object studentId) {
+        if (legacyStudentKeys) {
+            migrateStudent(studentId);
+        }
+        return type.of(studentId);
+    }
+
+    /**
+     * 同一学生的多个 key (供多 key 脚本的 KEYS 使用)
+     */
+    public List<String> studentKeys(Object studentId, StudentKey... types) {
+        if (legacyStudentKeys) {
+            migrateStudent(studentId);
+        }
+        List<String> keys = new ArrayList<>(types.length);
+        for (StudentKey type : types) {
+            keys.add(type.of(studentId));
+        }
+        return keys;
+    }
+
+    /**
+     * SCAN 全部旧格式的学生 key 并迁移，可在线执行、可重复执行
+     *
+     * @return 迁移的 key 数
+     */
+    public long migrateLegacyStudentKeys() {
+        long moved = 0;
+        for (StudentKey type : StudentKey.values()) {
+            ScanOptions options = ScanOptions.scanOptions().match(type.legacyPattern()).count(500).build();
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    String studentId = type.studentIdOfLegacy(cursor.next());
+                    if (studentId != null) {
+                        Long n = eval(migrateScript(), List.of(type.legacy(studentId), type.of(studentId)));
+                        moved += n == null ? 0 : n;
+                    }
+                }
+            }
+        }
+        log.info("Migrated {} legacy student keys to hash-tagged layout", moved);
+        return moved;
+    }
+
+    private void migrateStudent(Object studentId) {
+        String id = String.valueOf(studentId);
+        if (migratedStudents.contains(id)) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(StudentKey.values().length * 2);
+        for (StudentKey type : StudentKey.values()) {
+            keys.add(type.legacy(id));
+            keys.add(type.of(id));
+        }
+        try {
+            Long moved = eval(migrateScript(), keys);
+            if (moved != null && moved > 0) {
+                log.info("Migrated {} legacy keys for student {}", moved, id);
+            }
+            if (migratedStudents.size() >= MIGRATED_CACHE_LIMIT) {
+                migratedStudents.clear();
+            }
+            migratedStudents.add(id);
+        } catch (Exception e) {
+            log.warn("Failed to migrate legacy keys for student {}: {}", id, e.getMessage());
+        }
+    }
+
+    private RedisScript<Long> migrateScript() {
+        return script("lua/student_keys_migrate.lua", Long.class);
+    }
+
+    // --- Pipelines, batches and scripts (one round trip) ---
+
+    /**
+     * 在一个流水线中执行多条命令，一次往返
+     * 块内的命令不会立即返回结果 (返回 null)，结果按命令顺序在返回列表中
+     *
+     * @return 每条命令的结果 (值已反序列化)
+     */
+    public List<Object> pipelined(Consumer<RedisOperations<String, Object>> block) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                block.accept((RedisOperations<String, Object>) operations);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 一次 RPUSH 追加多个元素
+     */
+    public Long rPushAll(String key, Collection<?> values) {
+        if (values.isEmpty()) {
+            return lLen(key);
+        }
+        return redisTemplate.opsForList().rightPushAll(key, values.toArray());
+    }
+
+    /**
+     * 一次 MGET 读取多个 key，结果与 keys 顺序一致，不存在的为 null
+     */
+    public List<Object> mGet(Collection<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
+    /**
+     * 一次 HMGET 读取多个字段，结果与 hashKeys 顺序一致，不存在的为 null
+     */
+    public List<Object> hMGet(String key, Collection<String> hashKeys) {
+        return redisTemplate.opsForHash().multiGet(key, new ArrayList<>(hashKeys));
+    }
+
+    /**
+     * 一次 ZADD 写入多个成员
+     *
+     * @param scores 成员 -> score
+     */
+    public Long zAddAll(String key, Map<?, Double> scores) {
+        if (scores.isEmpty()) {
+            return 0L;
+        }
+        Set<TypedTuple<Object>> tuples = new HashSet<>(scores.size() * 2);
+        scores.forEach((member, score) -> tuples.add(new DefaultTypedTuple<>(member, score)));
+        return redisTemplate.opsForZSet().add(key, tuples);
+    }
+
+    /**
+     * 注册 classpath 下的 Lua 脚本 (按位置缓存，首次注册时 SCRIPT LOAD)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> script(String location, Class<T> resultType) {
+        return (RedisScript<T>) scripts.computeIfAbsent(location, loc -> {
+            DefaultRedisScript<T> script = new DefaultRedisScript<>();
+            script.setScriptSource(new ResourceScriptSource(new ClassPathResource(loc)));
+            script.setResultType(resultType);
+            try {
+                byte[] body = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(body));
+            } catch (Exception e) {
+                log.warn("Failed to preload script {}, will load on first use: {}", loc, e.getMessage());
+            }
+            return script;
+        });
+    }
+
+    /**
+     * 执行已注册的脚本 (EVALSHA)
+     * 参数按字符串传入，字符串 / 列表结果按字符串解析 (不经过 JSON 序列化器)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T eval(RedisScript<T> script, List<String> keys, Object... args) {
+        Object[] stringArgs = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            stringArgs[i] = String.valueOf(args[i]);
+        }
+        return redisTemplate.execute(script, RedisSerializer.string(), (RedisSerializer<T>) RedisSerializer.string(),
+                keys, stringArgs);
+    }
+
     // --- Basic Key-Value ---
     public void set(String key, Object value, long timeout, TimeUnit unit) {
         redisTemplate.opsForValue().set(key, value, timeout, unit);
@@ -22,11 +226,43 @@ public class RedisUtils {
     public Object get(String key) {
         return redisTemplate.opsForValue().get(key);
     }
+
+    /**
+     * SET NX EX: key 不存在时写入并返回 true
+     */
+    public boolean setIfAbsent(String key, Object value, long timeout, TimeUnit unit) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit));
+    }
     
     public void delete(String key) {
         redisTemplate.delete(key);
     }
 
+    // --- Raw bytes (bypass the JSON value serializer, e.g. serialized bitmaps) ---
+
+    /**
+     * 一次 MGET 读取多个 key 的原始字节，结果与 keys 顺序一致，不存在的为 null
+     */
+    public List<byte[]> mGetBytes(List<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+    }
+
+    /**
+     * 流水线写入多个 key 的原始字节 (SETEX)，一次往返
+     */
+    public void setBytes(Map<String, byte[]> values, long timeout, TimeUnit unit) {
+        long seconds = unit.toSeconds(timeout);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) ->
+                    connection.stringCommands().setEx(key.getBytes(StandardCharsets.UTF_8), seconds, value));
+            return null;
+        });
+    }
+
     // --- Hash Operations ---
     public void hSet(String key, String hashKey, Object value) {
         redisTemplate.opsForHash().put(key, hashKey, value);
@@ -0,0 +1,117 @@
+package com.edtech.core.util;
+
+import com.edtech.common.redis.StudentKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 答题提交的幂等去重
+ * <p>
+ * 客户端为每次作答生成 requestId，网络重试时复用同一个值。首次出现时用 SET NX EX 登记为"处理中"
+ * (key 与学生的其他 key 同一 hash tag，短 TTL)，答题记录提交后由 {@link #complete} 改为"已完成" (长 TTL)；
+ * 处理中的登记在进程崩溃后自然过期，客户端随后的重试可以重新处理，不会被永久吞掉。
+ * 最终的去重由 student_exercise_log 的唯一键 (student_id, request_id) 在落库事务内保证，
+ * 这里只是在重复提交到达数据库之前把它们挡掉。
+ * 未携带 requestId 的提交不去重；Redis 不可用时放行，由数据库唯一键兜底。
+ */
+@Component
+@Slf4j
+public class SubmissionDeduplicator {
+
+    public static final int MAX_REQUEST_ID_LENGTH = 64;
+
+    private static final int IN_PROGRESS_MARK = 0;
+    private static final int DONE_MARK = 1;
+
+    private final RedisUtils redisUtils;
+    private final long ttlMinutes;
+    private final long processingSeconds;
+
+    /**
+     * 登记结果
+     */
+    public enum Claim {
+        /**
+         * 首次出现 (或未携带 requestId)，应当处理
+         */
+        NEW,
+        /**
+         * 另一次提交正在处理，结果未知
+         */
+        IN_PROGRESS,
+        /**
+         * 已经处理完成，直接确认即可
+         */
+        DONE
+    }
+
+    public SubmissionDeduplicator(RedisUtils redisUtils,
+                                  @Value("${edtech.practice.submit.dedup-ttl-minutes:10}") long ttlMinutes,
+                                  @Value("${edtech.practice.submit.dedup-processing-seconds:120}") long processingSeconds) {
+        this.redisUtils = redisUtils;
+        this.ttlMinutes = ttlMinutes;
+        this.processingSeconds = processingSeconds;
+    }
+
+    /**
+     * 登记一次提交为处理中
+     */
+    public Claim claim(Long studentId, String requestId) {
+        if (isBlank(requestId)) {
+            return Claim.NEW;
+        }
+        String key = key(studentId, requestId);
+        try {
+            if (redisUtils.setIfAbsent(key, IN_PROGRESS_MARK, processingSeconds, TimeUnit.SECONDS)) {
+                return Claim.NEW;
+            }
+            // Claims written before the in-progress state existed hold the done mark
+            Object state = redisUtils.get(key);
+            Claim claim = state != null && String.valueOf(DONE_MARK).equals(state.toString()) ? Claim.DONE : Claim.IN_PROGRESS;
+            log.info("Duplicate submission {} for student {} ({})", requestId, studentId, claim);
+            return claim;
+        } catch (Exception e) {
+            log.warn("Submission dedup unavailable for student {}, processing {}: {}", studentId, requestId, e.getMessage());
+            return Claim.NEW;
+        }
+    }
+
+    /**
+     * 答题记录已提交: 登记改为已完成，此后的重复提交直接确认
+     */
+    public void complete(Long studentId, String requestId) {
+        if (isBlank(requestId)) {
+            return;
+        }
+        try {
+            redisUtils.set(key(studentId, requestId), DONE_MARK, ttlMinutes, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("Failed to complete submission {} for student {}: {}", requestId, studentId, e.getMessage());
+        }
+    }
+
+    /**
+     * 处理失败且没有产生任何副作用 (事务已回滚)、需要客户端重试时撤销登记
+     */
+    public void release(Long studentId, String requestId) {
+        if (isBlank(requestId)) {
+            return;
+        }
+        try {
+            redisUtils.delete(key(studentId, requestId));
+        } catch (Exception e) {
+            log.warn("Failed to release submission {} for student {}: {}", requestId, studentId, e.getMessage());
+        }
+    }
+
+    private static boolean isBlank(String requestId) {
+        return requestId == null || requestId.isBlank();
+    }
+
+    private static String key(Long studentId, String requestId) {
+        return StudentKey.hashTag(studentId) + ":submit:" + requestId;
+    }
+}
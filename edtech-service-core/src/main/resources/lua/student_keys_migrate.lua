@@ -0,0 +1,13 @@
+-- 学生 key 迁移: 旧格式 -> 带 hash tag 的新格式 (见 StudentKey)
+-- KEYS      成对出现: 旧 key, 新 key
+-- 旧 key 存在且新 key 不存在时 RENAME (保留 TTL)；新 key 已存在时以新 key 为准，旧 key 留待过期
+-- 返回迁移的 key 数
+-- 旧 key 与新 key 不在同一 slot，只能在单机 / 主从模式下执行，切换到 Redis Cluster 前完成迁移
+local moved = 0
+for i = 1, #KEYS, 2 do
+    if redis.call('EXISTS', KEYS[i]) == 1 and redis.call('EXISTS', KEYS[i + 1]) == 0 then
+        redis.call('RENAME', KEYS[i], KEYS[i + 1])
+        moved = moved + 1
+    end
+end
+return moved
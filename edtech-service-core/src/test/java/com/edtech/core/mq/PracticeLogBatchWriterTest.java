@@ -0,0 +1,114 @@
+package com.edtech.core.mq;
+
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import com.edtech.model.entity.MistakeBook;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.MistakeBookMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PracticeLogBatchWriterTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private final StudentExerciseLogMapper logMapper = mock(StudentExerciseLogMapper.class);
+    private final MistakeBookMapper mistakeBookMapper = mock(MistakeBookMapper.class);
+    private final PracticeLogBatchWriter writer = new PracticeLogBatchWriter(logMapper, mistakeBookMapper);
+
+    private final List<List<StudentExerciseLog>> inserts = new ArrayList<>();
+    private final List<MistakeBook> mistakes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // The writer hands out subList views: copy them
+        doAnswer(invocation -> {
+            inserts.add(new ArrayList<>(invocation.<List<StudentExerciseLog>>getArgument(0)));
+            return 0;
+        }).when(logMapper).insertBatch(any());
+        doAnswer(invocation -> {
+            mistakes.addAll(invocation.getArgument(0));
+            return 0;
+        }).when(mistakeBookMapper).upsertErrors(any());
+    }
+
+    @Test
+    void mergesWrongAnswersPerStudentAndQuestion() {
+        List<PracticeLog> written = writer.write(List.of(
+                log(1L, 100L, false, 0, null),
+                log(1L, 100L, false, 5, null),
+                log(1L, 101L, true, 6, null),
+                log(2L, 100L, false, 2, null)));
+
+        assertThat(written).hasSize(4);
+        assertThat(inserts).hasSize(1);
+        assertThat(inserts.get(0)).extracting(StudentExerciseLog::getResult).containsExactly(0, 0, 1, 0);
+        assertThat(mistakes).extracting(MistakeBook::getStudentId, MistakeBook::getQuestionId,
+                        MistakeBook::getErrorCount, MistakeBook::getLastErrorTime)
+                .containsExactly(tuple(1L, 100L, 2, AT.plusMinutes(5)), tuple(2L, 100L, 1, AT.plusMinutes(2)));
+        // No request ids: nothing to look up
+        verify(logMapper, never()).selectLoggedRequests(any());
+    }
+
+    @Test
+    void skipsLoggedAndRepeatedRequestIds() {
+        StudentExerciseLog logged = new StudentExerciseLog();
+        logged.setStudentId(1L);
+        logged.setRequestId("a");
+        when(logMapper.selectLoggedRequests(any())).thenReturn(List.of(logged));
+
+        List<PracticeLog> written = writer.write(List.of(
+                log(1L, 100L, false, 0, "a"),
+                log(1L, 101L, false, 1, "b"),
+                log(1L, 101L, false, 2, "b"),
+                // Same id from another student is a different request
+                log(2L, 100L, false, 3, "a"),
+                log(2L, 102L, true, 4, " ")));
+
+        assertThat(written).extracting(PracticeLog::requestId).containsExactly("b", "a", " ");
+        assertThat(inserts.get(0)).extracting(StudentExerciseLog::getRequestId).containsExactly("b", "a", null);
+        assertThat(mistakes).extracting(MistakeBook::getStudentId, MistakeBook::getQuestionId, MistakeBook::getErrorCount)
+                .containsExactly(tuple(1L, 101L, 1), tuple(2L, 100L, 1));
+    }
+
+    @Test
+    void splitsLargeBatchesIntoBoundedInserts() {
+        List<PracticeLog> logs = new ArrayList<>();
+        for (int i = 0; i < 1201; i++) {
+            logs.add(log(1L, (long) i, true, 0, null));
+        }
+
+        writer.write(logs);
+
+        assertThat(inserts).extracting(List::size).containsExactly(500, 500, 201);
+        verify(mistakeBookMapper, never()).upsertErrors(any());
+    }
+
+    @Test
+    void parsesProducerMessage() {
+        PracticeLog parsed = PracticeLog.fromMessage(Map.of("studentId", 1, "questionId", "100", "isCorrect", "false",
+                "duration", 30, "submitTime", AT.toString(), "requestId", "req-1"));
+
+        assertThat(parsed).isEqualTo(new PracticeLog(1L, 100L, false, 30, AT, "req-1"));
+        assertThat(PracticeLog.fromMessage(Map.of("studentId", 1, "questionId", 100, "isCorrect", true,
+                "duration", 30, "submitTime", AT.toString())).hasRequestId()).isFalse();
+    }
+
+    private static PracticeLog log(Long studentId, Long questionId, boolean correct, int minute, String requestId) {
+        return new PracticeLog(studentId, questionId, correct, 10, AT.plusMinutes(minute), requestId);
+    }
+}
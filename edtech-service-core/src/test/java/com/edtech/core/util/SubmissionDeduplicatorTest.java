@@ -0,0 +1,72 @@
+package com.edtech.core.util;
+
+import com.edtech.core.util.SubmissionDeduplicator.Claim;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SubmissionDeduplicatorTest {
+
+    private static final String KEY = "student:{7}:submit:req-1";
+
+    private final RedisUtils redisUtils = mock(RedisUtils.class);
+    private final SubmissionDeduplicator deduplicator = new SubmissionDeduplicator(redisUtils, 10, 120);
+
+    @Test
+    void firstClaimIsRegisteredAsInProgressWithShortTtl() {
+        when(redisUtils.setIfAbsent(anyString(), any(), anyLong(), any())).thenReturn(true);
+
+        assertThat(deduplicator.claim(7L, "req-1")).isEqualTo(Claim.NEW);
+        verify(redisUtils).setIfAbsent(KEY, 0, 120, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void repeatedClaimReportsInProgressUntilCompleted() {
+        when(redisUtils.setIfAbsent(anyString(), any(), anyLong(), any())).thenReturn(false);
+        when(redisUtils.get(KEY)).thenReturn(0);
+        assertThat(deduplicator.claim(7L, "req-1")).isEqualTo(Claim.IN_PROGRESS);
+
+        deduplicator.complete(7L, "req-1");
+        verify(redisUtils).set(KEY, 1, 10, TimeUnit.MINUTES);
+        when(redisUtils.get(KEY)).thenReturn(1);
+        assertThat(deduplicator.claim(7L, "req-1")).isEqualTo(Claim.DONE);
+    }
+
+    @Test
+    void releaseDeletesTheClaim() {
+        deduplicator.release(7L, "req-1");
+
+        verify(redisUtils).delete(KEY);
+    }
+
+    @Test
+    void blankRequestIdIsNeverDeduplicated() {
+        assertThat(deduplicator.claim(7L, null)).isEqualTo(Claim.NEW);
+        assertThat(deduplicator.claim(7L, " ")).isEqualTo(Claim.NEW);
+        deduplicator.complete(7L, "");
+        deduplicator.release(7L, null);
+
+        verifyNoInteractions(redisUtils);
+    }
+
+    @Test
+    void redisFailureLetsTheSubmissionThrough() {
+        when(redisUtils.setIfAbsent(anyString(), any(), anyLong(), any()))
+                .thenThrow(new IllegalStateException("connection refused"));
+        doThrow(new IllegalStateException("connection refused")).when(redisUtils).set(eq(KEY), any(), anyLong(), any());
+
+        assertThat(deduplicator.claim(7L, "req-1")).isEqualTo(Claim.NEW);
+        deduplicator.complete(7L, "req-1");
+    }
+}
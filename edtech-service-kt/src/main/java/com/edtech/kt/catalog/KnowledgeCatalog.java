@@ -0,0 +1,361 @@
+package com.edtech.kt.catalog;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.edtech.kt.model.BktParams;
+import com.edtech.model.entity.KnowledgePoint;
+import com.edtech.model.entity.Question;
+import com.edtech.model.mapper.KnowledgePointMapper;
+import com.edtech.model.mapper.QuestionMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 题目/知识点元数据的进程内目录 (带版本号)
+ * <p>
+ * 答题热路径只需要 "题目 -> 知识点" 映射和知识点的四个 BKT 参数，
+ * 这些数据几乎不变，因此常驻内存，避免每次提交都查询 MySQL。
+ * <ul>
+ *     <li>题目映射: 原始类型 long -> long 哈希表，StampedLock 乐观读</li>
+ *     <li>参数表: 按知识点 ID 排序的 long[] + 每个知识点 4 个 double 的紧凑数组 + 学科，写时复制</li>
+ * </ul>
+ * 管理后台编辑知识点时通过 {@link #refreshKnowledgePoint(Long)} / {@link #removeKnowledgePoint(Long)} 增量刷新。
+ * 数据库中不存在的题目/知识点 ID 也会缓存一段时间 (负缓存)，错误输入不会让每次提交都回源；
+ * 登记题目或刷新知识点时立即清除对应的负缓存。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class KnowledgeCatalog {
+
+    /** 题目不存在或未关联知识点 */
+    public static final long NO_KNOWLEDGE_POINT = -1L;
+
+    private static final int PARAM_WIDTH = 4;
+
+    private static final long MISS_TTL_MS = 60_000;
+    private static final int MAX_MISSES = 10_000;
+
+    private final QuestionMapper questionMapper;
+    private final KnowledgePointMapper knowledgePointMapper;
+
+    private final StampedLock questionLock = new StampedLock();
+    private final LongLongHashMap questionToKp = new LongLongHashMap(1024);
+
+    private final Object paramWriteLock = new Object();
+    private volatile ParamTable paramTable = ParamTable.EMPTY;
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Negative cache: id -> expiry (epoch millis)
+    private final ConcurrentHashMap<Long, Long> missingQuestions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> missingKnowledgePoints = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        try {
+            reloadKnowledgePoints();
+            reloadQuestions();
+            log.info("Knowledge catalog loaded: {} knowledge points, {} questions, version {}",
+                    paramTable.size(), questionCount(), version.get());
+        } catch (Exception e) {
+            // Catalog falls back to lazy per-id loading on miss
+            log.warn("Failed to preload knowledge catalog, will load lazily: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 题目所属知识点，未命中时回源数据库并缓存
+     *
+     * @return 知识点 ID，题目不存在时返回 {@link #NO_KNOWLEDGE_POINT}
+     */
+    public long getKnowledgePointId(long questionId) {
+        long kpId = lookupQuestion(questionId);
+        if (kpId != NO_KNOWLEDGE_POINT) {
+            return kpId;
+        }
+        if (isMissing(missingQuestions, questionId)) {
+            return NO_KNOWLEDGE_POINT;
+        }
+        Question question = questionMapper.selectById(questionId);
+        if (question == null || question.getKnowledgePointId() == null) {
+            markMissing(missingQuestions, questionId);
+            return NO_KNOWLEDGE_POINT;
+        }
+        registerQuestion(questionId, question.getKnowledgePointId());
+        return question.getKnowledgePointId();
+    }
+
+    /**
+     * 知识点 BKT 参数，未命中时回源数据库并缓存；知识点不存在时返回默认参数
+     */
+    public BktParams getParams(long kpId) {
+        ParamTable table = paramTable;
+        int idx = Arrays.binarySearch(table.ids, 0, table.size, kpId);
+        if (idx >= 0) {
+            return table.params(idx);
+        }
+        if (isMissing(missingKnowledgePoints, kpId)) {
+            return BktParams.DEFAULT;
+        }
+        KnowledgePoint kp = knowledgePointMapper.selectById(kpId);
+        if (kp == null) {
+            markMissing(missingKnowledgePoints, kpId);
+            return BktParams.DEFAULT;
+        }
+        BktParams params = toParams(kp);
+        putParams(kpId, params, kp.getSubject());
+        return params;
+    }
+
+    /**
+     * 知识点所属学科 (用于按学科选择知识追踪模型)，未命中时回源数据库并缓存
+     *
+     * @return 学科，知识点不存在或未设置时返回 null
+     */
+    public String getSubject(long kpId) {
+        ParamTable table = paramTable;
+        int idx = Arrays.binarySearch(table.ids, 0, table.size, kpId);
+        if (idx >= 0) {
+            return table.subjects[idx];
+        }
+        getParams(kpId);
+        table = paramTable;
+        idx = Arrays.binarySearch(table.ids, 0, table.size, kpId);
+        return idx >= 0 ? table.subjects[idx] : null;
+    }
+
+    /**
+     * 新增题目后登记映射 (AI 出题、后台录入、导入)
+     */
+    public void registerQuestion(long questionId, long kpId) {
+        long stamp = questionLock.writeLock();
+        try {
+            questionToKp.put(questionId, kpId);
+        } finally {
+            questionLock.unlockWrite(stamp);
+        }
+        missingQuestions.remove(questionId);
+        missingKnowledgePoints.remove(kpId);
+        version.incrementAndGet();
+    }
+
+    /**
+     * 管理后台新增/修改知识点后，仅重新加载该知识点一行
+     */
+    public void refreshKnowledgePoint(Long kpId) {
+        if (kpId == null) {
+            return;
+        }
+        missingKnowledgePoints.remove(kpId);
+        KnowledgePoint kp = knowledgePointMapper.selectById(kpId);
+        if (kp == null) {
+            removeKnowledgePoint(kpId);
+            return;
+        }
+        putParams(kpId, toParams(kp), kp.getSubject());
+        log.info("Knowledge catalog refreshed KP {}, version {}", kpId, version.get());
+    }
+
+    public void removeKnowledgePoint(Long kpId) {
+        if (kpId == null) {
+            return;
+        }
+        synchronized (paramWriteLock) {
+            paramTable = paramTable.without(kpId);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 目录版本号，每次变更递增
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int questionCount() {
+        long stamp = questionLock.readLock();
+        try {
+            return questionToKp.size();
+        } finally {
+            questionLock.unlockRead(stamp);
+        }
+    }
+
+    private long lookupQuestion(long questionId) {
+        long stamp = questionLock.tryOptimisticRead();
+        long kpId = questionToKp.get(questionId, NO_KNOWLEDGE_POINT);
+        if (!questionLock.validate(stamp)) {
+            stamp = questionLock.readLock();
+            try {
+                kpId = questionToKp.get(questionId, NO_KNOWLEDGE_POINT);
+            } finally {
+                questionLock.unlockRead(stamp);
+            }
+        }
+        return kpId;
+    }
+
+    private static boolean isMissing(ConcurrentHashMap<Long, Long> misses, long id) {
+        Long expiresAt = misses.get(id);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt > System.currentTimeMillis()) {
+            return true;
+        }
+        misses.remove(id, expiresAt);
+        return false;
+    }
+
+    private static void markMissing(ConcurrentHashMap<Long, Long> misses, long id) {
+        // Bounded: a flood of random ids just resets the cache instead of growing it
+        if (misses.size() >= MAX_MISSES) {
+            misses.clear();
+        }
+        misses.put(id, System.currentTimeMillis() + MISS_TTL_MS);
+    }
+
+    private void putParams(long kpId, BktParams params, String subject) {
+        synchronized (paramWriteLock) {
+            paramTable = paramTable.with(kpId, params, subject);
+        }
+        missingKnowledgePoints.remove(kpId);
+        version.incrementAndGet();
+    }
+
+    private void reloadKnowledgePoints() {
+        List<KnowledgePoint> kps = knowledgePointMapper.selectList(null);
+        kps.sort(Comparator.comparing(KnowledgePoint::getId));
+        long[] ids = new long[kps.size()];
+        double[] values = new double[kps.size() * PARAM_WIDTH];
+        String[] subjects = new String[kps.size()];
+        for (int i = 0; i < kps.size(); i++) {
+            ids[i] = kps.get(i).getId();
+            ParamTable.write(values, i, toParams(kps.get(i)));
+            subjects[i] = kps.get(i).getSubject();
+        }
+        synchronized (paramWriteLock) {
+            paramTable = new ParamTable(ids, values, subjects, ids.length);
+        }
+        version.incrementAndGet();
+    }
+
+    private void reloadQuestions() {
+        List<Map<String, Object>> rows = questionMapper.selectMaps(
+                new QueryWrapper<Question>().select("id", "knowledge_point_id"));
+        long stamp = questionLock.writeLock();
+        try {
+            questionToKp.clear();
+            for (Map<String, Object> row : rows) {
+                Object id = row.get("id");
+                Object kpId = row.get("knowledge_point_id");
+                if (id != null && kpId != null) {
+                    questionToKp.put(((Number) id).longValue(), ((Number) kpId).longValue());
+                }
+            }
+        } finally {
+            questionLock.unlockWrite(stamp);
+        }
+        version.incrementAndGet();
+    }
+
+    private static BktParams toParams(KnowledgePoint kp) {
+        return new BktParams(
+                kp.getPInit() != null ? kp.getPInit() : BktParams.DEFAULT_P_INIT,
+                kp.getPTransit() != null ? kp.getPTransit() : BktParams.DEFAULT_P_TRANSIT,
+                kp.getPGuess() != null ? kp.getPGuess() : BktParams.DEFAULT_P_GUESS,
+                kp.getPSlip() != null ? kp.getPSlip() : BktParams.DEFAULT_P_SLIP);
+    }
+
+    /**
+     * 不可变参数表: 排序的知识点 ID + 每行 4 个参数 + 学科
+     */
+    private static final class ParamTable {
+
+        static final ParamTable EMPTY = new ParamTable(new long[0], new double[0], new String[0], 0);
+
+        final long[] ids;
+        final double[] values;
+        final String[] subjects;
+        final int size;
+
+        ParamTable(long[] ids, double[] values, String[] subjects, int size) {
+            this.ids = ids;
+            this.values = values;
+            this.subjects = subjects;
+            this.size = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        BktParams params(int idx) {
+            int base = idx * PARAM_WIDTH;
+            return new BktParams(values[base], values[base + 1], values[base + 2], values[base + 3]);
+        }
+
+        ParamTable with(long kpId, BktParams p, String subject) {
+            int idx = Arrays.binarySearch(ids, 0, size, kpId);
+            if (idx >= 0) {
+                double[] v = values.clone();
+                write(v, idx, p);
+                String[] s = subjects.clone();
+                s[idx] = subject;
+                return new ParamTable(ids, v, s, size);
+            }
+            int insertAt = -idx - 1;
+            long[] newIds = new long[size + 1];
+            double[] newValues = new double[(size + 1) * PARAM_WIDTH];
+            String[] newSubjects = new String[size + 1];
+            System.arraycopy(ids, 0, newIds, 0, insertAt);
+            System.arraycopy(ids, insertAt, newIds, insertAt + 1, size - insertAt);
+            System.arraycopy(subjects, 0, newSubjects, 0, insertAt);
+            System.arraycopy(subjects, insertAt, newSubjects, insertAt + 1, size - insertAt);
+            System.arraycopy(values, 0, newValues, 0, insertAt * PARAM_WIDTH);
+            System.arraycopy(values, insertAt * PARAM_WIDTH, newValues, (insertAt + 1) * PARAM_WIDTH,
+                    (size - insertAt) * PARAM_WIDTH);
+            newIds[insertAt] = kpId;
+            newSubjects[insertAt] = subject;
+            write(newValues, insertAt, p);
+            return new ParamTable(newIds, newValues, newSubjects, size + 1);
+        }
+
+        ParamTable without(long kpId) {
+            int idx = Arrays.binarySearch(ids, 0, size, kpId);
+            if (idx < 0) {
+                return this;
+            }
+            long[] newIds = new long[size - 1];
+            double[] newValues = new double[(size - 1) * PARAM_WIDTH];
+            String[] newSubjects = new String[size - 1];
+            System.arraycopy(ids, 0, newIds, 0, idx);
+            System.arraycopy(ids, idx + 1, newIds, idx, size - idx - 1);
+            System.arraycopy(subjects, 0, newSubjects, 0, idx);
+            System.arraycopy(subjects, idx + 1, newSubjects, idx, size - idx - 1);
+            System.arraycopy(values, 0, newValues, 0, idx * PARAM_WIDTH);
+            System.arraycopy(values, (idx + 1) * PARAM_WIDTH, newValues, idx * PARAM_WIDTH,
+                    (size - idx - 1) * PARAM_WIDTH);
+            return new ParamTable(newIds, newValues, newSubjects, size - 1);
+        }
+
+        static void write(double[] v, int idx, BktParams p) {
+            int base = idx * PARAM_WIDTH;
+            v[base] = p.pInit();
+            v[base + 1] = p.pTransit();
+            v[base + 2] = p.pGuess();
+            v[base + 3] = p.pSlip();
+        }
+    }
+}
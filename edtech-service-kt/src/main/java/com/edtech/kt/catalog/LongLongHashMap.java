@@ -0,0 +1,135 @@
+package com.edtech.kt.catalog;
+
+import java.util.Arrays;
+
+/**
+ * 原始类型 long -> long 开放寻址哈希表 (线性探测)
+ * <p>
+ * 键和值交错存放在同一个 long[] 中 (table[2i] = key, table[2i+1] = value)，
+ * 这样读者在乐观读时只需读取一次数组引用，不会出现键数组与值数组长度不一致的情况。
+ * 键 0 保留为空槽标记 (数据库自增 ID 从 1 开始)。
+ * <p>
+ * 非线程安全，并发访问由调用方加锁 (见 {@link KnowledgeCatalog})。
+ */
+public class LongLongHashMap {
+
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int size;
+    private int mask;
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.table = new long[capacity * 2];
+        this.mask = capacity - 1;
+    }
+
+    public long get(long key, long missingValue) {
+        long[] t = table;
+        int cap = t.length >> 1;
+        int m = cap - 1;
+        int slot = mix(key) & m;
+        // Probe count is bounded so a torn optimistic read can never spin forever
+        for (int probes = 0; probes < cap; probes++) {
+            long k = t[slot << 1];
+            if (k == key) {
+                return t[(slot << 1) + 1];
+            }
+            if (k == EMPTY) {
+                return missingValue;
+            }
+            slot = (slot + 1) & m;
+        }
+        return missingValue;
+    }
+
+    public void put(long key, long value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        if ((size + 1) * 2 > mask + 1) {
+            resize();
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            long k = table[slot << 1];
+            if (k == key) {
+                table[(slot << 1) + 1] = value;
+                return;
+            }
+            if (k == EMPTY) {
+                table[(slot << 1) + 1] = value;
+                table[slot << 1] = key;
+                size++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean remove(long key) {
+        int slot = mix(key) & mask;
+        while (true) {
+            long k = table[slot << 1];
+            if (k == EMPTY) {
+                return false;
+            }
+            if (k == key) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table[next << 1] != EMPTY) {
+            int home = mix(table[next << 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole << 1] = table[next << 1];
+                table[(hole << 1) + 1] = table[(next << 1) + 1];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole << 1] = EMPTY;
+        table[(hole << 1) + 1] = 0L;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+
+    private void resize() {
+        long[] old = table;
+        int capacity = (mask + 1) << 1;
+        long[] fresh = new long[capacity * 2];
+        int m = capacity - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            long k = old[i];
+            if (k == EMPTY) {
+                continue;
+            }
+            int slot = mix(k) & m;
+            while (fresh[slot << 1] != EMPTY) {
+                slot = (slot + 1) & m;
+            }
+            fresh[slot << 1] = k;
+            fresh[(slot << 1) + 1] = old[i + 1];
+        }
+        this.mask = m;
+        this.table = fresh;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
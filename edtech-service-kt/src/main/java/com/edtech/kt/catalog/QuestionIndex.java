@@ -0,0 +1,403 @@
+package com.edtech.kt.catalog;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.edtech.model.entity.Question;
+import com.edtech.model.mapper.QuestionMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+
+/**
+ * 题目按知识点、难度组织的进程内索引
+ * <p>
+ * 选题热路径只需要题目 ID，不需要整张题目表:
+ * <ul>
+ *     <li>每个知识点: 按难度升序排列的 long[] 题目 ID + double[] 难度，写时复制。
+ *     随机抽取 O(1)，按难度区间抽取为两次二分查找 + O(1)</li>
+ *     <li>全部题目: 只追加的 long[]，供探索策略 O(1) 抽取</li>
+ * </ul>
+ * 新增题目时通过 {@link #register(Question)} 增量登记 (AI 出题、后台录入、导入)。
+ * 启动预加载失败时按知识点懒加载。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class QuestionIndex {
+
+    /** 没有可选的题目 */
+    public static final long NO_QUESTION = -1L;
+
+    /** 题目未设置难度时按中等难度处理 */
+    public static final double DEFAULT_DIFFICULTY = 0.5;
+
+    /** 不排除任何题目 */
+    public static final LongPredicate NONE = id -> false;
+
+    /** 带排除条件抽样时的随机探测次数 */
+    private static final int RANDOM_PROBES = 4;
+
+    private final QuestionMapper questionMapper;
+    private final KnowledgeCatalog knowledgeCatalog;
+
+    private final Object writeLock = new Object();
+    private final ConcurrentHashMap<Long, Bucket> byKnowledgePoint = new ConcurrentHashMap<>();
+    private volatile IdArray all = IdArray.EMPTY;
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void load() {
+        try {
+            reload();
+            log.info("Question index loaded: {} questions over {} knowledge points",
+                    questionCount(), byKnowledgePoint.size());
+        } catch (Exception e) {
+            log.warn("Failed to preload question index, will load per knowledge point: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库全量重建索引
+     */
+    public void reload() {
+        List<Map<String, Object>> rows = questionMapper.selectMaps(
+                new QueryWrapper<Question>().select("id", "knowledge_point_id", "difficulty"));
+        long[] ids = new long[rows.size()];
+        Map<Long, Bucket> buckets = new HashMap<>();
+        Map<Long, long[]> kpIds = new HashMap<>();
+        Map<Long, double[]> kpDifficulties = new HashMap<>();
+        Map<Long, Integer> kpSizes = new HashMap<>();
+        int n = 0;
+        for (Map<String, Object> row : rows) {
+            Object id = row.get("id");
+            if (id == null) {
+                continue;
+            }
+            ids[n++] = ((Number) id).longValue();
+            Object kpId = row.get("knowledge_point_id");
+            if (kpId == null) {
+                continue;
+            }
+            Long kp = ((Number) kpId).longValue();
+            int size = kpSizes.getOrDefault(kp, 0);
+            long[] kIds = kpIds.computeIfAbsent(kp, k -> new long[8]);
+            double[] kDiffs = kpDifficulties.computeIfAbsent(kp, k -> new double[8]);
+            if (size == kIds.length) {
+                kIds = Arrays.copyOf(kIds, size * 2);
+                kDiffs = Arrays.copyOf(kDiffs, size * 2);
+                kpIds.put(kp, kIds);
+                kpDifficulties.put(kp, kDiffs);
+            }
+            kIds[size] = ((Number) id).longValue();
+            kDiffs[size] = toDifficulty(row.get("difficulty"));
+            kpSizes.put(kp, size + 1);
+        }
+        kpSizes.forEach((kp, size) -> buckets.put(kp, Bucket.sorted(kpIds.get(kp), kpDifficulties.get(kp), size)));
+
+        synchronized (writeLock) {
+            byKnowledgePoint.clear();
+            byKnowledgePoint.putAll(buckets);
+            all = new IdArray(ids, n);
+            loaded = true;
+        }
+    }
+
+    /**
+     * 知识点下随机一道题
+     *
+     * @return 题目 ID，没有题目时返回 {@link #NO_QUESTION}
+     */
+    public long sample(long kpId) {
+        Bucket bucket = bucket(kpId);
+        if (bucket.ids.length == 0) {
+            return NO_QUESTION;
+        }
+        return bucket.ids[ThreadLocalRandom.current().nextInt(bucket.ids.length)];
+    }
+
+    /**
+     * 知识点下难度落在 [minDifficulty, maxDifficulty] 内的随机一道题
+     *
+     * @return 题目 ID，区间内没有题目时返回 {@link #NO_QUESTION}
+     */
+    public long sample(long kpId, double minDifficulty, double maxDifficulty) {
+        return sample(kpId, minDifficulty, maxDifficulty, NONE);
+    }
+
+    /**
+     * 知识点下难度落在 [minDifficulty, maxDifficulty] 内、且不被排除的随机一道题
+     * 先随机探测几次，区间内大多已被排除时再从随机位置顺序扫描
+     *
+     * @param excluded 需要排除的题目 (例如近期做过的)
+     * @return 题目 ID，区间内没有可选题目时返回 {@link #NO_QUESTION}
+     */
+    public long sample(long kpId, double minDifficulty, double maxDifficulty, LongPredicate excluded) {
+        Bucket bucket = bucket(kpId);
+        int from = bucket.lowerBound(minDifficulty);
+        int span = bucket.upperBound(maxDifficulty) - from;
+        if (span <= 0) {
+            return NO_QUESTION;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int probe = 0; probe < Math.min(span, RANDOM_PROBES); probe++) {
+            long id = bucket.ids[from + random.nextInt(span)];
+            if (!excluded.test(id)) {
+                return id;
+            }
+        }
+        int offset = random.nextInt(span);
+        for (int i = 0; i < span; i++) {
+            long id = bucket.ids[from + (offset + i) % span];
+            if (!excluded.test(id)) {
+                return id;
+            }
+        }
+        return NO_QUESTION;
+    }
+
+    /**
+     * 知识点下难度最接近 difficulty 的一道题 (二分查找)
+     *
+     * @return 题目 ID，知识点下没有题目时返回 {@link #NO_QUESTION}
+     */
+    public long nearest(long kpId, double difficulty) {
+        return nearest(kpId, difficulty, NONE);
+    }
+
+    /**
+     * 知识点下难度最接近 difficulty、且不被排除的一道题: 二分定位后向两侧扩展
+     *
+     * @return 题目 ID，知识点下没有可选题目时返回 {@link #NO_QUESTION}
+     */
+    public long nearest(long kpId, double difficulty, LongPredicate excluded) {
+        Bucket bucket = bucket(kpId);
+        int n = bucket.ids.length;
+        int hi = bucket.lowerBound(difficulty);
+        int lo = hi - 1;
+        while (lo >= 0 || hi < n) {
+            boolean takeLower = hi >= n
+                    || (lo >= 0 && difficulty - bucket.difficulties[lo] < bucket.difficulties[hi] - difficulty);
+            long id = takeLower ? bucket.ids[lo--] : bucket.ids[hi++];
+            if (!excluded.test(id)) {
+                return id;
+            }
+        }
+        return NO_QUESTION;
+    }
+
+    /**
+     * 全部题目中随机一道 (探索策略)
+     *
+     * @return 题目 ID，题库为空时返回 {@link #NO_QUESTION}
+     */
+    public long sampleAny() {
+        return sampleAny(NONE);
+    }
+
+    /**
+     * 全部题目中随机一道，尽量避开被排除的题目 (只做有限次探测，不扫描全表)
+     *
+     * @return 题目 ID，题库为空时返回 {@link #NO_QUESTION}
+     */
+    public long sampleAny(LongPredicate excluded) {
+        if (!loaded) {
+            load();
+        }
+        IdArray snapshot = all;
+        if (snapshot.size == 0) {
+            return NO_QUESTION;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = snapshot.ids[random.nextInt(snapshot.size)];
+        for (int probe = 1; probe < RANDOM_PROBES && excluded.test(id); probe++) {
+            id = snapshot.ids[random.nextInt(snapshot.size)];
+        }
+        return id;
+    }
+
+    /**
+     * 新增题目后登记 (AI 出题、后台录入、导入)，同时登记知识目录中的题目映射
+     */
+    public void register(Question question) {
+        if (question.getId() == null) {
+            return;
+        }
+        long id = question.getId();
+        synchronized (writeLock) {
+            if (question.getKnowledgePointId() != null) {
+                long kpId = question.getKnowledgePointId();
+                // A cold index loads the rest of the KP first so the new question does not shadow it
+                Bucket bucket = loaded ? byKnowledgePoint.getOrDefault(kpId, Bucket.EMPTY) : bucket(kpId);
+                if (bucket.contains(id)) {
+                    return;
+                }
+                byKnowledgePoint.put(kpId, bucket.with(id, toDifficulty(question.getDifficulty())));
+            }
+            all = all.append(id);
+        }
+        if (question.getKnowledgePointId() != null) {
+            knowledgeCatalog.registerQuestion(id, question.getKnowledgePointId());
+        }
+    }
+
+    public int size(long kpId) {
+        return bucket(kpId).ids.length;
+    }
+
+    public int questionCount() {
+        return all.size;
+    }
+
+    private Bucket bucket(long kpId) {
+        Bucket bucket = byKnowledgePoint.get(kpId);
+        if (bucket != null) {
+            return bucket;
+        }
+        return loaded ? Bucket.EMPTY : loadKnowledgePoint(kpId);
+    }
+
+    private Bucket loadKnowledgePoint(long kpId) {
+        List<Map<String, Object>> rows = questionMapper.selectMaps(new QueryWrapper<Question>()
+                .select("id", "difficulty").eq("knowledge_point_id", kpId));
+        long[] ids = new long[rows.size()];
+        double[] difficulties = new double[rows.size()];
+        int n = 0;
+        for (Map<String, Object> row : rows) {
+            Object id = row.get("id");
+            if (id != null) {
+                ids[n] = ((Number) id).longValue();
+                difficulties[n] = toDifficulty(row.get("difficulty"));
+                n++;
+            }
+        }
+        Bucket bucket = Bucket.sorted(ids, difficulties, n);
+        // Cached even when empty so a cold index does not query per request
+        Bucket existing = byKnowledgePoint.putIfAbsent(kpId, bucket);
+        return existing != null ? existing : bucket;
+    }
+
+    private static double toDifficulty(Object value) {
+        return value instanceof Number number ? number.doubleValue() : DEFAULT_DIFFICULTY;
+    }
+
+    /**
+     * 单个知识点的题目: 按难度 (再按 ID) 升序，不可变
+     */
+    private static final class Bucket {
+
+        static final Bucket EMPTY = new Bucket(new long[0], new double[0]);
+
+        final long[] ids;
+        final double[] difficulties;
+
+        Bucket(long[] ids, double[] difficulties) {
+            this.ids = ids;
+            this.difficulties = difficulties;
+        }
+
+        static Bucket sorted(long[] ids, double[] difficulties, int size) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int c = Double.compare(difficulties[a], difficulties[b]);
+                return c != 0 ? c : Long.compare(ids[a], ids[b]);
+            });
+            long[] sortedIds = new long[size];
+            double[] sortedDifficulties = new double[size];
+            for (int i = 0; i < size; i++) {
+                sortedIds[i] = ids[order[i]];
+                sortedDifficulties[i] = difficulties[order[i]];
+            }
+            return new Bucket(sortedIds, sortedDifficulties);
+        }
+
+        /**
+         * 第一个难度 >= d 的下标
+         */
+        int lowerBound(double d) {
+            int lo = 0;
+            int hi = difficulties.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (difficulties[mid] < d) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 第一个难度 > d 的下标
+         */
+        int upperBound(double d) {
+            int lo = 0;
+            int hi = difficulties.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (difficulties[mid] <= d) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        boolean contains(long id) {
+            for (long existing : ids) {
+                if (existing == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Bucket with(long id, double difficulty) {
+            int at = upperBound(difficulty);
+            int size = ids.length;
+            long[] newIds = new long[size + 1];
+            double[] newDifficulties = new double[size + 1];
+            System.arraycopy(ids, 0, newIds, 0, at);
+            System.arraycopy(ids, at, newIds, at + 1, size - at);
+            System.arraycopy(difficulties, 0, newDifficulties, 0, at);
+            System.arraycopy(difficulties, at, newDifficulties, at + 1, size - at);
+            newIds[at] = id;
+            newDifficulties[at] = difficulty;
+            return new Bucket(newIds, newDifficulties);
+        }
+    }
+
+    /**
+     * 只追加的 ID 数组快照: 追加写入空闲容量后发布新的 size，旧快照的读者只读到自己的 size 为止
+     */
+    private static final class IdArray {
+
+        static final IdArray EMPTY = new IdArray(new long[0], 0);
+
+        final long[] ids;
+        final int size;
+
+        IdArray(long[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        IdArray append(long id) {
+            long[] target = size < ids.length ? ids : Arrays.copyOf(ids, Math.max(16, ids.length * 2));
+            target[size] = id;
+            return new IdArray(target, size + 1);
+        }
+    }
+}
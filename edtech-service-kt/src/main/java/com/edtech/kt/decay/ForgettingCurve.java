@@ -0,0 +1,49 @@
+package com.edtech.kt.decay;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 遗忘曲线: 掌握度随距上次练习的时间按半衰期指数回落到下限
+ * <p>
+ * p(t) = floor + (p0 - floor) * 2^(-t / halfLife)，低于下限的值不变。
+ * 存储中始终保存最后一次观测到的掌握度及其时间，衰减只在读取时计算 (惰性)，
+ * 不需要按天批量改写所有行；下一次作答以衰减后的值作为 BKT 先验 (见 lua/bkt_step.lua)。
+ */
+@Component
+@Getter
+public class ForgettingCurve {
+
+    private final boolean enabled;
+    private final long halfLifeSeconds;
+    private final double floor;
+
+    public ForgettingCurve(@Value("${kt.decay.enabled:false}") boolean enabled,
+                           @Value("${kt.decay.half-life-days:30}") double halfLifeDays,
+                           @Value("${kt.decay.floor:0.1}") double floor) {
+        this.enabled = enabled;
+        this.halfLifeSeconds = (long) (halfLifeDays * 86_400);
+        this.floor = floor;
+    }
+
+    /**
+     * @param probability  最后一次观测到的掌握度
+     * @param updatedAt    观测时间 (epoch 秒)，不大于 0 表示未知，不衰减
+     * @param now          当前时间 (epoch 秒)
+     */
+    public double decay(double probability, long updatedAt, long now) {
+        if (!enabled || halfLifeSeconds <= 0 || updatedAt <= 0 || now <= updatedAt || probability <= floor) {
+            return probability;
+        }
+        double elapsedHalfLives = (double) (now - updatedAt) / halfLifeSeconds;
+        return floor + (probability - floor) * Math.pow(0.5, elapsedHalfLives);
+    }
+
+    /**
+     * 传给 Lua 脚本的半衰期，0 表示不衰减
+     */
+    public long scriptHalfLifeSeconds() {
+        return enabled ? halfLifeSeconds : 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.edtech.kt.fitting;
+
+import com.edtech.kt.model.BktParams;
+
+/**
+ * BKT 参数的 EM (Baum-Welch) 估计
+ * <p>
+ * 两状态 HMM: 未掌握(0) / 已掌握(1)，不考虑遗忘。
+ * 同一知识点的全部答题序列以原始数组传入:
+ * outcomes[starts[s] .. starts[s+1]) 为第 s 个学生按时间排序的作答 (1 对 / 0 错)。
+ * 前向-后向均做缩放，避免长序列下溢。
+ */
+public final class BktEm {
+
+    private static final double MIN_P = 0.0001;
+    private static final double MAX_P = 0.9999;
+    // Guess / slip above 0.3 makes the model degenerate (mastery no longer predicts correctness)
+    private static final double MAX_GUESS = 0.3;
+    private static final double MAX_SLIP = 0.3;
+
+    private BktEm() {
+    }
+
+    /**
+     * @param outcomes      所有序列拼接后的作答结果
+     * @param starts        序列起始下标，长度为序列数 + 1
+     * @param sequenceCount 序列数
+     * @param initial       初始参数
+     * @param maxIterations 最大迭代次数
+     * @param tolerance     对数似然收敛阈值
+     */
+    public static Result fit(byte[] outcomes, int[] starts, int sequenceCount, BktParams initial,
+                             int maxIterations, double tolerance) {
+        int maxLen = 0;
+        for (int s = 0; s < sequenceCount; s++) {
+            maxLen = Math.max(maxLen, starts[s + 1] - starts[s]);
+        }
+        double[] a0 = new double[maxLen];
+        double[] a1 = new double[maxLen];
+        double[] b0 = new double[maxLen];
+        double[] b1 = new double[maxLen];
+        double[] scale = new double[maxLen];
+
+        double l0 = initial.pInit();
+        double t = initial.pTransit();
+        double g = Math.min(initial.pGuess(), MAX_GUESS);
+        double sl = Math.min(initial.pSlip(), MAX_SLIP);
+
+        double prevLogLik = Double.NEGATIVE_INFINITY;
+        double logLik = prevLogLik;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            iteration++;
+            double sumInitMastered = 0;
+            double sumLearn = 0;
+            double sumUnmasteredBeforeLast = 0;
+            double sumCorrectWhenUnmastered = 0;
+            double sumUnmastered = 0;
+            double sumWrongWhenMastered = 0;
+            double sumMastered = 0;
+            logLik = 0;
+
+            for (int s = 0; s < sequenceCount; s++) {
+                int from = starts[s];
+                int len = starts[s + 1] - from;
+                if (len == 0) {
+                    continue;
+                }
+
+                // Forward (scaled)
+                for (int i = 0; i < len; i++) {
+                    boolean correct = outcomes[from + i] == 1;
+                    double e0 = correct ? g : 1 - g;
+                    double e1 = correct ? 1 - sl : sl;
+                    double p0;
+                    double p1;
+                    if (i == 0) {
+                        p0 = (1 - l0) * e0;
+                        p1 = l0 * e1;
+                    } else {
+                        p0 = a0[i - 1] * (1 - t) * e0;
+                        p1 = (a0[i - 1] * t + a1[i - 1]) * e1;
+                    }
+                    double c = p0 + p1;
+                    if (c <= 0) {
+                        c = Double.MIN_NORMAL;
+                    }
+                    scale[i] = c;
+                    a0[i] = p0 / c;
+                    a1[i] = p1 / c;
+                    logLik += Math.log(c);
+                }
+
+                // Backward (scaled with the forward constants)
+                b0[len - 1] = 1;
+                b1[len - 1] = 1;
+                for (int i = len - 2; i >= 0; i--) {
+                    boolean correct = outcomes[from + i + 1] == 1;
+                    double e0 = correct ? g : 1 - g;
+                    double e1 = correct ? 1 - sl : sl;
+                    double c = scale[i + 1];
+                    b0[i] = ((1 - t) * e0 * b0[i + 1] + t * e1 * b1[i + 1]) / c;
+                    b1[i] = (e1 * b1[i + 1]) / c;
+                }
+
+                // Expected sufficient statistics
+                for (int i = 0; i < len; i++) {
+                    double gamma0 = a0[i] * b0[i];
+                    double gamma1 = a1[i] * b1[i];
+                    double norm = gamma0 + gamma1;
+                    if (norm > 0) {
+                        gamma0 /= norm;
+                        gamma1 /= norm;
+                    }
+                    boolean correct = outcomes[from + i] == 1;
+                    if (i == 0) {
+                        sumInitMastered += gamma1;
+                    }
+                    sumUnmastered += gamma0;
+                    sumMastered += gamma1;
+                    if (correct) {
+                        sumCorrectWhenUnmastered += gamma0;
+                    } else {
+                        sumWrongWhenMastered += gamma1;
+                    }
+                    if (i < len - 1) {
+                        boolean nextCorrect = outcomes[from + i + 1] == 1;
+                        double e1 = nextCorrect ? 1 - sl : sl;
+                        sumLearn += a0[i] * t * e1 * b1[i + 1] / scale[i + 1];
+                        sumUnmasteredBeforeLast += gamma0;
+                    }
+                }
+            }
+
+            // M-step
+            l0 = clamp(sumInitMastered / sequenceCount, MAX_P);
+            t = sumUnmasteredBeforeLast > 0 ? clamp(sumLearn / sumUnmasteredBeforeLast, MAX_P) : t;
+            g = sumUnmastered > 0 ? clamp(sumCorrectWhenUnmastered / sumUnmastered, MAX_GUESS) : g;
+            sl = sumMastered > 0 ? clamp(sumWrongWhenMastered / sumMastered, MAX_SLIP) : sl;
+
+            if (Math.abs(logLik - prevLogLik) < tolerance) {
+                break;
+            }
+            prevLogLik = logLik;
+        }
+        return new Result(new BktParams(l0, t, g, sl), logLik, iteration);
+    }
+
+    private static double clamp(double v, double max) {
+        return Math.max(MIN_P, Math.min(max, v));
+    }
+
+    /**
+     * @param params        拟合后的参数
+     * @param logLikelihood 最后一轮 E 步的对数似然
+     * @param iterations    实际迭代次数
+     */
+    public record Result(BktParams params, double logLikelihood, int iterations) {
+    }
+}
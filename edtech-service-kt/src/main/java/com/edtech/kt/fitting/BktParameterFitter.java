@@ -0,0 +1,213 @@
+package com.edtech.kt.fitting;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.BktParams;
+import com.edtech.model.dto.AnswerTrace;
+import com.edtech.model.entity.KnowledgePoint;
+import com.edtech.model.mapper.KnowledgePointMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * BKT 参数离线拟合任务
+ * <p>
+ * 按 (知识点, 学生, 时间) 顺序游标读取 student_exercise_log ⋈ question，
+ * 每个知识点的作答序列收集到原始数组后提交到 ForkJoin 池并行跑 EM。
+ * 同时在内存中的知识点数受信号量限制，因此内存与日志总行数无关。
+ * 拟合结果写回 knowledge_point 并刷新 {@link KnowledgeCatalog}。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BktParameterFitter {
+
+    private final StudentExerciseLogMapper exerciseLogMapper;
+    private final KnowledgePointMapper knowledgePointMapper;
+    private final KnowledgeCatalog knowledgeCatalog;
+
+    @Value("${kt.fitting.min-answers:200}")
+    private int minAnswers;
+
+    @Value("${kt.fitting.max-iterations:100}")
+    private int maxIterations;
+
+    @Value("${kt.fitting.tolerance:0.0001}")
+    private double tolerance;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile FitReport lastReport;
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public FitReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * 拟合全部知识点的 BKT 参数并写回
+     *
+     * @return 本次拟合报告；已有任务在运行时返回 null
+     */
+    public FitReport fitAll() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("BKT parameter fitting already running");
+            return null;
+        }
+        long startedAt = System.currentTimeMillis();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        // Bounds the number of KP sequence buffers alive at once (being filled + queued + fitting)
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        Map<Long, BktEm.Result> results = new ConcurrentHashMap<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        long[] rows = {0};
+        try {
+            SequenceBuffer[] current = {null};
+            exerciseLogMapper.streamTracesByKnowledgePoint(context -> {
+                AnswerTrace trace = context.getResultObject();
+                if (trace.getKnowledgePointId() == null || trace.getStudentId() == null) {
+                    return;
+                }
+                rows[0]++;
+                SequenceBuffer buffer = current[0];
+                if (buffer == null || buffer.kpId != trace.getKnowledgePointId()) {
+                    if (buffer != null) {
+                        tasks.add(submit(pool, inFlight, buffer, results));
+                    }
+                    acquire(inFlight);
+                    buffer = new SequenceBuffer(trace.getKnowledgePointId());
+                    current[0] = buffer;
+                }
+                buffer.append(trace.getStudentId(), trace.getResult() != null && trace.getResult() == 1);
+            });
+            if (current[0] != null) {
+                tasks.add(submit(pool, inFlight, current[0], results));
+            }
+            tasks.forEach(ForkJoinTask::join);
+
+            // Still holding the flag: a second run must not interleave its write-back with this one
+            results.forEach(this::writeBack);
+
+            FitReport report = new FitReport(rows[0], tasks.size(), results.size(),
+                    System.currentTimeMillis() - startedAt);
+            lastReport = report;
+            log.info("BKT parameter fitting finished: {}", report);
+            return report;
+        } finally {
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    private ForkJoinTask<?> submit(ForkJoinPool pool, Semaphore inFlight, SequenceBuffer buffer,
+                                   Map<Long, BktEm.Result> results) {
+        return pool.submit(() -> {
+            try {
+                if (buffer.size < minAnswers) {
+                    log.debug("Skip KP {}: only {} answers", buffer.kpId, buffer.size);
+                    return;
+                }
+                buffer.seal();
+                BktEm.Result result = BktEm.fit(buffer.outcomes, buffer.starts, buffer.sequenceCount,
+                        knowledgeCatalog.getParams(buffer.kpId), maxIterations, tolerance);
+                results.put(buffer.kpId, result);
+                log.info("Fitted KP {} from {} answers / {} students in {} iterations: {}",
+                        buffer.kpId, buffer.size, buffer.sequenceCount, result.iterations(), result.params());
+            } catch (Exception e) {
+                log.error("Failed to fit KP {}", buffer.kpId, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void writeBack(Long kpId, BktEm.Result result) {
+        BktParams p = result.params();
+        KnowledgePoint kp = new KnowledgePoint();
+        kp.setId(kpId);
+        // knowledge_point stores DECIMAL(5,4)
+        kp.setPInit(round(p.pInit()));
+        kp.setPTransit(round(p.pTransit()));
+        kp.setPGuess(round(p.pGuess()));
+        kp.setPSlip(round(p.pSlip()));
+        knowledgePointMapper.updateById(kp);
+        knowledgeCatalog.refreshKnowledgePoint(kpId);
+    }
+
+    private static double round(double v) {
+        return BigDecimal.valueOf(v).setScale(4, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            if (!semaphore.tryAcquire(1, TimeUnit.HOURS)) {
+                throw new IllegalStateException("Timed out waiting for a fitting slot");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while streaming exercise log", e);
+        }
+    }
+
+    /**
+     * 单个知识点的作答序列，按学生切分，原始数组按需扩容
+     */
+    private static final class SequenceBuffer {
+
+        final long kpId;
+        byte[] outcomes = new byte[1024];
+        int[] starts = new int[64];
+        int size;
+        int sequenceCount;
+        long lastStudentId = Long.MIN_VALUE;
+
+        SequenceBuffer(long kpId) {
+            this.kpId = kpId;
+        }
+
+        void append(long studentId, boolean correct) {
+            if (studentId != lastStudentId) {
+                if (sequenceCount + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[sequenceCount++] = size;
+                lastStudentId = studentId;
+            }
+            if (size == outcomes.length) {
+                outcomes = Arrays.copyOf(outcomes, outcomes.length * 2);
+            }
+            outcomes[size++] = (byte) (correct ? 1 : 0);
+        }
+
+        void seal() {
+            starts[sequenceCount] = size;
+        }
+    }
+
+    /**
+     * @param rows          读取的日志行数
+     * @param knowledgePoints 出现在日志中的知识点数
+     * @param fitted        成功拟合并写回的知识点数
+     * @param elapsedMs     总耗时
+     */
+    public record FitReport(long rows, int knowledgePoints, int fitted, long elapsedMs) {
+    }
+}
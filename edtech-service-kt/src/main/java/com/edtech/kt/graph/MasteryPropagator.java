@@ -0,0 +1,71 @@
+package com.edtech.kt.graph;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.Propagation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 沿前置关系图的掌握度传播 (可选)
+ * <p>
+ * 答对进阶知识点是其前置知识点已掌握的证据: 前置知识点按深度衰减的权重上调；
+ * 答错则说明后续知识点的先验偏高: 后续知识点按同样方式下调。
+ * 学生尚无状态的知识点以目录中的 P(L0) 为先验再推动，否则从未作答的后续知识点永远得不到下调。
+ * 这里只在内存图上计算受影响的知识点、权重和先验，实际的更新与 BKT 步骤在同一次 Lua 调用中原子执行，
+ * 每次提交不增加任何查询或 Redis 往返。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MasteryPropagator {
+
+    private final PrerequisiteGraph prerequisiteGraph;
+    private final KnowledgeCatalog knowledgeCatalog;
+
+    @Value("${kt.propagation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${kt.propagation.max-depth:2}")
+    private int maxDepth;
+
+    @Value("${kt.propagation.max-nodes:32}")
+    private int maxNodes;
+
+    @Value("${kt.propagation.prerequisite-weight:0.05}")
+    private double prerequisiteWeight;
+
+    @Value("${kt.propagation.dependent-weight:0.05}")
+    private double dependentWeight;
+
+    @Value("${kt.propagation.depth-decay:0.5}")
+    private double depthDecay;
+
+    /**
+     * 计算一次作答需要传播到的知识点及权重
+     *
+     * @return 未开启或没有相关知识点时返回 {@link Propagation#NONE}
+     */
+    public Propagation propagate(long kpId, boolean correct) {
+        if (!enabled) {
+            return Propagation.NONE;
+        }
+        PrerequisiteGraph.Reach reach = prerequisiteGraph.reach(kpId, correct, maxDepth, maxNodes);
+        if (reach.size() == 0) {
+            return Propagation.NONE;
+        }
+        double base = correct ? prerequisiteWeight : -dependentWeight;
+        double[] weights = new double[reach.size()];
+        double[] priors = new double[reach.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = base * Math.pow(depthDecay, reach.depths()[i] - 1);
+            priors[i] = knowledgeCatalog.getParams(reach.kpIds()[i]).pInit();
+        }
+        return new Propagation(reach.kpIds(), weights, priors);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
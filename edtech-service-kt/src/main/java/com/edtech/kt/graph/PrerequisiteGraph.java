@@ -0,0 +1,388 @@
+package com.edtech.kt.graph;
+
+import com.edtech.model.entity.KnowledgePrerequisite;
+import com.edtech.model.mapper.KnowledgePrerequisiteMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+/**
+ * 知识点前置关系图 (knowledge_prerequisite) 的进程内 CSR 表示
+ * <p>
+ * 同时保存两个方向的邻接: 知识点 -> 前置知识点 (up)、知识点 -> 后续知识点 (down)，
+ * 均为 offsets + targets 的原始 int 数组，按知识点 ID 排序后二分定位，遍历时不产生装箱。
+ * 邻接表以写时复制的不可变快照发布。启动时从数据库整体编译一次；
+ * 管理后台编辑某个知识点的前置关系时只在旧快照上修补受影响的行 (该知识点的 up 行与增删前置知识点的 down 行)，
+ * 其余行原样复制，不查询数据库、不重新分组排序。删除知识点后它作为孤立节点留在快照中，直到下次整体加载。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PrerequisiteGraph {
+
+    private static final long[] NO_EDGES = new long[0];
+
+    private final KnowledgePrerequisiteMapper knowledgePrerequisiteMapper;
+
+    private final Object writeLock = new Object();
+    private volatile Csr csr = Csr.EMPTY;
+
+    @PostConstruct
+    public void load() {
+        try {
+            List<KnowledgePrerequisite> relations = knowledgePrerequisiteMapper.selectList(null);
+            Map<Long, long[]> grouped = new HashMap<>();
+            for (KnowledgePrerequisite rel : relations) {
+                if (rel.getKnowledgePointId() == null || rel.getPrereqPointId() == null) {
+                    continue;
+                }
+                grouped.merge(rel.getKnowledgePointId(), new long[]{rel.getPrereqPointId()}, PrerequisiteGraph::concat);
+            }
+            grouped.replaceAll((kpId, prereqs) -> distinct(prereqs, kpId));
+            synchronized (writeLock) {
+                csr = Csr.compile(grouped);
+            }
+            log.info("Prerequisite graph loaded: {} knowledge points, {} edges", csr.ids.length, csr.upTargets.length);
+        } catch (Exception e) {
+            log.warn("Failed to load prerequisite graph, propagation disabled until next edit: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 替换某个知识点的前置知识点 (管理后台保存知识点后调用)
+     */
+    public void replacePrerequisites(Long kpId, Collection<Long> prereqIds) {
+        if (kpId == null) {
+            return;
+        }
+        long[] prereqs = prereqIds == null ? NO_EDGES
+                : distinct(prereqIds.stream().filter(id -> id != null).mapToLong(Long::longValue).toArray(), kpId);
+        synchronized (writeLock) {
+            csr = csr.patch(Map.of(kpId, prereqs));
+        }
+    }
+
+    /**
+     * 删除知识点及其所有入边、出边
+     */
+    public void removeKnowledgePoint(Long kpId) {
+        if (kpId == null) {
+            return;
+        }
+        long id = kpId;
+        synchronized (writeLock) {
+            Csr graph = csr;
+            int node = Arrays.binarySearch(graph.ids, id);
+            if (node < 0) {
+                return;
+            }
+            // Clear the KP's own row and drop it from every dependent's prerequisites
+            Map<Long, long[]> replacements = new HashMap<>();
+            replacements.put(kpId, NO_EDGES);
+            for (int e = graph.downOffsets[node]; e < graph.downOffsets[node + 1]; e++) {
+                int dependent = graph.downTargets[e];
+                replacements.put(graph.ids[dependent],
+                        Arrays.stream(graph.prerequisites(dependent)).filter(p -> p != id).toArray());
+            }
+            csr = graph.patch(replacements);
+        }
+    }
+
+    /**
+     * 有界深度的广度优先遍历
+     *
+     * @param kpId          起点知识点 (不包含在结果中)
+     * @param prerequisites true 沿前置方向向上，false 沿后续方向向下
+     * @param maxDepth      最大深度
+     * @param maxNodes      最多返回的知识点数
+     */
+    public Reach reach(long kpId, boolean prerequisites, int maxDepth, int maxNodes) {
+        Csr graph = csr;
+        int origin = Arrays.binarySearch(graph.ids, kpId);
+        if (origin < 0 || maxDepth <= 0 || maxNodes <= 0) {
+            return Reach.EMPTY;
+        }
+        int[] offsets = prerequisites ? graph.upOffsets : graph.downOffsets;
+        int[] targets = prerequisites ? graph.upTargets : graph.downTargets;
+        if (offsets[origin] == offsets[origin + 1]) {
+            return Reach.EMPTY;
+        }
+
+        // Frontier queue doubles as the visited list; reachable sets are small so a linear scan beats hashing
+        int[] queue = new int[Math.min(maxNodes + 1, graph.ids.length)];
+        int[] depth = new int[queue.length];
+        queue[0] = origin;
+        int head = 0;
+        int tail = 1;
+        while (head < tail && tail < queue.length) {
+            int node = queue[head];
+            int d = depth[head++];
+            if (d == maxDepth) {
+                continue;
+            }
+            for (int e = offsets[node]; e < offsets[node + 1] && tail < queue.length; e++) {
+                int next = targets[e];
+                if (!contains(queue, tail, next)) {
+                    queue[tail] = next;
+                    depth[tail++] = d + 1;
+                }
+            }
+        }
+
+        long[] kpIds = new long[tail - 1];
+        int[] depths = new int[tail - 1];
+        for (int i = 1; i < tail; i++) {
+            kpIds[i - 1] = graph.ids[queue[i]];
+            depths[i - 1] = depth[i];
+        }
+        return new Reach(kpIds, depths);
+    }
+
+    public int nodeCount() {
+        return csr.ids.length;
+    }
+
+    public int edgeCount() {
+        return csr.upTargets.length;
+    }
+
+    private static boolean contains(int[] values, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        return merged;
+    }
+
+    private static long[] distinct(long[] ids, long self) {
+        return Arrays.stream(ids).filter(id -> id != self).sorted().distinct().toArray();
+    }
+
+    /**
+     * 遍历结果: 知识点及其与起点的距离 (按 BFS 顺序)
+     */
+    public record Reach(long[] kpIds, int[] depths) {
+
+        public static final Reach EMPTY = new Reach(new long[0], new int[0]);
+
+        public int size() {
+            return kpIds.length;
+        }
+    }
+
+    /**
+     * 不可变的双向 CSR 快照
+     */
+    private static final class Csr {
+
+        static final Csr EMPTY = new Csr(new long[0], new int[1], new int[0], new int[1], new int[0]);
+
+        final long[] ids;
+        final int[] upOffsets;
+        final int[] upTargets;
+        final int[] downOffsets;
+        final int[] downTargets;
+
+        private Csr(long[] ids, int[] upOffsets, int[] upTargets, int[] downOffsets, int[] downTargets) {
+            this.ids = ids;
+            this.upOffsets = upOffsets;
+            this.upTargets = upTargets;
+            this.downOffsets = downOffsets;
+            this.downTargets = downTargets;
+        }
+
+        static Csr compile(Map<Long, long[]> prerequisitesByKp) {
+            if (prerequisitesByKp.isEmpty()) {
+                return EMPTY;
+            }
+            int edges = 0;
+            long[] all = new long[16];
+            int n = 0;
+            for (Map.Entry<Long, long[]> entry : prerequisitesByKp.entrySet()) {
+                long[] prereqs = entry.getValue();
+                edges += prereqs.length;
+                if (n + prereqs.length + 1 > all.length) {
+                    all = Arrays.copyOf(all, Math.max(all.length * 2, n + prereqs.length + 1));
+                }
+                all[n++] = entry.getKey();
+                System.arraycopy(prereqs, 0, all, n, prereqs.length);
+                n += prereqs.length;
+            }
+            long[] ids = Arrays.stream(all, 0, n).sorted().distinct().toArray();
+
+            int[] upOffsets = new int[ids.length + 1];
+            int[] downOffsets = new int[ids.length + 1];
+            for (Map.Entry<Long, long[]> entry : prerequisitesByKp.entrySet()) {
+                upOffsets[Arrays.binarySearch(ids, entry.getKey()) + 1] += entry.getValue().length;
+                for (long prereq : entry.getValue()) {
+                    downOffsets[Arrays.binarySearch(ids, prereq) + 1]++;
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                upOffsets[i + 1] += upOffsets[i];
+                downOffsets[i + 1] += downOffsets[i];
+            }
+
+            int[] upTargets = new int[edges];
+            int[] downTargets = new int[edges];
+            int[] upFill = Arrays.copyOf(upOffsets, ids.length);
+            int[] downFill = Arrays.copyOf(downOffsets, ids.length);
+            for (Map.Entry<Long, long[]> entry : prerequisitesByKp.entrySet()) {
+                int kp = Arrays.binarySearch(ids, entry.getKey());
+                for (long prereq : entry.getValue()) {
+                    int p = Arrays.binarySearch(ids, prereq);
+                    upTargets[upFill[kp]++] = p;
+                    downTargets[downFill[p]++] = kp;
+                }
+            }
+            return new Csr(ids, upOffsets, upTargets, downOffsets, downTargets);
+        }
+
+        /**
+         * 前置知识点 ID (按下标)
+         */
+        long[] prerequisites(int node) {
+            long[] prereqs = new long[upOffsets[node + 1] - upOffsets[node]];
+            for (int e = upOffsets[node], i = 0; e < upOffsets[node + 1]; e++, i++) {
+                prereqs[i] = ids[upTargets[e]];
+            }
+            return prereqs;
+        }
+
+        /**
+         * 替换若干知识点的前置边，返回新快照 (本快照不变)
+         * <p>
+         * 只重写被替换知识点的 up 行和增删了边的前置知识点的 down 行，其余行按原样复制；
+         * 出现新知识点时归并插入 ID 并平移旧下标，不重新分组排序。
+         *
+         * @param replacements 知识点 -> 新的前置知识点 (已排序去重，不含自身)
+         */
+        Csr patch(Map<Long, long[]> replacements) {
+            // 1. Node set: merge in endpoints that are not in the snapshot yet
+            long[] added = replacements.entrySet().stream()
+                    .flatMapToLong(e -> LongStream.concat(LongStream.of(e.getKey()), Arrays.stream(e.getValue())))
+                    .filter(id -> Arrays.binarySearch(ids, id) < 0)
+                    .sorted().distinct().toArray();
+            long[] newIds = ids;
+            int[] oldOf = null;
+            if (added.length > 0) {
+                newIds = new long[ids.length + added.length];
+                oldOf = new int[newIds.length];
+                for (int i = 0, j = 0, k = 0; k < newIds.length; k++) {
+                    if (j == added.length || (i < ids.length && ids[i] < added[j])) {
+                        oldOf[k] = i;
+                        newIds[k] = ids[i++];
+                    } else {
+                        oldOf[k] = -1;
+                        newIds[k] = added[j++];
+                    }
+                }
+            }
+            int n = newIds.length;
+            int[] newOf = new int[ids.length];
+            if (oldOf == null) {
+                for (int i = 0; i < ids.length; i++) {
+                    newOf[i] = i;
+                }
+            } else {
+                for (int k = 0; k < n; k++) {
+                    if (oldOf[k] >= 0) {
+                        newOf[oldOf[k]] = k;
+                    }
+                }
+            }
+
+            // 2. Replaced up rows (new indices) and the down-row deltas they imply
+            Map<Integer, int[]> upRows = new HashMap<>();
+            Map<Integer, Set<Integer>> downRemoved = new HashMap<>();
+            Map<Integer, List<Integer>> downAdded = new HashMap<>();
+            for (Map.Entry<Long, long[]> entry : replacements.entrySet()) {
+                int kp = Arrays.binarySearch(newIds, entry.getKey());
+                int[] row = new int[entry.getValue().length];
+                for (int t = 0; t < row.length; t++) {
+                    row[t] = Arrays.binarySearch(newIds, entry.getValue()[t]);
+                }
+                upRows.put(kp, row);
+                Set<Integer> before = new HashSet<>();
+                int old = Arrays.binarySearch(ids, entry.getKey());
+                if (old >= 0) {
+                    for (int e = upOffsets[old]; e < upOffsets[old + 1]; e++) {
+                        before.add(newOf[upTargets[e]]);
+                    }
+                }
+                Set<Integer> after = new HashSet<>();
+                for (int p : row) {
+                    after.add(p);
+                    if (!before.contains(p)) {
+                        downAdded.computeIfAbsent(p, k -> new ArrayList<>()).add(kp);
+                    }
+                }
+                for (int p : before) {
+                    if (!after.contains(p)) {
+                        downRemoved.computeIfAbsent(p, k -> new HashSet<>()).add(kp);
+                    }
+                }
+            }
+
+            // 3. Copy untouched rows (remapped), splice the changed ones
+            int[] newUpOffsets = new int[n + 1];
+            int[] newDownOffsets = new int[n + 1];
+            for (int k = 0; k < n; k++) {
+                int old = oldOf == null ? k : oldOf[k];
+                int[] row = upRows.get(k);
+                int upLength = row != null ? row.length : old < 0 ? 0 : upOffsets[old + 1] - upOffsets[old];
+                int downLength = old < 0 ? 0 : downOffsets[old + 1] - downOffsets[old];
+                downLength -= downRemoved.getOrDefault(k, Set.of()).size();
+                downLength += downAdded.getOrDefault(k, List.of()).size();
+                newUpOffsets[k + 1] = newUpOffsets[k] + upLength;
+                newDownOffsets[k + 1] = newDownOffsets[k] + downLength;
+            }
+            int[] newUpTargets = new int[newUpOffsets[n]];
+            int[] newDownTargets = new int[newDownOffsets[n]];
+            for (int k = 0; k < n; k++) {
+                int old = oldOf == null ? k : oldOf[k];
+                int[] row = upRows.get(k);
+                int up = newUpOffsets[k];
+                if (row != null) {
+                    System.arraycopy(row, 0, newUpTargets, up, row.length);
+                } else if (old >= 0) {
+                    for (int e = upOffsets[old]; e < upOffsets[old + 1]; e++) {
+                        newUpTargets[up++] = newOf[upTargets[e]];
+                    }
+                }
+                int down = newDownOffsets[k];
+                Set<Integer> removed = downRemoved.getOrDefault(k, Set.of());
+                if (old >= 0) {
+                    for (int e = downOffsets[old]; e < downOffsets[old + 1]; e++) {
+                        int target = newOf[downTargets[e]];
+                        if (!removed.contains(target)) {
+                            newDownTargets[down++] = target;
+                        }
+                    }
+                }
+                for (int target : downAdded.getOrDefault(k, List.of())) {
+                    newDownTargets[down++] = target;
+                }
+            }
+            return new Csr(newIds, newUpOffsets, newUpTargets, newDownOffsets, newDownTargets);
+        }
+    }
+}
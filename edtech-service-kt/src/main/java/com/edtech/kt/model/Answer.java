@@ -0,0 +1,17 @@
+package com.edtech.kt.model;
+
+/**
+ * 一次作答 (知识追踪的输入)
+ *
+ * @param studentId  学生ID
+ * @param questionId 题目ID
+ * @param correct    是否正确
+ * @param answeredAt 作答时间 (epoch 秒)，0 表示当前时间；离线同步的答题按各自的作答时间衰减
+ * @param requestId  答题的请求 ID，同一学生的同一请求 ID 只计入一次；为 null 时不去重
+ */
+public record Answer(Long studentId, Long questionId, boolean correct, long answeredAt, String requestId) {
+
+    public Answer(Long studentId, Long questionId, boolean correct) {
+        this(studentId, questionId, correct, 0L, null);
+    }
+}
@@ -0,0 +1,21 @@
+package com.edtech.kt.model;
+
+/**
+ * BKT 四参数
+ *
+ * @param pInit    初始掌握概率 P(L0)
+ * @param pTransit 学习转移概率 P(T)
+ * @param pGuess   猜对概率 P(G)
+ * @param pSlip    失误概率 P(S)
+ */
+public record BktParams(double pInit, double pTransit, double pGuess, double pSlip) {
+
+    // Default BKT Parameters (Fallback)
+    public static final double DEFAULT_P_INIT = 0.1;
+    public static final double DEFAULT_P_TRANSIT = 0.1;
+    public static final double DEFAULT_P_GUESS = 0.2;
+    public static final double DEFAULT_P_SLIP = 0.1;
+
+    public static final BktParams DEFAULT =
+            new BktParams(DEFAULT_P_INIT, DEFAULT_P_TRANSIT, DEFAULT_P_GUESS, DEFAULT_P_SLIP);
+}
@@ -0,0 +1,16 @@
+package com.edtech.kt.model;
+
+/**
+ * 一个 (学生, 知识点) 在一次更新中的掌握度变化
+ *
+ * @param studentId        学生ID
+ * @param knowledgePointId 知识点ID
+ * @param before           更新前掌握概率
+ * @param after            更新后掌握概率
+ */
+public record MasteryChange(Long studentId, Long knowledgePointId, double before, double after) {
+
+    public double delta() {
+        return after - before;
+    }
+}
@@ -0,0 +1,33 @@
+package com.edtech.kt.model;
+
+/**
+ * 学生的完整掌握度向量 (原始数组，下标一一对应)
+ *
+ * @param kpIds         知识点 ID
+ * @param probabilities 最后一次观测到的掌握概率 (未衰减)
+ * @param updatedAt     最后更新时间 (epoch 秒)，0 表示未知
+ */
+public record MasteryVector(long[] kpIds, double[] probabilities, long[] updatedAt) {
+
+    public static final MasteryVector EMPTY = new MasteryVector(new long[0], new double[0], new long[0]);
+
+    public int size() {
+        return kpIds.length;
+    }
+
+    public boolean isEmpty() {
+        return kpIds.length == 0;
+    }
+
+    /**
+     * @return 知识点在向量中的下标，不存在时返回 -1 (线性查找，向量通常只有几十个知识点)
+     */
+    public int indexOf(long kpId) {
+        for (int i = 0; i < kpIds.length; i++) {
+            if (kpIds[i] == kpId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,31 @@
+package com.edtech.kt.model;
+
+/**
+ * 一次作答对相关知识点的传播: 对每个知识点按权重推动掌握度
+ * 权重为正时 p += w * (1 - p) (前置知识点获得正向证据)，为负时 p += w * p (后续知识点先验下调)
+ * 学生还没有状态的知识点先以其 P(L0) 为先验再推动
+ *
+ * @param kpIds   受影响的知识点
+ * @param weights 带符号的推动权重
+ * @param priors  各知识点的 P(L0)
+ */
+public record Propagation(long[] kpIds, double[] weights, double[] priors) {
+
+    public static final Propagation NONE = new Propagation(new long[0], new double[0], new double[0]);
+
+    public int size() {
+        return kpIds.length;
+    }
+
+    public boolean isEmpty() {
+        return kpIds.length == 0;
+    }
+
+    /**
+     * 按权重推动单个掌握度 (与 lua/bkt_step.lua 中的传播保持一致)
+     */
+    public static double nudge(double p, double weight) {
+        double next = weight > 0 ? p + weight * (1 - p) : p + weight * p;
+        return Math.max(0.0001, Math.min(0.9999, next));
+    }
+}
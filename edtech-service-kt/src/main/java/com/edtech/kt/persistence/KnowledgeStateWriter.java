@@ -0,0 +1,342 @@
+package com.edtech.kt.persistence;
+
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * knowledge_state 持久化 (L2)
+ * <p>
+ * 默认同步写 MySQL。开启 write-behind 后 Redis 作为唯一实时数据源，
+ * 脏的 (学生, 知识点) 在内存中合并 (同一知识点连续答十题只写一行)，
+ * 按批量大小或时间间隔触发，经有界队列交给写线程执行多行 upsert，停机时排空。
+ * 写线程按入队顺序逐批写入，失败的批次原地退避重试直到成功，不会被之后入队的同一知识点的新值超越。
+ * 合并后的行保留最后一次更新的时间作为 updated_at (遗忘曲线的最后练习时间)，而不是刷写时间。
+ */
+@Component
+@Slf4j
+public class KnowledgeStateWriter {
+
+    private final KnowledgeStateMapper knowledgeStateMapper;
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long maxRetryBackoffMs;
+    private final long shutdownTimeoutMs;
+
+    private final ConcurrentHashMap<StateKey, DirtyState> dirty = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingBatch> flushQueue;
+    private final AtomicLong oldestDirtyAt = new AtomicLong();
+    // Batch the writer thread is upserting or retrying; left set when shutdown cuts the retries short
+    private volatile PendingBatch inFlight;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService collector;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    // Cleared before the collector shuts down so markDirty stops scheduling collections
+    private volatile boolean accepting = true;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+
+    public KnowledgeStateWriter(KnowledgeStateMapper knowledgeStateMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${kt.persistence.write-behind.enabled:false}") boolean writeBehind,
+                                @Value("${kt.persistence.write-behind.batch-size:500}") int batchSize,
+                                @Value("${kt.persistence.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+                                @Value("${kt.persistence.write-behind.queue-capacity:64}") int queueCapacity,
+                                @Value("${kt.persistence.write-behind.max-retry-backoff-ms:30000}") long maxRetryBackoffMs,
+                                @Value("${kt.persistence.write-behind.shutdown-timeout-ms:30000}") long shutdownTimeoutMs) {
+        this.knowledgeStateMapper = knowledgeStateMapper;
+        this.writeBehind = writeBehind;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxRetryBackoffMs = maxRetryBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.flushQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.batchSizeSummary = DistributionSummary.builder("kt.write_behind.batch.size")
+                .description("Rows per knowledge_state flush batch")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("kt.write_behind.flush")
+                .description("knowledge_state batch upsert latency")
+                .register(meterRegistry);
+        Gauge.builder("kt.write_behind.lag.ms", this, KnowledgeStateWriter::flushLagMs)
+                .description("Age of the oldest unflushed knowledge state, dirty, queued or in flight")
+                .register(meterRegistry);
+        Gauge.builder("kt.write_behind.dirty", dirty, Map::size)
+                .description("Coalesced dirty knowledge states awaiting flush")
+                .register(meterRegistry);
+        Gauge.builder("kt.write_behind.queue.depth", flushQueue, BlockingQueue::size)
+                .description("Batches waiting for the writer thread")
+                .register(meterRegistry);
+
+        if (writeBehind) {
+            this.collector = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "kt-write-behind-collect"));
+            this.collector.scheduleWithFixedDelay(this::collect, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+            this.writerThread = new Thread(this::writeLoop, "kt-write-behind-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+            log.info("knowledge_state write-behind enabled: batchSize={}, interval={}ms, queue={}",
+                    batchSize, flushIntervalMs, queueCapacity);
+        } else {
+            this.collector = null;
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * 写入单个知识状态
+     *
+     * @param updatedAt 产生该值的那次作答的时间，为 null 时取当前时间
+     */
+    public void write(Long studentId, Long kpId, double prob, LocalDateTime updatedAt) {
+        if (!writeBehind) {
+            KnowledgeState state = toEntity(studentId, kpId, prob);
+            state.setUpdatedAt(updatedAt);
+            knowledgeStateMapper.upsertBatch(List.of(state));
+            return;
+        }
+        markDirty(studentId, kpId, prob, updatedAt != null ? updatedAt : LocalDateTime.now());
+    }
+
+    /**
+     * 写入一批知识状态，同步模式下为一次多行 upsert
+     */
+    public void writeAll(List<KnowledgeState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        if (!writeBehind) {
+            knowledgeStateMapper.upsertBatch(states);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (KnowledgeState state : states) {
+            markDirty(state.getStudentId(), state.getKnowledgePointId(), state.getMasteryProbability().doubleValue(),
+                    state.getUpdatedAt() != null ? state.getUpdatedAt() : now);
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    private void markDirty(Long studentId, Long kpId, double prob, LocalDateTime updatedAt) {
+        // Later values overwrite earlier ones: N answers on one KP coalesce into one row
+        dirty.put(new StateKey(studentId, kpId), new DirtyState(prob, updatedAt));
+        oldestDirtyAt.compareAndSet(0, System.currentTimeMillis());
+        if (accepting && dirty.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                collector.execute(this::collect);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: the final drain picks the row up, never fail the submit path
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 把脏数据切成批次放入有界刷写队列；队列满时阻塞收集线程，形成背压
+     * 批次记录其中最早的脏数据时间，刷写延迟指标在数据真正写入前一直计入
+     */
+    private void collect() {
+        flushRequested.set(false);
+        if (dirty.isEmpty()) {
+            return;
+        }
+        long since = oldestDirtyAt.getAndSet(0);
+        if (since == 0) {
+            since = System.currentTimeMillis();
+        }
+        List<KnowledgeState> batch = new ArrayList<>(Math.min(batchSize, dirty.size()));
+        for (StateKey key : dirty.keySet()) {
+            DirtyState state = dirty.remove(key);
+            if (state == null) {
+                continue;
+            }
+            batch.add(toEntity(key, state));
+            if (batch.size() >= batchSize) {
+                enqueue(new PendingBatch(batch, since));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            enqueue(new PendingBatch(batch, since));
+        }
+    }
+
+    private void enqueue(PendingBatch batch) {
+        try {
+            flushQueue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Not queued yet, so anything newer for these keys can only be in the dirty map: keep that one
+            for (KnowledgeState state : batch.rows()) {
+                dirty.putIfAbsent(new StateKey(state.getStudentId(), state.getKnowledgePointId()),
+                        new DirtyState(state.getMasteryProbability().doubleValue(), state.getUpdatedAt()));
+            }
+            oldestDirtyAt.compareAndSet(0, batch.since());
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !flushQueue.isEmpty()) {
+            PendingBatch batch;
+            try {
+                batch = flushQueue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == null) {
+                continue;
+            }
+            inFlight = batch;
+            if (!flushWithRetry(batch)) {
+                return;
+            }
+            inFlight = null;
+        }
+    }
+
+    /**
+     * 写入一个批次，失败时按 刷写间隔、2 倍、4 倍... (上限 max-retry-backoff-ms) 原地重试
+     * <p>
+     * 不把失败的批次放回脏数据: 队列中之后的批次可能带着同一知识点的新值，放回会让旧值在其后写入。
+     *
+     * @return 停机中断了重试时返回 false，批次留在 {@link #inFlight} 由停机排空写入
+     */
+    private boolean flushWithRetry(PendingBatch batch) {
+        long backoffMs = flushIntervalMs;
+        while (true) {
+            try {
+                flushTimer.record(() -> {
+                    knowledgeStateMapper.upsertBatch(batch.rows());
+                });
+                batchSizeSummary.record(batch.rows().size());
+                return true;
+            } catch (Exception e) {
+                if (!running) {
+                    log.warn("Failed to flush {} knowledge states while shutting down, leaving them to the final drain",
+                            batch.rows().size(), e);
+                    return false;
+                }
+                log.error("Failed to flush {} knowledge states, retrying in {}ms", batch.rows().size(), backoffMs, e);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoffMs = Math.min(backoffMs * 2, maxRetryBackoffMs);
+        }
+    }
+
+    private double flushLagMs() {
+        long since = oldestDirtyAt.get();
+        PendingBatch current = inFlight;
+        if (current != null) {
+            since = since == 0 ? current.since() : Math.min(since, current.since());
+        }
+        // FIFO: the head of the queue is the oldest queued batch
+        PendingBatch head = flushQueue.peek();
+        if (head != null) {
+            since = since == 0 ? head.since() : Math.min(since, head.since());
+        }
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!writeBehind) {
+            return;
+        }
+        accepting = false;
+        collector.shutdown();
+        try {
+            collector.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+            if (writerThread.isAlive()) {
+                log.warn("knowledge_state writer still busy after {}ms, interrupting", shutdownTimeoutMs);
+                writerThread.interrupt();
+                writerThread.join(flushIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Drain whatever is left on the caller thread, oldest first
+        List<KnowledgeState> rest = new ArrayList<>();
+        PendingBatch current = inFlight;
+        if (current != null) {
+            rest.addAll(current.rows());
+        }
+        List<PendingBatch> pending = new ArrayList<>();
+        flushQueue.drainTo(pending);
+        pending.forEach(batch -> rest.addAll(batch.rows()));
+        dirty.forEach((key, state) -> rest.add(toEntity(key, state)));
+        dirty.clear();
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            knowledgeStateMapper.upsertBatch(rest.subList(from, Math.min(rest.size(), from + batchSize)));
+        }
+        log.info("knowledge_state write-behind drained, {} rows flushed on shutdown", rest.size());
+    }
+
+    private static KnowledgeState toEntity(Long studentId, Long kpId, double prob) {
+        KnowledgeState state = new KnowledgeState();
+        state.setStudentId(studentId);
+        state.setKnowledgePointId(kpId);
+        state.setMasteryProbability(BigDecimal.valueOf(prob));
+        return state;
+    }
+
+    private static KnowledgeState toEntity(StateKey key, DirtyState dirtyState) {
+        KnowledgeState state = toEntity(key.studentId(), key.kpId(), dirtyState.prob());
+        state.setUpdatedAt(dirtyState.updatedAt());
+        return state;
+    }
+
+    private record StateKey(Long studentId, Long kpId) {
+    }
+
+    /**
+     * @param since 批次中最早的脏数据产生的时间 (epoch 毫秒)
+     */
+    private record PendingBatch(List<KnowledgeState> rows, long since) {
+    }
+
+    /**
+     * @param updatedAt 产生该值的那次更新的时间
+     */
+    private record DirtyState(double prob, LocalDateTime updatedAt) {
+    }
+}
@@ -0,0 +1,319 @@
+package com.edtech.kt.replay;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.catalog.LongLongHashMap;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.MasteryPropagator;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.kt.model.Propagation;
+import com.edtech.kt.store.MasteryStore;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
+import com.edtech.model.dto.AnswerTrace;
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识状态全量重放
+ * <p>
+ * BKT 参数变更或 Redis 状态丢失后，按学生 ID 分页 (每页 students-per-chunk 个学生)，
+ * 页内按 (学生, 时间) 顺序游标读取 student_exercise_log，
+ * 用知识点对应的 {@link com.edtech.kt.tracing.KnowledgeTracingModel} 重新计算每个 (学生, 知识点) 的掌握度。
+ * 每页读完、游标关闭后才处理: 按学生分片到多核并行计算，计算结果一次多行 upsert 写 MySQL (并删除日志中已不再出现的知识点)、
+ * 一次流水线整体替换 Redis，写完后记录检查点 (本页最大的学生 ID)，中断后可从检查点续跑。
+ * 处理耗时不占用打开的流式结果集，不会触发服务端的 net_write_timeout。
+ * 重放期间的在线提交可能被覆盖，建议在低峰期执行。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class KnowledgeStateReplayer {
+
+    private static final String CHECKPOINT_KEY = "kt:replay:checkpoint";
+
+    private final StudentExerciseLogMapper exerciseLogMapper;
+    private final KnowledgeStateMapper knowledgeStateMapper;
+    private final KnowledgeCatalog knowledgeCatalog;
+    private final MasteryStore masteryStore;
+    private final MasteryPropagator masteryPropagator;
+    private final ForgettingCurve forgettingCurve;
+    private final KnowledgeTracingModels knowledgeTracingModels;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${kt.replay.students-per-chunk:2000}")
+    private int studentsPerChunk;
+
+    @Value("${kt.replay.upsert-batch-size:1000}")
+    private int upsertBatchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong processedRows = new AtomicLong();
+    private volatile long startedAt;
+    private volatile ReplayReport lastReport;
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public ReplayReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * 当前进度的吞吐 (行/秒)
+     */
+    public double currentRowsPerSecond() {
+        return running.get() ? rate(processedRows.get(), System.currentTimeMillis() - startedAt) : 0;
+    }
+
+    /**
+     * 重放全部答题日志
+     *
+     * @param resume 为 true 时从上次检查点之后的学生继续
+     * @return 重放报告；已有任务在运行时返回 null
+     */
+    public ReplayReport replay(boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Knowledge state replay already running");
+            return null;
+        }
+        startedAt = System.currentTimeMillis();
+        processedRows.set(0);
+        long afterStudentId = resume ? readCheckpoint() : 0L;
+        log.info("Knowledge state replay started after student {}", afterStudentId);
+
+        long students = 0;
+        try {
+            Long upToStudentId;
+            while ((upToStudentId = exerciseLogMapper.selectStudentIdBoundary(afterStudentId, studentsPerChunk)) != null) {
+                List<StudentTrace> chunk = readChunk(afterStudentId, upToStudentId);
+                students += chunk.size();
+                flushChunk(chunk, upToStudentId);
+                afterStudentId = upToStudentId;
+            }
+            stringRedisTemplate.delete(CHECKPOINT_KEY);
+        } finally {
+            running.set(false);
+        }
+
+        long elapsed = System.currentTimeMillis() - startedAt;
+        ReplayReport report = new ReplayReport(processedRows.get(), students, elapsed,
+                rate(processedRows.get(), elapsed));
+        lastReport = report;
+        log.info("Knowledge state replay finished: {}", report);
+        return report;
+    }
+
+    /**
+     * 读取一页学生的完整答题轨迹；返回时该页的流式游标已关闭
+     */
+    private List<StudentTrace> readChunk(long afterStudentId, long upToStudentId) {
+        List<StudentTrace> chunk = new ArrayList<>(studentsPerChunk);
+        StudentTrace[] current = {null};
+        exerciseLogMapper.streamTracesByStudentRange(afterStudentId, upToStudentId, context -> {
+            AnswerTrace trace = context.getResultObject();
+            if (trace.getKnowledgePointId() == null || trace.getStudentId() == null) {
+                return;
+            }
+            StudentTrace student = current[0];
+            if (student == null || student.studentId != trace.getStudentId()) {
+                student = new StudentTrace(trace.getStudentId());
+                current[0] = student;
+                chunk.add(student);
+            }
+            student.append(trace.getKnowledgePointId(), trace.getResult() != null && trace.getResult() == 1,
+                    toEpochSecond(trace.getSubmitTime()));
+            processedRows.incrementAndGet();
+        });
+        return chunk;
+    }
+
+    /**
+     * 重算并写回一页学生，然后把检查点推进到 checkpoint (本页学生 ID 上界，含没有有效答题的学生)
+     */
+    private void flushChunk(List<StudentTrace> chunk, long checkpoint) {
+        if (chunk.isEmpty()) {
+            stringRedisTemplate.opsForValue().set(CHECKPOINT_KEY, String.valueOf(checkpoint));
+            return;
+        }
+        // Partition by student across cores; each student is replayed by exactly one thread
+        chunk.parallelStream().forEach(this::recompute);
+
+        Map<Long, MasteryVector> byStudent = new LinkedHashMap<>();
+        List<KnowledgeState> rows = new ArrayList<>();
+        for (StudentTrace student : chunk) {
+            long[] kpIds = Arrays.copyOf(student.kpIds, student.kpCount);
+            double[] probs = Arrays.copyOf(student.probs, student.kpCount);
+            long[] times = Arrays.copyOf(student.kpTimes, student.kpCount);
+            for (int i = 0; i < student.kpCount; i++) {
+                KnowledgeState state = new KnowledgeState();
+                state.setStudentId(student.studentId);
+                state.setKnowledgePointId(kpIds[i]);
+                state.setMasteryProbability(BigDecimal.valueOf(probs[i]));
+                state.setUpdatedAt(times[i] > 0 ? LocalDateTime.ofInstant(Instant.ofEpochSecond(times[i]), ZoneId.systemDefault()) : null);
+                rows.add(state);
+            }
+            byStudent.put(student.studentId, new MasteryVector(kpIds, probs, times));
+        }
+
+        for (int from = 0; from < rows.size(); from += upsertBatchSize) {
+            knowledgeStateMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + upsertBatchSize)));
+        }
+        deleteStaleRows(chunk, rows);
+        masteryStore.writeVectors(byStudent, true);
+
+        stringRedisTemplate.opsForValue().set(CHECKPOINT_KEY, String.valueOf(checkpoint));
+        log.info("Replay checkpoint at student {}: {} rows, {} rows/s", checkpoint, processedRows.get(),
+                String.format("%.0f", rate(processedRows.get(), System.currentTimeMillis() - startedAt)));
+    }
+
+    /**
+     * Redis 中的向量整体替换，MySQL 也要删掉日志中已不再出现的知识点，否则下次回源预热会把它们带回来
+     * rows 按学生连续排列，按学生分组切块，每块一条 DELETE
+     */
+    private void deleteStaleRows(List<StudentTrace> chunk, List<KnowledgeState> rows) {
+        List<Long> studentIds = new ArrayList<>();
+        int keepFrom = 0;
+        int keepTo = 0;
+        for (StudentTrace student : chunk) {
+            studentIds.add(student.studentId);
+            keepTo += student.kpCount;
+            if (keepTo - keepFrom >= upsertBatchSize) {
+                knowledgeStateMapper.deleteExcept(studentIds, rows.subList(keepFrom, keepTo));
+                studentIds = new ArrayList<>();
+                keepFrom = keepTo;
+            }
+        }
+        if (!studentIds.isEmpty()) {
+            knowledgeStateMapper.deleteExcept(studentIds, rows.subList(keepFrom, keepTo));
+        }
+    }
+
+    private void recompute(StudentTrace student) {
+        LongLongHashMap slots = new LongLongHashMap(16);
+        long[] kpIds = new long[8];
+        double[] probs = new double[8];
+        long[] kpTimes = new long[8];
+        int kpCount = 0;
+        for (int i = 0; i < student.size; i++) {
+            long kpId = student.answerKps[i];
+            long at = student.times[i];
+            int slot = (int) slots.get(kpId, -1);
+            BktParams params = knowledgeCatalog.getParams(kpId);
+            if (slot < 0) {
+                slot = kpCount++;
+                if (slot == kpIds.length) {
+                    kpIds = Arrays.copyOf(kpIds, slot * 2);
+                    probs = Arrays.copyOf(probs, slot * 2);
+                    kpTimes = Arrays.copyOf(kpTimes, slot * 2);
+                }
+                slots.put(kpId, slot);
+                kpIds[slot] = kpId;
+                probs[slot] = params.pInit();
+            }
+            // Same order as the online step: decay the prior to the answer time, then apply the KP's model
+            double prior = forgettingCurve.decay(probs[slot], kpTimes[slot], at);
+            probs[slot] = knowledgeTracingModels.forKnowledgePoint(kpId).update(prior, student.correct[i], params);
+            kpTimes[slot] = at;
+
+            // Same propagation as the online path on a warm hash: KPs without a state start from their P(L0)
+            Propagation propagation = masteryPropagator.propagate(kpId, student.correct[i]);
+            for (int j = 0; j < propagation.size(); j++) {
+                long target = propagation.kpIds()[j];
+                int targetSlot = (int) slots.get(target, -1);
+                if (targetSlot < 0) {
+                    targetSlot = kpCount++;
+                    if (targetSlot == kpIds.length) {
+                        kpIds = Arrays.copyOf(kpIds, targetSlot * 2);
+                        probs = Arrays.copyOf(probs, targetSlot * 2);
+                        kpTimes = Arrays.copyOf(kpTimes, targetSlot * 2);
+                    }
+                    slots.put(target, targetSlot);
+                    kpIds[targetSlot] = target;
+                    probs[targetSlot] = propagation.priors()[j];
+                    kpTimes[targetSlot] = at;
+                }
+                double decayed = forgettingCurve.decay(probs[targetSlot], kpTimes[targetSlot], at);
+                probs[targetSlot] = Propagation.nudge(decayed, propagation.weights()[j]);
+                kpTimes[targetSlot] = at;
+            }
+        }
+        student.kpIds = kpIds;
+        student.probs = probs;
+        student.kpTimes = kpTimes;
+        student.kpCount = kpCount;
+    }
+
+    private long readCheckpoint() {
+        String value = stringRedisTemplate.opsForValue().get(CHECKPOINT_KEY);
+        return value != null ? Long.parseLong(value) : 0L;
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static double rate(long rows, long elapsedMs) {
+        return elapsedMs > 0 ? rows * 1000.0 / elapsedMs : 0;
+    }
+
+    /**
+     * 单个学生按时间排序的作答轨迹 (原始数组)，重算后携带每个知识点的最终掌握度
+     */
+    private static final class StudentTrace {
+
+        final long studentId;
+        long[] answerKps = new long[32];
+        boolean[] correct = new boolean[32];
+        long[] times = new long[32];
+        int size;
+
+        long[] kpIds;
+        double[] probs;
+        long[] kpTimes;
+        int kpCount;
+
+        StudentTrace(long studentId) {
+            this.studentId = studentId;
+        }
+
+        void append(long kpId, boolean isCorrect, long epochSecond) {
+            if (size == answerKps.length) {
+                answerKps = Arrays.copyOf(answerKps, size * 2);
+                correct = Arrays.copyOf(correct, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            answerKps[size] = kpId;
+            correct[size] = isCorrect;
+            times[size] = epochSecond;
+            size++;
+        }
+    }
+
+    /**
+     * @param rows          重放的日志行数
+     * @param students      学生数
+     * @param elapsedMs     总耗时
+     * @param rowsPerSecond 平均吞吐
+     */
+    public record ReplayReport(long rows, long students, long elapsedMs, double rowsPerSecond) {
+    }
+}
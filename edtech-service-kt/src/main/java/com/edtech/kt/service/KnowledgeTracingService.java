@@ -1,87 +1,212 @@
 package com.edtech.kt.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.edtech.model.entity.KnowledgePoint;
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.MasteryPropagator;
+import com.edtech.kt.model.Answer;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.kt.persistence.KnowledgeStateWriter;
+import com.edtech.kt.store.MasteryStore;
+import com.edtech.kt.store.MasteryStore.BktStep;
+import com.edtech.kt.store.MasteryStore.Propagated;
+import com.edtech.kt.store.MasteryStore.StepOutcome;
+import com.edtech.kt.store.MasteryWarmLoader;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
 import com.edtech.model.entity.KnowledgeState;
-import com.edtech.model.entity.Question;
-import com.edtech.model.mapper.KnowledgePointMapper;
-import com.edtech.model.mapper.KnowledgeStateMapper;
-import com.edtech.model.mapper.QuestionMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class KnowledgeTracingService {
 
-    private final KnowledgeStateMapper knowledgeStateMapper;
-    private final QuestionMapper questionMapper;
-    private final KnowledgePointMapper knowledgePointMapper;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final KnowledgeCatalog knowledgeCatalog;
+    private final KnowledgeStateWriter knowledgeStateWriter;
+    private final MasteryStore masteryStore;
+    private final MasteryWarmLoader masteryWarmLoader;
+    private final MasteryPropagator masteryPropagator;
+    private final ForgettingCurve forgettingCurve;
+    private final KnowledgeTracingModels knowledgeTracingModels;
 
-    // Default BKT Parameters (Fallback)
-    private static final double DEFAULT_P_INIT = 0.1;
-    private static final double DEFAULT_P_TRANSIT = 0.1;
-    private static final double DEFAULT_P_GUESS = 0.2;
-    private static final double DEFAULT_P_SLIP = 0.1;
+    // Redis Cluster: a script may only touch one student's hash-tagged keys
+    @Value("${edtech.redis.cluster:false}")
+    private boolean clusterMode;
 
     /**
      * 更新学生知识状态 (BKT Algorithm)
+     * <p>
+     * Redis 中的读取-计算-写回由 {@link MasteryStore} 原子执行，同一学生的并发提交不会丢失更新。
+     * Redis 转移生效后不再抛出异常 (见 {@link #writeBack})，调用方可以安全地重试抛出异常的调用。
      *
      * @param studentId  学生ID
      * @param questionId 题目ID
      * @param isCorrect  是否正确
+     * @return 所答知识点的掌握度变化，题目不存在时返回 null
      */
-    @Transactional(rollbackFor = Exception.class)
-    public void updateKnowledgeState(Long studentId, Long questionId, boolean isCorrect) {
+    public MasteryChange updateKnowledgeState(Long studentId, Long questionId, boolean isCorrect) {
+        return updateKnowledgeState(new Answer(studentId, questionId, isCorrect));
+    }
+
+    /**
+     * 按一次作答更新学生知识状态，先验衰减到 {@link Answer#answeredAt()} (离线答题为客户端记录的作答时间)
+     * <p>
+     * 带 {@link Answer#requestId()} 的作答在 Redis 脚本内去重: 已生效过的请求 ID 不再执行转移，
+     * 因此超时重试、死信重放可以直接再次调用。
+     *
+     * @return 所答知识点的掌握度变化；题目不存在或该请求 ID 已生效时返回 null
+     */
+    public MasteryChange updateKnowledgeState(Answer answer) {
+        Long studentId = answer.studentId();
+        Long questionId = answer.questionId();
+        boolean isCorrect = answer.correct();
         log.info("Starting BKT for Student: {}, Question: {}, Correct: {}", studentId, questionId, isCorrect);
 
-        // 1. Get Question & Knowledge Point
-        Question question = questionMapper.selectById(questionId);
-        if (question == null) {
+        // 1. Get Knowledge Point (in-memory catalog, no MySQL on hit)
+        long kpIdValue = knowledgeCatalog.getKnowledgePointId(questionId);
+        if (kpIdValue == KnowledgeCatalog.NO_KNOWLEDGE_POINT) {
             log.warn("Question not found: {}", questionId);
-            return;
+            return null;
         }
-        Long kpId = question.getKnowledgePointId();
-        KnowledgePoint kp = knowledgePointMapper.selectById(kpId);
+        Long kpId = kpIdValue;
 
         // 2. Get BKT Parameters
-        double pInit = kp.getPInit() != null ? kp.getPInit() : DEFAULT_P_INIT;
-        double pTransit = kp.getPTransit() != null ? kp.getPTransit() : DEFAULT_P_TRANSIT;
-        double pGuess = kp.getPGuess() != null ? kp.getPGuess() : DEFAULT_P_GUESS;
-        double pSlip = kp.getPSlip() != null ? kp.getPSlip() : DEFAULT_P_SLIP;
+        BktParams params = knowledgeCatalog.getParams(kpIdValue);
+
+        // 3-5. Atomic BKT step in Redis (L1); on miss warm the student's full vector from DB (L2) and retry
+        List<BktStep> steps = List.of(new BktStep(studentId, kpId, isCorrect, answer.answeredAt(), answer.requestId(),
+                knowledgeTracingModels.forKnowledgePoint(kpIdValue), params, null,
+                masteryPropagator.propagate(kpIdValue, isCorrect)));
+        StepOutcome outcome = applyWithWarmLoad(steps);
+        if (outcome.duplicate()[0]) {
+            log.info("Answer {} of student {} already traced, skipped", answer.requestId(), studentId);
+            return null;
+        }
+        double currentProb = outcome.before()[0];
+        double newProb = outcome.after()[0];
 
-        // 3. Get Current State (From Redis L1 or DB L2)
-        String stateKey = "student:state:" + studentId;
-        Double currentProb = (Double) redisTemplate.opsForHash().get(stateKey, kpId.toString());
+        // 6. Write Back to DB (L2 Persistence, synchronous or write-behind)
+        writeBack(studentId, () -> {
+            knowledgeStateWriter.write(studentId, kpId, newProb, toLocalDateTime(outcome.updatedAt()[0]));
+            for (Propagated p : outcome.propagated()) {
+                knowledgeStateWriter.write(p.studentId(), p.kpId(), p.value(), toLocalDateTime(p.updatedAt()));
+            }
+        });
 
-        if (currentProb == null) {
-            KnowledgeState dbState = knowledgeStateMapper.selectOne(new LambdaQueryWrapper<KnowledgeState>()
-                    .eq(KnowledgeState::getStudentId, studentId)
-                    .eq(KnowledgeState::getKnowledgePointId, kpId));
-            
-            // If no previous state, use P(L0)
-            currentProb = (dbState != null) ? dbState.getMasteryProbability().doubleValue() : pInit;
+        log.info("Updated Knowledge State (BKT) for Student: {}, KP: {}, Old: {}, New: {}", studentId, kpId, currentProb, newProb);
+        return new MasteryChange(studentId, kpId, currentProb, newProb);
+    }
+
+    /**
+     * 批量更新学生知识状态 (离线同步、考试交卷、日志重放)
+     * <p>
+     * 所有答题按提交顺序在一次 Lua 调用中原子执行 BKT 转移 (Redis 命中时只需一次往返)，
+     * 未命中的学生整体回源预热一次，最后一次多行 upsert 写回，往返次数与答题数无关。
+     * 与单条更新相同，Redis 转移生效后写回失败不会抛出。
+     *
+     * @param answers 按作答先后排列的答题记录，每步的先验衰减到该答题的作答时间；请求 ID 已生效的答题被跳过
+     * @return 每个 (学生, 知识点) 的掌握度变化 (只含实际执行的答题)
+     */
+    public List<MasteryChange> updateKnowledgeStates(List<Answer> answers) {
+        if (answers == null || answers.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        // 4. Calculate New Probability using BKT
-        double newProb = calculateNewProbabilityBKT(currentProb, isCorrect, pTransit, pGuess, pSlip);
+        // 1. Resolve KP and parameters from the catalog, keeping submission order
+        List<BktStep> steps = new ArrayList<>(answers.size());
+        for (Answer answer : answers) {
+            long kpId = knowledgeCatalog.getKnowledgePointId(answer.questionId());
+            if (kpId == KnowledgeCatalog.NO_KNOWLEDGE_POINT) {
+                log.warn("Question not found: {}", answer.questionId());
+                continue;
+            }
+            steps.add(new BktStep(answer.studentId(), kpId, answer.correct(), answer.answeredAt(), answer.requestId(),
+                    knowledgeTracingModels.forKnowledgePoint(kpId),
+                    knowledgeCatalog.getParams(kpId), null, masteryPropagator.propagate(kpId, answer.correct())));
+        }
+        if (steps.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 2. Atomic BKT transitions in Redis; warm missing students from DB and retry once
+        StepOutcome outcome = applyPerSlot(steps);
 
-        // 5. Update Redis (L1 Cache)
-        redisTemplate.opsForHash().put(stateKey, kpId.toString(), newProb);
-        redisTemplate.expire(stateKey, 7, TimeUnit.DAYS);
+        // 3. Collapse to first-before / last-after per (student, KP)
+        Map<Long, Map<Long, double[]>> merged = new LinkedHashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            if (outcome.duplicate()[i]) {
+                continue;
+            }
+            BktStep step = steps.get(i);
+            double[] range = merged.computeIfAbsent(step.studentId(), k -> new LinkedHashMap<>())
+                    .get(step.kpId());
+            if (range == null) {
+                merged.get(step.studentId()).put(step.kpId(), new double[]{outcome.before()[i], outcome.after()[i]});
+            } else {
+                range[1] = outcome.after()[i];
+            }
+        }
+        List<MasteryChange> changes = new ArrayList<>();
+        merged.forEach((studentId, byKp) -> byKp.forEach((kpId, range) ->
+                changes.add(new MasteryChange(studentId, kpId, range[0], range[1]))));
 
-        // 6. Write Back to DB (L2 Persistence)
-        saveStateToDb(studentId, kpId, newProb);
+        // 4. Write back final values (answered and propagated KPs) in execution order:
+        //    one multi-row upsert or coalesced write-behind
+        Map<Long, Map<Long, KnowledgeState>> finalValues = new LinkedHashMap<>();
+        List<Propagated> propagated = outcome.propagated();
+        int next = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            if (outcome.duplicate()[i]) {
+                continue;
+            }
+            BktStep step = steps.get(i);
+            finalValues.computeIfAbsent(step.studentId(), k -> new LinkedHashMap<>())
+                    .put(step.kpId(), toEntity(step.studentId(), step.kpId(), outcome.after()[i], outcome.updatedAt()[i]));
+            for (; next < propagated.size() && propagated.get(next).stepIndex() == i; next++) {
+                Propagated p = propagated.get(next);
+                finalValues.get(p.studentId()).put(p.kpId(), toEntity(p.studentId(), p.kpId(), p.value(), p.updatedAt()));
+            }
+        }
+        List<KnowledgeState> rows = new ArrayList<>();
+        finalValues.values().forEach(byKp -> rows.addAll(byKp.values()));
+        writeBack(answers.get(0).studentId(), () -> knowledgeStateWriter.writeAll(rows));
 
-        log.info("Updated Knowledge State (BKT) for Student: {}, KP: {}, Old: {}, New: {}", studentId, kpId, currentProb, newProb);
+        log.info("Batch BKT updated {} answers into {} knowledge states, {} already traced", answers.size(),
+                changes.size(), count(outcome.duplicate()));
+        return changes;
+    }
+
+    /**
+     * 写回 knowledge_state (L2)
+     * <p>
+     * 此时 Redis 中的转移已经生效且无法回滚，写回失败只记录告警: 抛出会让调用方重试整个步骤，
+     * 同一次答题被重复计入。落后的行在该知识点下次更新时被覆盖，也可以由答题记录重放重建。
+     */
+    private void writeBack(Long studentId, Runnable write) {
+        try {
+            write.run();
+        } catch (Exception e) {
+            log.warn("Knowledge state write-back failed for student {}, Redis stays authoritative: {}",
+                    studentId, e.getMessage());
+        }
     }
 
     /**
@@ -89,8 +214,10 @@ public class KnowledgeTracingService {
      *
      * P(L_t | Result) = posterior probability given result
      * P(L_t+1) = P(L_t | Result) + (1 - P(L_t | Result)) * P(T)
+     * <p>
+     * The online path runs the same formula inside lua/bkt_step.lua; keep both in sync.
      */
-    private double calculateNewProbabilityBKT(double pL, boolean isCorrect, double pT, double pG, double pS) {
+    public static double calculateNewProbabilityBKT(double pL, boolean isCorrect, double pT, double pG, double pS) {
         double posterior;
 
         if (isCorrect) {
@@ -112,22 +239,110 @@ public class KnowledgeTracingService {
         return Math.max(0.0001, Math.min(0.9999, nextProb));
     }
 
-    private void saveStateToDb(Long studentId, Long kpId, double prob) {
-        KnowledgeState state = knowledgeStateMapper.selectOne(new LambdaQueryWrapper<KnowledgeState>()
-                .eq(KnowledgeState::getStudentId, studentId)
-                .eq(KnowledgeState::getKnowledgePointId, kpId));
+    private static KnowledgeState toEntity(Long studentId, Long kpId, double prob, long updatedAt) {
+        KnowledgeState state = new KnowledgeState();
+        state.setStudentId(studentId);
+        state.setKnowledgePointId(kpId);
+        state.setMasteryProbability(BigDecimal.valueOf(prob));
+        state.setUpdatedAt(toLocalDateTime(updatedAt));
+        return state;
+    }
+
+    private static int count(boolean[] flags) {
+        int n = 0;
+        for (boolean flag : flags) {
+            if (flag) {
+                n++;
+            }
+        }
+        return n;
+    }
 
-        if (state == null) {
-            state = new KnowledgeState();
-            state.setStudentId(studentId);
-            state.setKnowledgePointId(kpId);
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return epochSecond > 0 ? LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()) : null;
+    }
+
+    /**
+     * 执行知识追踪步骤；集群模式下按学生拆分为单 slot 的脚本调用后按原下标合并结果
+     */
+    private StepOutcome applyPerSlot(List<BktStep> steps) {
+        if (!clusterMode) {
+            return applyWithWarmLoad(steps);
         }
-        state.setMasteryProbability(BigDecimal.valueOf(prob));
-        
-        if (state.getId() == null) {
-            knowledgeStateMapper.insert(state);
-        } else {
-            knowledgeStateMapper.updateById(state);
+        Map<Long, List<Integer>> byStudent = new LinkedHashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            byStudent.computeIfAbsent(steps.get(i).studentId(), k -> new ArrayList<>()).add(i);
+        }
+        if (byStudent.size() == 1) {
+            return applyWithWarmLoad(steps);
+        }
+
+        double[] before = new double[steps.size()];
+        double[] after = new double[steps.size()];
+        long[] updatedAt = new long[steps.size()];
+        boolean[] duplicate = new boolean[steps.size()];
+        List<Propagated> propagated = new ArrayList<>();
+        for (List<Integer> indices : byStudent.values()) {
+            List<BktStep> group = new ArrayList<>(indices.size());
+            for (int i : indices) {
+                group.add(steps.get(i));
+            }
+            StepOutcome outcome = applyWithWarmLoad(group);
+            for (int j = 0; j < indices.size(); j++) {
+                before[indices.get(j)] = outcome.before()[j];
+                after[indices.get(j)] = outcome.after()[j];
+                updatedAt[indices.get(j)] = outcome.updatedAt()[j];
+                duplicate[indices.get(j)] = outcome.duplicate()[j];
+            }
+            for (Propagated p : outcome.propagated()) {
+                propagated.add(new Propagated(indices.get(p.stepIndex()), p.studentId(), p.kpId(), p.value(),
+                        p.updatedAt()));
+            }
+        }
+        // Stable sort keeps each step's propagation order
+        propagated.sort(Comparator.comparingInt(Propagated::stepIndex));
+        return new StepOutcome(new int[0], before, after, updatedAt, duplicate, propagated);
+    }
+
+    /**
+     * 执行知识追踪步骤；Redis 未命中的学生经 {@link MasteryWarmLoader} 整体回源预热后重试，
+     * 预热后缺失的知识点由脚本以 P(L0) 为先验。
+     * Redis 写入预热失败 (重试仍未命中) 时退回为步骤显式补齐先验。
+     */
+    private StepOutcome applyWithWarmLoad(List<BktStep> steps) {
+        StepOutcome outcome = masteryStore.applySteps(steps);
+        if (!outcome.hasMissing()) {
+            return outcome;
+        }
+        Set<Long> studentIds = new LinkedHashSet<>();
+        for (int i : outcome.missing()) {
+            studentIds.add(steps.get(i).studentId());
+        }
+        Map<Long, MasteryVector> loaded = new HashMap<>();
+        for (Long studentId : studentIds) {
+            loaded.put(studentId, masteryWarmLoader.load(studentId));
+        }
+        outcome = masteryStore.applySteps(steps);
+        if (outcome.hasMissing()) {
+            log.warn("Mastery cache still cold after warm load, applying {} steps with explicit priors",
+                    outcome.missing().length);
+            outcome = masteryStore.applySteps(withFallbacks(steps, outcome.missing(), loaded));
+        }
+        return outcome;
+    }
+
+    private List<BktStep> withFallbacks(List<BktStep> steps, int[] missing, Map<Long, MasteryVector> loaded) {
+        long now = System.currentTimeMillis() / 1000;
+        List<BktStep> seeded = new ArrayList<>(steps);
+        for (int i : missing) {
+            BktStep step = steps.get(i);
+            MasteryVector vector = loaded.getOrDefault(step.studentId(), MasteryVector.EMPTY);
+            int at = vector.indexOf(step.kpId());
+            double prior = at < 0 ? step.params().pInit()
+                    : forgettingCurve.decay(vector.probabilities()[at], vector.updatedAt()[at],
+                    step.answeredAt() > 0 ? step.answeredAt() : now);
+            seeded.set(i, step.withFallback(prior));
         }
+        return seeded;
     }
 }
@@ -0,0 +1,149 @@
+package com.edtech.kt.service;
+
+import com.edtech.kt.catalog.LongLongHashMap;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.kt.store.MasteryStore;
+import com.edtech.kt.store.MasteryWarmLoader;
+import com.edtech.model.entity.KnowledgeState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 掌握度统一读取入口
+ * <p>
+ * 已预热的 Redis hash (L1) 包含学生在 MySQL (L2) 中的全部知识点且值更新 (write-behind 模式下 MySQL 可能滞后)，
+ * 命中时只需一次 HGETALL (单个知识点为 HMGET)；未命中时经 {@link MasteryWarmLoader} 一次查询回源并预热。
+ * 读取结果统一按 {@link ForgettingCurve} 衰减到当前时间。
+ * 仪表盘、练习策略、出题等读取方都应通过这里获取掌握度，不要直接读 knowledge_state 或 Redis hash。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MasteryQueryService {
+
+    private final MasteryStore masteryStore;
+    private final MasteryWarmLoader masteryWarmLoader;
+    private final ForgettingCurve forgettingCurve;
+
+    /**
+     * 学生全部知识点的当前掌握度 (已衰减)
+     *
+     * @return 知识点 ID -> 掌握概率，没有任何记录时为空
+     */
+    public Map<Long, Double> getMasteryMap(Long studentId) {
+        long now = System.currentTimeMillis() / 1000;
+        MasteryVector vector = currentVector(studentId);
+        Map<Long, Double> result = new LinkedHashMap<>(vector.size() * 2);
+        for (int i = 0; i < vector.size(); i++) {
+            result.put(vector.kpIds()[i], forgettingCurve.decay(vector.probabilities()[i], vector.updatedAt()[i], now));
+        }
+        return result;
+    }
+
+    /**
+     * 批量读取指定知识点的当前掌握度 (已衰减)，结果写入原始数组，不为每个知识点创建对象
+     *
+     * @param out 与 kpIds 等长，没有记录的位置填 NaN
+     */
+    public void fillMastery(Long studentId, long[] kpIds, double[] out) {
+        long now = System.currentTimeMillis() / 1000;
+        LongLongHashMap positions = new LongLongHashMap(Math.max(16, kpIds.length * 2));
+        for (int i = 0; i < kpIds.length; i++) {
+            out[i] = Double.NaN;
+            positions.put(kpIds[i], i);
+        }
+        MasteryVector vector = currentVector(studentId);
+        for (int i = 0; i < vector.size(); i++) {
+            int pos = (int) positions.get(vector.kpIds()[i], -1);
+            if (pos >= 0) {
+                out[pos] = forgettingCurve.decay(vector.probabilities()[i], vector.updatedAt()[i], now);
+            }
+        }
+    }
+
+    /**
+     * 单个知识点的当前掌握度 (已衰减)
+     * 已预热时只 HMGET 该知识点与预热标记，不读整个 hash
+     *
+     * @return 掌握概率，没有记录时返回 null
+     */
+    public Double getMastery(Long studentId, Long kpId) {
+        MasteryVector vector = null;
+        try {
+            vector = masteryStore.getWarmEntry(studentId, kpId);
+        } catch (Exception e) {
+            log.warn("Failed to read mastery from Redis for student {}, loading from MySQL: {}", studentId, e.getMessage());
+        }
+        if (vector == null) {
+            vector = masteryWarmLoader.load(studentId);
+        }
+        int i = vector.indexOf(kpId);
+        if (i < 0) {
+            return null;
+        }
+        return forgettingCurve.decay(vector.probabilities()[i], vector.updatedAt()[i], System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * 最薄弱的知识点 (画像 ZSET，O(log n + limit))
+     */
+    public long[] weakestKnowledgePoints(Long studentId, int limit) {
+        return readProfile(studentId, limit, false);
+    }
+
+    /**
+     * 已掌握的知识点，按掌握度降序 (画像 ZSET，O(log n + limit))
+     */
+    public long[] masteredKnowledgePoints(Long studentId, int limit) {
+        return readProfile(studentId, limit, true);
+    }
+
+    private long[] readProfile(Long studentId, int limit, boolean strong) {
+        try {
+            long[] ids = strong ? masteryStore.strongest(studentId, limit) : masteryStore.weakest(studentId, limit);
+            if (ids.length > 0 || masteryStore.isWarm(studentId)) {
+                return ids;
+            }
+            // Cold student: the warm load rebuilds both ZSETs
+            masteryWarmLoader.load(studentId);
+            return strong ? masteryStore.strongest(studentId, limit) : masteryStore.weakest(studentId, limit);
+        } catch (Exception e) {
+            log.warn("Failed to read learner profile for student {}: {}", studentId, e.getMessage());
+            return new long[0];
+        }
+    }
+
+    /**
+     * 学生的完整掌握度向量 (未衰减): 已预热时直接取 Redis，否则回源加载
+     */
+    public MasteryVector currentVector(Long studentId) {
+        try {
+            MasteryVector warm = masteryStore.getWarmVector(studentId);
+            if (warm != null) {
+                return warm;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read mastery from Redis for student {}, loading from MySQL: {}", studentId, e.getMessage());
+        }
+        return masteryWarmLoader.load(studentId);
+    }
+
+    /**
+     * 把一行 knowledge_state 衰减到当前时间
+     */
+    public double decay(KnowledgeState row) {
+        return forgettingCurve.decay(row.getMasteryProbability().doubleValue(),
+                toEpochSecond(row.getUpdatedAt()), System.currentTimeMillis() / 1000);
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
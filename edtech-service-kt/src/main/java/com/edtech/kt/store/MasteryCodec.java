@@ -0,0 +1,87 @@
+package com.edtech.kt.store;
+
+/**
+ * 掌握度编解码: 概率量化为万分位整数 (basis points) 的十进制字符串，后接最后更新时间
+ * <p>
+ * "3512:1718000000" 表示 0.3512，最后更新于 epoch 秒 1718000000；
+ * 精度与 knowledge_state.mastery_probability 的 DECIMAL(5,4) 一致，Lua 脚本可直接解析。
+ * 不带时间的 "3512" 视为时间未知 (不衰减)。
+ * 解码同时兼容旧的 GenericJackson2JsonRedisSerializer 格式 (如 "0.3512")，用于平滑迁移。
+ */
+public final class MasteryCodec {
+
+    public static final int SCALE = 10_000;
+
+    private static final char TIME_SEPARATOR = ':';
+
+    private MasteryCodec() {
+    }
+
+    public static String encode(double probability) {
+        return Integer.toString(toBasisPoints(probability));
+    }
+
+    /**
+     * @param epochSecond 最后更新时间，不大于 0 时不写入时间
+     */
+    public static String encode(double probability, long epochSecond) {
+        if (epochSecond <= 0) {
+            return encode(probability);
+        }
+        return toBasisPoints(probability) + String.valueOf(TIME_SEPARATOR) + epochSecond;
+    }
+
+    public static int toBasisPoints(double probability) {
+        long bp = Math.round(probability * SCALE);
+        return (int) Math.max(0, Math.min(SCALE, bp));
+    }
+
+    /**
+     * @return 概率；无法解析时返回 NaN
+     */
+    public static double decode(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            if (isLegacy(raw)) {
+                return Double.parseDouble(raw);
+            }
+            int sep = raw.indexOf(TIME_SEPARATOR);
+            return Integer.parseInt(sep < 0 ? raw : raw.substring(0, sep)) / (double) SCALE;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return 最后更新时间 (epoch 秒)；旧格式或未带时间时返回 0
+     */
+    public static long decodeTimestamp(String raw) {
+        if (raw == null) {
+            return 0;
+        }
+        int sep = raw.indexOf(TIME_SEPARATOR);
+        if (sep < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(raw.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 旧格式是 Jackson 输出的 double 文本，总带小数点或指数
+     */
+    public static boolean isLegacy(String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
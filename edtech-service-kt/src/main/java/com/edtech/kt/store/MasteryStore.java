@@ -0,0 +1,538 @@
+package com.edtech.kt.store;
+
+import com.edtech.common.redis.StudentKey;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.kt.model.Propagation;
+import com.edtech.kt.tracing.KnowledgeTracingModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学生掌握度 Redis 存储 (L1)
+ * <p>
+ * BKT 的 "读取-计算-写回" 通过 Lua 脚本在 Redis 内原子执行，
+ * 同一学生同一知识点的并发提交 (重复点击、多端、消息重投) 不会互相覆盖，且无需任何全局锁。
+ * 值使用 {@link MasteryCodec} 的万分位整数编码，读取时兼容旧的 JSON 小数格式。
+ * <p>
+ * 每个学生的画像由三个 key 组成 (同一 hash tag，Redis Cluster 下位于同一 slot)，在同一次脚本调用中一起更新:
+ * 掌握度 hash ({@link #stateKey})、薄弱知识点 ZSET ({@link #weakKey}，score = 1 - p)
+ * 和已掌握知识点 ZSET ({@link #strongKey}，score = p)。
+ * ZSET 的 score 是最后一次写入时的观测值，不随遗忘曲线衰减，仅用于排序挑选。
+ */
+@Component
+@Slf4j
+public class MasteryStore {
+
+    public static final long STATE_TTL_DAYS = 7;
+    /**
+     * 预热标记字段: hash 已包含 MySQL 中该学生的全部知识点，缺失字段即表示没有记录
+     */
+    public static final String WARM_FIELD = "_warm";
+    /**
+     * 脚本对已生效过的请求 ID 返回的标记
+     */
+    public static final String DUPLICATE = "DUP";
+
+    private static final String MISS = "MISS";
+    private static final int ARGS_PER_STEP = 12;
+
+    private final RedisTemplate<String, String> masteryRedisTemplate;
+    private final ForgettingCurve forgettingCurve;
+    private final int strongBasisPoints;
+    private final DefaultRedisScript<List> bktStepScript;
+    private final DefaultRedisScript<List> warmScript;
+
+    public MasteryStore(@Qualifier("masteryRedisTemplate") RedisTemplate<String, String> masteryRedisTemplate,
+                        ForgettingCurve forgettingCurve,
+                        @Value("${kt.profile.strong-threshold:0.8}") double strongThreshold) {
+        this.masteryRedisTemplate = masteryRedisTemplate;
+        this.forgettingCurve = forgettingCurve;
+        this.strongBasisPoints = MasteryCodec.toBasisPoints(strongThreshold);
+        this.bktStepScript = new DefaultRedisScript<>();
+        this.bktStepScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/bkt_step.lua")));
+        this.bktStepScript.setResultType(List.class);
+        this.warmScript = new DefaultRedisScript<>();
+        this.warmScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/mastery_warm.lua")));
+        this.warmScript.setResultType(List.class);
+    }
+
+    public static String stateKey(Long studentId) {
+        return StudentKey.STATE.of(studentId);
+    }
+
+    public static String weakKey(Long studentId) {
+        return StudentKey.WEAK_KPS.of(studentId);
+    }
+
+    public static String strongKey(Long studentId) {
+        return StudentKey.STRONG_KPS.of(studentId);
+    }
+
+    public static String tracedKey(Long studentId) {
+        return StudentKey.TRACED_REQUESTS.of(studentId);
+    }
+
+    /**
+     * 原子地按顺序执行一组知识追踪更新 (一次 Redis 往返，每步按其模型分支计算)
+     * <p>
+     * 没有回退值且 Redis 中不存在的步骤会导致整批不执行，结果中返回这些步骤的下标，
+     * 调用方通过 {@link #warm} 从 MySQL 回源后重试；已预热的 hash 中缺失的知识点以 P(L0) 为先验。
+     * 步骤携带的 {@link Propagation} 在该步骤之后于同一脚本内执行: 已预热的 hash 中缺失的知识点以其 P(L0) 为先验；
+     * 未预热时缺失的传播目标与缺失的步骤一样报告为未命中 (回源后重试)，显式补齐先验的步骤则跳过这些目标。
+     * 先验按 {@link ForgettingCurve} 衰减到步骤的作答时间后再参与计算，before 为衰减后的值；
+     * 写入的更新时间为作答时间与原更新时间中较晚的一个，晚到的离线答题不会把更新时间往回拨。
+     * 携带请求 ID 的步骤在脚本内按学生去重: 已生效过的请求 ID (保留 {@link #STATE_TTL_DAYS} 天) 整步跳过，
+     * 结果中标记为重复，因此超时后的重试、死信重放都可以安全地再次提交同一步骤。
+     * 涉及多个学生时脚本跨 slot，Redis Cluster 下需按学生拆分调用 (见 KnowledgeTracingService)。
+     */
+    @SuppressWarnings("unchecked")
+    public StepOutcome applySteps(List<BktStep> steps) {
+        Map<Long, Integer> keyIndex = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>(5 + steps.size() * ARGS_PER_STEP);
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(STATE_TTL_DAYS)));
+        args.add(String.valueOf(nowEpochSecond()));
+        args.add(String.valueOf(forgettingCurve.scriptHalfLifeSeconds()));
+        args.add(String.valueOf(forgettingCurve.getFloor()));
+        args.add(WARM_FIELD);
+        args.add(String.valueOf(strongBasisPoints));
+        for (BktStep step : steps) {
+            Integer idx = keyIndex.get(step.studentId());
+            if (idx == null) {
+                idx = keyIndex.size() + 1;
+                keyIndex.put(step.studentId(), idx);
+                keys.add(stateKey(step.studentId()));
+                keys.add(weakKey(step.studentId()));
+                keys.add(strongKey(step.studentId()));
+                keys.add(tracedKey(step.studentId()));
+            }
+            Propagation propagation = step.propagation();
+            args.add(String.valueOf(idx));
+            args.add(step.kpId().toString());
+            args.add(step.fallback() != null ? String.valueOf(step.fallback()) : "");
+            args.add(String.valueOf(step.params().pInit()));
+            args.add(step.model().code());
+            step.model().appendScriptArgs(step.params(), args);
+            args.add(step.correct() ? "1" : "0");
+            args.add(String.valueOf(step.answeredAt()));
+            args.add(step.requestId() != null ? step.requestId() : "");
+            args.add(String.valueOf(propagation.size()));
+            for (int i = 0; i < propagation.size(); i++) {
+                args.add(String.valueOf(propagation.kpIds()[i]));
+                args.add(String.valueOf(propagation.weights()[i]));
+                args.add(String.valueOf(propagation.priors()[i]));
+            }
+        }
+
+        List<String> reply = masteryRedisTemplate.execute(bktStepScript, keys, args.toArray());
+        if (reply == null) {
+            throw new IllegalStateException("BKT step script returned no result");
+        }
+        if (!reply.isEmpty() && MISS.equals(reply.get(0))) {
+            int[] missing = new int[reply.size() - 1];
+            for (int i = 1; i < reply.size(); i++) {
+                missing[i - 1] = Integer.parseInt(reply.get(i));
+            }
+            return new StepOutcome(missing, null, null, null, null, Collections.emptyList());
+        }
+        double[] before = new double[steps.size()];
+        double[] after = new double[steps.size()];
+        long[] updatedAt = new long[steps.size()];
+        boolean[] duplicate = new boolean[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            if (DUPLICATE.equals(reply.get(2 * i))) {
+                duplicate[i] = true;
+                before[i] = Double.NaN;
+                after[i] = Double.NaN;
+                continue;
+            }
+            before[i] = MasteryCodec.decode(reply.get(2 * i));
+            after[i] = MasteryCodec.decode(reply.get(2 * i + 1));
+            updatedAt[i] = MasteryCodec.decodeTimestamp(reply.get(2 * i + 1));
+        }
+        // Tail: (step index, propagated KP, new value) triples in execution order
+        List<Propagated> propagated = new ArrayList<>();
+        for (int r = 2 * steps.size(); r + 2 < reply.size(); r += 3) {
+            int stepIndex = Integer.parseInt(reply.get(r));
+            propagated.add(new Propagated(stepIndex, steps.get(stepIndex).studentId(),
+                    Long.parseLong(reply.get(r + 1)), MasteryCodec.decode(reply.get(r + 2)),
+                    MasteryCodec.decodeTimestamp(reply.get(r + 2))));
+        }
+        return new StepOutcome(new int[0], before, after, updatedAt, duplicate, propagated);
+    }
+
+    /**
+     * 读取单个知识点的掌握度 (已按遗忘曲线衰减)
+     *
+     * @return 掌握概率，不存在时返回 null
+     */
+    public Double get(Long studentId, Long kpId) {
+        Object raw = masteryRedisTemplate.opsForHash().get(stateKey(studentId), kpId.toString());
+        if (raw == null) {
+            return null;
+        }
+        double value = MasteryCodec.decode(raw.toString());
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        return forgettingCurve.decay(value, MasteryCodec.decodeTimestamp(raw.toString()), nowEpochSecond());
+    }
+
+    /**
+     * 读取学生的完整掌握度向量 (HGETALL 一次往返)，值为未衰减的原始观测
+     */
+    public MasteryVector getVector(Long studentId) {
+        return toVector(masteryRedisTemplate.opsForHash().entries(stateKey(studentId)));
+    }
+
+    /**
+     * 读取已预热的掌握度向量 (HGETALL 一次往返)
+     *
+     * @return hash 带预热标记时返回其向量 (可能为空向量)，否则返回 null，调用方需回源
+     */
+    public MasteryVector getWarmVector(Long studentId) {
+        Map<Object, Object> entries = masteryRedisTemplate.opsForHash().entries(stateKey(studentId));
+        if (!entries.containsKey(WARM_FIELD)) {
+            return null;
+        }
+        return toVector(entries);
+    }
+
+    /**
+     * 读取已预热 hash 中的单个知识点 (HMGET 知识点与预热标记，一次往返，不读整个 hash)
+     *
+     * @return hash 未预热时返回 null，调用方需回源；已预热时返回只含该知识点的向量 (没有记录时为空向量)，值未衰减
+     */
+    public MasteryVector getWarmEntry(Long studentId, Long kpId) {
+        List<Object> values = masteryRedisTemplate.opsForHash()
+                .multiGet(stateKey(studentId), List.of(kpId.toString(), WARM_FIELD));
+        if (values == null || values.size() < 2 || values.get(1) == null) {
+            return null;
+        }
+        Object raw = values.get(0);
+        if (raw == null) {
+            return MasteryVector.EMPTY;
+        }
+        double prob = MasteryCodec.decode(raw.toString());
+        if (Double.isNaN(prob)) {
+            return MasteryVector.EMPTY;
+        }
+        return new MasteryVector(new long[]{kpId}, new double[]{prob},
+                new long[]{MasteryCodec.decodeTimestamp(raw.toString())});
+    }
+
+    /**
+     * 学生画像是否已从 MySQL 完整回源 (HEXISTS)
+     */
+    public boolean isWarm(Long studentId) {
+        return Boolean.TRUE.equals(masteryRedisTemplate.opsForHash().hasKey(stateKey(studentId), WARM_FIELD));
+    }
+
+    /**
+     * 最薄弱的知识点 (按最后观测的掌握度升序)
+     *
+     * @return 至多 limit 个知识点 ID；画像不存在时为空
+     */
+    public long[] weakest(Long studentId, int limit) {
+        return toIds(masteryRedisTemplate.opsForZSet().reverseRange(weakKey(studentId), 0, limit - 1));
+    }
+
+    /**
+     * 已掌握的知识点 (按最后观测的掌握度降序)
+     *
+     * @return 至多 limit 个知识点 ID；画像不存在时为空
+     */
+    public long[] strongest(Long studentId, int limit) {
+        return toIds(masteryRedisTemplate.opsForZSet().reverseRange(strongKey(studentId), 0, limit - 1));
+    }
+
+    /**
+     * 把从 MySQL 回源的完整向量合并进 Redis 并打上预热标记 (一次脚本调用)
+     * hash 不存在时整体写入，已存在时只补齐缺失字段，不覆盖并发写入的更新值
+     *
+     * @return 合并后的完整向量 (未衰减)
+     */
+    @SuppressWarnings("unchecked")
+    public MasteryVector warm(Long studentId, MasteryVector vector) {
+        List<String> args = new ArrayList<>(4 + vector.size() * 2);
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(STATE_TTL_DAYS)));
+        args.add(WARM_FIELD);
+        args.add(String.valueOf(nowEpochSecond()));
+        args.add(String.valueOf(strongBasisPoints));
+        for (int i = 0; i < vector.size(); i++) {
+            args.add(Long.toString(vector.kpIds()[i]));
+            args.add(MasteryCodec.encode(vector.probabilities()[i], vector.updatedAt()[i]));
+        }
+        List<String> reply = masteryRedisTemplate.execute(warmScript,
+                List.of(stateKey(studentId), weakKey(studentId), strongKey(studentId)), args.toArray());
+        if (reply == null) {
+            throw new IllegalStateException("Mastery warm script returned no result");
+        }
+        // HGETALL reply is a flat field/value list
+        Map<Object, Object> entries = new HashMap<>(reply.size());
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            entries.put(reply.get(i), reply.get(i + 1));
+        }
+        return toVector(entries);
+    }
+
+    /**
+     * 流水线读取多个学生的完整掌握度向量 (一次往返)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<Long, MasteryVector> getVectors(List<Long> studentIds) {
+        if (studentIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Object> results = masteryRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Long studentId : studentIds) {
+                    operations.opsForHash().entries(stateKey(studentId));
+                }
+                return null;
+            }
+        });
+        Map<Long, MasteryVector> vectors = new LinkedHashMap<>();
+        for (int i = 0; i < studentIds.size(); i++) {
+            vectors.put(studentIds.get(i), toVector((Map<Object, Object>) results.get(i)));
+        }
+        return vectors;
+    }
+
+    /**
+     * 覆盖写入学生的完整掌握度向量 (HMSET + EXPIRE)
+     */
+    public void putVector(Long studentId, MasteryVector vector) {
+        writeVectors(Map.of(studentId, vector), false);
+    }
+
+    /**
+     * 流水线批量写入多个学生的掌握度向量及画像 ZSET (一次往返)
+     * 更新时间为 0 的条目按当前时间写入
+     *
+     * @param byStudent 学生 ID -> 掌握度向量
+     * @param replace   为 true 时先删除原画像，用于全量重建 (重建结果是完整向量，同时打上预热标记)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void writeVectors(Map<Long, MasteryVector> byStudent, boolean replace) {
+        if (byStudent.isEmpty()) {
+            return;
+        }
+        long now = nowEpochSecond();
+        masteryRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                byStudent.forEach((studentId, vector) -> {
+                    if (vector.isEmpty() && !replace) {
+                        return;
+                    }
+                    String key = stateKey(studentId);
+                    String weakKey = weakKey(studentId);
+                    String strongKey = strongKey(studentId);
+                    if (vector.isEmpty()) {
+                        operations.delete(List.of(key, weakKey, strongKey));
+                        return;
+                    }
+                    Map<String, String> values = new HashMap<>(vector.size() * 2);
+                    Set<TypedTuple<String>> weak = new HashSet<>();
+                    Set<TypedTuple<String>> strong = new HashSet<>();
+                    for (int i = 0; i < vector.size(); i++) {
+                        long updatedAt = vector.updatedAt()[i] > 0 ? vector.updatedAt()[i] : now;
+                        String field = Long.toString(vector.kpIds()[i]);
+                        String encoded = MasteryCodec.encode(vector.probabilities()[i], updatedAt);
+                        values.put(field, encoded);
+                        // Same partition as bkt_step.lua rank()
+                        int bp = MasteryCodec.toBasisPoints(vector.probabilities()[i]);
+                        if (bp >= strongBasisPoints) {
+                            strong.add(new DefaultTypedTuple<>(field, bp / (double) MasteryCodec.SCALE));
+                        } else {
+                            weak.add(new DefaultTypedTuple<>(field, 1 - bp / (double) MasteryCodec.SCALE));
+                        }
+                    }
+                    if (replace) {
+                        operations.delete(List.of(key, weakKey, strongKey));
+                        values.put(WARM_FIELD, String.valueOf(now));
+                    } else {
+                        if (!weak.isEmpty()) {
+                            operations.opsForZSet().remove(strongKey, weak.stream().map(TypedTuple::getValue).toArray());
+                        }
+                        if (!strong.isEmpty()) {
+                            operations.opsForZSet().remove(weakKey, strong.stream().map(TypedTuple::getValue).toArray());
+                        }
+                    }
+                    operations.opsForHash().putAll(key, values);
+                    if (!weak.isEmpty()) {
+                        operations.opsForZSet().add(weakKey, weak);
+                    }
+                    if (!strong.isEmpty()) {
+                        operations.opsForZSet().add(strongKey, strong);
+                    }
+                    operations.expire(key, STATE_TTL_DAYS, TimeUnit.DAYS);
+                    operations.expire(weakKey, STATE_TTL_DAYS, TimeUnit.DAYS);
+                    operations.expire(strongKey, STATE_TTL_DAYS, TimeUnit.DAYS);
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 把旧 JSON 小数格式的掌握度原地改写为万分位整数
+     * SCAN 遍历新格式 student:{*}:state 和尚未改名的旧格式 student:state:*，
+     * 每个 hash 只重写旧格式字段，可在线执行、可重复执行，与学生 key 迁移的先后无关
+     *
+     * @return 改写的字段数
+     */
+    public long migrateLegacyValues() {
+        long migrated = migrateLegacyValues(StudentKey.STATE.pattern())
+                + migrateLegacyValues(StudentKey.STATE.legacyPattern());
+        log.info("Migrated {} legacy mastery values to basis points", migrated);
+        return migrated;
+    }
+
+    private long migrateLegacyValues(String pattern) {
+        long migrated = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(500).build();
+        try (Cursor<String> cursor = masteryRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                Map<Object, Object> entries = masteryRedisTemplate.opsForHash().entries(key);
+                Map<String, String> rewritten = new HashMap<>();
+                entries.forEach((field, raw) -> {
+                    String value = raw.toString();
+                    if (MasteryCodec.isLegacy(value)) {
+                        double prob = MasteryCodec.decode(value);
+                        if (!Double.isNaN(prob)) {
+                            rewritten.put(field.toString(), MasteryCodec.encode(prob));
+                        }
+                    }
+                });
+                if (!rewritten.isEmpty()) {
+                    masteryRedisTemplate.opsForHash().putAll(key, rewritten);
+                    migrated += rewritten.size();
+                }
+            }
+        }
+        return migrated;
+    }
+
+    private static long nowEpochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static long[] toIds(Set<String> members) {
+        if (members == null || members.isEmpty()) {
+            return new long[0];
+        }
+        long[] ids = new long[members.size()];
+        int n = 0;
+        for (String member : members) {
+            try {
+                ids[n] = Long.parseLong(member);
+                n++;
+            } catch (NumberFormatException ignored) {
+                // Foreign member, skip
+            }
+        }
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    private static MasteryVector toVector(Map<Object, Object> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return MasteryVector.EMPTY;
+        }
+        long[] kpIds = new long[entries.size()];
+        double[] probs = new double[entries.size()];
+        long[] times = new long[entries.size()];
+        int n = 0;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (WARM_FIELD.equals(entry.getKey())) {
+                continue;
+            }
+            String raw = entry.getValue().toString();
+            double prob = MasteryCodec.decode(raw);
+            if (Double.isNaN(prob)) {
+                continue;
+            }
+            try {
+                kpIds[n] = Long.parseLong(entry.getKey().toString());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            probs[n] = prob;
+            times[n] = MasteryCodec.decodeTimestamp(raw);
+            n++;
+        }
+        if (n == kpIds.length) {
+            return new MasteryVector(kpIds, probs, times);
+        }
+        return new MasteryVector(Arrays.copyOf(kpIds, n), Arrays.copyOf(probs, n), Arrays.copyOf(times, n));
+    }
+
+    /**
+     * 一次知识追踪更新
+     *
+     * @param answeredAt 作答时间 (epoch 秒)，0 表示当前时间
+     * @param requestId  答题的请求 ID，同一学生的同一请求 ID 只生效一次；为 null 时不去重
+     * @param model      使用的模型 (按知识点学科选择)
+     * @param params     知识点参数 (BKT 使用，其他模型取 P(L0) 作为初始值)
+     * @param fallback   Redis 中没有该知识点时使用的先验 (来自 MySQL 或 P(L0))，为 null 表示未知
+     */
+    public record BktStep(Long studentId, Long kpId, boolean correct, long answeredAt, String requestId,
+                          KnowledgeTracingModel model, BktParams params, Double fallback, Propagation propagation) {
+
+        public BktStep withFallback(double value) {
+            return new BktStep(studentId, kpId, correct, answeredAt, requestId, model, params, value, propagation);
+        }
+    }
+
+    /**
+     * 传播产生的掌握度变化
+     *
+     * @param stepIndex 触发传播的步骤下标
+     * @param updatedAt 写入的更新时间 (epoch 秒)
+     */
+    public record Propagated(int stepIndex, Long studentId, Long kpId, double value, long updatedAt) {
+    }
+
+    /**
+     * 脚本执行结果: missing 非空时 before/after/updatedAt/duplicate 为 null
+     *
+     * @param updatedAt  每个步骤写入的更新时间 (epoch 秒)
+     * @param duplicate  步骤的请求 ID 已生效过、本次跳过 (before/after 为 NaN)
+     * @param propagated 传播改写的知识点，按执行顺序排列
+     */
+    public record StepOutcome(int[] missing, double[] before, double[] after, long[] updatedAt, boolean[] duplicate,
+                              List<Propagated> propagated) {
+
+        public boolean hasMissing() {
+            return missing.length > 0;
+        }
+    }
+}
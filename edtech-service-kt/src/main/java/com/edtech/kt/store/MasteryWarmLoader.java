@@ -0,0 +1,118 @@
+package com.edtech.kt.store;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.edtech.kt.model.MasteryVector;
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 掌握度向量回源加载器 (read-through)
+ * <p>
+ * Redis 未命中时一次查询取回学生的全部 knowledge_state，再通过一次脚本调用写入 Redis 并打上预热标记，
+ * 之后该学生缺失的知识点直接视为没有记录，不再逐个回源。
+ * 同一学生的并发未命中合并为一次加载 (single-flight)，其余线程等待并共享结果。
+ */
+@Component
+@Slf4j
+public class MasteryWarmLoader {
+
+    private final KnowledgeStateMapper knowledgeStateMapper;
+    private final MasteryStore masteryStore;
+
+    private final ConcurrentHashMap<Long, CompletableFuture<MasteryVector>> inFlight = new ConcurrentHashMap<>();
+
+    private final Timer loadTimer;
+    private final Counter coalescedCounter;
+
+    public MasteryWarmLoader(KnowledgeStateMapper knowledgeStateMapper,
+                             MasteryStore masteryStore,
+                             MeterRegistry meterRegistry) {
+        this.knowledgeStateMapper = knowledgeStateMapper;
+        this.masteryStore = masteryStore;
+        this.loadTimer = Timer.builder("kt.mastery.warm_load")
+                .description("Full mastery vector read-through from MySQL into Redis")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("kt.mastery.warm_load.coalesced")
+                .description("Cache misses served by an in-flight warm load")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 回源加载学生的完整掌握度向量并预热 Redis
+     * Redis 写入失败时仍返回 MySQL 中的向量，调用方可据此补齐先验
+     *
+     * @return 合并后的完整向量 (未衰减)
+     */
+    public MasteryVector load(Long studentId) {
+        CompletableFuture<MasteryVector> mine = new CompletableFuture<>();
+        CompletableFuture<MasteryVector> running = inFlight.putIfAbsent(studentId, mine);
+        if (running != null) {
+            coalescedCounter.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            MasteryVector vector = loadTimer.record(() -> loadAndWarm(studentId));
+            mine.complete(vector);
+            return vector;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(studentId, mine);
+        }
+    }
+
+    private MasteryVector loadAndWarm(Long studentId) {
+        List<KnowledgeState> rows = knowledgeStateMapper.selectList(new LambdaQueryWrapper<KnowledgeState>()
+                .eq(KnowledgeState::getStudentId, studentId));
+        MasteryVector stored = toVector(rows);
+        try {
+            return masteryStore.warm(studentId, stored);
+        } catch (Exception e) {
+            log.warn("Failed to warm mastery cache for student {}, serving MySQL state: {}", studentId, e.getMessage());
+            return stored;
+        }
+    }
+
+    private static MasteryVector toVector(List<KnowledgeState> rows) {
+        long[] kpIds = new long[rows.size()];
+        double[] probs = new double[rows.size()];
+        long[] times = new long[rows.size()];
+        int n = 0;
+        for (KnowledgeState row : rows) {
+            if (row.getKnowledgePointId() == null || row.getMasteryProbability() == null) {
+                continue;
+            }
+            kpIds[n] = row.getKnowledgePointId();
+            probs[n] = row.getMasteryProbability().doubleValue();
+            times[n] = toEpochSecond(row.getUpdatedAt());
+            n++;
+        }
+        if (n == rows.size()) {
+            return new MasteryVector(kpIds, probs, times);
+        }
+        return new MasteryVector(Arrays.copyOf(kpIds, n), Arrays.copyOf(probs, n), Arrays.copyOf(times, n));
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
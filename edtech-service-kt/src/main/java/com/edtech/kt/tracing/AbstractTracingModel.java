@@ -0,0 +1,51 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.service.MasteryQueryService;
+
+/**
+ * 批量打分的公共实现: 一次读出全部掌握度到原始数组，原地换算为答对概率
+ */
+public abstract class AbstractTracingModel implements KnowledgeTracingModel {
+
+    protected static final double MIN_P = 0.0001;
+    protected static final double MAX_P = 0.9999;
+
+    private final MasteryQueryService masteryQueryService;
+    private final KnowledgeCatalog knowledgeCatalog;
+
+    protected AbstractTracingModel(MasteryQueryService masteryQueryService, KnowledgeCatalog knowledgeCatalog) {
+        this.masteryQueryService = masteryQueryService;
+        this.knowledgeCatalog = knowledgeCatalog;
+    }
+
+    @Override
+    public double[] score(long studentId, long[] kpIds) {
+        double[] scores = new double[kpIds.length];
+        masteryQueryService.fillMastery(studentId, kpIds, scores);
+        return score(kpIds, scores);
+    }
+
+    @Override
+    public double[] score(long[] kpIds, double[] mastery) {
+        for (int i = 0; i < kpIds.length; i++) {
+            BktParams params = knowledgeCatalog.getParams(kpIds[i]);
+            double p = Double.isNaN(mastery[i]) ? params.pInit() : mastery[i];
+            mastery[i] = predictCorrect(p, params);
+        }
+        return mastery;
+    }
+
+    protected static double clamp(double p) {
+        return Math.max(MIN_P, Math.min(MAX_P, p));
+    }
+
+    protected static double logit(double p) {
+        return Math.log(p / (1 - p));
+    }
+
+    protected static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+}
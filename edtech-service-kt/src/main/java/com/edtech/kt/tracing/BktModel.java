@@ -0,0 +1,46 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.service.KnowledgeTracingService;
+import com.edtech.kt.service.MasteryQueryService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 贝叶斯知识追踪 (BKT)，参数取自 knowledge_point 的 P(T) / P(G) / P(S)
+ */
+@Component
+public class BktModel extends AbstractTracingModel {
+
+    public static final String CODE = "BKT";
+
+    public BktModel(MasteryQueryService masteryQueryService, KnowledgeCatalog knowledgeCatalog) {
+        super(masteryQueryService, knowledgeCatalog);
+    }
+
+    @Override
+    public String code() {
+        return CODE;
+    }
+
+    @Override
+    public double update(double mastery, boolean correct, BktParams params) {
+        return KnowledgeTracingService.calculateNewProbabilityBKT(mastery, correct,
+                params.pTransit(), params.pGuess(), params.pSlip());
+    }
+
+    @Override
+    public void appendScriptArgs(BktParams params, List<String> args) {
+        args.add(String.valueOf(params.pTransit()));
+        args.add(String.valueOf(params.pGuess()));
+        args.add(String.valueOf(params.pSlip()));
+    }
+
+    @Override
+    public double predictCorrect(double mastery, BktParams params) {
+        // P(correct) = P(L) * (1 - P(S)) + (1 - P(L)) * P(G)
+        return mastery * (1 - params.pSlip()) + (1 - mastery) * params.pGuess();
+    }
+}
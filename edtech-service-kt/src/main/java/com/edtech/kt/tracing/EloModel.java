@@ -0,0 +1,51 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.service.MasteryQueryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Elo 评分: 学生在知识点上的能力与题目难度之差经 logistic 得到答对概率 p
+ * <p>
+ * 作答后能力按 K·(结果 - 期望) 调整，即 logit(p) += K·(y - p)；状态直接保存 p，初始 p = P(L0)。
+ */
+@Component
+public class EloModel extends AbstractTracingModel {
+
+    public static final String CODE = "ELO";
+
+    private final double k;
+
+    public EloModel(MasteryQueryService masteryQueryService, KnowledgeCatalog knowledgeCatalog,
+                    @Value("${kt.models.elo.k:0.4}") double k) {
+        super(masteryQueryService, knowledgeCatalog);
+        this.k = k;
+    }
+
+    @Override
+    public String code() {
+        return CODE;
+    }
+
+    @Override
+    public double update(double mastery, boolean correct, BktParams params) {
+        double p = clamp(mastery);
+        return clamp(sigmoid(logit(p) + k * ((correct ? 1 : 0) - p)));
+    }
+
+    @Override
+    public void appendScriptArgs(BktParams params, List<String> args) {
+        args.add(String.valueOf(k));
+        args.add("0");
+        args.add("0");
+    }
+
+    @Override
+    public double predictCorrect(double mastery, BktParams params) {
+        return mastery;
+    }
+}
@@ -0,0 +1,51 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.model.BktParams;
+
+import java.util.List;
+
+/**
+ * 知识追踪模型 SPI
+ * <p>
+ * 所有模型共享同一种状态: 每个 (学生, 知识点) 一个 [0, 1] 的掌握度，
+ * 因此存储、衰减、传播、重放都与模型无关，切换模型不需要迁移数据。
+ * 在线更新在 lua/bkt_step.lua 中按 {@link #code()} 分支执行，{@link #update} 是其 Java 版本 (重放、基准测试)。
+ */
+public interface KnowledgeTracingModel {
+
+    /**
+     * 模型代码，同时是 Lua 脚本中的分支标识
+     */
+    String code();
+
+    /**
+     * 一次作答后的新掌握度，必须与 lua/bkt_step.lua 中对应分支一致
+     */
+    double update(double mastery, boolean correct, BktParams params);
+
+    /**
+     * 追加传给 Lua 脚本的 3 个模型参数 (a, b, c)
+     */
+    void appendScriptArgs(BktParams params, List<String> args);
+
+    /**
+     * 由掌握度预测下一题答对的概率
+     */
+    double predictCorrect(double mastery, BktParams params);
+
+    /**
+     * 批量打分: 学生在每个知识点下一题答对的概率
+     *
+     * @param kpIds 知识点 ID
+     * @return 与 kpIds 等长的原始数组
+     */
+    double[] score(long studentId, long[] kpIds);
+
+    /**
+     * 批量打分: 由调用方已读出的掌握度换算答对概率，不再读取存储
+     *
+     * @param mastery 与 kpIds 等长的当前掌握度，没有记录的位置为 NaN (按 pInit 计)；原地改写为答对概率
+     * @return mastery 本身
+     */
+    double[] score(long[] kpIds, double[] mastery);
+}
@@ -0,0 +1,132 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.service.MasteryQueryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 知识追踪模型注册表: 按知识点所属学科选择模型
+ * <p>
+ * 配置示例: kt.models.default=BKT, kt.models.by-subject=English:ELO,Physics:PFA (学科不区分大小写)
+ */
+@Component
+@Slf4j
+public class KnowledgeTracingModels {
+
+    private final KnowledgeCatalog knowledgeCatalog;
+    private final MasteryQueryService masteryQueryService;
+    private final Map<String, KnowledgeTracingModel> byCode = new HashMap<>();
+    private final Map<String, KnowledgeTracingModel> bySubject = new HashMap<>();
+    private final KnowledgeTracingModel defaultModel;
+
+    public KnowledgeTracingModels(List<KnowledgeTracingModel> models,
+                                  KnowledgeCatalog knowledgeCatalog,
+                                  MasteryQueryService masteryQueryService,
+                                  @Value("${kt.models.default:BKT}") String defaultCode,
+                                  @Value("${kt.models.by-subject:}") String bySubjectSpec) {
+        this.knowledgeCatalog = knowledgeCatalog;
+        this.masteryQueryService = masteryQueryService;
+        for (KnowledgeTracingModel model : models) {
+            byCode.put(model.code(), model);
+        }
+        KnowledgeTracingModel fallback = byCode.get(defaultCode.trim().toUpperCase(Locale.ROOT));
+        if (fallback == null) {
+            log.warn("Unknown default knowledge tracing model {}, using {}", defaultCode, BktModel.CODE);
+            fallback = byCode.get(BktModel.CODE);
+        }
+        this.defaultModel = fallback;
+
+        for (String entry : bySubjectSpec.split(",")) {
+            String[] pair = entry.split(":");
+            if (pair.length != 2) {
+                continue;
+            }
+            KnowledgeTracingModel model = byCode.get(pair[1].trim().toUpperCase(Locale.ROOT));
+            if (model == null) {
+                log.warn("Unknown knowledge tracing model {} for subject {}, ignored", pair[1], pair[0]);
+                continue;
+            }
+            bySubject.put(pair[0].trim().toLowerCase(Locale.ROOT), model);
+        }
+        log.info("Knowledge tracing models: default={}, bySubject={}", defaultModel.code(), bySubject.keySet());
+    }
+
+    /**
+     * 知识点使用的模型
+     */
+    public KnowledgeTracingModel forKnowledgePoint(long kpId) {
+        if (bySubject.isEmpty()) {
+            return defaultModel;
+        }
+        String subject = knowledgeCatalog.getSubject(kpId);
+        if (subject == null) {
+            return defaultModel;
+        }
+        return bySubject.getOrDefault(subject.toLowerCase(Locale.ROOT), defaultModel);
+    }
+
+    public KnowledgeTracingModel get(String code) {
+        return byCode.getOrDefault(code, defaultModel);
+    }
+
+    /**
+     * 批量打分，每个知识点使用其学科对应的模型；掌握度只读取一次
+     *
+     * @return 与 kpIds 等长的答对概率
+     */
+    public double[] score(long studentId, long[] kpIds) {
+        double[] mastery = new double[kpIds.length];
+        masteryQueryService.fillMastery(studentId, kpIds, mastery);
+        return score(kpIds, mastery);
+    }
+
+    /**
+     * 由已读出的掌握度批量打分，调用方已持有掌握度时使用，避免重复读取
+     *
+     * @param mastery 与 kpIds 等长的当前掌握度，没有记录的位置为 NaN；原地改写为答对概率
+     * @return mastery 本身
+     */
+    public double[] score(long[] kpIds, double[] mastery) {
+        if (bySubject.isEmpty() || kpIds.length == 0) {
+            return defaultModel.score(kpIds, mastery);
+        }
+        // Group positions by model; in practice a request mixes at most a couple of subjects
+        Map<KnowledgeTracingModel, int[]> positions = new HashMap<>();
+        Map<KnowledgeTracingModel, Integer> counts = new HashMap<>();
+        KnowledgeTracingModel[] assigned = new KnowledgeTracingModel[kpIds.length];
+        for (int i = 0; i < kpIds.length; i++) {
+            assigned[i] = forKnowledgePoint(kpIds[i]);
+            counts.merge(assigned[i], 1, Integer::sum);
+        }
+        if (counts.size() == 1) {
+            return assigned[0].score(kpIds, mastery);
+        }
+        counts.forEach((model, n) -> positions.put(model, new int[n]));
+        Map<KnowledgeTracingModel, Integer> fill = new HashMap<>();
+        for (int i = 0; i < kpIds.length; i++) {
+            int at = fill.merge(assigned[i], 1, Integer::sum) - 1;
+            positions.get(assigned[i])[at] = i;
+        }
+
+        positions.forEach((model, idx) -> {
+            long[] subsetIds = new long[idx.length];
+            double[] subset = new double[idx.length];
+            for (int j = 0; j < idx.length; j++) {
+                subsetIds[j] = kpIds[idx[j]];
+                subset[j] = mastery[idx[j]];
+            }
+            model.score(subsetIds, subset);
+            for (int j = 0; j < idx.length; j++) {
+                mastery[idx[j]] = subset[j];
+            }
+        });
+        return mastery;
+    }
+}
@@ -0,0 +1,54 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.service.MasteryQueryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Performance Factors Analysis (PFA)
+ * <p>
+ * m = β + γ·成功次数 + ρ·失败次数，p = σ(m)。由于 m 对次数是可加的，
+ * 状态直接保存 p: 每次作答 logit(p) 加 γ (答对) 或 ρ (答错)，初始 p = P(L0) 即 β = logit(P(L0))。
+ */
+@Component
+public class PfaModel extends AbstractTracingModel {
+
+    public static final String CODE = "PFA";
+
+    private final double gamma;
+    private final double rho;
+
+    public PfaModel(MasteryQueryService masteryQueryService, KnowledgeCatalog knowledgeCatalog,
+                    @Value("${kt.models.pfa.gamma:0.2}") double gamma,
+                    @Value("${kt.models.pfa.rho:-0.1}") double rho) {
+        super(masteryQueryService, knowledgeCatalog);
+        this.gamma = gamma;
+        this.rho = rho;
+    }
+
+    @Override
+    public String code() {
+        return CODE;
+    }
+
+    @Override
+    public double update(double mastery, boolean correct, BktParams params) {
+        return clamp(sigmoid(logit(clamp(mastery)) + (correct ? gamma : rho)));
+    }
+
+    @Override
+    public void appendScriptArgs(BktParams params, List<String> args) {
+        args.add(String.valueOf(gamma));
+        args.add(String.valueOf(rho));
+        args.add("0");
+    }
+
+    @Override
+    public double predictCorrect(double mastery, BktParams params) {
+        return mastery;
+    }
+}
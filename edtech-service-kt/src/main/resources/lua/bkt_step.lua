@@ -0,0 +1,282 @@
+-- 原子知识追踪更新: 读取-计算-写回在 Redis 单线程内完成，并发提交不会丢失更新
+-- KEYS      每个学生 4 个 key (学生序号 k 对应 KEYS[4k-3..4k]): 状态 hash、薄弱 ZSET、已掌握 ZSET、已生效请求 ZSET
+-- ARGV[1]   TTL (秒)，也是已生效请求 ID 的保留时长
+-- ARGV[2]   当前时间 (epoch 秒)，步骤没有作答时间时使用
+-- ARGV[3]   遗忘半衰期 (秒)，0 表示不衰减
+-- ARGV[4]   遗忘下限
+-- ARGV[5]   预热标记字段 (MasteryStore.WARM_FIELD)
+-- ARGV[6]   已掌握阈值 (万分位)
+-- ARGV[7..] 每个步骤: student, field, fallback, init, model, a, b, c, correct(1/0), time, rid, m, 随后 m 组 (传播 field, 权重, 先验)
+--           time: 作答时间 (epoch 秒)，0 表示当前时间；离线同步的答题按各自的作答时间衰减与记录
+--           rid: 答题的请求 ID，可为空；已记录在已生效请求 ZSET 中 (或本次调用中已出现) 的步骤跳过，
+--                转移与传播都不执行，不参与缺失检测，结果中 before 为 'DUP'。重试、死信重放因此不会重复计入
+--           model: BKT (a=pT, b=pG, c=pS) | PFA (a=gamma, b=rho) | ELO (a=K)，见 KnowledgeTracingModel 实现
+-- hash 带预热标记 (已从 MySQL 完整回源) 时缺失字段表示没有记录，以 init (P(L0)) 为先验；
+-- 否则某步骤 fallback 为空且 hash 中没有该字段或某个传播字段时不做任何修改，返回 {'MISS', 步骤序号...}
+-- 否则按顺序执行，返回 {before1, after1, ..., beforeN, afterN, 步骤序号, 传播 field, 新值, ...}
+-- before 为万分位整数，after 与传播的新值为写入的 "万分位整数:更新时间"；跳过的步骤为 {'DUP', ''}
+-- 传播: 权重 w > 0 时 p += w * (1 - p)，w < 0 时 p += w * p。已预热的 hash 中缺失的传播字段以其先验 (P(L0)) 起步；
+-- 未预热时无法区分 "没有记录" 与 "未回源"，带 fallback 的步骤跳过缺失的传播字段
+-- 值以 "万分位整数:更新时间" 存储 (见 MasteryCodec)，按遗忘曲线衰减到步骤的作答时间，同时兼容旧的 Jackson 小数格式
+-- 更新时间取 max(作答时间, 原更新时间): 晚到的旧答题不衰减已有的值，也不把更新时间往回拨
+-- 每次写入同时维护画像 ZSET: 低于阈值进薄弱集合 (score = 1 - p)，否则进已掌握集合 (score = p)
+local ttl = tonumber(ARGV[1])
+local now = tonumber(ARGV[2])
+local halfLife = tonumber(ARGV[3])
+local floor = tonumber(ARGV[4])
+local warmField = ARGV[5]
+local strongBp = tonumber(ARGV[6])
+
+-- Keep in sync with ForgettingCurve.decay
+local function decay(p, updatedAt, at)
+    if halfLife <= 0 or updatedAt == nil or updatedAt <= 0 or at <= updatedAt or p <= floor then
+        return p
+    end
+    return floor + (p - floor) * math.pow(0.5, (at - updatedAt) / halfLife)
+end
+
+-- Undecayed value and its timestamp (0 for legacy values without one)
+local function stored(key, field)
+    local raw = redis.call('HGET', key, field)
+    if not raw then
+        return nil
+    end
+    if string.find(raw, '[%.eE]') then
+        return tonumber(raw), 0
+    end
+    local bp, updatedAt = string.match(raw, '^(%d+):(%d+)$')
+    if bp == nil then
+        local v = tonumber(raw)
+        if v == nil then
+            return nil
+        end
+        return v / 10000, 0
+    end
+    return tonumber(bp) / 10000, tonumber(updatedAt)
+end
+
+local function encode(bp, stamp)
+    return tostring(bp) .. ':' .. tostring(stamp)
+end
+
+local function toBasisPoints(p)
+    return math.floor(p * 10000 + 0.5)
+end
+
+local function clamp(p)
+    return math.max(0.0001, math.min(0.9999, p))
+end
+
+local function logit(p)
+    p = clamp(p)
+    return math.log(p / (1 - p))
+end
+
+local function sigmoid(x)
+    return 1 / (1 + math.exp(-x))
+end
+
+-- Keep in sync with BktModel / PfaModel / EloModel.update
+local function step_update(model, p, correct, a, b, c)
+    if model == 'PFA' then
+        if correct then
+            return sigmoid(logit(p) + a)
+        end
+        return sigmoid(logit(p) + b)
+    elseif model == 'ELO' then
+        local y = 0
+        if correct then
+            y = 1
+        end
+        local q = clamp(p)
+        return sigmoid(logit(q) + a * (y - q))
+    end
+    -- BKT (KnowledgeTracingService.calculateNewProbabilityBKT)
+    local num, den
+    if correct then
+        num = p * (1 - c)
+        den = num + (1 - p) * b
+    else
+        num = p * c
+        den = num + (1 - p) * (1 - b)
+    end
+    local posterior = 0
+    if den ~= 0 then
+        posterior = num / den
+    end
+    return posterior + (1 - posterior) * a
+end
+
+-- Keep in sync with MasteryStore.writeVectors / mastery_warm.lua
+local function rank(student, field, bp)
+    local weakKey = KEYS[4 * student - 2]
+    local strongKey = KEYS[4 * student - 1]
+    if bp >= strongBp then
+        redis.call('ZADD', strongKey, bp / 10000, field)
+        redis.call('ZREM', weakKey, field)
+    else
+        redis.call('ZADD', weakKey, 1 - bp / 10000, field)
+        redis.call('ZREM', strongKey, field)
+    end
+end
+
+-- Parse the variable-length step groups once
+local steps = {}
+local b = 7
+while b <= #ARGV do
+    local m = tonumber(ARGV[b + 11])
+    local at = tonumber(ARGV[b + 9])
+    if at == nil or at <= 0 then
+        at = now
+    end
+    steps[#steps + 1] = { base = b, m = m, at = at }
+    b = b + 12 + 3 * m
+end
+
+-- Idempotency guard: a request ID applies at most once per student
+local seen = {}
+for _, step in ipairs(steps) do
+    local s = step.base
+    local rid = ARGV[s + 10]
+    if rid ~= '' then
+        local appliedKey = KEYS[4 * tonumber(ARGV[s])]
+        local mark = appliedKey .. '|' .. rid
+        if seen[mark] or redis.call('ZSCORE', appliedKey, rid) then
+            step.dup = true
+        else
+            seen[mark] = true
+            step.appliedKey = appliedKey
+            step.rid = rid
+        end
+    end
+end
+
+local warm = {}
+local function isWarm(key)
+    local w = warm[key]
+    if w == nil then
+        w = redis.call('HEXISTS', key, warmField) == 1
+        warm[key] = w
+    end
+    return w
+end
+
+-- A cold hash cannot tell "no record" from "not loaded yet", for the answered KP and its neighbours alike
+local function missesAny(key, step)
+    local s = step.base
+    if stored(key, ARGV[s + 1]) == nil then
+        return true
+    end
+    for j = 0, step.m - 1 do
+        if stored(key, ARGV[s + 12 + 3 * j]) == nil then
+            return true
+        end
+    end
+    return false
+end
+
+local missing = {}
+for i, step in ipairs(steps) do
+    local s = step.base
+    local key = KEYS[4 * tonumber(ARGV[s]) - 3]
+    if not step.dup and ARGV[s + 2] == '' and not isWarm(key) and missesAny(key, step) then
+        missing[#missing + 1] = tostring(i - 1)
+    end
+end
+if #missing > 0 then
+    table.insert(missing, 1, 'MISS')
+    return missing
+end
+
+-- Values written earlier in this call, as {p, updatedAt}
+local cache = {}
+-- Value decayed to the step time, the timestamp to write back, and the cache slot
+local function read(key, field, at)
+    local slot = key .. '|' .. field
+    local p, updatedAt
+    local hit = cache[slot]
+    if hit ~= nil then
+        p, updatedAt = hit[1], hit[2]
+    else
+        p, updatedAt = stored(key, field)
+    end
+    if p == nil then
+        return nil, at, slot
+    end
+    return decay(p, updatedAt, at), math.max(at, updatedAt), slot
+end
+
+local out = {}
+local nudged = {}
+local function apply(i, step)
+    local s = step.base
+    local student = tonumber(ARGV[s])
+    local key = KEYS[4 * student - 3]
+    local field = ARGV[s + 1]
+    local p, stamp, slot = read(key, field, step.at)
+    if p == nil then
+        if ARGV[s + 2] ~= '' then
+            p = tonumber(ARGV[s + 2])
+        else
+            p = tonumber(ARGV[s + 3])
+        end
+    end
+    local nextBp = toBasisPoints(clamp(step_update(ARGV[s + 4], p, ARGV[s + 8] == '1',
+        tonumber(ARGV[s + 5]), tonumber(ARGV[s + 6]), tonumber(ARGV[s + 7]))))
+
+    local written = encode(nextBp, stamp)
+    redis.call('HSET', key, field, written)
+    rank(student, field, nextBp)
+    cache[slot] = { nextBp / 10000, stamp }
+    out[#out + 1] = tostring(toBasisPoints(p))
+    out[#out + 1] = written
+
+    for j = 0, step.m - 1 do
+        local nField = ARGV[s + 12 + 3 * j]
+        local w = tonumber(ARGV[s + 13 + 3 * j])
+        local q, nStamp, nSlot = read(key, nField, step.at)
+        if q == nil and isWarm(key) then
+            q = tonumber(ARGV[s + 14 + 3 * j])
+        end
+        if q ~= nil then
+            if w > 0 then
+                q = q + w * (1 - q)
+            else
+                q = q + w * q
+            end
+            local qBp = toBasisPoints(clamp(q))
+            local nWritten = encode(qBp, nStamp)
+            redis.call('HSET', key, nField, nWritten)
+            rank(student, nField, qBp)
+            cache[nSlot] = { qBp / 10000, nStamp }
+            nudged[#nudged + 1] = tostring(i - 1)
+            nudged[#nudged + 1] = nField
+            nudged[#nudged + 1] = nWritten
+        end
+    end
+
+    if step.rid ~= nil then
+        redis.call('ZADD', step.appliedKey, now, step.rid)
+    end
+end
+
+for i, step in ipairs(steps) do
+    if step.dup then
+        out[#out + 1] = 'DUP'
+        out[#out + 1] = ''
+    else
+        apply(i, step)
+    end
+end
+
+-- Applied request IDs are kept as long as the state itself
+for i = 4, #KEYS, 4 do
+    redis.call('ZREMRANGEBYSCORE', KEYS[i], '-inf', '(' .. tostring(now - ttl))
+end
+for i = 1, #KEYS do
+    redis.call('EXPIRE', KEYS[i], ttl)
+end
+for _, v in ipairs(nudged) do
+    out[#out + 1] = v
+end
+return out
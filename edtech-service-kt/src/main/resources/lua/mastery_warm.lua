@@ -0,0 +1,62 @@
+-- 掌握度向量回源预热: 把 MySQL 中学生的全部 knowledge_state 合并进 Redis hash
+-- KEYS[1]   学生状态 hash
+-- KEYS[2]   薄弱知识点 ZSET (score = 1 - p)
+-- KEYS[3]   已掌握知识点 ZSET (score = p)
+-- ARGV[1]   TTL (秒)
+-- ARGV[2]   预热标记字段 (MasteryStore.WARM_FIELD)
+-- ARGV[3]   当前时间 (epoch 秒)，作为标记值
+-- ARGV[4]   已掌握阈值 (万分位)
+-- ARGV[5..] field, value 成对出现 (值已按 MasteryCodec 编码)
+-- hash 不存在时一次 HSET 写入全部字段；已存在时只补齐缺失字段 (HSETNX)，
+-- 不覆盖 bkt_step.lua 在回源期间写入的更新值。随后按合并结果重建两个画像 ZSET。
+-- 返回合并后的完整 hash (HGETALL)
+local key = KEYS[1]
+local weakKey = KEYS[2]
+local strongKey = KEYS[3]
+local ttl = tonumber(ARGV[1])
+local warmField = ARGV[2]
+local strongBp = tonumber(ARGV[4])
+local CHUNK = 500
+
+if redis.call('EXISTS', key) == 0 then
+    -- Chunked to stay well below Lua's unpack() stack limit
+    local i = 5
+    while i <= #ARGV do
+        local last = math.min(i + 2 * CHUNK - 1, #ARGV)
+        redis.call('HSET', key, unpack(ARGV, i, last))
+        i = last + 1
+    end
+else
+    for i = 5, #ARGV, 2 do
+        redis.call('HSETNX', key, ARGV[i], ARGV[i + 1])
+    end
+end
+redis.call('HSET', key, warmField, ARGV[3])
+
+-- Same basis-point parsing as bkt_step.lua current(), without decay
+local function basisPoints(raw)
+    if string.find(raw, '[%.eE]') then
+        local v = tonumber(raw)
+        return v and math.floor(v * 10000 + 0.5)
+    end
+    return tonumber(string.match(raw, '^(%d+)'))
+end
+
+local entries = redis.call('HGETALL', key)
+redis.call('DEL', weakKey, strongKey)
+for i = 1, #entries, 2 do
+    local field = entries[i]
+    local bp = field ~= warmField and basisPoints(entries[i + 1])
+    if bp then
+        if bp >= strongBp then
+            redis.call('ZADD', strongKey, bp / 10000, field)
+        else
+            redis.call('ZADD', weakKey, 1 - bp / 10000, field)
+        end
+    end
+end
+
+redis.call('EXPIRE', key, ttl)
+redis.call('EXPIRE', weakKey, ttl)
+redis.call('EXPIRE', strongKey, ttl)
+return entries
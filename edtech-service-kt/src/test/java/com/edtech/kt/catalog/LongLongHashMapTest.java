@@ -0,0 +1,93 @@
+package com.edtech.kt.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongLongHashMapTest {
+
+    @Test
+    void growsPastInitialCapacity() {
+        LongLongHashMap map = new LongLongHashMap(2);
+        for (long key = 1; key <= 10_000; key++) {
+            map.put(key, key * 3);
+        }
+
+        assertThat(map.size()).isEqualTo(10_000);
+        for (long key = 1; key <= 10_000; key++) {
+            assertThat(map.get(key, -1)).isEqualTo(key * 3);
+        }
+        assertThat(map.get(10_001, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void overwritesExistingKey() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(7, 1);
+        map.put(7, 2);
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get(7, -1)).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsReservedKey() {
+        LongLongHashMap map = new LongLongHashMap(4);
+
+        assertThatThrownBy(() -> map.put(0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void removeKeepsCollidingChainsReachable() {
+        // A tiny table forces long probe chains that wrap around the end of the array
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        for (long key = 1; key <= 6; key++) {
+            map.put(key, key);
+            expected.put(key, key);
+        }
+        for (long key = 1; key <= 6; key += 2) {
+            assertThat(map.remove(key)).isTrue();
+            expected.remove(key);
+            assertMatches(map, expected, 6);
+        }
+        assertThat(map.remove(1)).isFalse();
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(2024);
+        LongLongHashMap map = new LongLongHashMap(8);
+        Map<Long, Long> expected = new HashMap<>();
+        // Small key space so puts, overwrites and removes hit the same slots repeatedly
+        long keySpace = 512;
+        for (int op = 0; op < 50_000; op++) {
+            long key = 1 + random.nextInt((int) keySpace);
+            int action = random.nextInt(3);
+            if (action < 2) {
+                long value = random.nextLong();
+                map.put(key, value);
+                expected.put(key, value);
+            } else {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key) != null);
+            }
+        }
+        assertMatches(map, expected, keySpace);
+
+        map.clear();
+        assertThat(map.size()).isZero();
+        assertThat(map.get(1, -1)).isEqualTo(-1);
+    }
+
+    private static void assertMatches(LongLongHashMap map, Map<Long, Long> expected, long keySpace) {
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 1; key <= keySpace; key++) {
+            assertThat(map.get(key, Long.MIN_VALUE)).isEqualTo(expected.getOrDefault(key, Long.MIN_VALUE));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.edtech.kt.catalog;
+
+import com.edtech.model.entity.Question;
+import com.edtech.model.mapper.QuestionMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QuestionIndexTest {
+
+    private final QuestionMapper questionMapper = mock(QuestionMapper.class);
+    private final KnowledgeCatalog catalog = mock(KnowledgeCatalog.class);
+    private final QuestionIndex index = new QuestionIndex(questionMapper, catalog);
+
+    @Test
+    void samplesOnlyWithinDifficultyRange() {
+        // KP 1: questions 10..19 with difficulty 0.0..0.9 (loaded in reverse order)
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            rows.add(row(10 + i, 1L, BigDecimal.valueOf(i / 10.0)));
+        }
+        rows.add(row(99, null, null));
+        load(rows);
+
+        Set<Long> sampled = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            sampled.add(index.sample(1L, 0.3, 0.5));
+        }
+        assertThat(sampled).containsExactlyInAnyOrder(13L, 14L, 15L);
+        assertThat(index.sample(1L, 0.95, 1.0)).isEqualTo(QuestionIndex.NO_QUESTION);
+        assertThat(index.sample(2L)).isEqualTo(QuestionIndex.NO_QUESTION);
+        assertThat(index.size(1L)).isEqualTo(10);
+        assertThat(index.questionCount()).isEqualTo(11);
+    }
+
+    @Test
+    void sampleSkipsExcludedQuestions() {
+        load(List.of(row(1, 1L, 0.5), row(2, 1L, 0.5), row(3, 1L, 0.5)));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(index.sample(1L, 0, 1, id -> id != 2)).isEqualTo(2L);
+        }
+        assertThat(index.sample(1L, 0, 1, id -> true)).isEqualTo(QuestionIndex.NO_QUESTION);
+    }
+
+    @Test
+    void nearestExpandsAroundTargetPastExcludedQuestions() {
+        load(List.of(row(1, 1L, 0.1), row(2, 1L, 0.4), row(3, 1L, 0.45), row(4, 1L, 0.9)));
+
+        assertThat(index.nearest(1L, 0.42)).isEqualTo(2L);
+        assertThat(index.nearest(1L, 0.44)).isEqualTo(3L);
+        assertThat(index.nearest(1L, 0.42, id -> id == 2 || id == 3)).isEqualTo(1L);
+        assertThat(index.nearest(1L, 2.0)).isEqualTo(4L);
+        assertThat(index.nearest(1L, 0.5, id -> true)).isEqualTo(QuestionIndex.NO_QUESTION);
+    }
+
+    @Test
+    void registerKeepsDifficultyOrderAndCatalogMapping() {
+        load(List.of(row(1, 1L, 0.2), row(2, 1L, 0.8)));
+
+        index.register(question(3L, 1L, "0.5"));
+        index.register(question(3L, 1L, "0.5"));
+        index.register(question(4L, 2L, null));
+
+        assertThat(index.size(1L)).isEqualTo(3);
+        assertThat(index.nearest(1L, 0.55)).isEqualTo(3L);
+        assertThat(index.sample(1L, 0.4, 0.6)).isEqualTo(3L);
+        // Unset difficulty counts as medium
+        assertThat(index.sample(2L, QuestionIndex.DEFAULT_DIFFICULTY, QuestionIndex.DEFAULT_DIFFICULTY)).isEqualTo(4L);
+        assertThat(index.questionCount()).isEqualTo(4);
+        verify(catalog).registerQuestion(3L, 1L);
+        verify(catalog).registerQuestion(4L, 2L);
+    }
+
+    @Test
+    void coldIndexLoadsEachKnowledgePointOnce() {
+        when(questionMapper.selectMaps(any()))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(List.of(row(5, null, 0.3), row(6, null, 0.7)))
+                .thenReturn(List.of());
+        index.load();
+
+        assertThat(index.nearest(1L, 0.6)).isEqualTo(6L);
+        assertThat(index.size(1L)).isEqualTo(2);
+        // Empty KPs are cached too
+        assertThat(index.sample(2L)).isEqualTo(QuestionIndex.NO_QUESTION);
+        assertThat(index.sample(2L)).isEqualTo(QuestionIndex.NO_QUESTION);
+        verify(questionMapper, times(3)).selectMaps(any());
+    }
+
+    @Test
+    void sampleAnyDrawsFromEveryKnowledgePoint() {
+        load(List.of(row(1, 1L, 0.5), row(2, 2L, 0.5)));
+
+        Set<Long> sampled = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            sampled.add(index.sampleAny());
+        }
+        assertThat(sampled).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    private void load(List<Map<String, Object>> rows) {
+        when(questionMapper.selectMaps(any())).thenReturn(rows);
+        index.load();
+    }
+
+    private static Map<String, Object> row(long id, Long kpId, Object difficulty) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("knowledge_point_id", kpId);
+        row.put("difficulty", difficulty);
+        return row;
+    }
+
+    private static Question question(Long id, Long kpId, String difficulty) {
+        Question question = new Question();
+        question.setId(id);
+        question.setKnowledgePointId(kpId);
+        question.setDifficulty(difficulty == null ? null : new BigDecimal(difficulty));
+        return question;
+    }
+}
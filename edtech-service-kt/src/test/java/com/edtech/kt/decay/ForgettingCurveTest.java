@@ -0,0 +1,44 @@
+package com.edtech.kt.decay;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ForgettingCurveTest {
+
+    private static final long DAY = 86_400;
+    private static final long NOW = 1_718_000_000L;
+
+    private final ForgettingCurve curve = new ForgettingCurve(true, 30, 0.1);
+
+    @Test
+    void halvesDistanceToFloorEveryHalfLife() {
+        assertThat(curve.decay(0.9, NOW - 30 * DAY, NOW)).isCloseTo(0.5, within(1e-12));
+        assertThat(curve.decay(0.9, NOW - 60 * DAY, NOW)).isCloseTo(0.3, within(1e-12));
+    }
+
+    @Test
+    void approachesButNeverCrossesFloor() {
+        double decayed = curve.decay(0.9, NOW - 3650 * DAY, NOW);
+
+        assertThat(decayed).isGreaterThanOrEqualTo(0.1).isCloseTo(0.1, within(1e-9));
+        assertThat(curve.decay(0.05, NOW - 30 * DAY, NOW)).isEqualTo(0.05);
+    }
+
+    @Test
+    void leavesUnknownOrFutureTimestampsUntouched() {
+        assertThat(curve.decay(0.8, 0, NOW)).isEqualTo(0.8);
+        assertThat(curve.decay(0.8, NOW, NOW)).isEqualTo(0.8);
+        assertThat(curve.decay(0.8, NOW + DAY, NOW)).isEqualTo(0.8);
+    }
+
+    @Test
+    void disabledCurveIsIdentity() {
+        ForgettingCurve disabled = new ForgettingCurve(false, 30, 0.1);
+
+        assertThat(disabled.decay(0.9, NOW - 300 * DAY, NOW)).isEqualTo(0.9);
+        assertThat(disabled.scriptHalfLifeSeconds()).isZero();
+        assertThat(curve.scriptHalfLifeSeconds()).isEqualTo(30 * DAY);
+    }
+}
@@ -0,0 +1,90 @@
+package com.edtech.kt.fitting;
+
+import com.edtech.kt.model.BktParams;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class BktEmTest {
+
+    private static final BktParams TRUE_PARAMS = new BktParams(0.3, 0.15, 0.2, 0.1);
+    private static final BktParams INITIAL = new BktParams(0.5, 0.1, 0.25, 0.15);
+
+    @Test
+    void recoversGeneratingParameters() {
+        Sequences data = simulate(TRUE_PARAMS, 3000, 20, new Random(42));
+
+        BktEm.Result result = BktEm.fit(data.outcomes, data.starts, data.count, INITIAL, 200, 1e-6);
+
+        BktParams fitted = result.params();
+        assertThat(result.iterations()).isLessThan(200);
+        assertThat(fitted.pInit()).isCloseTo(TRUE_PARAMS.pInit(), within(0.05));
+        assertThat(fitted.pTransit()).isCloseTo(TRUE_PARAMS.pTransit(), within(0.05));
+        assertThat(fitted.pGuess()).isCloseTo(TRUE_PARAMS.pGuess(), within(0.05));
+        assertThat(fitted.pSlip()).isCloseTo(TRUE_PARAMS.pSlip(), within(0.05));
+    }
+
+    @Test
+    void logLikelihoodNeverDecreases() {
+        Sequences data = simulate(TRUE_PARAMS, 500, 15, new Random(7));
+
+        double previous = Double.NEGATIVE_INFINITY;
+        for (int iterations = 1; iterations <= 15; iterations++) {
+            double logLik = BktEm.fit(data.outcomes, data.starts, data.count, INITIAL, iterations, 0).logLikelihood();
+            assertThat(logLik).isGreaterThanOrEqualTo(previous - 1e-9);
+            previous = logLik;
+        }
+    }
+
+    @Test
+    void keepsGuessAndSlipBelowDegenerateBound() {
+        // All-correct data pushes guess towards 1 without the cap
+        byte[] outcomes = new byte[100];
+        Arrays.fill(outcomes, (byte) 1);
+        int[] starts = {0, 50, 100};
+
+        BktParams fitted = BktEm.fit(outcomes, starts, 2, new BktParams(0.1, 0.1, 0.5, 0.5), 50, 1e-9).params();
+
+        assertThat(fitted.pGuess()).isLessThanOrEqualTo(0.3);
+        assertThat(fitted.pSlip()).isLessThanOrEqualTo(0.3);
+        assertThat(fitted.pInit()).isBetween(0.0001, 0.9999);
+    }
+
+    @Test
+    void skipsEmptySequences() {
+        byte[] outcomes = {1, 0, 1};
+        int[] starts = {0, 0, 3, 3};
+
+        BktEm.Result result = BktEm.fit(outcomes, starts, 3, BktParams.DEFAULT, 10, 1e-9);
+
+        assertThat(Double.isFinite(result.logLikelihood())).isTrue();
+        assertThat(result.params().pTransit()).isBetween(0.0001, 0.9999);
+    }
+
+    private static Sequences simulate(BktParams params, int students, int length, Random random) {
+        byte[] outcomes = new byte[students * length];
+        int[] starts = new int[students + 1];
+        for (int s = 0; s < students; s++) {
+            starts[s] = s * length;
+            boolean mastered = random.nextDouble() < params.pInit();
+            for (int i = 0; i < length; i++) {
+                boolean correct = mastered
+                        ? random.nextDouble() >= params.pSlip()
+                        : random.nextDouble() < params.pGuess();
+                outcomes[s * length + i] = (byte) (correct ? 1 : 0);
+                if (!mastered && random.nextDouble() < params.pTransit()) {
+                    mastered = true;
+                }
+            }
+        }
+        starts[students] = students * length;
+        return new Sequences(outcomes, starts, students);
+    }
+
+    private record Sequences(byte[] outcomes, int[] starts, int count) {
+    }
+}
@@ -0,0 +1,148 @@
+package com.edtech.kt.graph;
+
+import com.edtech.kt.graph.PrerequisiteGraph.Reach;
+import com.edtech.model.entity.KnowledgePrerequisite;
+import com.edtech.model.mapper.KnowledgePrerequisiteMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PrerequisiteGraphTest {
+
+    /**
+     * 1 <- 2 <- 3 <- 4 (链)，另有 5 -> {2, 3}
+     */
+    private static final Map<Long, Set<Long>> CHAIN = Map.of(
+            2L, Set.of(1L),
+            3L, Set.of(2L),
+            4L, Set.of(3L),
+            5L, Set.of(2L, 3L));
+
+    @Test
+    void reachFollowsBothDirectionsWithShortestDepth() {
+        PrerequisiteGraph graph = load(CHAIN);
+
+        assertThat(depths(graph.reach(4, true, 10, 10))).isEqualTo(Map.of(3L, 1, 2L, 2, 1L, 3));
+        assertThat(depths(graph.reach(5, true, 10, 10))).isEqualTo(Map.of(2L, 1, 3L, 1, 1L, 2));
+        assertThat(depths(graph.reach(1, false, 10, 10))).isEqualTo(Map.of(2L, 1, 3L, 2, 5L, 2, 4L, 3));
+        assertThat(graph.nodeCount()).isEqualTo(5);
+        assertThat(graph.edgeCount()).isEqualTo(5);
+    }
+
+    @Test
+    void reachRespectsDepthAndNodeBounds() {
+        PrerequisiteGraph graph = load(CHAIN);
+
+        assertThat(depths(graph.reach(4, true, 1, 10))).isEqualTo(Map.of(3L, 1));
+        assertThat(graph.reach(1, false, 10, 2).size()).isEqualTo(2);
+        assertThat(graph.reach(4, true, 0, 10).size()).isZero();
+        assertThat(graph.reach(4, true, 10, 0).size()).isZero();
+        assertThat(graph.reach(1, true, 10, 10).size()).isZero();
+        assertThat(graph.reach(99, true, 10, 10).size()).isZero();
+    }
+
+    @Test
+    void reachTerminatesOnCycles() {
+        PrerequisiteGraph graph = load(Map.of(1L, Set.of(2L), 2L, Set.of(3L), 3L, Set.of(1L)));
+
+        assertThat(depths(graph.reach(1, true, 100, 100))).isEqualTo(Map.of(2L, 1, 3L, 2));
+    }
+
+    @Test
+    void replaceAndRemovePatchTheSnapshot() {
+        PrerequisiteGraph graph = load(CHAIN);
+
+        graph.replacePrerequisites(4L, List.of(1L, 6L, 4L));
+        assertThat(depths(graph.reach(4, true, 10, 10))).isEqualTo(Map.of(1L, 1, 6L, 1));
+        assertThat(depths(graph.reach(6, false, 10, 10))).isEqualTo(Map.of(4L, 1));
+        assertThat(depths(graph.reach(3, false, 10, 10))).isEqualTo(Map.of(5L, 1));
+
+        graph.removeKnowledgePoint(2L);
+        assertThat(graph.reach(2, true, 10, 10).size()).isZero();
+        assertThat(graph.reach(2, false, 10, 10).size()).isZero();
+        assertThat(depths(graph.reach(5, true, 10, 10))).isEqualTo(Map.of(3L, 1));
+        assertThat(depths(graph.reach(1, false, 10, 10))).isEqualTo(Map.of(4L, 1));
+    }
+
+    @Test
+    void patchedSnapshotMatchesFullCompile() {
+        Random random = new Random(11);
+        Map<Long, Set<Long>> edges = new TreeMap<>();
+        for (long kp = 1; kp <= 40; kp++) {
+            edges.put(kp, randomPrerequisites(random, kp, 40));
+        }
+        PrerequisiteGraph patched = load(edges);
+
+        for (int op = 0; op < 300; op++) {
+            // Ids up to 50 also exercise KPs that are new to the snapshot
+            long kp = 1 + random.nextInt(50);
+            if (random.nextInt(5) == 0) {
+                patched.removeKnowledgePoint(kp);
+                edges.remove(kp);
+                edges.values().forEach(prereqs -> prereqs.remove(kp));
+            } else {
+                Set<Long> prereqs = randomPrerequisites(random, kp, 50);
+                patched.replacePrerequisites(kp, prereqs);
+                edges.put(kp, prereqs);
+            }
+
+            PrerequisiteGraph compiled = load(edges);
+            assertThat(patched.edgeCount()).isEqualTo(compiled.edgeCount());
+            for (long id = 1; id <= 50; id++) {
+                assertThat(depths(patched.reach(id, true, 4, 64)))
+                        .as("up from %d after op %d", id, op)
+                        .isEqualTo(depths(compiled.reach(id, true, 4, 64)));
+                assertThat(depths(patched.reach(id, false, 4, 64)))
+                        .as("down from %d after op %d", id, op)
+                        .isEqualTo(depths(compiled.reach(id, false, 4, 64)));
+            }
+        }
+    }
+
+    private static Set<Long> randomPrerequisites(Random random, long self, int maxId) {
+        Set<Long> prereqs = new TreeSet<>();
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            long p = 1 + random.nextInt(maxId);
+            if (p != self) {
+                prereqs.add(p);
+            }
+        }
+        return prereqs;
+    }
+
+    private static PrerequisiteGraph load(Map<Long, Set<Long>> edges) {
+        List<KnowledgePrerequisite> rows = new ArrayList<>();
+        edges.forEach((kp, prereqs) -> prereqs.forEach(p -> {
+            KnowledgePrerequisite row = new KnowledgePrerequisite();
+            row.setKnowledgePointId(kp);
+            row.setPrereqPointId(p);
+            rows.add(row);
+        }));
+        KnowledgePrerequisiteMapper mapper = mock(KnowledgePrerequisiteMapper.class);
+        when(mapper.selectList(any())).thenReturn(rows);
+        PrerequisiteGraph graph = new PrerequisiteGraph(mapper);
+        graph.load();
+        return graph;
+    }
+
+    private static Map<Long, Integer> depths(Reach reach) {
+        Map<Long, Integer> depths = new HashMap<>();
+        for (int i = 0; i < reach.size(); i++) {
+            depths.put(reach.kpIds()[i], reach.depths()[i]);
+        }
+        return depths;
+    }
+}
@@ -0,0 +1,149 @@
+package com.edtech.kt.persistence;
+
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class KnowledgeStateWriterTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 6, 1, 8, 0);
+
+    private final KnowledgeStateMapper mapper = mock(KnowledgeStateMapper.class);
+    // (kp, prob) of every row the mapper accepted, in write order
+    private final List<double[]> written = Collections.synchronizedList(new ArrayList<>());
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private KnowledgeStateWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void synchronousModeUpsertsImmediately() {
+        record();
+        writer = new KnowledgeStateWriter(mapper, registry, false, 500, 1000, 64, 30000, 30000);
+
+        writer.write(1L, 7L, 0.4, AT);
+
+        assertThat(written).hasSize(1);
+        assertThat(written.get(0)).containsExactly(7, 0.4);
+    }
+
+    @Test
+    void failedBatchIsRetriedBeforeNewerValues() throws InterruptedException {
+        CountDownLatch firstAttempt = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.getAndIncrement() == 0) {
+                firstAttempt.countDown();
+                throw new IllegalStateException("connection reset");
+            }
+            append(invocation.getArgument(0));
+            return 1;
+        }).when(mapper).upsertBatch(any());
+        writer = new KnowledgeStateWriter(mapper, registry, true, 500, 20, 64, 50, 30000);
+
+        writer.write(1L, 7L, 0.3, AT);
+        assertThat(firstAttempt.await(5, TimeUnit.SECONDS)).isTrue();
+        writer.write(1L, 7L, 0.6, AT.plusMinutes(1));
+        awaitRows(2);
+
+        // The failed batch is written again first, the newer value lands last
+        assertThat(written).extracting(row -> row[1]).containsExactly(0.3, 0.6);
+    }
+
+    @Test
+    void lagCountsBatchesAlreadyHandedToTheWriter() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            append(invocation.getArgument(0));
+            return 1;
+        }).when(mapper).upsertBatch(any());
+        writer = new KnowledgeStateWriter(mapper, registry, true, 500, 20, 64, 50, 30000);
+
+        writer.write(1L, 7L, 0.3, AT);
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+
+        assertThat(registry.get("kt.write_behind.dirty").gauge().value()).isZero();
+        assertThat(registry.get("kt.write_behind.lag.ms").gauge().value()).isGreaterThanOrEqualTo(100);
+        release.countDown();
+        awaitRows(1);
+        awaitLag(0);
+    }
+
+    @Test
+    void shutdownStopsWaitingForStuckWriterAndDrainsItsBatch() {
+        doAnswer(invocation -> {
+            if (Thread.currentThread().getName().equals("kt-write-behind-writer")) {
+                // A hung connection: only an interrupt gets the writer out
+                new CountDownLatch(1).await();
+            }
+            append(invocation.getArgument(0));
+            return 1;
+        }).when(mapper).upsertBatch(any());
+        KnowledgeStateWriter stuck = new KnowledgeStateWriter(mapper, registry, true, 500, 20, 64, 50, 200);
+
+        stuck.write(1L, 7L, 0.3, AT);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.get("kt.write_behind.dirty").gauge().value() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        stuck.write(1L, 8L, 0.5, AT);
+        long start = System.nanoTime();
+        stuck.shutdown();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(written).extracting(row -> row[0]).containsExactlyInAnyOrder(7.0, 8.0);
+    }
+
+    private void record() {
+        doAnswer(invocation -> {
+            append(invocation.getArgument(0));
+            return 1;
+        }).when(mapper).upsertBatch(any());
+    }
+
+    private void append(List<KnowledgeState> rows) {
+        for (KnowledgeState row : rows) {
+            written.add(new double[]{row.getKnowledgePointId(), row.getMasteryProbability().doubleValue()});
+        }
+    }
+
+    private void awaitRows(int rows) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (written.size() < rows && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(written).hasSizeGreaterThanOrEqualTo(rows);
+    }
+
+    private void awaitLag(double lagMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.get("kt.write_behind.lag.ms").gauge().value() > lagMs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(registry.get("kt.write_behind.lag.ms").gauge().value()).isEqualTo(lagMs);
+    }
+}
@@ -0,0 +1,160 @@
+package com.edtech.kt.replay;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.MasteryPropagator;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.model.Propagation;
+import com.edtech.kt.replay.KnowledgeStateReplayer.ReplayReport;
+import com.edtech.kt.store.MasteryStore;
+import com.edtech.kt.tracing.BktModel;
+import com.edtech.kt.tracing.KnowledgeTracingModel;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
+import com.edtech.model.dto.AnswerTrace;
+import com.edtech.model.entity.KnowledgeState;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KnowledgeStateReplayerTest {
+
+    private static final int STUDENTS = 5;
+    private static final BktParams PARAMS = new BktParams(0.3, 0.1, 0.2, 0.1);
+    private static final KnowledgeTracingModel BKT = new BktModel(null, null);
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+    private final StudentExerciseLogMapper logMapper = mock(StudentExerciseLogMapper.class);
+    private final KnowledgeStateMapper stateMapper = mock(KnowledgeStateMapper.class);
+    private final MasteryPropagator propagator = mock(MasteryPropagator.class);
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    private final AtomicBoolean streaming = new AtomicBoolean();
+    private final AtomicBoolean wroteWhileStreaming = new AtomicBoolean();
+    private final List<KnowledgeState> upserted = new ArrayList<>();
+    private KnowledgeStateReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        KnowledgeCatalog catalog = mock(KnowledgeCatalog.class);
+        when(catalog.getParams(anyLong())).thenReturn(PARAMS);
+        KnowledgeTracingModels models = mock(KnowledgeTracingModels.class);
+        when(models.forKnowledgePoint(anyLong())).thenReturn(BKT);
+        when(propagator.propagate(anyLong(), anyBoolean())).thenReturn(Propagation.NONE);
+        when(redis.opsForValue()).thenReturn(values);
+
+        // Students 1..5; each answers KP 1 correctly, then KP 2 wrong
+        when(logMapper.selectStudentIdBoundary(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return after >= STUDENTS ? null : Math.min(STUDENTS, after + limit);
+        });
+        doAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            long upTo = invocation.getArgument(1);
+            ResultHandler<AnswerTrace> handler = invocation.getArgument(2);
+            streaming.set(true);
+            for (long studentId = after + 1; studentId <= upTo; studentId++) {
+                handler.handleResult(context(trace(studentId, 1L, true, 0)));
+                handler.handleResult(context(trace(studentId, 2L, false, 1)));
+            }
+            streaming.set(false);
+            return null;
+        }).when(logMapper).streamTracesByStudentRange(anyLong(), anyLong(), any());
+        doAnswer(invocation -> {
+            wroteWhileStreaming.compareAndSet(false, streaming.get());
+            upserted.addAll(invocation.getArgument(0));
+            return 0;
+        }).when(stateMapper).upsertBatch(any());
+
+        replayer = new KnowledgeStateReplayer(logMapper, stateMapper, catalog, mock(MasteryStore.class), propagator,
+                new ForgettingCurve(false, 30, 0.1), models, redis);
+        ReflectionTestUtils.setField(replayer, "studentsPerChunk", 2);
+        ReflectionTestUtils.setField(replayer, "upsertBatchSize", 1000);
+    }
+
+    @Test
+    void replaysPageByPageWithCursorClosedBeforeWrites() {
+        ReplayReport report = replayer.replay(false);
+
+        assertThat(report.students()).isEqualTo(STUDENTS);
+        assertThat(report.rows()).isEqualTo(2L * STUDENTS);
+        assertThat(wroteWhileStreaming).isFalse();
+        var order = inOrder(logMapper, values, redis);
+        order.verify(logMapper).streamTracesByStudentRange(eq(0L), eq(2L), any());
+        order.verify(values).set(anyString(), eq("2"));
+        order.verify(logMapper).streamTracesByStudentRange(eq(2L), eq(4L), any());
+        order.verify(values).set(anyString(), eq("4"));
+        order.verify(logMapper).streamTracesByStudentRange(eq(4L), eq(5L), any());
+        order.verify(values).set(anyString(), eq("5"));
+        order.verify(redis).delete(anyString());
+        assertThat(upserted).hasSize(2 * STUDENTS);
+    }
+
+    @Test
+    void resumesAfterCheckpoint() {
+        when(values.get(anyString())).thenReturn("4");
+
+        ReplayReport report = replayer.replay(true);
+
+        assertThat(report.students()).isEqualTo(1);
+        verify(logMapper).streamTracesByStudentRange(eq(4L), eq(5L), any());
+        verify(logMapper, never()).streamTracesByStudentRange(eq(0L), anyLong(), any());
+    }
+
+    @Test
+    void propagationSeedsUnattemptedDependentFromPrior() {
+        Propagation toDependent = new Propagation(new long[]{3L}, new double[]{-0.05}, new double[]{0.3});
+        when(propagator.propagate(2L, false)).thenReturn(toDependent);
+
+        replayer.replay(false);
+
+        // KP 3 was never answered: it starts from its P(L0) and is nudged down by the wrong answer on KP 2
+        assertThat(upserted).filteredOn(s -> s.getKnowledgePointId() == 3L)
+                .hasSize(STUDENTS)
+                .allSatisfy(s -> assertThat(s.getMasteryProbability().doubleValue())
+                        .isEqualTo(Propagation.nudge(0.3, -0.05)));
+    }
+
+    private static AnswerTrace trace(long studentId, long kpId, boolean correct, int minute) {
+        AnswerTrace trace = new AnswerTrace();
+        trace.setStudentId(studentId);
+        trace.setKnowledgePointId(kpId);
+        trace.setResult(correct ? 1 : 0);
+        trace.setSubmitTime(START.plusMinutes(minute));
+        return trace;
+    }
+
+    private static ResultContext<AnswerTrace> context(AnswerTrace trace) {
+        @SuppressWarnings("unchecked")
+        ResultContext<AnswerTrace> context = mock(ResultContext.class);
+        when(context.getResultObject()).thenReturn(trace);
+        return context;
+    }
+}
@@ -0,0 +1,54 @@
+package com.edtech.kt.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MasteryCodecTest {
+
+    @Test
+    void roundTripsEveryBasisPoint() {
+        for (int bp = 0; bp <= MasteryCodec.SCALE; bp++) {
+            double p = bp / (double) MasteryCodec.SCALE;
+            String raw = MasteryCodec.encode(p, 1_718_000_000L);
+
+            assertThat(MasteryCodec.isLegacy(raw)).isFalse();
+            assertThat(MasteryCodec.toBasisPoints(MasteryCodec.decode(raw))).isEqualTo(bp);
+            assertThat(MasteryCodec.decodeTimestamp(raw)).isEqualTo(1_718_000_000L);
+        }
+    }
+
+    @Test
+    void encodesWithoutTimestampWhenUnknown() {
+        assertThat(MasteryCodec.encode(0.3512, 0)).isEqualTo("3512");
+        assertThat(MasteryCodec.decode("3512")).isEqualTo(0.3512);
+        assertThat(MasteryCodec.decodeTimestamp("3512")).isZero();
+    }
+
+    @Test
+    void decodesLegacyJacksonValues() {
+        assertThat(MasteryCodec.isLegacy("0.3512")).isTrue();
+        assertThat(MasteryCodec.decode("0.3512")).isEqualTo(0.3512);
+        assertThat(MasteryCodec.isLegacy("3.5E-4")).isTrue();
+        assertThat(MasteryCodec.decode("3.5E-4")).isEqualTo(0.00035);
+        assertThat(MasteryCodec.decodeTimestamp("0.3512")).isZero();
+        // Migrating a legacy value and decoding it again loses nothing beyond DECIMAL(5,4)
+        assertThat(MasteryCodec.decode(MasteryCodec.encode(MasteryCodec.decode("0.35124"), 1L))).isEqualTo(0.3512);
+    }
+
+    @Test
+    void clampsOutOfRangeProbabilities() {
+        assertThat(MasteryCodec.toBasisPoints(-0.2)).isZero();
+        assertThat(MasteryCodec.toBasisPoints(1.7)).isEqualTo(MasteryCodec.SCALE);
+        assertThat(MasteryCodec.toBasisPoints(0.99995)).isEqualTo(MasteryCodec.SCALE);
+    }
+
+    @Test
+    void returnsNaNForUnparseableValues() {
+        assertThat(MasteryCodec.decode(null)).isNaN();
+        assertThat(MasteryCodec.decode("")).isNaN();
+        assertThat(MasteryCodec.decode("abc")).isNaN();
+        assertThat(MasteryCodec.decode("12:xyz")).isEqualTo(0.0012);
+        assertThat(MasteryCodec.decodeTimestamp("12:xyz")).isZero();
+    }
+}
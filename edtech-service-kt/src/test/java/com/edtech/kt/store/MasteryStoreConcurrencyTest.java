@@ -0,0 +1,197 @@
+package com.edtech.kt.store;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.MasteryPropagator;
+import com.edtech.kt.graph.PrerequisiteGraph;
+import com.edtech.kt.model.Answer;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.persistence.KnowledgeStateWriter;
+import com.edtech.kt.service.KnowledgeTracingService;
+import com.edtech.kt.tracing.BktModel;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
+import com.edtech.kt.tracing.ScriptedRedis;
+import com.edtech.model.mapper.KnowledgePrerequisiteMapper;
+import com.edtech.model.mapper.KnowledgeStateMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 并发提交经 {@link KnowledgeTracingService} 执行时不会丢失或重复计入更新
+ * <p>
+ * 脚本在 LuaJ 中执行，一把全局锁模拟 Redis 单线程执行脚本；冷缓存回源、前置知识点传播、
+ * 批量提交与重试的请求 ID 都在并发路径上。结果与同一组提交串行执行的结果逐个知识点比较。
+ */
+class MasteryStoreConcurrencyTest {
+
+    private static final int STUDENTS = 4;
+    private static final long[] KPS = {10L, 20L, 30L, 40L};
+    private static final int SUBMITS = 2000;
+    private static final int THREADS = 16;
+    // Weakly informative answers keep every step distinct instead of saturating at 0.9999
+    private static final BktParams PARAMS = new BktParams(0.01, 0.0, 0.48, 0.5);
+
+    @Test
+    void concurrentSubmitsMatchSerialExecution() throws Exception {
+        List<List<Answer>> tasks = tasks();
+
+        Tracing serial = new Tracing();
+        for (List<Answer> task : tasks) {
+            serial.submit(task);
+        }
+
+        Tracing concurrent = new Tracing();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (List<Answer> task : tasks) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    concurrent.submit(task);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Set<String> requestIds = new HashSet<>();
+        tasks.forEach(task -> task.forEach(answer -> requestIds.add(answer.requestId())));
+        for (long studentId = 1; studentId <= STUDENTS; studentId++) {
+            Map<String, Integer> expected = serial.masteryOf(studentId);
+            // Answered KPs and their propagated prerequisites, none saturated
+            assertThat(expected).hasSize(2 * KPS.length);
+            assertThat(expected.values()).allSatisfy(bp -> assertThat(bp).isLessThan(9999));
+            assertThat(concurrent.masteryOf(studentId)).isEqualTo(expected);
+
+            String prefix = studentId + "-";
+            long unique = requestIds.stream().filter(id -> id.startsWith(prefix)).count();
+            assertThat(concurrent.redis.zcard(MasteryStore.tracedKey(studentId))).isEqualTo((int) unique);
+        }
+    }
+
+    /**
+     * 每个学生轮流答各个知识点 (全部答对)；每 8 次提交中有一次是两道题的批量提交，
+     * 每 10 次提交中有一次重发同一学生较早的请求 ID
+     */
+    private static List<List<Answer>> tasks() {
+        List<List<Answer>> tasks = new ArrayList<>();
+        for (int i = 0; i < SUBMITS; i++) {
+            long studentId = i % STUDENTS + 1;
+            int kp = (i / STUDENTS) % KPS.length;
+            Answer answer = answer(studentId, KPS[kp], studentId + "-" + i);
+            if (i % 8 == 0) {
+                tasks.add(List.of(answer, answer(studentId, KPS[(kp + 1) % KPS.length], studentId + "-" + i + "b")));
+            } else {
+                tasks.add(List.of(answer));
+            }
+            if (i % 10 == 9) {
+                int earlier = i - STUDENTS;
+                tasks.add(List.of(answer(studentId, KPS[(earlier / STUDENTS) % KPS.length], studentId + "-" + earlier)));
+            }
+        }
+        return tasks;
+    }
+
+    private static Answer answer(long studentId, long kpId, String requestId) {
+        return new Answer(studentId, kpId, true, 0L, requestId);
+    }
+
+    /**
+     * 一套完整的知识追踪服务，Redis 由加锁的 {@link ScriptedRedis} 代替
+     */
+    private static final class Tracing {
+
+        private final ScriptedRedis redis;
+        private final KnowledgeTracingService service;
+
+        @SuppressWarnings("unchecked")
+        Tracing() throws IOException {
+            redis = new ScriptedRedis("lua/bkt_step.lua");
+            RedisTemplate<String, String> template = mock(RedisTemplate.class, invocation -> {
+                Object[] raw = invocation.getRawArguments();
+                if (!invocation.getMethod().getName().equals("execute") || !(raw[0] instanceof RedisScript<?> script)) {
+                    throw new UnsupportedOperationException(invocation.getMethod().getName());
+                }
+                List<String> args = Arrays.stream((Object[]) raw[2]).map(String::valueOf).toList();
+                synchronized (redis) {
+                    return redis.eval(script.getScriptAsString(), (List<String>) raw[1], args);
+                }
+            });
+            ForgettingCurve curve = new ForgettingCurve(false, 30, 0.1);
+            MasteryStore store = new MasteryStore(template, curve, 0.8);
+            MasteryWarmLoader warmLoader = new MasteryWarmLoader(mock(KnowledgeStateMapper.class), store,
+                    new SimpleMeterRegistry());
+
+            KnowledgeCatalog catalog = mock(KnowledgeCatalog.class);
+            when(catalog.getKnowledgePointId(anyLong())).thenAnswer(invocation -> invocation.getArgument(0));
+            when(catalog.getParams(anyLong())).thenReturn(PARAMS);
+            KnowledgeTracingModels models = mock(KnowledgeTracingModels.class);
+            when(models.forKnowledgePoint(anyLong())).thenReturn(new BktModel(null, null));
+
+            // Each answered KP has one prerequisite: a correct answer nudges KP + 1 up
+            PrerequisiteGraph graph = new PrerequisiteGraph(mock(KnowledgePrerequisiteMapper.class));
+            for (long kp : KPS) {
+                graph.replacePrerequisites(kp, List.of(kp + 1));
+            }
+            MasteryPropagator propagator = new MasteryPropagator(graph, catalog);
+            ReflectionTestUtils.setField(propagator, "enabled", true);
+            ReflectionTestUtils.setField(propagator, "maxDepth", 1);
+            ReflectionTestUtils.setField(propagator, "maxNodes", 32);
+            ReflectionTestUtils.setField(propagator, "prerequisiteWeight", 0.005);
+            ReflectionTestUtils.setField(propagator, "depthDecay", 0.5);
+
+            service = new KnowledgeTracingService(catalog, mock(KnowledgeStateWriter.class), store, warmLoader,
+                    propagator, curve, models);
+        }
+
+        void submit(List<Answer> task) {
+            if (task.size() == 1) {
+                service.updateKnowledgeState(task.get(0));
+            } else {
+                service.updateKnowledgeStates(task);
+            }
+        }
+
+        /**
+         * 学生各知识点的掌握度 (万分位)，忽略更新时间与预热标记
+         */
+        Map<String, Integer> masteryOf(long studentId) {
+            Map<String, Integer> mastery = new TreeMap<>();
+            synchronized (redis) {
+                redis.hash(MasteryStore.stateKey(studentId)).forEach((field, raw) -> {
+                    if (!field.equals(MasteryStore.WARM_FIELD)) {
+                        mastery.put(field, MasteryCodec.toBasisPoints(MasteryCodec.decode(raw)));
+                    }
+                });
+            }
+            return mastery;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.service.KnowledgeTracingService;
+import net.jqwik.api.Assume;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.DoubleRange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BKT 单步更新 ({@link KnowledgeTracingService#calculateNewProbabilityBKT}) 的性质
+ */
+class BktUpdatePropertiesTest {
+
+    private static final double EPS = 1e-12;
+
+    @Property
+    void staysWithinClampBounds(@ForAll @DoubleRange(min = 0, max = 1) double pL,
+                                @ForAll boolean correct,
+                                @ForAll @DoubleRange(min = 0, max = 1) double pT,
+                                @ForAll @DoubleRange(min = 0, max = 0.5) double pG,
+                                @ForAll @DoubleRange(min = 0, max = 0.5) double pS) {
+        double next = KnowledgeTracingService.calculateNewProbabilityBKT(pL, correct, pT, pG, pS);
+
+        assertThat(next).isBetween(0.0001, 0.9999);
+    }
+
+    @Property
+    void correctAnswerNeverLowersMastery(@ForAll @DoubleRange(min = 0.01, max = 0.99) double pL,
+                                         @ForAll @DoubleRange(min = 0, max = 1) double pT,
+                                         @ForAll @DoubleRange(min = 0.01, max = 0.3) double pG,
+                                         @ForAll @DoubleRange(min = 0.01, max = 0.3) double pS) {
+        double next = KnowledgeTracingService.calculateNewProbabilityBKT(pL, true, pT, pG, pS);
+
+        assertThat(next).isGreaterThanOrEqualTo(pL - EPS);
+    }
+
+    @Property
+    void correctAnswerScoresAtLeastWrongAnswer(@ForAll @DoubleRange(min = 0, max = 1) double pL,
+                                               @ForAll @DoubleRange(min = 0, max = 1) double pT,
+                                               @ForAll @DoubleRange(min = 0.01, max = 0.3) double pG,
+                                               @ForAll @DoubleRange(min = 0.01, max = 0.3) double pS) {
+        double right = KnowledgeTracingService.calculateNewProbabilityBKT(pL, true, pT, pG, pS);
+        double wrong = KnowledgeTracingService.calculateNewProbabilityBKT(pL, false, pT, pG, pS);
+
+        assertThat(right).isGreaterThanOrEqualTo(wrong - EPS);
+    }
+
+    @Property
+    void monotoneInPrior(@ForAll @DoubleRange(min = 0, max = 1) double a,
+                         @ForAll @DoubleRange(min = 0, max = 1) double b,
+                         @ForAll boolean correct,
+                         @ForAll @DoubleRange(min = 0, max = 1) double pT,
+                         @ForAll @DoubleRange(min = 0.01, max = 0.3) double pG,
+                         @ForAll @DoubleRange(min = 0.01, max = 0.3) double pS) {
+        Assume.that(a <= b);
+
+        double low = KnowledgeTracingService.calculateNewProbabilityBKT(a, correct, pT, pG, pS);
+        double high = KnowledgeTracingService.calculateNewProbabilityBKT(b, correct, pT, pG, pS);
+
+        assertThat(low).isLessThanOrEqualTo(high + EPS);
+    }
+
+    @Property
+    void transitionOnlyAddsMastery(@ForAll @DoubleRange(min = 0, max = 1) double pL,
+                                   @ForAll boolean correct,
+                                   @ForAll @DoubleRange(min = 0, max = 1) double pT,
+                                   @ForAll @DoubleRange(min = 0.01, max = 0.3) double pG,
+                                   @ForAll @DoubleRange(min = 0.01, max = 0.3) double pS) {
+        double withoutLearning = KnowledgeTracingService.calculateNewProbabilityBKT(pL, correct, 0, pG, pS);
+        double withLearning = KnowledgeTracingService.calculateNewProbabilityBKT(pL, correct, pT, pG, pS);
+
+        assertThat(withLearning).isGreaterThanOrEqualTo(withoutLearning - EPS);
+    }
+}
@@ -0,0 +1,286 @@
+package com.edtech.kt.tracing;
+
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.model.Propagation;
+import com.edtech.kt.store.MasteryCodec;
+import com.edtech.kt.store.MasteryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * lua/bkt_step.lua 与 {@link KnowledgeTracingModel#update} / {@link ForgettingCurve} 的一致性
+ */
+class ScriptParityTest {
+
+    private static final String STATE = "student:{1}:kt:state";
+    private static final String WEAK = "student:{1}:profile:weak";
+    private static final String STRONG = "student:{1}:profile:strong";
+    private static final String TRACED = "student:{1}:traced_requests";
+    private static final long NOW = 1_718_000_000L;
+    private static final long DAY = 86_400;
+    private static final BktParams PARAMS = new BktParams(0.2, 0.12, 0.25, 0.08);
+
+    private final List<KnowledgeTracingModel> models = List.of(
+            new BktModel(null, null),
+            new PfaModel(null, null, 0.2, -0.1),
+            new EloModel(null, null, 0.4));
+
+    private ScriptedRedis redis;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis = new ScriptedRedis("lua/bkt_step.lua");
+    }
+
+    @Test
+    void singleStepMatchesJavaUpdate() {
+        Random random = new Random(5);
+        for (KnowledgeTracingModel model : models) {
+            for (int i = 0; i < 500; i++) {
+                int priorBp = 1 + random.nextInt(9999);
+                boolean correct = random.nextBoolean();
+                redis.hashes.put(STATE, new HashMap<>(Map.of("7", priorBp + ":" + NOW)));
+
+                List<String> reply = redis.eval(keys(), args(0, 0, List.of(step(model, "7", correct))));
+
+                int expected = MasteryCodec.toBasisPoints(model.update(priorBp / 10000.0, correct, PARAMS));
+                assertThat(Integer.parseInt(reply.get(0))).isEqualTo(priorBp);
+                assertThat(bp(reply.get(1)))
+                        .as("%s prior=%d correct=%s", model.code(), priorBp, correct)
+                        .isCloseTo(expected, within(1));
+            }
+        }
+    }
+
+    @Test
+    void chainedStepsMatchQuantizedJavaSequence() {
+        Random random = new Random(9);
+        for (KnowledgeTracingModel model : models) {
+            redis.hashes.clear();
+            List<List<String>> steps = new ArrayList<>();
+            double p = PARAMS.pInit();
+            for (int i = 0; i < 30; i++) {
+                boolean correct = random.nextInt(3) > 0;
+                steps.add(step(model, "7", correct));
+                // The script keeps the quantized value between steps of one call
+                p = MasteryCodec.toBasisPoints(model.update(p, correct, PARAMS)) / 10000.0;
+            }
+            // Warm hash: a missing field starts from P(L0)
+            redis.hashes.put(STATE, new HashMap<>(Map.of(MasteryStore.WARM_FIELD, "1")));
+
+            List<String> reply = redis.eval(keys(), args(0, 0, steps));
+
+            assertThat(bp(reply.get(2 * 29 + 1)))
+                    .as(model.code())
+                    .isCloseTo(MasteryCodec.toBasisPoints(p), within(1));
+            assertThat(redis.hashes.get(STATE).get("7")).isEqualTo(reply.get(2 * 29 + 1)).endsWith(":" + NOW);
+        }
+    }
+
+    @Test
+    void decayMatchesForgettingCurve() {
+        ForgettingCurve curve = new ForgettingCurve(true, 30, 0.1);
+        KnowledgeTracingModel bkt = models.get(0);
+        for (long daysAgo : new long[]{0, 1, 15, 30, 90, 400}) {
+            long updatedAt = NOW - daysAgo * DAY;
+            redis.hashes.put(STATE, new HashMap<>(Map.of("7", "8000:" + updatedAt)));
+
+            List<String> reply = redis.eval(keys(),
+                    args(curve.scriptHalfLifeSeconds(), curve.getFloor(), List.of(step(bkt, "7", true))));
+
+            double decayed = curve.decay(0.8, updatedAt, NOW);
+            assertThat(Integer.parseInt(reply.get(0))).isCloseTo(MasteryCodec.toBasisPoints(decayed), within(1));
+            assertThat(bp(reply.get(1)))
+                    .isCloseTo(MasteryCodec.toBasisPoints(bkt.update(decayed, true, PARAMS)), within(1));
+        }
+    }
+
+    @Test
+    void decaysToEachStepsAnswerTime() {
+        ForgettingCurve curve = new ForgettingCurve(true, 30, 0.1);
+        KnowledgeTracingModel bkt = models.get(0);
+        long updatedAt = NOW - 60 * DAY;
+        long answeredAt = NOW - 30 * DAY;
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "8000:" + updatedAt)));
+
+        List<String> reply = redis.eval(keys(),
+                args(curve.scriptHalfLifeSeconds(), curve.getFloor(), List.of(step(bkt, "7", true, answeredAt))));
+
+        // An offline answer decays the prior to when it was answered, not to the sync time
+        double decayed = curve.decay(0.8, updatedAt, answeredAt);
+        assertThat(Integer.parseInt(reply.get(0))).isCloseTo(MasteryCodec.toBasisPoints(decayed), within(1));
+        assertThat(MasteryCodec.decodeTimestamp(redis.hashes.get(STATE).get("7"))).isEqualTo(answeredAt);
+    }
+
+    @Test
+    void lateAnswerNeverMovesTimestampBack() {
+        ForgettingCurve curve = new ForgettingCurve(true, 30, 0.1);
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "8000:" + NOW)));
+
+        List<String> reply = redis.eval(keys(),
+                args(curve.scriptHalfLifeSeconds(), curve.getFloor(), List.of(step(bkt, "7", false, NOW - 5 * DAY))));
+
+        assertThat(reply.get(0)).isEqualTo("8000");
+        assertThat(MasteryCodec.decodeTimestamp(reply.get(1))).isEqualTo(NOW);
+    }
+
+    @Test
+    void readsLegacyDecimalValues() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "0.4321")));
+
+        List<String> reply = redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", false))));
+
+        assertThat(reply.get(0)).isEqualTo("4321");
+        assertThat(bp(reply.get(1)))
+                .isCloseTo(MasteryCodec.toBasisPoints(bkt.update(0.4321, false, PARAMS)), within(1));
+    }
+
+    @Test
+    void coldMissLeavesStateUntouched() {
+        List<String> reply = redis.eval(keys(), args(0, 0, List.of(step(models.get(0), "7", true))));
+
+        assertThat(reply).containsExactly("MISS", "0");
+        assertThat(redis.hashes).isEmpty();
+    }
+
+    @Test
+    void ranksIntoWeakOrStrongProfile() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "9500:" + NOW, "8", "1000:" + NOW)));
+
+        redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", true), step(bkt, "8", false))));
+
+        assertThat(redis.zsets.get(STRONG)).containsOnlyKeys("7");
+        assertThat(redis.zsets.get(WEAK)).containsOnlyKeys("8");
+    }
+
+    @Test
+    void replayedRequestIsAppliedOnce() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "5000:" + NOW)));
+
+        List<String> first = redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", true, 0, "r-1"))));
+        String written = redis.hashes.get(STATE).get("7");
+        List<String> retried = redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", true, 0, "r-1"))));
+
+        assertThat(first.get(0)).isEqualTo("5000");
+        assertThat(retried).containsExactly(MasteryStore.DUPLICATE, "");
+        assertThat(redis.hashes.get(STATE).get("7")).isEqualTo(written);
+        assertThat(redis.zsets.get(TRACED)).containsOnlyKeys("r-1");
+    }
+
+    @Test
+    void repeatedRequestWithinOneCallIsAppliedOnce() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "5000:" + NOW)));
+
+        List<String> reply = redis.eval(keys(), args(0, 0,
+                List.of(step(bkt, "7", true, 0, "r-1"), step(bkt, "7", true, 0, "r-1"), step(bkt, "7", false, 0, ""))));
+
+        assertThat(reply.get(2)).isEqualTo(MasteryStore.DUPLICATE);
+        // The untagged step chains on the first step's value
+        assertThat(Integer.parseInt(reply.get(4))).isEqualTo(bp(reply.get(1)));
+        assertThat(redis.zsets.get(TRACED)).containsOnlyKeys("r-1");
+    }
+
+    @Test
+    void duplicateStepDoesNotCountAsMiss() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.zsets.put(TRACED, new HashMap<>(Map.of("r-1", (double) NOW)));
+
+        List<String> reply = redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", true, 0, "r-1"))));
+
+        assertThat(reply).containsExactly(MasteryStore.DUPLICATE, "");
+        assertThat(redis.hashes).isEmpty();
+    }
+
+    @Test
+    void forgetsRequestsOlderThanTtl() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "5000:" + NOW)));
+        redis.zsets.put(TRACED, new HashMap<>(Map.of("old", (double) (NOW - 7200))));
+
+        redis.eval(keys(), args(0, 0, List.of(step(bkt, "7", true, 0, "r-1"))));
+
+        assertThat(redis.zsets.get(TRACED)).containsOnlyKeys("r-1");
+    }
+
+    @Test
+    void propagationSeedsMissingDependentFromPrior() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of(MasteryStore.WARM_FIELD, "1", "7", "5000:" + NOW)));
+
+        List<String> reply = redis.eval(keys(), args(0, 0,
+                List.of(propagating(step(bkt, "7", false), "8", -0.05, 0.3))));
+
+        // The dependent has never been answered: it starts from its P(L0) before the nudge
+        int expected = MasteryCodec.toBasisPoints(Propagation.nudge(0.3, -0.05));
+        assertThat(reply.subList(2, 5)).containsExactly("0", "8", expected + ":" + NOW);
+        assertThat(redis.hashes.get(STATE).get("8")).isEqualTo(expected + ":" + NOW);
+    }
+
+    @Test
+    void coldHashReportsMissingDependentAsMiss() {
+        KnowledgeTracingModel bkt = models.get(0);
+        redis.hashes.put(STATE, new HashMap<>(Map.of("7", "5000:" + NOW)));
+
+        List<String> reply = redis.eval(keys(), args(0, 0,
+                List.of(propagating(step(bkt, "7", false), "8", -0.05, 0.3))));
+
+        assertThat(reply).containsExactly("MISS", "0");
+        assertThat(redis.hashes.get(STATE)).containsOnlyKeys("7");
+    }
+
+    private static List<String> keys() {
+        return List.of(STATE, WEAK, STRONG, TRACED);
+    }
+
+    private static List<String> args(long halfLifeSeconds, double floor, List<List<String>> steps) {
+        List<String> args = new ArrayList<>(List.of("3600", String.valueOf(NOW), String.valueOf(halfLifeSeconds),
+                String.valueOf(floor), MasteryStore.WARM_FIELD, "8000"));
+        steps.forEach(args::addAll);
+        return args;
+    }
+
+    private static List<String> step(KnowledgeTracingModel model, String field, boolean correct) {
+        return step(model, field, correct, 0);
+    }
+
+    private static List<String> step(KnowledgeTracingModel model, String field, boolean correct, long answeredAt) {
+        return step(model, field, correct, answeredAt, "");
+    }
+
+    private static List<String> step(KnowledgeTracingModel model, String field, boolean correct, long answeredAt,
+                                     String requestId) {
+        List<String> args = new ArrayList<>(List.of("1", field, "", String.valueOf(PARAMS.pInit()), model.code()));
+        model.appendScriptArgs(PARAMS, args);
+        args.add(correct ? "1" : "0");
+        args.add(String.valueOf(answeredAt));
+        args.add(requestId);
+        args.add("0");
+        return args;
+    }
+
+    private static List<String> propagating(List<String> step, String field, double weight, double prior) {
+        List<String> args = new ArrayList<>(step.subList(0, step.size() - 1));
+        args.addAll(List.of("1", field, String.valueOf(weight), String.valueOf(prior)));
+        return args;
+    }
+
+    private static int bp(String written) {
+        return MasteryCodec.toBasisPoints(MasteryCodec.decode(written));
+    }
+}
@@ -0,0 +1,189 @@
+package com.edtech.kt.tracing;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在 LuaJ 中执行 Redis Lua 脚本，redis.call 由内存中的 hash / ZSET 实现
+ * <p>
+ * 只支持脚本实际用到的命令，用于在没有 Redis 的环境下校验脚本与 Java 实现一致。
+ * 同一实例上可以执行其他脚本 ({@link #eval(String, List, List)})，共享同一份数据；实例本身不是线程安全的。
+ */
+public final class ScriptedRedis {
+
+    final Map<String, Map<String, String>> hashes = new HashMap<>();
+    final Map<String, Map<String, Double>> zsets = new HashMap<>();
+
+    private final String source;
+    // Compiled chunks by source, so repeated calls skip the LuaJ compiler
+    private final Map<String, Prototype> compiled = new HashMap<>();
+
+    public ScriptedRedis(String resource) throws IOException {
+        try (InputStream in = ScriptedRedis.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing script " + resource);
+            }
+            this.source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    List<String> eval(List<String> keys, List<String> args) {
+        return eval(source, keys, args);
+    }
+
+    /**
+     * 在同一份数据上执行给定的脚本源码
+     */
+    public List<String> eval(String script, List<String> keys, List<String> args) {
+        Globals globals = JsePlatform.standardGlobals();
+        globals.set("KEYS", toTable(keys));
+        globals.set("ARGV", toTable(args));
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs a) {
+                return dispatch(a);
+            }
+        });
+        globals.set("redis", redis);
+
+        Prototype prototype = compiled.computeIfAbsent(script, ScriptedRedis::compile);
+        LuaValue reply = new LuaClosure(prototype, globals).call();
+        List<String> out = new ArrayList<>();
+        for (int i = 1; i <= reply.length(); i++) {
+            out.add(reply.get(i).tojstring());
+        }
+        return out;
+    }
+
+    private LuaValue dispatch(Varargs a) {
+        String command = a.arg1().tojstring();
+        String key = a.arg(2).tojstring();
+        switch (command) {
+            case "HGET": {
+                String value = hashes.getOrDefault(key, Map.of()).get(a.arg(3).tojstring());
+                return value == null ? LuaValue.FALSE : LuaValue.valueOf(value);
+            }
+            case "HEXISTS":
+                return LuaValue.valueOf(hashes.getOrDefault(key, Map.of()).containsKey(a.arg(3).tojstring()) ? 1 : 0);
+            case "HSET": {
+                Map<String, String> hash = hashes.computeIfAbsent(key, k -> new HashMap<>());
+                int added = 0;
+                for (int i = 3; i < a.narg(); i += 2) {
+                    added += hash.put(a.arg(i).tojstring(), a.arg(i + 1).tojstring()) == null ? 1 : 0;
+                }
+                return LuaValue.valueOf(added);
+            }
+            case "HSETNX":
+                return LuaValue.valueOf(hashes.computeIfAbsent(key, k -> new HashMap<>())
+                        .putIfAbsent(a.arg(3).tojstring(), a.arg(4).tojstring()) == null ? 1 : 0);
+            case "HGETALL": {
+                LuaTable entries = new LuaTable();
+                hashes.getOrDefault(key, Map.of()).forEach((field, value) -> {
+                    entries.insert(0, LuaValue.valueOf(field));
+                    entries.insert(0, LuaValue.valueOf(value));
+                });
+                return entries;
+            }
+            case "EXISTS":
+                return LuaValue.valueOf(hashes.containsKey(key) || zsets.containsKey(key) ? 1 : 0);
+            case "DEL": {
+                int removed = 0;
+                for (int i = 2; i <= a.narg(); i++) {
+                    String k = a.arg(i).tojstring();
+                    removed += (hashes.remove(k) != null | zsets.remove(k) != null) ? 1 : 0;
+                }
+                return LuaValue.valueOf(removed);
+            }
+            case "ZADD":
+                zsets.computeIfAbsent(key, k -> new HashMap<>()).put(a.arg(4).tojstring(), a.arg(3).todouble());
+                return LuaValue.ONE;
+            case "ZSCORE": {
+                Double score = zsets.getOrDefault(key, Map.of()).get(a.arg(3).tojstring());
+                return score == null ? LuaValue.FALSE : LuaValue.valueOf(String.valueOf(score));
+            }
+            case "ZREMRANGEBYSCORE": {
+                Map<String, Double> zset = zsets.get(key);
+                if (zset == null) {
+                    return LuaValue.ZERO;
+                }
+                double min = bound(a.arg(3).tojstring());
+                double max = bound(a.arg(4).tojstring());
+                int before = zset.size();
+                zset.values().removeIf(score -> score >= min && score <= max);
+                return LuaValue.valueOf(before - zset.size());
+            }
+            case "ZREM": {
+                Map<String, Double> zset = zsets.get(key);
+                return LuaValue.valueOf(zset != null && zset.remove(a.arg(3).tojstring()) != null ? 1 : 0);
+            }
+            case "EXPIRE":
+                return LuaValue.ONE;
+            default:
+                throw new UnsupportedOperationException(command);
+        }
+    }
+
+    /**
+     * hash 当前内容的副本 (不存在时为空)
+     */
+    public Map<String, String> hash(String key) {
+        return new HashMap<>(hashes.getOrDefault(key, Map.of()));
+    }
+
+    /**
+     * ZSET 当前的成员数
+     */
+    public int zcard(String key) {
+        return zsets.getOrDefault(key, Map.of()).size();
+    }
+
+    /**
+     * ZRANGEBYSCORE 的区间端点: -inf / +inf 与 "(" 开头的开区间
+     */
+    private static double bound(String value) {
+        if (value.equals("-inf")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (value.equals("+inf")) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (value.startsWith("(")) {
+            return Math.nextDown(Double.parseDouble(value.substring(1)));
+        }
+        return Double.parseDouble(value);
+    }
+
+    private static Prototype compile(String script) {
+        try {
+            return LuaC.instance.compile(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), "script");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static LuaTable toTable(List<String> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(values.get(i)));
+        }
+        return table;
+    }
+}
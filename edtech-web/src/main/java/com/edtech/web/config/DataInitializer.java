@@ -1,6 +1,7 @@
 package com.edtech.web.config;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.edtech.kt.catalog.QuestionIndex;
 import com.edtech.model.entity.*;
 import com.edtech.model.mapper.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -20,6 +21,7 @@ public class DataInitializer implements CommandLineRunner {
 
     private final KnowledgePointMapper knowledgePointMapper;
     private final QuestionMapper questionMapper;
+    private final QuestionIndex questionIndex;
     private final StudentExerciseLogMapper studentExerciseLogMapper;
     private final KnowledgeStateMapper knowledgeStateMapper;
     private final UserMapper userMapper;
@@ -94,6 +96,7 @@ public class DataInitializer implements CommandLineRunner {
                 
                 q.setCorrectAnswer("C");
                 questionMapper.insert(q);
+                questionIndex.register(q);
             }
         }
     }
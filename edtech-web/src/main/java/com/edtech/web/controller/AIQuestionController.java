@@ -3,7 +3,10 @@ package com.edtech.web.controller;
 import com.edtech.ai.model.GeneratedQuestionVO;
 import com.edtech.ai.service.ContentGenerationService;
 import com.edtech.ai.service.OpenSatService;
+import com.edtech.common.redis.StudentKey;
 import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.catalog.QuestionIndex;
+import com.edtech.kt.service.MasteryQueryService;
 import com.edtech.model.entity.KnowledgePoint;
 import com.edtech.model.entity.Question;
 import com.edtech.model.mapper.KnowledgePointMapper;
@@ -36,8 +39,10 @@ public class AIQuestionController {
     private final ContentGenerationService contentService;
     private final OpenSatService openSatService;
     private final QuestionMapper questionMapper;
+    private final QuestionIndex questionIndex;
     private final KnowledgePointMapper knowledgePointMapper;
     private final RedisUtils redisUtils;
+    private final MasteryQueryService masteryQueryService;
 
     @PostMapping("/generate-question")
     public Map<String, Object> generateQuestion(@RequestBody GenerateQuestionRequest request) {
@@ -83,24 +88,26 @@ public class AIQuestionController {
                     kpName = request.subject + " 综合训练";
                 }
 
-                String masteryKey = String.format("student:%s:mastery", request.studentId);
-                String mistakeKey = String.format("student:%s:common_mistakes", request.studentId);
-                String wrongFreqKey = String.format("student:%s:wrong_freq", request.studentId);
+                String mistakeKey = redisUtils.studentKey(StudentKey.COMMON_MISTAKES, request.studentId);
+                String wrongFreqKey = redisUtils.studentKey(StudentKey.WRONG_FREQ, request.studentId);
 
-                if (request.knowledgePointId != null) {
-                    Object masteryObj = redisUtils.hGet(masteryKey, request.knowledgePointId.toString());
-                    if (masteryObj != null) probability = Double.parseDouble(masteryObj.toString());
+                if (request.knowledgePointId != null && request.studentId != null) {
+                    Double mastery = masteryQueryService.getMastery(request.studentId, request.knowledgePointId);
+                    if (mastery != null) probability = mastery;
                 }
 
                 String commonMistakes = "暂无历史错误记录";
-                if (request.knowledgePointId != null) {
-                    Object mistakeObj = redisUtils.hGet(mistakeKey, request.knowledgePointId.toString());
-                    if (mistakeObj != null) commonMistakes = mistakeObj.toString();
-                }
-
                 String lastWrong = "暂无";
                 if (request.knowledgePointId != null) {
-                    Double wrongCount = redisUtils.zScore(wrongFreqKey, request.knowledgePointId.toString());
+                    // HGET + ZSCORE in one round trip
+                    String field = request.knowledgePointId.toString();
+                    List<Object> profile = redisUtils.pipelined(ops -> {
+                        ops.opsForHash().get(mistakeKey, field);
+                        ops.opsForZSet().score(wrongFreqKey, field);
+                    });
+                    Object mistakeObj = profile.get(0);
+                    if (mistakeObj != null) commonMistakes = mistakeObj.toString();
+                    Double wrongCount = (Double) profile.get(1);
                     if (wrongCount != null && wrongCount > 0)
                         lastWrong = String.format("该知识点错误%d次", wrongCount.intValue());
                 }
@@ -126,6 +133,7 @@ public class AIQuestionController {
             question.setCreatedAt(LocalDateTime.now());
             question.setType(99);
             questionMapper.insert(question);
+            questionIndex.register(question);
 
             Map<String, Object> questionData = new HashMap<>();
             questionData.put("id", question.getId());
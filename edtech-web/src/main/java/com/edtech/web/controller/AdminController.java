@@ -2,9 +2,16 @@ package com.edtech.web.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.fitting.BktParameterFitter;
+import com.edtech.kt.graph.PrerequisiteGraph;
+import com.edtech.kt.replay.KnowledgeStateReplayer;
+import com.edtech.kt.store.MasteryStore;
 import com.edtech.model.entity.*;
 import com.edtech.model.mapper.*;
 import com.edtech.web.security.JwtTokenProvider;
+import com.edtech.web.service.SubmitPipeline;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -13,6 +20,7 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 管理员后台控制器
@@ -31,6 +39,13 @@ public class AdminController {
     private final StudentExerciseLogMapper studentExerciseLogMapper;
     private final MistakeBookMapper mistakeBookMapper;
     private final KnowledgePrerequisiteMapper knowledgePrerequisiteMapper;
+    private final KnowledgeCatalog knowledgeCatalog;
+    private final PrerequisiteGraph prerequisiteGraph;
+    private final BktParameterFitter bktParameterFitter;
+    private final KnowledgeStateReplayer knowledgeStateReplayer;
+    private final MasteryStore masteryStore;
+    private final RedisUtils redisUtils;
+    private final SubmitPipeline submitPipeline;
     private final JwtTokenProvider tokenProvider;
     private final PasswordEncoder passwordEncoder;
 
@@ -495,6 +510,7 @@ public class AdminController {
             } else {
                 knowledgePointMapper.updateById(kp);
             }
+            knowledgeCatalog.refreshKnowledgePoint(kp.getId());
 
             if (!prereqIds.isEmpty() || idObj != null) {
                 Long kpId = kp.getId();
@@ -508,6 +524,7 @@ public class AdminController {
                         rel.setPrereqPointId(pid);
                         knowledgePrerequisiteMapper.insert(rel);
                     }
+                    prerequisiteGraph.replacePrerequisites(kpId, prereqIds);
                 }
             }
 
@@ -534,6 +551,8 @@ public class AdminController {
                             .or()
                             .eq(KnowledgePrerequisite::getPrereqPointId, id));
             int rows = knowledgePointMapper.deleteById(id);
+            knowledgeCatalog.removeKnowledgePoint(id);
+            prerequisiteGraph.removeKnowledgePoint(id);
             response.put("success", rows > 0);
             response.put("message", rows > 0 ? "删除成功" : "记录不存在");
         } catch (Exception e) {
@@ -544,6 +563,137 @@ public class AdminController {
         return response;
     }
 
+    /**
+     * 触发 BKT 参数拟合 (后台异步执行)
+     */
+    @PostMapping("/bkt/fit")
+    public Map<String, Object> fitBktParameters() {
+        Map<String, Object> response = new HashMap<>();
+        if (bktParameterFitter.isRunning()) {
+            response.put("success", false);
+            response.put("message", "拟合任务正在运行");
+            return response;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                bktParameterFitter.fitAll();
+            } catch (Exception e) {
+                log.error("BKT参数拟合失败", e);
+            }
+        });
+        response.put("success", true);
+        response.put("message", "拟合任务已启动");
+        return response;
+    }
+
+    /**
+     * BKT 参数拟合状态
+     */
+    @GetMapping("/bkt/fit")
+    public Map<String, Object> getBktFitStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("running", bktParameterFitter.isRunning());
+        response.put("lastReport", bktParameterFitter.getLastReport());
+        return response;
+    }
+
+    /**
+     * 从答题日志重放全部知识状态 (后台异步执行)
+     */
+    @PostMapping("/kt/replay")
+    public Map<String, Object> replayKnowledgeStates(@RequestParam(defaultValue = "false") boolean resume) {
+        Map<String, Object> response = new HashMap<>();
+        if (knowledgeStateReplayer.isRunning()) {
+            response.put("success", false);
+            response.put("message", "重放任务正在运行");
+            return response;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                knowledgeStateReplayer.replay(resume);
+            } catch (Exception e) {
+                log.error("知识状态重放失败", e);
+            }
+        });
+        response.put("success", true);
+        response.put("message", resume ? "重放任务已从检查点继续" : "重放任务已启动");
+        return response;
+    }
+
+    /**
+     * 知识状态重放进度
+     */
+    @GetMapping("/kt/replay")
+    public Map<String, Object> getReplayStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("running", knowledgeStateReplayer.isRunning());
+        response.put("rowsPerSecond", knowledgeStateReplayer.currentRowsPerSecond());
+        response.put("lastReport", knowledgeStateReplayer.getLastReport());
+        return response;
+    }
+
+    /**
+     * 把 Redis 中旧格式 (JSON 小数) 的掌握度改写为万分位整数 (后台异步执行，可重复执行)
+     * 新旧两种 key 格式都会处理，不要求先执行 /redis/student-keys/migrate
+     */
+    @PostMapping("/kt/mastery/migrate")
+    public Map<String, Object> migrateMasteryValues() {
+        Map<String, Object> response = new HashMap<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                masteryStore.migrateLegacyValues();
+            } catch (Exception e) {
+                log.error("掌握度格式迁移失败", e);
+            }
+        });
+        response.put("success", true);
+        response.put("message", "掌握度格式迁移已启动");
+        return response;
+    }
+
+    /**
+     * 把旧格式的学生 key 迁移为带 hash tag 的新格式 (后台异步执行，可重复执行)
+     * 完成后可关闭 edtech.redis.legacy-student-keys 并切换到 Redis Cluster
+     */
+    @PostMapping("/redis/student-keys/migrate")
+    public Map<String, Object> migrateStudentKeys() {
+        Map<String, Object> response = new HashMap<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                redisUtils.migrateLegacyStudentKeys();
+            } catch (Exception e) {
+                log.error("学生 key 迁移失败", e);
+            }
+        });
+        response.put("success", true);
+        response.put("message", "学生 key 迁移已启动");
+        return response;
+    }
+
+    /**
+     * 答题提交流水线状态: 排队数、入队到处理完成的 p50/p99 延迟
+     */
+    @GetMapping("/practice/submit-pipeline")
+    public Map<String, Object> getSubmitPipelineStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", submitPipeline.stats());
+        return response;
+    }
+
+    /**
+     * 从死信队列重放失败的答题提交，每条从失败的阶段继续
+     */
+    @PostMapping("/practice/submit-pipeline/dead-letters/replay")
+    public Map<String, Object> replaySubmitDeadLetters(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", submitPipeline.replayDeadLetters(limit));
+        return response;
+    }
+
     /**
      * Prompt模板预览
      */
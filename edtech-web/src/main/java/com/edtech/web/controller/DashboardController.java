@@ -1,13 +1,11 @@
 package com.edtech.web.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.edtech.kt.service.MasteryQueryService;
+import com.edtech.kt.tracing.KnowledgeTracingModels;
 import com.edtech.model.entity.KnowledgePoint;
-import com.edtech.model.entity.KnowledgeState;
-import com.edtech.model.entity.StudentExerciseLog;
 import com.edtech.model.mapper.KnowledgePointMapper;
-import com.edtech.model.mapper.KnowledgeStateMapper;
-import com.edtech.model.mapper.StudentExerciseLogMapper;
 import com.edtech.model.vo.KnowledgeStateVO;
+import com.edtech.web.service.strategy.SeenQuestionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,6 +14,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,9 +27,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class DashboardController {
 
-    private final KnowledgeStateMapper knowledgeStateMapper;
+    private final MasteryQueryService masteryQueryService;
+    private final KnowledgeTracingModels knowledgeTracingModels;
     private final KnowledgePointMapper knowledgePointMapper;
-    private final StudentExerciseLogMapper studentExerciseLogMapper;
+    private final SeenQuestionService seenQuestionService;
 
     /**
      * 获取学生知识状态雷达图数据
@@ -40,24 +40,23 @@ public class DashboardController {
     public List<KnowledgeStateVO> getStudentRadarData(@PathVariable Long studentId) {
         log.info("Fetching radar chart data for student: {}", studentId);
 
-        // 1. 查询该学生的所有知识状态
-        List<KnowledgeState> states = knowledgeStateMapper.selectList(new LambdaQueryWrapper<KnowledgeState>()
-                .eq(KnowledgeState::getStudentId, studentId));
+        // 1. 查询该学生的所有知识状态 (已按遗忘曲线衰减到当前时间)
+        Map<Long, Double> mastery = masteryQueryService.getMasteryMap(studentId);
 
-        if (states.isEmpty()) {
+        if (mastery.isEmpty()) {
             return new ArrayList<>();
         }
 
         // 2. 批量查询关联的知识点信息
-        List<Long> kpIds = states.stream().map(KnowledgeState::getKnowledgePointId).collect(Collectors.toList());
+        List<Long> kpIds = new ArrayList<>(mastery.keySet());
         List<KnowledgePoint> kps = knowledgePointMapper.selectBatchIds(kpIds);
         Map<Long, String> kpNameMap = kps.stream()
                 .collect(Collectors.toMap(KnowledgePoint::getId, KnowledgePoint::getName));
 
         // 3. 组装 VO
-        return states.stream().map(state -> {
-            String name = kpNameMap.getOrDefault(state.getKnowledgePointId(), "Unknown KP");
-            BigDecimal score = state.getMasteryProbability();
+        return mastery.entrySet().stream().map(entry -> {
+            String name = kpNameMap.getOrDefault(entry.getKey(), "Unknown KP");
+            BigDecimal score = BigDecimal.valueOf(entry.getValue()).setScale(4, RoundingMode.HALF_UP);
             
             // 简单的分级逻辑
             String level;
@@ -66,7 +65,7 @@ public class DashboardController {
             else if (val >= 0.5) level = "Proficient";
             else level = "Novice";
 
-            return new KnowledgeStateVO(state.getKnowledgePointId(), name, score, level);
+            return new KnowledgeStateVO(entry.getKey(), name, score, level);
         }).collect(Collectors.toList());
     }
 
@@ -75,29 +74,35 @@ public class DashboardController {
      */
     @GetMapping("/prediction/{studentId}")
     public Map<String, Object> predictScore(@PathVariable Long studentId) {
-        List<KnowledgeState> states = knowledgeStateMapper.selectList(new LambdaQueryWrapper<KnowledgeState>()
-                .eq(KnowledgeState::getStudentId, studentId));
+        Map<Long, Double> mastery = masteryQueryService.getMasteryMap(studentId);
 
         double predictedScore = 0.0;
-        if (!states.isEmpty()) {
-            double avgProb = states.stream()
-                    .map(KnowledgeState::getMasteryProbability)
-                    .mapToDouble(BigDecimal::doubleValue)
-                    .average()
-                    .orElse(0.0);
-            predictedScore = avgProb * 100;
+        if (!mastery.isEmpty()) {
+            // 各知识点按其追踪模型给出的答对概率取平均
+            // Reuse the map already read above instead of a second HGETALL per model group
+            long[] kpIds = new long[mastery.size()];
+            double[] pCorrect = new double[mastery.size()];
+            int i = 0;
+            for (Map.Entry<Long, Double> entry : mastery.entrySet()) {
+                kpIds[i] = entry.getKey();
+                pCorrect[i++] = entry.getValue();
+            }
+            knowledgeTracingModels.score(kpIds, pCorrect);
+            double sum = 0.0;
+            for (double p : pCorrect) {
+                sum += p;
+            }
+            predictedScore = sum / pCorrect.length * 100;
         }
 
-        // 根据答题记录数动态计算置信度：记录越多越可信，上限 0.95
-        long practiceCount = studentExerciseLogMapper.selectCount(
-                new LambdaQueryWrapper<StudentExerciseLog>()
-                        .eq(StudentExerciseLog::getStudentId, studentId));
+        // 根据做过的不同题目数动态计算置信度：覆盖越多越可信，上限 0.95 (位图基数，O(1))
+        long practiceCount = seenQuestionService.answeredCount(studentId);
         double confidence = Math.min(0.95, 0.3 + practiceCount * 0.01);
         // 知识点覆盖率也影响置信度
-        if (!states.isEmpty()) {
+        if (!mastery.isEmpty()) {
             long totalKp = knowledgePointMapper.selectCount(null);
             if (totalKp > 0) {
-                double coverage = (double) states.size() / totalKp;
+                double coverage = (double) mastery.size() / totalKp;
                 confidence = Math.min(0.95, confidence * (0.5 + 0.5 * coverage));
             }
         }
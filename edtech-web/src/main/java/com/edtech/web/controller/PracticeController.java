@@ -4,16 +4,19 @@ import cn.hutool.json.JSONUtil;
 import com.edtech.ai.model.GeneratedQuestionVO;
 import com.edtech.ai.service.ContentGenerationService;
 import com.edtech.ai.service.OpenSatService;
+import com.edtech.common.redis.StudentKey;
 import com.edtech.core.util.RedisUtils;
-import com.edtech.kt.service.KnowledgeTracingService;
+import com.edtech.core.util.SubmissionDeduplicator;
+import com.edtech.kt.catalog.QuestionIndex;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.kt.service.MasteryQueryService;
 import com.edtech.model.entity.Question;
-import com.edtech.model.entity.StudentExerciseLog;
 import com.edtech.model.mapper.KnowledgePointMapper;
 import com.edtech.model.mapper.QuestionMapper;
-import com.edtech.model.mapper.StudentExerciseLogMapper;
-import com.edtech.web.service.MistakeBookService;
+import com.edtech.web.service.PracticeSubmitService;
+import com.edtech.web.service.SubmitPipeline;
+import com.edtech.web.service.strategy.PracticePrefetchService;
 import com.edtech.web.service.strategy.PracticeStrategyService;
-import com.edtech.web.service.strategy.SpacedRepetitionService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -23,6 +26,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,15 +38,14 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class PracticeController {
 
-    private final StudentExerciseLogMapper logMapper;
-    private final KnowledgeTracingService ktService;
-    private final MistakeBookService mistakeBookService;
-    private final PracticeStrategyService strategyService;
-    private final SpacedRepetitionService sm2Service;
+    private final MasteryQueryService masteryQueryService;
+    private final PracticePrefetchService prefetchService;
+    private final SubmitPipeline submitPipeline;
     private final RedisUtils redisUtils;
     private final ContentGenerationService contentService;
     private final OpenSatService openSatService;
     private final QuestionMapper questionMapper;
+    private final QuestionIndex questionIndex;
     private final KnowledgePointMapper knowledgePointMapper;
 
     private Long getCurrentUserId() {
@@ -58,8 +61,12 @@ public class PracticeController {
 
     @GetMapping("/random")
     public Map<String, Object> getRandomQuestion() {
-        // Try to pop one question from Redis cache
-        Object cached = redisUtils.lPop(OPENSAT_CACHE_KEY);
+        // Try to pop one question from Redis cache (LPOP + LLEN in one round trip)
+        List<Object> popped = redisUtils.pipelined(ops -> {
+            ops.opsForList().leftPop(OPENSAT_CACHE_KEY);
+            ops.opsForList().size(OPENSAT_CACHE_KEY);
+        });
+        Object cached = popped.get(0);
         if (cached != null) {
             GeneratedQuestionVO vo = JSONUtil.toBean(cached.toString(), GeneratedQuestionVO.class);
             Map<String, Object> response = new HashMap<>();
@@ -67,7 +74,7 @@ public class PracticeController {
             response.put("strategy", "OpenSAT API 实时获取");
             response.put("strategyCode", "OPENSAT");
             // Refill cache in background if running low
-            Long remaining = redisUtils.lLen(OPENSAT_CACHE_KEY);
+            Long remaining = (Long) popped.get(1);
             if (remaining != null && remaining < 5) {
                 new Thread(() -> refillCache()).start();
             }
@@ -79,10 +86,7 @@ public class PracticeController {
         List<GeneratedQuestionVO> questions = openSatService.fetchMathQuestions(CACHE_BATCH);
         if (!questions.isEmpty()) {
             // Push all except first to cache
-            for (int i = 1; i < questions.size(); i++) {
-                redisUtils.rPush(OPENSAT_CACHE_KEY, JSONUtil.toJsonStr(questions.get(i)));
-            }
-            redisUtils.expire(OPENSAT_CACHE_KEY, 30, TimeUnit.MINUTES);
+            pushToCache(questions.subList(1, questions.size()));
             GeneratedQuestionVO vo = questions.get(0);
             Map<String, Object> response = new HashMap<>();
             response.put("data", vo);
@@ -91,9 +95,9 @@ public class PracticeController {
             return response;
         }
 
-        // Fallback to local strategy
+        // Fallback to local strategy (prefetched selection: one LPOP when the queue is warm)
         Long studentId = getCurrentUserId();
-        PracticeStrategyService.QuestionSelection selection = strategyService.selectNextQuestion(studentId);
+        PracticeStrategyService.QuestionSelection selection = prefetchService.next(studentId);
         Map<String, Object> response = new HashMap<>();
         if (selection != null && selection.question() != null) {
             response.put("data", selection.question());
@@ -106,16 +110,30 @@ public class PracticeController {
     private void refillCache() {
         try {
             List<GeneratedQuestionVO> questions = openSatService.fetchMathQuestions(CACHE_BATCH);
-            for (GeneratedQuestionVO q : questions) {
-                redisUtils.rPush(OPENSAT_CACHE_KEY, JSONUtil.toJsonStr(q));
-            }
-            redisUtils.expire(OPENSAT_CACHE_KEY, 30, TimeUnit.MINUTES);
+            pushToCache(questions);
             log.info("Refilled OpenSAT cache with {} questions", questions.size());
         } catch (Exception e) {
             log.warn("Failed to refill OpenSAT cache: {}", e.getMessage());
         }
     }
 
+    /**
+     * 一次往返写入缓存: 单条 RPUSH 追加全部题目 + EXPIRE
+     */
+    private void pushToCache(List<GeneratedQuestionVO> questions) {
+        if (questions.isEmpty()) {
+            return;
+        }
+        List<String> payloads = new ArrayList<>(questions.size());
+        for (GeneratedQuestionVO q : questions) {
+            payloads.add(JSONUtil.toJsonStr(q));
+        }
+        redisUtils.pipelined(ops -> {
+            ops.opsForList().rightPushAll(OPENSAT_CACHE_KEY, payloads.toArray());
+            ops.expire(OPENSAT_CACHE_KEY, 30, TimeUnit.MINUTES);
+        });
+    }
+
     @GetMapping("/generate")
     public Map<String, Object> generateQuestion(
             @RequestParam(required = false) String subject,
@@ -141,14 +159,13 @@ public class PracticeController {
                 }
             }
 
-            String masteryKey = String.format("student:%s:mastery", studentId);
-            String mistakeKey = String.format("student:%s:common_mistakes", studentId);
+            String mistakeKey = redisUtils.studentKey(StudentKey.COMMON_MISTAKES, studentId);
             double probability = 0.5;
             String commonMistakes = "暂无历史错误记录";
 
             if (kpIdToUse != null) {
-                Object masteryObj = redisUtils.hGet(masteryKey, kpIdToUse.toString());
-                if (masteryObj != null) probability = Double.parseDouble(masteryObj.toString());
+                Double mastery = masteryQueryService.getMastery(studentId, kpIdToUse);
+                if (mastery != null) probability = mastery;
                 Object mistakeObj = redisUtils.hGet(mistakeKey, kpIdToUse.toString());
                 if (mistakeObj != null) commonMistakes = mistakeObj.toString();
             }
@@ -172,6 +189,7 @@ public class PracticeController {
             question.setType(99);
             question.setCreatedAt(LocalDateTime.now());
             questionMapper.insert(question);
+            questionIndex.register(question);
 
             Map<String, Object> qMap = new HashMap<>();
             qMap.put("id", question.getId());
@@ -201,37 +219,66 @@ public class PracticeController {
 
     @PostMapping("/submit")
     public void submitAnswer(@RequestBody SubmitRequest request) {
+        if (request.getQuestionId() == null || request.getIsCorrect() == null) {
+            throw new RuntimeException("questionId 和 isCorrect 不能为空");
+        }
+        if (request.getRequestId() != null && request.getRequestId().length() > SubmissionDeduplicator.MAX_REQUEST_ID_LENGTH) {
+            throw new RuntimeException("requestId 过长");
+        }
+        // Async mode returns once the answer is queued on the student's lane
+        submitPipeline.submit(new PracticeSubmitService.Submission(getCurrentUserId(), request.getQuestionId(),
+                request.getIsCorrect(), request.getDuration(), LocalDateTime.now(), request.getRequestId()));
+    }
+
+    /**
+     * 离线答题批量同步: 答题按作答时间排序后依次做知识追踪，返回每个知识点的最终掌握度变化
+     */
+    @PostMapping("/submit-batch")
+    public Map<String, Object> submitBatch(@RequestBody BatchSubmitRequest request) {
+        if (request.getAnswers() == null || request.getAnswers().isEmpty()) {
+            throw new RuntimeException("answers 不能为空");
+        }
         Long studentId = getCurrentUserId();
-        Long questionId = request.getQuestionId();
-
-        StudentExerciseLog exerciseLog = new StudentExerciseLog();
-        exerciseLog.setStudentId(studentId);
-        exerciseLog.setQuestionId(questionId);
-        exerciseLog.setResult(request.getIsCorrect() ? 1 : 0);
-        exerciseLog.setDuration(request.getDuration());
-        exerciseLog.setSubmitTime(LocalDateTime.now());
-        logMapper.insert(exerciseLog);
-
-        ktService.updateKnowledgeState(studentId, questionId, request.getIsCorrect());
-
-        String wrongFreqKey = String.format("student:%s:wrong_freq", studentId);
-        String drillKey = String.format("student:%s:drill_mode", studentId);
-        String reviewKey = String.format("student:%s:review_due", studentId);
-
-        if (!request.getIsCorrect()) {
-            mistakeBookService.addMistake(studentId, questionId);
-            redisUtils.zIncrementScore(wrongFreqKey, questionId.toString(), 1.0);
-            redisUtils.set(drillKey, 101L, 10, TimeUnit.MINUTES);
-            long nextReview = sm2Service.calculateNextReviewTime(0, 0, 0);
-            redisUtils.zAdd(reviewKey, questionId.toString(), nextReview);
-        } else {
-            Object drillKp = redisUtils.get(drillKey);
-            if (drillKp != null) {
-                redisUtils.delete(drillKey);
+        LocalDateTime now = LocalDateTime.now();
+        List<PracticeSubmitService.Submission> submissions = new ArrayList<>(request.getAnswers().size());
+        for (SubmitRequest answer : request.getAnswers()) {
+            if (answer.getQuestionId() == null || answer.getIsCorrect() == null) {
+                throw new RuntimeException("questionId 和 isCorrect 不能为空");
+            }
+            if (answer.getRequestId() != null && answer.getRequestId().length() > SubmissionDeduplicator.MAX_REQUEST_ID_LENGTH) {
+                throw new RuntimeException("requestId 过长");
             }
-            long nextReview = sm2Service.calculateNextReviewTime(1, 1, 4);
-            redisUtils.zAdd(reviewKey, questionId.toString(), nextReview);
+            // Client clocks drift: missing or future timestamps fall back to the receive time
+            LocalDateTime submitTime = answer.getSubmitTime() == null || answer.getSubmitTime().isAfter(now)
+                    ? now : answer.getSubmitTime();
+            submissions.add(new PracticeSubmitService.Submission(studentId, answer.getQuestionId(),
+                    answer.getIsCorrect(), answer.getDuration(), submitTime, answer.getRequestId()));
+        }
+
+        SubmitPipeline.BatchResult batch = submitPipeline.submitBatch(submissions);
+        List<Map<String, Object>> changes = new ArrayList<>(batch.changes().size());
+        for (MasteryChange change : batch.changes()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("knowledgePointId", change.knowledgePointId());
+            item.put("before", change.before());
+            item.put("after", change.after());
+            item.put("delta", change.delta());
+            changes.add(item);
         }
+        Map<String, Object> data = new HashMap<>();
+        data.put("accepted", batch.accepted());
+        data.put("duplicates", batch.duplicates());
+        data.put("changes", changes);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", data);
+        return result;
+    }
+
+    @Data
+    public static class BatchSubmitRequest {
+        private List<SubmitRequest> answers;
     }
 
     @Data
@@ -240,5 +287,13 @@ public class PracticeController {
         private Long questionId;
         private Boolean isCorrect;
         private Integer duration;
+        /**
+         * 客户端生成的幂等键 (可选)，重试时复用，短时间内重复的提交只处理一次
+         */
+        private String requestId;
+        /**
+         * 作答时间，仅批量同步使用 (离线时客户端记录)
+         */
+        private LocalDateTime submitTime;
     }
 }
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Service
 @Slf4j
@@ -40,4 +41,15 @@ public class MistakeBookService {
             log.info("Updated mistake count. Student: {}, Question: {}, Count: {}", studentId, questionId, mistake.getErrorCount());
         }
     }
+
+    /**
+     * 批量累加错题 (每行 errorCount 为本批次该题的错误次数)，一条多行 upsert
+     */
+    public void addMistakes(List<MistakeBook> mistakes) {
+        if (mistakes == null || mistakes.isEmpty()) {
+            return;
+        }
+        mistakeBookMapper.upsertErrors(mistakes);
+        log.info("Upserted {} mistakes into book", mistakes.size());
+    }
 }
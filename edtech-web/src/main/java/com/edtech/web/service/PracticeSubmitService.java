@@ -0,0 +1,271 @@
+package com.edtech.web.service;
+
+import com.edtech.common.redis.StudentKey;
+import com.edtech.core.mq.PracticeLogBatchWriter;
+import com.edtech.core.mq.PracticeLogBatchWriter.PracticeLog;
+import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.model.Answer;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.kt.service.KnowledgeTracingService;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import com.edtech.web.service.strategy.PracticePrefetchService;
+import com.edtech.web.service.strategy.SeenQuestionService;
+import com.edtech.web.service.strategy.SpacedRepetitionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 答题提交的处理步骤
+ * <p>
+ * 一次提交分三个阶段: 持久化答题记录与错题本 -> 知识追踪 -> 间隔复习调度，由 {@link SubmitPipeline} 依次调用。
+ * 持久化按唯一键 (student_id, request_id) 幂等；知识追踪按 requestId 在 Redis 脚本内幂等，
+ * 因此答题已落库但知识追踪尚未生效 (进程在两个阶段之间崩溃) 的重复提交会补做知识追踪，且不会重复计入。
+ * 离线同步的批量答题由 {@link #persistBatch} / {@link #traceBatch} / {@link #scheduleBatch} 整批完成三个阶段，
+ * 数据库与 Redis 的往返次数与答题数无关。知识追踪会立即改变 Redis 中的掌握度且无法回滚，
+ * 因此调用方必须在持久化的事务提交之后才调用后面的阶段。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PracticeSubmitService {
+
+    private final StudentExerciseLogMapper logMapper;
+    private final PracticeLogBatchWriter batchWriter;
+    private final KnowledgeTracingService ktService;
+    private final MistakeBookService mistakeBookService;
+    private final SpacedRepetitionService sm2Service;
+    private final SeenQuestionService seenQuestionService;
+    private final PracticePrefetchService prefetchService;
+    private final RedisUtils redisUtils;
+
+    /**
+     * 一次已通过校验的答题
+     *
+     * @param submitTime 作答时间 (实时提交为服务端接收时间，离线同步为客户端记录的时间)
+     * @param requestId  客户端生成的幂等键，可为 null (进入流水线时由 {@link #withRequestId} 补齐)
+     */
+    public record Submission(Long studentId, Long questionId, boolean correct, Integer duration,
+                             LocalDateTime submitTime, String requestId) {
+
+        /**
+         * 未携带 requestId 时生成一个，使知识追踪的重试与死信重放也能按请求 ID 去重
+         */
+        public Submission withRequestId() {
+            if (requestId != null && !requestId.isBlank()) {
+                return this;
+            }
+            return new Submission(studentId, questionId, correct, duration, submitTime, UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * 阶段一: 在一个事务内写入答题记录，答错时累加错题本
+     *
+     * @return false 表示 requestId 已落库 (重复提交)，什么也没写
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean persist(Submission submission) {
+        if (logMapper.insertIfAbsent(toLog(submission)) == 0) {
+            log.info("Submission {} of student {} already logged", submission.requestId(), submission.studentId());
+            return false;
+        }
+        if (!submission.correct()) {
+            mistakeBookService.addMistake(submission.studentId(), submission.questionId());
+        }
+        return true;
+    }
+
+    /**
+     * 阶段二: 知识追踪，返回所答知识点的掌握度变化 (先验衰减到作答时间)
+     * <p>
+     * 按 requestId 幂等，可以安全地重试或重放
+     *
+     * @return 题目不存在或该 requestId 已计入时返回 null
+     */
+    public MasteryChange trace(Submission submission) {
+        return ktService.updateKnowledgeState(toAnswer(submission));
+    }
+
+    /**
+     * 阶段三: 已做题目、纠错模式与间隔复习调度，最后刷新预取队列
+     */
+    public void schedule(Submission submission, MasteryChange change) {
+        Long studentId = submission.studentId();
+        Long questionId = submission.questionId();
+        seenQuestionService.recordAnswer(studentId, questionId);
+
+        String wrongFreqKey = redisUtils.studentKey(StudentKey.WRONG_FREQ, studentId);
+        String drillKey = redisUtils.studentKey(StudentKey.DRILL_MODE, studentId);
+        String reviewKey = redisUtils.studentKey(StudentKey.REVIEW_DUE, studentId);
+
+        // All keys share the student's hash tag: one pipelined round trip
+        boolean drillChanged;
+        if (!submission.correct()) {
+            long nextReview = sm2Service.calculateNextReviewTime(0, 0, 0);
+            redisUtils.pipelined(ops -> {
+                ops.opsForZSet().incrementScore(wrongFreqKey, questionId.toString(), 1.0);
+                ops.opsForValue().set(drillKey, 101L, 10, TimeUnit.MINUTES);
+                ops.opsForZSet().add(reviewKey, questionId.toString(), nextReview);
+            });
+            drillChanged = true;
+        } else {
+            long nextReview = sm2Service.calculateNextReviewTime(1, 1, 4);
+            List<Object> results = redisUtils.pipelined(ops -> {
+                // DEL is a no-op when not drilling, no need to GET first
+                ops.delete(drillKey);
+                ops.opsForZSet().add(reviewKey, questionId.toString(), nextReview);
+            });
+            drillChanged = Boolean.TRUE.equals(results.get(0));
+        }
+
+        // Drop prefetched selections made stale by this answer, then top the queue up
+        prefetchService.onAnswer(studentId, drillChanged, change);
+    }
+
+    /**
+     * 批量阶段一: 在一个事务内写入答题记录与错题 (经 {@link PracticeLogBatchWriter})
+     *
+     * @return 按 (学生, 作答时间) 排序的、实际写入的答题；requestId 已落库的答题被排除，不参与后面的阶段
+     */
+    public List<Submission> persistBatch(List<Submission> submissions) {
+        if (submissions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Submission> ordered = inAnswerOrder(submissions);
+        List<PracticeLog> logs = ordered.stream().map(PracticeSubmitService::toPracticeLog).toList();
+        return retainWritten(ordered, logs, batchWriter.write(logs));
+    }
+
+    /**
+     * 批量阶段二: 按顺序依次做知识追踪 (一次 Lua 调用)，每个知识点只写回一次最终掌握度；
+     * requestId 已计入的答题在脚本内跳过，因此可以传入包括重复提交在内的整批答题
+     *
+     * @param answers 按 {@link #inAnswerOrder} 排列的答题
+     * @return 每个 (学生, 知识点) 从批次开始到结束的掌握度变化
+     */
+    public List<MasteryChange> traceBatch(List<Submission> answers) {
+        return ktService.updateKnowledgeStates(answers.stream().map(PracticeSubmitService::toAnswer).toList());
+    }
+
+    /**
+     * 批量阶段三: 每个学生的调度写入一次流水线
+     */
+    public void scheduleBatch(List<Submission> written, List<MasteryChange> changes) {
+        Map<Long, List<Submission>> byStudent = written.stream()
+                .collect(Collectors.groupingBy(Submission::studentId, LinkedHashMap::new, Collectors.toList()));
+        Map<Long, List<MasteryChange>> changesByStudent = changes.stream()
+                .collect(Collectors.groupingBy(MasteryChange::studentId));
+        byStudent.forEach((studentId, answers) ->
+                scheduleStudent(studentId, answers, changesByStudent.getOrDefault(studentId, Collections.emptyList())));
+
+        log.info("Synced {} offline answers for {} students, {} knowledge states changed",
+                written.size(), byStudent.size(), changes.size());
+    }
+
+    /**
+     * 一个学生的批量调度: 最后一次作答决定纠错模式与每道题的复习时间，错误次数累加进 wrong_freq
+     */
+    private void scheduleStudent(Long studentId, List<Submission> answers, List<MasteryChange> changes) {
+        seenQuestionService.recordAnswers(studentId, answers.stream().map(Submission::questionId).toList());
+
+        Map<Long, Integer> wrongCounts = new LinkedHashMap<>();
+        Map<Long, Boolean> lastResult = new LinkedHashMap<>();
+        for (Submission answer : answers) {
+            if (!answer.correct()) {
+                wrongCounts.merge(answer.questionId(), 1, Integer::sum);
+            }
+            lastResult.put(answer.questionId(), answer.correct());
+        }
+        boolean endsWrong = !answers.get(answers.size() - 1).correct();
+        long wrongReview = sm2Service.calculateNextReviewTime(0, 0, 0);
+        long correctReview = sm2Service.calculateNextReviewTime(1, 1, 4);
+
+        String wrongFreqKey = redisUtils.studentKey(StudentKey.WRONG_FREQ, studentId);
+        String drillKey = redisUtils.studentKey(StudentKey.DRILL_MODE, studentId);
+        String reviewKey = redisUtils.studentKey(StudentKey.REVIEW_DUE, studentId);
+        List<Object> results = redisUtils.pipelined(ops -> {
+            if (endsWrong) {
+                ops.opsForValue().set(drillKey, 101L, 10, TimeUnit.MINUTES);
+            } else {
+                ops.delete(drillKey);
+            }
+            wrongCounts.forEach((questionId, count) ->
+                    ops.opsForZSet().incrementScore(wrongFreqKey, questionId.toString(), count));
+            lastResult.forEach((questionId, correct) ->
+                    ops.opsForZSet().add(reviewKey, questionId.toString(), correct ? correctReview : wrongReview));
+        });
+        boolean drillChanged = endsWrong || Boolean.TRUE.equals(results.get(0));
+
+        prefetchService.onAnswers(studentId, drillChanged, changes);
+    }
+
+    private static StudentExerciseLog toLog(Submission submission) {
+        StudentExerciseLog exerciseLog = new StudentExerciseLog();
+        exerciseLog.setStudentId(submission.studentId());
+        exerciseLog.setQuestionId(submission.questionId());
+        exerciseLog.setResult(submission.correct() ? 1 : 0);
+        exerciseLog.setDuration(submission.duration());
+        exerciseLog.setSubmitTime(submission.submitTime());
+        // Blank ids are stored as NULL so they never collide on uk_student_request
+        exerciseLog.setRequestId(submission.requestId() == null || submission.requestId().isBlank()
+                ? null : submission.requestId());
+        return exerciseLog;
+    }
+
+    /**
+     * 按 (学生, 作答时间) 排序，时间相同的答题保持上传顺序 (稳定排序)
+     */
+    public static List<Submission> inAnswerOrder(List<Submission> submissions) {
+        List<Submission> ordered = new ArrayList<>(submissions);
+        ordered.sort(Comparator.comparing(Submission::studentId).thenComparing(Submission::submitTime));
+        return ordered;
+    }
+
+    private static Answer toAnswer(Submission submission) {
+        long answeredAt = submission.submitTime() == null ? 0
+                : submission.submitTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+        String requestId = submission.requestId() == null || submission.requestId().isBlank()
+                ? null : submission.requestId();
+        return new Answer(submission.studentId(), submission.questionId(), submission.correct(), answeredAt, requestId);
+    }
+
+    private static PracticeLog toPracticeLog(Submission submission) {
+        return new PracticeLog(submission.studentId(), submission.questionId(), submission.correct(),
+                submission.duration() == null ? 0 : submission.duration(), submission.submitTime(),
+                submission.requestId());
+    }
+
+    /**
+     * 按 {@link PracticeLogBatchWriter#write} 返回的日志 (logs 的有序子序列，同一实例) 保留对应的答题
+     */
+    private static List<Submission> retainWritten(List<Submission> submissions, List<PracticeLog> logs,
+                                                  List<PracticeLog> written) {
+        if (written.size() == logs.size()) {
+            return submissions;
+        }
+        List<Submission> retained = new ArrayList<>(written.size());
+        int next = 0;
+        for (int i = 0; i < logs.size() && next < written.size(); i++) {
+            if (logs.get(i) == written.get(next)) {
+                retained.add(submissions.get(i));
+                next++;
+            }
+        }
+        return retained;
+    }
+}
@@ -7,6 +7,7 @@ import com.edtech.model.entity.UserSettings;
 import com.edtech.model.mapper.ParentBindingMapper;
 import com.edtech.model.mapper.UserMapper;
 import com.edtech.model.mapper.UserSettingsMapper;
+import com.edtech.web.service.strategy.StrategyWeightsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,6 +19,7 @@ public class SettingsService {
     private final UserSettingsMapper settingsMapper;
     private final ParentBindingMapper bindingMapper;
     private final UserMapper userMapper;
+    private final StrategyWeightsService strategyWeightsService;
 
     public UserSettings getSettings(Long userId) {
         UserSettings settings = settingsMapper.selectById(userId);
@@ -36,6 +38,7 @@ public class SettingsService {
         } else {
             settingsMapper.updateById(settings);
         }
+        strategyWeightsService.invalidate(settings.getUserId());
         return settings;
     }
 
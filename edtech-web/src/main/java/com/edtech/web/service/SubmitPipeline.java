@@ -0,0 +1,559 @@
+package com.edtech.web.service;
+
+import com.edtech.core.util.RedisUtils;
+import com.edtech.core.util.SubmissionDeduplicator;
+import com.edtech.core.util.SubmissionDeduplicator.Claim;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.web.service.PracticeSubmitService.Submission;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 异步答题提交流水线
+ * <p>
+ * 请求线程只做校验和入队即返回。学生按 ID 哈希到固定通道，每个通道一个有界队列 + 一个处理线程，
+ * 同一学生的答题严格按提交顺序执行 持久化 -> 知识追踪 -> 调度 三个阶段，不同学生在通道间并行。
+ * 队列满时入队最多等待 offer-timeout-ms 形成背压，仍失败则拒绝本次提交 (客户端重试)。
+ * 停机时停止接收并排空队列。
+ * 携带 requestId 的提交先经 {@link SubmissionDeduplicator} 登记为处理中，全部阶段完成 (或记入死信) 后改为已完成；
+ * 持久化失败 (事务已回滚) 时撤销登记以便客户端重试，重复提交最终由数据库唯一键挡掉。
+ * 未携带 requestId 的提交在入队时生成一个。知识追踪按 requestId 在 Redis 脚本内去重，
+ * 所以答题已落库的重复提交仍会执行知识追踪: 进程在持久化与知识追踪之间崩溃时，登记过期后的客户端重试会补上，
+ * 已生效过的则被跳过 (此时也不再调度)。
+ * 阶段失败时在通道线程上退避重试，仍失败的提交连同失败阶段记入死信队列，由管理端从该阶段重放；
+ * 重放按学生分组、按作答时间排序后进入学生所属通道，知识追踪的重试与重放都经过同一个去重。
+ * 离线同步的批量提交按学生拆分后同样进入各自的通道 (与该学生的实时提交排在同一顺序中)，
+ * 请求线程等待处理完成以便直接返回掌握度变化。
+ * 知识追踪只在答题记录的事务提交之后执行，数据库回滚不会留下已生效的 Redis 转移。
+ * <p>
+ * 指标: practice.submit.pipeline.latency (入队到处理完成，p50/p99)、
+ * practice.submit.pipeline.stage (各阶段耗时)、practice.submit.pipeline.queue.depth、practice.submit.pipeline.failed。
+ */
+@Component
+@Slf4j
+public class SubmitPipeline {
+
+    static final String DEAD_LETTER_KEY = "practice:submit:dead-letter";
+
+    private final PracticeSubmitService submitService;
+    private final SubmissionDeduplicator deduplicator;
+    private final RedisUtils redisUtils;
+    private final boolean enabled;
+    private final long offerTimeoutMs;
+    private final int batchMaxSize;
+    private final long batchTimeoutMs;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+
+    private final BlockingQueue<Runnable>[] lanes;
+    private final Thread[] workers;
+    private volatile boolean running = true;
+
+    private final Timer latencyTimer;
+    private final Timer persistTimer;
+    private final Timer traceTimer;
+    private final Timer scheduleTimer;
+    private final Counter failedCounter;
+
+    /**
+     * 提交的处理阶段，死信记录失败的阶段以便从该阶段重放
+     */
+    enum Stage {
+        PERSIST, TRACE, SCHEDULE
+    }
+
+    /**
+     * 排队中的提交
+     *
+     * @param stage  开始执行的阶段 (新提交为 PERSIST，死信重放为失败的阶段)
+     * @param change 从 SCHEDULE 重放时知识追踪的结果，可为 null
+     */
+    private record Pending(Submission submission, Stage stage, MasteryChange change, long acceptedAtNanos) {
+    }
+
+    /**
+     * 批量提交的结果
+     *
+     * @param accepted   本次处理的答题数
+     * @param duplicates 因 requestId 重复而跳过的答题数
+     * @param changes    每个 (学生, 知识点) 的最终掌握度变化
+     */
+    public record BatchResult(int accepted, int duplicates, List<MasteryChange> changes) {
+    }
+
+    @SuppressWarnings("unchecked")
+    public SubmitPipeline(PracticeSubmitService submitService,
+                          SubmissionDeduplicator deduplicator,
+                          RedisUtils redisUtils,
+                          MeterRegistry meterRegistry,
+                          @Value("${edtech.practice.submit.async:false}") boolean enabled,
+                          @Value("${edtech.practice.submit.lanes:4}") int laneCount,
+                          @Value("${edtech.practice.submit.lane-capacity:1024}") int laneCapacity,
+                          @Value("${edtech.practice.submit.offer-timeout-ms:200}") long offerTimeoutMs,
+                          @Value("${edtech.practice.submit.batch-max-size:1000}") int batchMaxSize,
+                          @Value("${edtech.practice.submit.batch-timeout-ms:30000}") long batchTimeoutMs,
+                          @Value("${edtech.practice.submit.max-attempts:3}") int maxAttempts,
+                          @Value("${edtech.practice.submit.retry-backoff-ms:200}") long retryBackoffMs) {
+        this.submitService = submitService;
+        this.deduplicator = deduplicator;
+        this.redisUtils = redisUtils;
+        this.enabled = enabled;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.batchMaxSize = batchMaxSize;
+        this.batchTimeoutMs = batchTimeoutMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+
+        this.latencyTimer = Timer.builder("practice.submit.pipeline.latency")
+                .description("Answer submission latency from enqueue to last stage")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.persistTimer = stageTimer(meterRegistry, "persist");
+        this.traceTimer = stageTimer(meterRegistry, "trace");
+        this.scheduleTimer = stageTimer(meterRegistry, "schedule");
+        this.failedCounter = Counter.builder("practice.submit.pipeline.failed")
+                .description("Submissions that failed in a pipeline stage")
+                .register(meterRegistry);
+
+        this.lanes = new BlockingQueue[enabled ? laneCount : 0];
+        this.workers = new Thread[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayBlockingQueue<>(laneCapacity);
+            BlockingQueue<Runnable> lane = lanes[i];
+            workers[i] = new Thread(() -> runLane(lane), "practice-submit-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        Gauge.builder("practice.submit.pipeline.queue.depth", this, SubmitPipeline::queueDepth)
+                .description("Submissions waiting in all lanes")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Async submit pipeline enabled: {} lanes x {} slots", laneCount, laneCapacity);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 入队一次已校验的提交，返回后由学生所属通道异步处理；未开启异步模式时在当前线程同步处理
+     */
+    public void submit(Submission submission) {
+        // Retried requests with an already-logged requestId are acknowledged without reprocessing
+        Claim claim = deduplicator.claim(submission.studentId(), submission.requestId());
+        if (claim == Claim.DONE) {
+            return;
+        }
+        if (claim == Claim.IN_PROGRESS) {
+            throw new RuntimeException("该答题正在处理，请稍后重试");
+        }
+        Pending pending = new Pending(submission.withRequestId(), Stage.PERSIST, null, System.nanoTime());
+        if (!enabled) {
+            process(pending, true);
+            return;
+        }
+        if (!running) {
+            deduplicator.release(submission.studentId(), submission.requestId());
+            throw new RuntimeException("服务正在停机，请稍后重试");
+        }
+        if (!enqueue(submission.studentId(), () -> process(pending, false))) {
+            deduplicator.release(submission.studentId(), submission.requestId());
+            throw new RuntimeException("提交繁忙，请稍后重试");
+        }
+    }
+
+    /**
+     * 同步处理一批离线答题: 逐条登记后按学生拆分，每个学生的答题整批持久化与知识追踪，已完成或正在处理的答题跳过。
+     * 异步模式下每个学生的子批次进入其所属通道，请求线程最多等待 batch-timeout-ms；
+     * 超时后抛出可重试的错误，尚未开始的子批次撤销登记不再执行，已开始的继续处理完。
+     * 某个学生的持久化失败时撤销其登记并抛出，客户端重试整批时已落库的答题由数据库唯一键排除。
+     */
+    public BatchResult submitBatch(List<Submission> submissions) {
+        if (submissions.size() > batchMaxSize) {
+            throw new RuntimeException("单次最多同步 " + batchMaxSize + " 条答题");
+        }
+        Map<Long, List<Submission>> byStudent = new LinkedHashMap<>();
+        int claimed = 0;
+        for (Submission submission : submissions) {
+            if (deduplicator.claim(submission.studentId(), submission.requestId()) == Claim.NEW) {
+                byStudent.computeIfAbsent(submission.studentId(), k -> new ArrayList<>()).add(submission.withRequestId());
+                claimed++;
+            }
+        }
+
+        List<MasteryChange> changes = new ArrayList<>();
+        if (!enabled) {
+            byStudent.values().forEach(answers -> changes.addAll(processBatch(answers)));
+            return new BatchResult(claimed, submissions.size() - claimed, changes);
+        }
+
+        List<CompletableFuture<List<MasteryChange>>> results = new ArrayList<>(byStudent.size());
+        byStudent.forEach((studentId, answers) -> {
+            CompletableFuture<List<MasteryChange>> result = new CompletableFuture<List<MasteryChange>>()
+                    .orTimeout(batchTimeoutMs, TimeUnit.MILLISECONDS);
+            boolean accepted = running && enqueue(studentId, () -> {
+                if (result.isDone()) {
+                    // The request already timed out; let the client's retry claim these again
+                    answers.forEach(s -> deduplicator.release(s.studentId(), s.requestId()));
+                    return;
+                }
+                try {
+                    result.complete(processBatch(answers));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            if (!accepted) {
+                answers.forEach(s -> deduplicator.release(s.studentId(), s.requestId()));
+                result.completeExceptionally(new RuntimeException("提交繁忙，请稍后重试"));
+            }
+            results.add(result);
+        });
+        RuntimeException failure = null;
+        for (CompletableFuture<List<MasteryChange>> result : results) {
+            try {
+                changes.addAll(result.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    failure = new RuntimeException("同步处理超时，请稍后重试");
+                } else {
+                    failure = e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return new BatchResult(claimed, submissions.size() - claimed, changes);
+    }
+
+    /**
+     * 当前排队数与入队到完成的 p50/p99 (毫秒)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("lanes", lanes.length);
+        stats.put("queueDepth", queueDepth());
+        HistogramSnapshot snapshot = latencyTimer.takeSnapshot();
+        stats.put("processed", snapshot.count());
+        stats.put("failed", (long) failedCounter.count());
+        stats.put("deadLetters", deadLetterCount());
+        for (ValueAtPercentile p : snapshot.percentileValues()) {
+            stats.put(p.percentile() == 0.5 ? "p50Ms" : "p99Ms", p.value(TimeUnit.MILLISECONDS));
+        }
+        return stats;
+    }
+
+    /**
+     * 从死信队列取出最多 limit 条提交，从各自失败的阶段重新执行
+     * <p>
+     * 按学生分组并按作答时间排序，每个学生的一组作为一个任务进入其所属通道 (未开启异步模式时在当前线程执行)，
+     * 与该学生的实时提交串行。知识追踪按 requestId 去重，已生效过的不会重复计入。
+     *
+     * @return 重新提交的条数
+     */
+    public int replayDeadLetters(int limit) {
+        Map<Long, List<Pending>> byStudent = new LinkedHashMap<>();
+        Map<Long, List<Object>> entries = new LinkedHashMap<>();
+        for (int taken = 0; taken < limit; taken++) {
+            Object entry = redisUtils.lPop(DEAD_LETTER_KEY);
+            if (entry == null) {
+                break;
+            }
+            Pending pending = fromDeadLetter(entry);
+            if (pending == null) {
+                continue;
+            }
+            Long studentId = pending.submission().studentId();
+            byStudent.computeIfAbsent(studentId, k -> new ArrayList<>()).add(pending);
+            entries.computeIfAbsent(studentId, k -> new ArrayList<>()).add(entry);
+        }
+
+        int replayed = 0;
+        boolean full = false;
+        for (Map.Entry<Long, List<Pending>> group : byStudent.entrySet()) {
+            if (full) {
+                // Lanes are full: put the rest back for the next replay
+                entries.get(group.getKey()).forEach(entry -> redisUtils.rPush(DEAD_LETTER_KEY, entry));
+                continue;
+            }
+            List<Pending> ordered = new ArrayList<>(group.getValue());
+            ordered.sort(Comparator.comparing(p -> p.submission().submitTime()));
+            Runnable task = () -> ordered.forEach(p -> process(p, false));
+            if (!enabled) {
+                task.run();
+            } else if (!running || !enqueue(group.getKey(), task)) {
+                full = true;
+                entries.get(group.getKey()).forEach(entry -> redisUtils.rPush(DEAD_LETTER_KEY, entry));
+                continue;
+            }
+            replayed += ordered.size();
+        }
+        log.info("Replayed {} dead-lettered submissions", replayed);
+        return replayed;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (queueDepth() > 0) {
+            log.warn("Submit pipeline stopped with {} submissions not processed", queueDepth());
+        }
+    }
+
+    private void runLane(BlockingQueue<Runnable> lane) {
+        while (running || !lane.isEmpty()) {
+            Runnable task;
+            try {
+                task = lane.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    private boolean enqueue(Long studentId, Runnable task) {
+        BlockingQueue<Runnable> lane = lanes[Math.floorMod(studentId.hashCode(), lanes.length)];
+        try {
+            return lane.offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 从 pending 的阶段开始依次执行剩余阶段
+     * <p>
+     * 每个阶段失败后经 {@link #retrying} 重试，仍失败时记入死信队列。答题记录已存在 (重复提交) 时仍执行知识追踪，
+     * 由 requestId 去重判断是否已经生效，已生效的不再调度。全部阶段完成或记入死信后登记改为已完成；
+     * 持久化失败时事务已回滚，撤销登记，请求线程上直接抛出由客户端重试。
+     *
+     * @param inline 是否在请求线程上执行
+     */
+    private void process(Pending pending, boolean inline) {
+        Submission submission = pending.submission();
+        Long studentId = submission.studentId();
+        Stage stage = pending.stage();
+        MasteryChange change = pending.change();
+        boolean alreadyLogged = false;
+        try {
+            while (stage != null) {
+                switch (stage) {
+                    case PERSIST -> {
+                        alreadyLogged = !retrying(stage, studentId, persistTimer, () -> submitService.persist(submission));
+                        stage = Stage.TRACE;
+                    }
+                    case TRACE -> {
+                        // Idempotent per requestId, so retrying after a timeout never counts the answer twice
+                        change = retrying(stage, studentId, traceTimer, () -> submitService.trace(submission));
+                        // A duplicate whose answer was already traced has nothing left to do
+                        stage = change == null && alreadyLogged ? null : Stage.SCHEDULE;
+                    }
+                    case SCHEDULE -> {
+                        MasteryChange traced = change;
+                        retrying(stage, studentId, scheduleTimer, () -> {
+                            submitService.schedule(submission, traced);
+                            return null;
+                        });
+                        stage = null;
+                    }
+                }
+            }
+            deduplicator.complete(studentId, submission.requestId());
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.error("Submit pipeline failed at {} for student {}, question {}",
+                    stage, studentId, submission.questionId(), e);
+            if (stage == Stage.PERSIST) {
+                deduplicator.release(studentId, submission.requestId());
+                if (inline) {
+                    throw e instanceof RuntimeException re ? re : new RuntimeException(e);
+                }
+            } else {
+                deduplicator.complete(studentId, submission.requestId());
+            }
+            deadLetter(submission, stage, change, e);
+        } finally {
+            latencyTimer.record(System.nanoTime() - pending.acceptedAtNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 一个学生的一批答题: 持久化事务提交后才做知识追踪与调度
+     * <p>
+     * 整批 (包括答题记录已存在的) 按作答时间做知识追踪，已生效过的 requestId 在脚本内跳过；只调度本批新写入的答题。
+     * 持久化失败时撤销登记并抛出；之后的阶段失败时相关答题逐条记入死信，从失败的阶段重放，
+     * 不撤销登记也不抛出 (答题记录已提交，客户端重试只会被去重)。
+     */
+    private List<MasteryChange> processBatch(List<Submission> answers) {
+        long startNanos = System.nanoTime();
+        Long studentId = answers.get(0).studentId();
+        List<Submission> ordered = PracticeSubmitService.inAnswerOrder(answers);
+        List<Submission> persisted;
+        try {
+            persisted = retrying(Stage.PERSIST, studentId, persistTimer, () -> submitService.persistBatch(ordered));
+        } catch (Exception e) {
+            failedCounter.increment();
+            answers.forEach(s -> deduplicator.release(s.studentId(), s.requestId()));
+            throw e instanceof RuntimeException re ? re : new RuntimeException(e);
+        }
+        List<Submission> written = persisted;
+
+        Stage stage = Stage.TRACE;
+        List<MasteryChange> changes = Collections.emptyList();
+        try {
+            changes = retrying(stage, studentId, traceTimer, () -> submitService.traceBatch(ordered));
+            stage = Stage.SCHEDULE;
+            List<MasteryChange> traced = changes;
+            if (!written.isEmpty()) {
+                retrying(stage, studentId, scheduleTimer, () -> {
+                    submitService.scheduleBatch(written, traced);
+                    return null;
+                });
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            List<Submission> failed = stage == Stage.TRACE ? ordered : written;
+            log.error("Submit batch of {} answers failed at {} for student {}", failed.size(), stage, studentId, e);
+            for (Submission submission : failed) {
+                deadLetter(submission, stage, null, e);
+            }
+        } finally {
+            answers.forEach(s -> deduplicator.complete(s.studentId(), s.requestId()));
+            latencyTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        return changes;
+    }
+
+    /**
+     * 执行一个阶段，失败后按 retry-backoff-ms 线性退避在当前线程重试 (同一学生的后续答题随之等待，顺序不变)，
+     * 最多 max-attempts 次，仍失败时抛出最后一次的异常
+     */
+    private <T> T retrying(Stage stage, Long studentId, Timer timer, Callable<T> body) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return timer.recordCallable(body);
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || !backoff(attempt)) {
+                    throw e;
+                }
+                log.warn("Submit stage {} failed for student {}, attempt {}/{}: {}",
+                        stage, studentId, attempt, maxAttempts, e.getMessage());
+            }
+        }
+    }
+
+    private boolean backoff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deadLetter(Submission submission, Stage stage, MasteryChange change, Exception cause) {
+        // Plain strings survive the JSON round trip without type hints
+        Map<String, String> entry = new LinkedHashMap<>();
+        entry.put("studentId", submission.studentId().toString());
+        entry.put("questionId", submission.questionId().toString());
+        entry.put("correct", String.valueOf(submission.correct()));
+        entry.put("duration", String.valueOf(submission.duration()));
+        entry.put("submitTime", submission.submitTime().toString());
+        entry.put("requestId", submission.requestId());
+        entry.put("stage", stage.name());
+        if (change != null) {
+            entry.put("knowledgePointId", change.knowledgePointId().toString());
+            entry.put("before", String.valueOf(change.before()));
+            entry.put("after", String.valueOf(change.after()));
+        }
+        entry.put("error", String.valueOf(cause.getMessage()));
+        try {
+            redisUtils.rPush(DEAD_LETTER_KEY, entry);
+        } catch (Exception e) {
+            log.error("Failed to dead-letter submission {}: {}", entry, e.getMessage());
+        }
+    }
+
+    private static Pending fromDeadLetter(Object entry) {
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> map = (Map<String, Object>) entry;
+            Long studentId = Long.valueOf(map.get("studentId").toString());
+            Object duration = map.get("duration");
+            Object requestId = map.get("requestId");
+            Submission submission = new Submission(studentId,
+                    Long.valueOf(map.get("questionId").toString()),
+                    Boolean.parseBoolean(map.get("correct").toString()),
+                    duration == null || "null".equals(duration.toString()) ? null : Integer.valueOf(duration.toString()),
+                    LocalDateTime.parse(map.get("submitTime").toString()),
+                    requestId == null ? null : requestId.toString());
+            MasteryChange change = map.containsKey("knowledgePointId")
+                    ? new MasteryChange(studentId, Long.valueOf(map.get("knowledgePointId").toString()),
+                    Double.parseDouble(map.get("before").toString()), Double.parseDouble(map.get("after").toString()))
+                    : null;
+            return new Pending(submission, Stage.valueOf(map.get("stage").toString()), change, System.nanoTime());
+        } catch (Exception e) {
+            log.error("Dropping malformed dead letter {}: {}", entry, e.getMessage());
+            return null;
+        }
+    }
+
+    private long deadLetterCount() {
+        try {
+            Long size = redisUtils.lLen(DEAD_LETTER_KEY);
+            return size == null ? 0 : size;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private int queueDepth() {
+        int depth = 0;
+        for (BlockingQueue<Runnable> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("practice.submit.pipeline.stage")
+                .description("Time spent in one submit pipeline stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,287 @@
+package com.edtech.web.service.strategy;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.edtech.common.redis.StudentKey;
+import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.model.entity.Question;
+import com.edtech.web.service.strategy.PracticeStrategyService.QuestionSelection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 活跃学生的下一题预取队列
+ * <p>
+ * 后台线程按最新掌握度为学生预先跑完整个选题流程，结果 (题目 + 策略) 存入学生的 Redis list，
+ * 取题只需一次 LPOP (与 LLEN 同一次往返)，队列低于水位时异步补齐。
+ * 答题改变了纠错模式，或所答知识点的掌握度变化足以改变选题 (变化超过阈值、跨过已掌握阈值) 时清空队列。
+ * 只有取过题或答过题的学生才会有队列，队列带过期时间，不活跃的学生自然淘汰。
+ * <p>
+ * 补齐与清空的先后由 Redis 中的队列代号 (epoch) 保证: 清空在同一次往返内递增代号并删除队列，
+ * 补齐在计算前读取代号，写入时由 lua/prefetch_push.lua 原子比较，代号变化则丢弃结果并按最新状态重新补齐。
+ * 代号与队列同一 hash tag、同样带过期时间，多实例部署时同样有效，进程内不保存任何按学生增长的状态。
+ */
+@Service
+@Slf4j
+public class PracticePrefetchService {
+
+    private static final String POP_SCRIPT = "lua/prefetch_pop.lua";
+    private static final String PUSH_SCRIPT = "lua/prefetch_push.lua";
+
+    private final PracticeStrategyService strategyService;
+    private final RedisUtils redisUtils;
+
+    private final boolean enabled;
+    private final int depth;
+    private final int lowWater;
+    private final long ttlMinutes;
+    private final double invalidateDelta;
+    private final double strongThreshold;
+
+    private final ThreadPoolExecutor worker;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter invalidateCounter;
+
+    public PracticePrefetchService(PracticeStrategyService strategyService,
+                                   RedisUtils redisUtils,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${edtech.practice.prefetch.enabled:true}") boolean enabled,
+                                   @Value("${edtech.practice.prefetch.depth:5}") int depth,
+                                   @Value("${edtech.practice.prefetch.low-water:2}") int lowWater,
+                                   @Value("${edtech.practice.prefetch.ttl-minutes:30}") long ttlMinutes,
+                                   @Value("${edtech.practice.prefetch.invalidate-delta:0.05}") double invalidateDelta,
+                                   @Value("${edtech.practice.prefetch.threads:2}") int threads,
+                                   @Value("${kt.profile.strong-threshold:0.8}") double strongThreshold) {
+        this.strategyService = strategyService;
+        this.redisUtils = redisUtils;
+        this.enabled = enabled;
+        this.depth = depth;
+        this.lowWater = lowWater;
+        this.ttlMinutes = ttlMinutes;
+        this.invalidateDelta = invalidateDelta;
+        this.strongThreshold = strongThreshold;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.worker = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    Thread t = new Thread(r, "practice-prefetch-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        this.hitCounter = Counter.builder("practice.prefetch.hit")
+                .description("Next-question requests served from the prefetch queue")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("practice.prefetch.miss")
+                .description("Next-question requests that ran selection synchronously")
+                .register(meterRegistry);
+        this.invalidateCounter = Counter.builder("practice.prefetch.invalidate")
+                .description("Prefetch queues dropped because an answer changed the selection inputs")
+                .register(meterRegistry);
+        Gauge.builder("practice.prefetch.pending", worker, e -> e.getQueue().size())
+                .description("Refill tasks waiting for a prefetch worker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 取下一题: 命中预取队列时为一次 LPOP，否则同步选题；队列低于水位时异步补齐
+     */
+    public QuestionSelection next(Long studentId) {
+        if (!enabled) {
+            return strategyService.selectNextQuestion(studentId);
+        }
+        String key = redisUtils.studentKey(StudentKey.NEXT_QUESTIONS, studentId);
+        QuestionSelection selection = null;
+        Long remaining = null;
+        try {
+            List<String> popped = redisUtils.eval(script(POP_SCRIPT), List.of(key));
+            remaining = Long.parseLong(popped.get(1));
+            selection = decode(popped.get(0));
+        } catch (Exception e) {
+            log.warn("Failed to pop prefetched question for student {}: {}", studentId, e.getMessage());
+        }
+
+        if (selection != null) {
+            hitCounter.increment();
+        } else {
+            missCounter.increment();
+            selection = strategyService.selectNextQuestion(studentId);
+        }
+        if (remaining == null || remaining < lowWater) {
+            scheduleRefill(studentId);
+        }
+        return selection;
+    }
+
+    /**
+     * 答题后调用: 选题输入发生足够变化时清空队列，然后按最新状态补齐
+     *
+     * @param drillChanged 本次答题进入或退出了纠错模式
+     * @param change       所答知识点的掌握度变化，可为 null
+     */
+    public void onAnswer(Long studentId, boolean drillChanged, MasteryChange change) {
+        if (!enabled) {
+            return;
+        }
+        if (drillChanged || changesSelection(change)) {
+            invalidate(studentId);
+        }
+        scheduleRefill(studentId);
+    }
+
+    /**
+     * 批量答题后调用，任一知识点的变化足以改变选题时清空一次队列
+     */
+    public void onAnswers(Long studentId, boolean drillChanged, List<MasteryChange> changes) {
+        if (!enabled) {
+            return;
+        }
+        if (drillChanged || changes.stream().anyMatch(this::changesSelection)) {
+            invalidate(studentId);
+        }
+        scheduleRefill(studentId);
+    }
+
+    /**
+     * 清空学生的预取队列，并使正在计算中的补齐结果作废
+     */
+    public void invalidate(Long studentId) {
+        List<String> keys = redisUtils.studentKeys(studentId, StudentKey.NEXT_QUESTIONS, StudentKey.NEXT_QUESTIONS_EPOCH);
+        try {
+            // Bump before delete: a push that lands in between is either rejected or deleted
+            redisUtils.pipelined(ops -> {
+                ops.opsForValue().increment(keys.get(1));
+                ops.expire(keys.get(1), ttlMinutes, TimeUnit.MINUTES);
+                ops.delete(keys.get(0));
+            });
+        } catch (Exception e) {
+            log.warn("Failed to drop prefetch queue for student {}: {}", studentId, e.getMessage());
+        }
+        invalidateCounter.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private boolean changesSelection(MasteryChange change) {
+        if (change == null) {
+            return false;
+        }
+        boolean crossedStrong = (change.before() >= strongThreshold) != (change.after() >= strongThreshold);
+        return crossedStrong || Math.abs(change.delta()) >= invalidateDelta;
+    }
+
+    private void scheduleRefill(Long studentId) {
+        if (!pending.add(studentId)) {
+            return;
+        }
+        try {
+            worker.execute(() -> {
+                boolean stale = false;
+                try {
+                    stale = !refill(studentId);
+                } catch (Exception e) {
+                    log.warn("Failed to prefetch questions for student {}: {}", studentId, e.getMessage());
+                } finally {
+                    pending.remove(studentId);
+                }
+                // Triggers that arrived while this refill ran were no-ops, so redo it against the new state
+                if (stale) {
+                    scheduleRefill(studentId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Saturated: the student simply gets synchronous selection until the next trigger
+            pending.remove(studentId);
+        }
+    }
+
+    /**
+     * @return false 表示计算期间队列被清空过，结果已丢弃
+     */
+    private boolean refill(Long studentId) {
+        List<String> keys = redisUtils.studentKeys(studentId, StudentKey.NEXT_QUESTIONS, StudentKey.NEXT_QUESTIONS_EPOCH);
+        List<Object> state = redisUtils.pipelined(ops -> {
+            ops.opsForList().size(keys.get(0));
+            ops.opsForValue().get(keys.get(1));
+        });
+        Long size = (Long) state.get(0);
+        String epoch = state.get(1) == null ? "" : state.get(1).toString();
+        int missing = depth - (size == null ? 0 : size.intValue());
+        if (missing <= 0) {
+            return true;
+        }
+
+        List<String> entries = new ArrayList<>(missing);
+        Set<Long> queued = new HashSet<>();
+        // Consecutive selections see the same state, so retry a little to avoid queueing one item twice
+        for (int attempt = 0; attempt < missing * 2 && entries.size() < missing; attempt++) {
+            QuestionSelection selection = strategyService.selectNextQuestion(studentId);
+            if (selection == null || selection.question() == null) {
+                break;
+            }
+            if (queued.add(selection.question().getId())) {
+                entries.add(encode(selection));
+            }
+        }
+        if (entries.isEmpty()) {
+            return true;
+        }
+
+        Object[] args = new Object[entries.size() + 2];
+        args[0] = epoch;
+        args[1] = TimeUnit.MINUTES.toSeconds(ttlMinutes);
+        for (int i = 0; i < entries.size(); i++) {
+            args[i + 2] = entries.get(i);
+        }
+        Long pushed = redisUtils.eval(redisUtils.script(PUSH_SCRIPT, Long.class), keys, args);
+        return pushed != null && pushed == 1L;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private RedisScript<List<String>> script(String location) {
+        return (RedisScript) redisUtils.script(location, List.class);
+    }
+
+    private static String encode(QuestionSelection selection) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("question", selection.question());
+        entry.put("strategyCode", selection.strategyCode());
+        entry.put("strategyName", selection.strategyName());
+        return JSONUtil.toJsonStr(entry);
+    }
+
+    private static QuestionSelection decode(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        JSONObject entry = JSONUtil.parseObj(raw);
+        Question question = entry.getBean("question", Question.class);
+        return new QuestionSelection(question, entry.getStr("strategyCode"), entry.getStr("strategyName"));
+    }
+}
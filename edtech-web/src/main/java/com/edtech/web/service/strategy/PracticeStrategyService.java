@@ -1,16 +1,27 @@
 package com.edtech.web.service.strategy;
 
+import com.edtech.common.redis.StudentKey;
 import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.catalog.QuestionIndex;
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.graph.PrerequisiteGraph;
+import com.edtech.kt.service.MasteryQueryService;
+import com.edtech.kt.store.MasteryCodec;
+import com.edtech.kt.store.MasteryStore;
 import com.edtech.model.entity.KnowledgePoint;
 import com.edtech.model.entity.Question;
 import com.edtech.model.mapper.KnowledgePointMapper;
 import com.edtech.model.mapper.QuestionMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 @Service
@@ -20,88 +31,134 @@ public class PracticeStrategyService {
 
     private final RedisUtils redisUtils;
     private final QuestionMapper questionMapper;
+    private final QuestionIndex questionIndex;
+    private final ProximalDifficultySelector proximalDifficultySelector;
+    private final StrategyWeightsService strategyWeightsService;
+    private final SeenQuestionService seenQuestionService;
     private final KnowledgePointMapper knowledgePointMapper;
+    private final MasteryQueryService masteryQueryService;
+    private final PrerequisiteGraph prerequisiteGraph;
+    private final ForgettingCurve forgettingCurve;
 
-    private static final String KEY_DRILL_MODE = "student:%s:drill_mode";
-    private static final String KEY_WRONG_FREQ = "student:%s:wrong_freq";
-    private static final String KEY_WEAK_KPS = "student:%s:weak_kps";
-    private static final String KEY_REVIEW_DUE = "student:%s:review_due";
-    private static final String KEY_MASTERY = "student:%s:mastery";
+    // Same threshold as the profile ZSETs written by MasteryStore
+    @Value("${kt.profile.strong-threshold:0.8}")
+    private double strongThreshold;
+
+    private static final int MASTERED_SCAN_LIMIT = 64;
+    private static final String SELECT_SCRIPT = "lua/practice_select.lua";
+    private static final String COLD = "COLD";
+    private static final String EXPLORATION = "EXPLORATION";
 
     public QuestionSelection selectNextQuestion(Long studentId) {
-        // 1. Check Drill Mode (Highest Priority)
-        String drillKey = String.format(KEY_DRILL_MODE, studentId);
-        Object drillKpId = redisUtils.get(drillKey);
-        if (drillKpId != null) {
-            log.info("Student {} in Drill Mode for KP {}", studentId, drillKpId);
-            return new QuestionSelection(getQuestionByKp(Long.parseLong(drillKpId.toString())), "CORRECTION_DRILL", "纠错专项训练");
+        // Weighted pick from the student's own alias table; drill check and fall-through run server-side
+        int strategy = strategyWeightsService.sampleStrategy(studentId);
+        List<String> decision = decide(studentId, strategy);
+        if (COLD.equals(decision.get(0))) {
+            // Empty profile on a cold student: warm-load the mastery vector, then decide again
+            masteryQueryService.currentVector(studentId);
+            decision = decide(studentId, strategy);
         }
 
-        // 2. Weighted Strategy Selection
-        int roll = ThreadLocalRandom.current().nextInt(100);
-        
-        // Strategy A: High Frequency Mistakes (40%)
-        if (roll < 40) {
-            Set<Object> wrongKps = redisUtils.zReverseRange(String.format(KEY_WRONG_FREQ, studentId), 0, 9);
-            if (!wrongKps.isEmpty()) {
-                Object kpId = getRandomElement(wrongKps);
-                return new QuestionSelection(getQuestionByKp(Long.parseLong(kpId.toString())), "HIGH_FREQ_WRONG", "高频错题重练");
+        switch (decision.get(0)) {
+            case "CORRECTION_DRILL" -> {
+                log.info("Student {} in Drill Mode for KP {}", studentId, decision.get(1));
+                return new QuestionSelection(getQuestionByKp(studentId, Long.parseLong(decision.get(1))), "CORRECTION_DRILL", "纠错专项训练");
             }
-        }
-
-        // Strategy B: Weak Points (30%)
-        if (roll < 70) {
-            // Weakest: Score (1-prob) is high
-            Set<Object> weakKps = redisUtils.zReverseRange(String.format(KEY_WEAK_KPS, studentId), 0, 4);
-            if (!weakKps.isEmpty()) {
-                Object kpId = getRandomElement(weakKps);
-                return new QuestionSelection(getQuestionByKp(Long.parseLong(kpId.toString())), "WEAK_POINT", "薄弱知识点击破");
+            case "HIGH_FREQ_WRONG" -> {
+                return new QuestionSelection(getQuestionByKp(studentId, Long.parseLong(decision.get(1))), "HIGH_FREQ_WRONG", "高频错题重练");
+            }
+            case "WEAK_POINT" -> {
+                return new QuestionSelection(getQuestionByKp(studentId, Long.parseLong(decision.get(1))), "WEAK_POINT", "薄弱知识点击破");
+            }
+            case "SPACED_REPETITION" -> {
+                return new QuestionSelection(getQuestionByKp(studentId, Long.parseLong(decision.get(1))), "SPACED_REPETITION", "艾宾浩斯记忆唤醒");
+            }
+            case "ADVANCED" -> {
+                Long advancedKp = pickAdvancedKp(toIds(decision.subList(1, decision.size())));
+                if (advancedKp != null) {
+                    return new QuestionSelection(getQuestionByKp(studentId, advancedKp), "ADVANCED", "进阶挑战");
+                }
+            }
+            default -> {
             }
         }
 
-        // Strategy C: Spaced Repetition (15%)
-        if (roll < 85) {
-            double now = System.currentTimeMillis() / 1000.0;
-            Set<Object> dueKps = redisUtils.zRangeByScore(String.format(KEY_REVIEW_DUE, studentId), 0, now);
-            if (!dueKps.isEmpty()) {
-                Object kpId = getRandomElement(dueKps);
-                return new QuestionSelection(getQuestionByKp(Long.parseLong(kpId.toString())), "SPACED_REPETITION", "艾宾浩斯记忆唤醒");
+        // Default: Random / Exploration (own weight or Fallback)
+        return new QuestionSelection(getRandomQuestion(studentId), "EXPLORATION", "探索新知");
+    }
+
+    /**
+     * 在 Redis 端执行选题策略决策 (lua/practice_select.lua)，返回 {策略代码, ID...}
+     * 从抽中的策略开始尝试，不可用时依次落到下一个策略 (见 {@link StrategyWeightsService})
+     * 薄弱与进阶策略按 {@link ForgettingCurve} 衰减后的当前掌握度重新判断画像中的候选
+     */
+    private List<String> decide(Long studentId, int strategy) {
+        List<String> keys = redisUtils.studentKeys(studentId, StudentKey.DRILL_MODE, StudentKey.WRONG_FREQ,
+                StudentKey.WEAK_KPS, StudentKey.REVIEW_DUE, StudentKey.STRONG_KPS, StudentKey.STATE);
+        try {
+            List<String> decision = redisUtils.eval(selectScript(), keys,
+                    strategy, System.currentTimeMillis() / 1000,
+                    ThreadLocalRandom.current().nextDouble(), MASTERED_SCAN_LIMIT, MasteryStore.WARM_FIELD,
+                    forgettingCurve.scriptHalfLifeSeconds(), forgettingCurve.getFloor(),
+                    MasteryCodec.toBasisPoints(strongThreshold));
+            if (decision != null && !decision.isEmpty()) {
+                return decision;
             }
+        } catch (Exception e) {
+            log.warn("Strategy selection script failed for student {}: {}", studentId, e.getMessage());
         }
+        return List.of(EXPLORATION);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private RedisScript<List<String>> selectScript() {
+        return (RedisScript) redisUtils.script(SELECT_SCRIPT, List.class);
+    }
 
-        // Strategy D: Advanced (10%)
-        if (roll < 95) {
-            // Need to scan mastery hash or use another ZSet. For simplicity, fallback to random if complex query needed.
-            // Assuming we have a ZSet for high mastery too or just random pick.
-            // Let's pick a random KP and check mastery.
-            // Fallback: Just return random advanced.
+    private static long[] toIds(List<String> members) {
+        long[] ids = new long[members.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Long.parseLong(members.get(i));
         }
+        return ids;
+    }
 
-        // Default: Random / Exploration (5% or Fallback)
-        return new QuestionSelection(getRandomQuestion(), "EXPLORATION", "探索新知");
+    /**
+     * 进阶: 已掌握知识点 (画像中的已掌握集合) 的直接后续中尚未掌握的知识点
+     */
+    private Long pickAdvancedKp(long[] mastered) {
+        long[] sorted = mastered.clone();
+        Arrays.sort(sorted);
+        List<Long> candidates = new ArrayList<>();
+        for (long kpId : mastered) {
+            for (long next : prerequisiteGraph.reach(kpId, false, 1, 16).kpIds()) {
+                if (Arrays.binarySearch(sorted, next) < 0 && !candidates.contains(next)) {
+                    candidates.add(next);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
     }
 
-    private Question getQuestionByKp(Long kpId) {
-        // Ideally select by difficulty dynamically. Here simplified.
-        List<Question> questions = questionMapper.selectByMap(java.util.Map.of("knowledge_point_id", kpId));
-        if (questions.isEmpty()) return getRandomQuestion(); // Fallback
-        return questions.get(ThreadLocalRandom.current().nextInt(questions.size()));
+    private Question getQuestionByKp(Long studentId, Long kpId) {
+        // Difficulty matched to the student's mastery (target success band), skipping recently answered items
+        RoaringBitmap seen = seenQuestionService.recent(studentId);
+        long questionId = proximalDifficultySelector.select(studentId, kpId, id -> SeenQuestionService.contains(seen, id));
+        if (questionId == QuestionIndex.NO_QUESTION) return getRandomQuestion(studentId, seen); // Fallback
+        return questionMapper.selectById(questionId);
     }
 
-    private Question getRandomQuestion() {
-        List<Question> list = questionMapper.selectList(null);
-        if (list.isEmpty()) return null;
-        return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+    private Question getRandomQuestion(Long studentId) {
+        return getRandomQuestion(studentId, seenQuestionService.recent(studentId));
     }
 
-    private Object getRandomElement(Set<Object> set) {
-        int index = ThreadLocalRandom.current().nextInt(set.size());
-        int i = 0;
-        for (Object obj : set) {
-            if (i == index) return obj;
-            i++;
-        }
-        return set.iterator().next();
+    private Question getRandomQuestion(Long studentId, RoaringBitmap seen) {
+        long questionId = questionIndex.sampleAny(id -> SeenQuestionService.contains(seen, id));
+        if (questionId == QuestionIndex.NO_QUESTION) return null;
+        return questionMapper.selectById(questionId);
     }
 
     public record QuestionSelection(Question question, String strategyCode, String strategyName) {}
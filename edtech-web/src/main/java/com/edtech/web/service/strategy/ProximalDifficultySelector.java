@@ -0,0 +1,103 @@
+package com.edtech.web.service.strategy;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.catalog.QuestionIndex;
+import com.edtech.kt.service.MasteryQueryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.function.LongPredicate;
+
+/**
+ * 最近发展区 (ZPD) 难度匹配选题
+ * <p>
+ * 按学生对知识点的掌握度 m 和题目难度 d 估计答对概率 P = 1 / (1 + e^(-k(m - d)))，
+ * 选取 P 落在目标区间 (默认 60%~80%) 内的题目。P 对 d 单调递减，
+ * 因此目标区间可以直接换算为难度区间 [m - logit(maxP)/k, m - logit(minP)/k]，
+ * 在 {@link QuestionIndex} 按难度排序的数组上二分查找，选题与知识点题量无关地保持亚毫秒级。
+ * 区间内没有题目时退回难度最接近区间中心的题目；近期做过的题目优先排除。
+ */
+@Service
+@Slf4j
+public class ProximalDifficultySelector {
+
+    private final QuestionIndex questionIndex;
+    private final MasteryQueryService masteryQueryService;
+    private final KnowledgeCatalog knowledgeCatalog;
+
+    private final double minSuccess;
+    private final double maxSuccess;
+    private final double slope;
+
+    public ProximalDifficultySelector(QuestionIndex questionIndex,
+                                      MasteryQueryService masteryQueryService,
+                                      KnowledgeCatalog knowledgeCatalog,
+                                      @Value("${edtech.practice.zpd.min-success:0.6}") double minSuccess,
+                                      @Value("${edtech.practice.zpd.max-success:0.8}") double maxSuccess,
+                                      @Value("${edtech.practice.zpd.slope:6.0}") double slope) {
+        if (!(minSuccess > 0 && minSuccess <= maxSuccess && maxSuccess < 1) || slope <= 0) {
+            throw new IllegalArgumentException("Invalid ZPD band [" + minSuccess + ", " + maxSuccess + "] or slope " + slope);
+        }
+        this.questionIndex = questionIndex;
+        this.masteryQueryService = masteryQueryService;
+        this.knowledgeCatalog = knowledgeCatalog;
+        this.minSuccess = minSuccess;
+        this.maxSuccess = maxSuccess;
+        this.slope = slope;
+    }
+
+    /**
+     * 为学生在知识点下选一道答对概率落在目标区间内的题
+     *
+     * @return 题目 ID，知识点下没有题目时返回 {@link QuestionIndex#NO_QUESTION}
+     */
+    public long select(Long studentId, long kpId) {
+        return select(studentId, kpId, QuestionIndex.NONE);
+    }
+
+    /**
+     * 同上，优先避开被排除的题目 (近期做过的)；知识点下的题目全被排除时允许重复
+     */
+    public long select(Long studentId, long kpId, LongPredicate excluded) {
+        double mastery = currentMastery(studentId, kpId);
+        double easiest = mastery - logit(maxSuccess) / slope;
+        double hardest = mastery - logit(minSuccess) / slope;
+        double centre = (easiest + hardest) / 2;
+        long questionId = questionIndex.sample(kpId, easiest, hardest, excluded);
+        if (questionId == QuestionIndex.NO_QUESTION) {
+            questionId = questionIndex.nearest(kpId, centre, excluded);
+        }
+        if (questionId == QuestionIndex.NO_QUESTION && excluded != QuestionIndex.NONE) {
+            questionId = questionIndex.sample(kpId, easiest, hardest);
+            if (questionId == QuestionIndex.NO_QUESTION) {
+                questionId = questionIndex.nearest(kpId, centre);
+            }
+        }
+        return questionId;
+    }
+
+    /**
+     * 按掌握度与题目难度估计的答对概率
+     */
+    public double successProbability(double mastery, double difficulty) {
+        return 1.0 / (1.0 + Math.exp(-slope * (mastery - difficulty)));
+    }
+
+    private double currentMastery(Long studentId, long kpId) {
+        try {
+            Double mastery = masteryQueryService.getMastery(studentId, kpId);
+            if (mastery != null) {
+                return mastery;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read mastery for student {} KP {}, assuming prior: {}", studentId, kpId, e.getMessage());
+        }
+        // No observation yet: the KP's BKT prior
+        return knowledgeCatalog.getParams(kpId).pInit();
+    }
+
+    private static double logit(double p) {
+        return Math.log(p / (1 - p));
+    }
+}
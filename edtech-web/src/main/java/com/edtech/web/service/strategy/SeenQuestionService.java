@@ -0,0 +1,160 @@
+package com.edtech.web.service.strategy;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.edtech.common.redis.StudentKey;
+import com.edtech.core.util.RedisUtils;
+import com.edtech.model.entity.StudentExerciseLog;
+import com.edtech.model.mapper.StudentExerciseLogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学生答过的题目集合 (RoaringBitmap，序列化后存 Redis)
+ * <ul>
+ *     <li>近期集合 (seen_recent): 选题时排除，满窗口后从当前题目重新开始一代</li>
+ *     <li>全部集合 (seen_all): 答过的不同题目数即覆盖率，基数读取 O(1)；
+ *     key 过期或丢失时从 student_exercise_log 重建</li>
+ * </ul>
+ * 题目 ID 按 32 位存储 (自增主键)。同一学生的并发提交是读-改-写，极少数情况下可能丢失一次标记，
+ * 只影响去重效果，不影响答题记录本身。
+ */
+@Service
+@Slf4j
+public class SeenQuestionService {
+
+    private final RedisUtils redisUtils;
+    private final StudentExerciseLogMapper studentExerciseLogMapper;
+
+    private final int recentWindow;
+    private final long ttlDays;
+
+    public SeenQuestionService(RedisUtils redisUtils,
+                               StudentExerciseLogMapper studentExerciseLogMapper,
+                               @Value("${edtech.practice.seen.recent-window:100}") int recentWindow,
+                               @Value("${edtech.practice.seen.ttl-days:30}") long ttlDays) {
+        this.redisUtils = redisUtils;
+        this.studentExerciseLogMapper = studentExerciseLogMapper;
+        this.recentWindow = recentWindow;
+        this.ttlDays = ttlDays;
+    }
+
+    /**
+     * 近期答过的题目，读取失败时返回空集合 (不排除任何题目)
+     */
+    public RoaringBitmap recent(Long studentId) {
+        try {
+            List<byte[]> raw = redisUtils.mGetBytes(List.of(redisUtils.studentKey(StudentKey.SEEN_RECENT, studentId)));
+            return decode(raw.get(0));
+        } catch (Exception e) {
+            log.warn("Failed to read recently seen questions for student {}: {}", studentId, e.getMessage());
+            return new RoaringBitmap();
+        }
+    }
+
+    /**
+     * 答题后登记: 一次 MGET 读两个集合，一次流水线写回
+     */
+    public void recordAnswer(Long studentId, Long questionId) {
+        recordAnswers(studentId, List.of(questionId));
+    }
+
+    /**
+     * 批量登记同一学生的多道答题 (按答题顺序)
+     */
+    public void recordAnswers(Long studentId, List<Long> questionIds) {
+        try {
+            List<String> keys = redisUtils.studentKeys(studentId, StudentKey.SEEN_RECENT, StudentKey.SEEN_ALL);
+            List<byte[]> raw = redisUtils.mGetBytes(keys);
+            RoaringBitmap recent = decode(raw.get(0));
+            // The answers being recorded are already in the log table, so a rebuild includes them
+            RoaringBitmap all = raw.get(1) != null ? decode(raw.get(1)) : rebuild(studentId);
+            for (Long questionId : questionIds) {
+                if (!fits(questionId)) {
+                    continue;
+                }
+                if (recent.getCardinality() >= recentWindow) {
+                    recent = new RoaringBitmap();
+                }
+                recent.add(questionId.intValue());
+                all.add(questionId.intValue());
+            }
+            Map<String, byte[]> values = new LinkedHashMap<>();
+            values.put(keys.get(0), encode(recent));
+            values.put(keys.get(1), encode(all));
+            redisUtils.setBytes(values, ttlDays, TimeUnit.DAYS);
+        } catch (Exception e) {
+            log.warn("Failed to record seen questions for student {}: {}", studentId, e.getMessage());
+        }
+    }
+
+    /**
+     * 答过的不同题目数 (覆盖率)，Redis 中没有时从答题记录重建
+     */
+    public int answeredCount(Long studentId) {
+        String key = redisUtils.studentKey(StudentKey.SEEN_ALL, studentId);
+        try {
+            byte[] raw = redisUtils.mGetBytes(List.of(key)).get(0);
+            if (raw != null) {
+                return decode(raw).getCardinality();
+            }
+            RoaringBitmap all = rebuild(studentId);
+            redisUtils.setBytes(Map.of(key, encode(all)), ttlDays, TimeUnit.DAYS);
+            return all.getCardinality();
+        } catch (Exception e) {
+            log.warn("Failed to read question coverage for student {}, counting from MySQL: {}", studentId, e.getMessage());
+            return rebuild(studentId).getCardinality();
+        }
+    }
+
+    /**
+     * 用于选题排除的判定
+     */
+    public static boolean contains(RoaringBitmap seen, long questionId) {
+        return fits(questionId) && seen.contains((int) questionId);
+    }
+
+    private RoaringBitmap rebuild(Long studentId) {
+        List<Object> ids = studentExerciseLogMapper.selectObjs(new QueryWrapper<StudentExerciseLog>()
+                .select("DISTINCT question_id").eq("student_id", studentId));
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (Object id : ids) {
+            if (id instanceof Number n && fits(n.longValue())) {
+                bitmap.add(n.intValue());
+            }
+        }
+        return bitmap;
+    }
+
+    private static boolean fits(Long questionId) {
+        return questionId != null && questionId >= 0 && questionId <= Integer.MAX_VALUE;
+    }
+
+    private static RoaringBitmap decode(byte[] raw) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (raw == null) {
+            return bitmap;
+        }
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(raw));
+        } catch (Exception e) {
+            log.warn("Discarding corrupt seen-question bitmap: {}", e.getMessage());
+            return new RoaringBitmap();
+        }
+        return bitmap;
+    }
+
+    private static byte[] encode(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+}
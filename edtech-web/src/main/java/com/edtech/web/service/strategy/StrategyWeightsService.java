@@ -0,0 +1,102 @@
+package com.edtech.web.service.strategy;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.edtech.model.entity.UserSettings;
+import com.edtech.model.mapper.UserSettingsMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 学生个人的选题策略权重 (UserSettings.strategyWeights)
+ * <p>
+ * JSON 权重只在首次使用时解析，编译为 {@link AliasTable} 按用户缓存，选题热路径 O(1) 抽样、不解析 JSON。
+ * 设置更新后由 {@link com.edtech.web.service.SettingsService#updateSettings} 失效缓存 (事务提交后)。
+ * <p>
+ * 抽中的策略不可用 (例如没有错题) 时按固定顺序落到下一个策略:
+ * 高频错题 -> 薄弱知识点 -> 间隔复习 -> 进阶 -> 探索。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StrategyWeightsService {
+
+    /** 策略顺序即回退顺序，对应 lua/practice_select.lua 中的策略序号 */
+    static final String[] KEYS = {"mistake", "weakness", "review", "advance", "exploration"};
+
+    /** 没有个人设置时的默认配比 (40/30/15/10/5) */
+    private static final double[] DEFAULT_WEIGHTS = {40, 30, 15, 10, 5};
+
+    /** 设置中未给出探索权重时保留的探索比例 (设置页面不提供该项) */
+    private static final double DEFAULT_EXPLORATION_WEIGHT = 5;
+
+    private static final AliasTable DEFAULT_TABLE = new AliasTable(DEFAULT_WEIGHTS);
+
+    private static final int MAX_CACHED_USERS = 100_000;
+
+    private final UserSettingsMapper userSettingsMapper;
+
+    private final ConcurrentHashMap<Long, AliasTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * 按学生权重抽取本次首选的策略序号 (0 = 高频错题 ... 4 = 探索)
+     */
+    public int sampleStrategy(Long studentId) {
+        AliasTable table = tables.get(studentId);
+        if (table == null) {
+            if (tables.size() >= MAX_CACHED_USERS) {
+                tables.clear();
+            }
+            table = tables.computeIfAbsent(studentId, this::compile);
+        }
+        return table.sample();
+    }
+
+    /**
+     * 设置变更后失效缓存；在事务中调用时推迟到提交之后，避免并发请求把旧权重重新缓存
+     */
+    public void invalidate(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tables.remove(userId);
+                }
+            });
+        } else {
+            tables.remove(userId);
+        }
+    }
+
+    private AliasTable compile(Long userId) {
+        try {
+            UserSettings settings = userSettingsMapper.selectById(userId);
+            if (settings == null || settings.getStrategyWeights() == null || settings.getStrategyWeights().isBlank()) {
+                return DEFAULT_TABLE;
+            }
+            return new AliasTable(parse(settings.getStrategyWeights()));
+        } catch (Exception e) {
+            log.warn("Invalid strategy weights for user {}, using defaults: {}", userId, e.getMessage());
+            return DEFAULT_TABLE;
+        }
+    }
+
+    static double[] parse(String json) {
+        JSONObject obj = JSONUtil.parseObj(json);
+        double[] weights = new double[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            Double w = obj.getDouble(KEYS[i]);
+            // Missing strategies get no weight of their own and are only reached by fall-through
+            weights[i] = w != null && w > 0 ? w : 0;
+        }
+        if (!obj.containsKey("exploration")) {
+            weights[KEYS.length - 1] = DEFAULT_EXPLORATION_WEIGHT;
+        }
+        return weights;
+    }
+}
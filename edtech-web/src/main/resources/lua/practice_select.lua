@@ -0,0 +1,178 @@
+-- 选题策略决策: 一次往返内完成纠错模式检查和加权策略选择
+-- KEYS[1]   纠错模式 (drill_mode，JSON 值)
+-- KEYS[2]   错题频次 ZSET (wrong_freq，JSON 成员)
+-- KEYS[3]   薄弱知识点 ZSET (weak_kps，纯文本成员，score = 1 - p)
+-- KEYS[4]   复习到期 ZSET (review_due，JSON 成员，score = 到期时间)
+-- KEYS[5]   已掌握知识点 ZSET (strong_kps，纯文本成员)
+-- KEYS[6]   掌握度 hash (state)
+-- ARGV[1]   按权重抽中的策略序号: 0 高频错题, 1 薄弱知识点, 2 间隔复习, 3 进阶, 4 探索
+--           (从该策略开始尝试，不可用时依次落到后面的策略)
+-- ARGV[2]   当前时间 (epoch 秒)
+-- ARGV[3]   候选内随机挑选用的随机数 [0, 1)
+-- ARGV[4]   进阶策略返回的已掌握知识点上限
+-- ARGV[5]   预热标记字段 (MasteryStore.WARM_FIELD)
+-- ARGV[6]   遗忘半衰期 (秒)，0 表示不衰减
+-- ARGV[7]   遗忘下限
+-- ARGV[8]   已掌握阈值 (万分位)
+-- 返回 {策略代码, ID...}: 进阶策略返回已掌握知识点 (由调用方沿前置关系图挑选后续)，其余返回一个 ID。
+-- 画像 ZSET 的 score 是写入时的观测值，不随时间衰减: 薄弱与进阶策略从 KEYS[6] 读取候选的当前值，
+-- 按与 bkt_step.lua 相同的遗忘曲线衰减后重新判断 (久未练习而衰减到阈值以下的已掌握知识点视为薄弱)。
+-- 画像 ZSET 为空且掌握度尚未预热时返回 {'COLD'}，由调用方回源预热后重试
+local strategy = tonumber(ARGV[1])
+local now = tonumber(ARGV[2])
+local pick = tonumber(ARGV[3])
+local masteredLimit = tonumber(ARGV[4])
+local warmField = ARGV[5]
+local halfLife = tonumber(ARGV[6])
+local floor = tonumber(ARGV[7])
+local strongBp = tonumber(ARGV[8])
+
+-- GenericJackson2JsonRedisSerializer stores strings as quoted JSON
+local function plain(v)
+    return (string.gsub(v, '"', ''))
+end
+
+local function choose(members)
+    if #members == 0 then
+        return nil
+    end
+    return plain(members[math.floor(pick * #members) + 1])
+end
+
+-- Lua 5.1 (Redis) has the global, 5.2+ moved it into table
+local unpackList = unpack or table.unpack
+
+-- Keep in sync with ForgettingCurve.decay / bkt_step.lua
+local function decay(p, updatedAt)
+    if halfLife <= 0 or updatedAt == nil or updatedAt <= 0 or now <= updatedAt or p <= floor then
+        return p
+    end
+    return floor + (p - floor) * math.pow(0.5, (now - updatedAt) / halfLife)
+end
+
+-- Current (decayed) mastery of a stored "bp:epoch" value, legacy decimals are never decayed (see MasteryCodec)
+local function current(raw)
+    if not raw then
+        return nil
+    end
+    if string.find(raw, '[%.eE]') then
+        return tonumber(raw)
+    end
+    local bp, updatedAt = string.match(raw, '^(%d+):(%d+)$')
+    if bp == nil then
+        local v = tonumber(raw)
+        return v and v / 10000
+    end
+    return decay(tonumber(bp) / 10000, tonumber(updatedAt))
+end
+
+-- Members with their decayed mastery, sorted by it; members without a state keep their ZSET observation
+local function rescore(members, scores, ascending)
+    if #members == 0 then
+        return {}
+    end
+    local raws = redis.call('HMGET', KEYS[6], unpackList(members))
+    local scored = {}
+    for i, member in ipairs(members) do
+        local p = current(raws[i])
+        if p == nil then
+            p = scores[i]
+        end
+        scored[#scored + 1] = { member, math.floor(p * 10000 + 0.5) }
+    end
+    table.sort(scored, function(x, y)
+        if ascending then
+            return x[2] < y[2]
+        end
+        return x[2] > y[2]
+    end)
+    return scored
+end
+
+local function withScores(key, start, stop, reverse, toP)
+    local command = 'ZRANGE'
+    if reverse then
+        command = 'ZREVRANGE'
+    end
+    local flat = redis.call(command, key, start, stop, 'WITHSCORES')
+    local members, scores = {}, {}
+    for i = 1, #flat, 2 do
+        members[#members + 1] = plain(flat[i])
+        scores[#scores + 1] = toP(tonumber(flat[i + 1]))
+    end
+    return members, scores
+end
+
+local function weakP(score)
+    return 1 - score
+end
+
+local function strongP(score)
+    return score
+end
+
+-- An empty profile only means "nothing weak/strong" once the hash has been warm-loaded
+local function cold()
+    return redis.call('HEXISTS', KEYS[6], warmField) == 0
+end
+
+local drill = redis.call('GET', KEYS[1])
+if drill then
+    return { 'CORRECTION_DRILL', plain(drill) }
+end
+
+if strategy <= 0 then
+    local id = choose(redis.call('ZREVRANGE', KEYS[2], 0, 9))
+    if id then
+        return { 'HIGH_FREQ_WRONG', id }
+    end
+end
+
+if strategy <= 1 then
+    -- Weakest observations, plus the least strong ones that may have decayed below the threshold since
+    local members, scores = withScores(KEYS[3], 0, 9, true, weakP)
+    local strong, strongScores = withScores(KEYS[5], 0, 9, false, strongP)
+    for i, member in ipairs(strong) do
+        members[#members + 1] = member
+        scores[#scores + 1] = strongScores[i]
+    end
+    local weakest = {}
+    for _, entry in ipairs(rescore(members, scores, true)) do
+        if entry[2] < strongBp and #weakest < 5 then
+            weakest[#weakest + 1] = entry[1]
+        end
+    end
+    local id = choose(weakest)
+    if id then
+        return { 'WEAK_POINT', id }
+    end
+    if cold() then
+        return { 'COLD' }
+    end
+end
+
+if strategy <= 2 then
+    local id = choose(redis.call('ZRANGEBYSCORE', KEYS[4], 0, now, 'LIMIT', 0, 20))
+    if id then
+        return { 'SPACED_REPETITION', id }
+    end
+end
+
+if strategy <= 3 then
+    local members, scores = withScores(KEYS[5], 0, masteredLimit - 1, true, strongP)
+    local mastered = {}
+    for _, entry in ipairs(rescore(members, scores, false)) do
+        if entry[2] >= strongBp then
+            mastered[#mastered + 1] = entry[1]
+        end
+    end
+    if #mastered > 0 then
+        table.insert(mastered, 1, 'ADVANCED')
+        return mastered
+    end
+    if cold() then
+        return { 'COLD' }
+    end
+end
+
+return { 'EXPLORATION' }
@@ -0,0 +1,8 @@
+-- 取出预取队列的第一题并返回剩余长度 (一次往返)
+-- KEYS[1]   预取队列 (next_questions，JSON 条目)
+-- 返回 {条目 (队列为空时为空串), 剩余长度}
+local entry = redis.call('LPOP', KEYS[1])
+if not entry then
+    entry = ''
+end
+return { entry, tostring(redis.call('LLEN', KEYS[1])) }
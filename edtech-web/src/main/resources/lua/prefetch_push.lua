@@ -0,0 +1,19 @@
+-- 补齐预取队列: 只有队列代号与补齐开始时读到的一致才写入，否则说明期间队列被清空过，本次结果作废
+-- KEYS[1]   预取队列 (next_questions，JSON 条目)
+-- KEYS[2]   队列代号 (next_questions_epoch，不存在视为空串)
+-- ARGV[1]   补齐开始时读到的代号
+-- ARGV[2]   队列过期时间 (秒)
+-- ARGV[3..] 待追加的条目
+-- 返回 1 已写入，0 代号已变化
+local epoch = redis.call('GET', KEYS[2])
+if not epoch then
+    epoch = ''
+end
+if epoch ~= ARGV[1] then
+    return 0
+end
+for i = 3, #ARGV do
+    redis.call('RPUSH', KEYS[1], ARGV[i])
+end
+redis.call('EXPIRE', KEYS[1], tonumber(ARGV[2]))
+return 1
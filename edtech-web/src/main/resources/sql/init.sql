@@ -95,9 +95,11 @@ CREATE TABLE IF NOT EXISTS `student_exercise_log` (
   `result` TINYINT(1) NOT NULL COMMENT '答题结果 (0:错, 1:对)',
   `duration` INT DEFAULT '0' COMMENT '耗时 (秒)',
   `submit_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '答题时间',
+  `request_id` VARCHAR(64) DEFAULT NULL COMMENT '幂等键 (客户端生成，未携带时由提交流水线生成；为 NULL 时不参与去重)',
   PRIMARY KEY (`id`),
   INDEX `idx_student_q` (`student_id`, `question_id`),
-  INDEX `idx_time` (`submit_time`)
+  INDEX `idx_time` (`submit_time`),
+  UNIQUE KEY `uk_student_request` (`student_id`, `request_id`)
 ) ENGINE=InnoDB COMMENT='学生答题记录';
 
 -- ==========================================
@@ -379,3 +381,9 @@ SET FOREIGN_KEY_CHECKS = 1;
 -- ==========================================
 ALTER TABLE `user` ADD COLUMN IF NOT EXISTS `invite_code` VARCHAR(20) DEFAULT NULL COMMENT '邀请码(家长注册后生成)';
 ALTER TABLE `user` ADD UNIQUE KEY IF NOT EXISTS `uk_invite_code` (`invite_code`);
+
+-- ==========================================
+-- Migration: Add request_id to student_exercise_log (idempotent submissions)
+-- ==========================================
+ALTER TABLE `student_exercise_log` ADD COLUMN IF NOT EXISTS `request_id` VARCHAR(64) DEFAULT NULL COMMENT '幂等键 (客户端生成，未携带时由提交流水线生成；为 NULL 时不参与去重)';
+ALTER TABLE `student_exercise_log` ADD UNIQUE KEY IF NOT EXISTS `uk_student_request` (`student_id`, `request_id`);
@@ -0,0 +1,315 @@
+package com.edtech.web.service;
+
+import com.edtech.core.util.RedisUtils;
+import com.edtech.core.util.SubmissionDeduplicator;
+import com.edtech.core.util.SubmissionDeduplicator.Claim;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.web.service.PracticeSubmitService.Submission;
+import com.edtech.web.service.SubmitPipeline.BatchResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SubmitPipelineTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 6, 1, 8, 0);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final PracticeSubmitService submitService = mock(PracticeSubmitService.class);
+    private final SubmissionDeduplicator deduplicator = mock(SubmissionDeduplicator.class);
+    private final RedisUtils redisUtils = mock(RedisUtils.class);
+    private final Deque<Object> deadLetters = new ConcurrentLinkedDeque<>();
+    private final List<SubmitPipeline> pipelines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(deduplicator.claim(anyLong(), any())).thenReturn(Claim.NEW);
+        doAnswer(invocation -> deadLetters.add(invocation.getArgument(1)))
+                .when(redisUtils).rPush(eq(SubmitPipeline.DEAD_LETTER_KEY), any());
+        when(redisUtils.lPop(SubmitPipeline.DEAD_LETTER_KEY)).thenAnswer(invocation -> deadLetters.pollFirst());
+        when(submitService.persist(any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (SubmitPipeline pipeline : pipelines) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void runsEveryStageAndCompletesTheClaim() {
+        MasteryChange change = new MasteryChange(1L, 10L, 0.3, 0.4);
+        when(submitService.trace(any())).thenReturn(change);
+
+        pipeline(false, 1).submit(submission(1L, 100L, 0, null));
+
+        // A generated request id lets the trace step deduplicate retries
+        ArgumentCaptor<Submission> traced = ArgumentCaptor.forClass(Submission.class);
+        verify(submitService).trace(traced.capture());
+        assertThat(traced.getValue().requestId()).isNotBlank();
+        verify(submitService).schedule(traced.getValue(), change);
+        verify(deduplicator).complete(1L, traced.getValue().requestId());
+        verify(deduplicator, never()).release(anyLong(), any());
+    }
+
+    @Test
+    void acknowledgesCompletedAndRejectsInProgressDuplicates() {
+        SubmitPipeline pipeline = pipeline(false, 1);
+        when(deduplicator.claim(1L, "done")).thenReturn(Claim.DONE);
+        when(deduplicator.claim(1L, "busy")).thenReturn(Claim.IN_PROGRESS);
+
+        pipeline.submit(submission(1L, 100L, 0, "done"));
+        assertThatThrownBy(() -> pipeline.submit(submission(1L, 100L, 0, "busy"))).isInstanceOf(RuntimeException.class);
+
+        verify(submitService, never()).persist(any());
+    }
+
+    @Test
+    void alreadyLoggedAnswerIsTracedAndOnlyScheduledIfTheTraceWasMissing() {
+        SubmitPipeline pipeline = pipeline(false, 1);
+        when(submitService.persist(any())).thenReturn(false);
+        MasteryChange change = new MasteryChange(1L, 10L, 0.3, 0.4);
+        when(submitService.trace(any())).thenReturn(null, change);
+
+        // Logged and traced before: nothing left to do
+        pipeline.submit(submission(1L, 100L, 0, "a"));
+        verify(submitService, never()).schedule(any(), any());
+        // Logged but the process died before tracing: the retry catches up
+        pipeline.submit(submission(1L, 100L, 0, "b"));
+        verify(submitService).schedule(any(), eq(change));
+        verify(deduplicator).complete(1L, "a");
+        verify(deduplicator).complete(1L, "b");
+    }
+
+    @Test
+    void persistFailureReleasesClaimAndThrowsAfterRetries() {
+        when(submitService.persist(any())).thenThrow(new IllegalStateException("deadlock"));
+
+        assertThatThrownBy(() -> pipeline(false, 1).submit(submission(1L, 100L, 0, "a")))
+                .hasMessage("deadlock");
+
+        verify(submitService, times(MAX_ATTEMPTS)).persist(any());
+        verify(deduplicator).release(1L, "a");
+        verify(deduplicator, never()).complete(anyLong(), any());
+        assertThat(deadLetters).isEmpty();
+    }
+
+    @Test
+    void traceFailureIsDeadLetteredAndReplayedFromTrace() {
+        SubmitPipeline pipeline = pipeline(false, 1);
+        MasteryChange change = new MasteryChange(1L, 10L, 0.3, 0.4);
+        when(submitService.trace(any())).thenThrow(new IllegalStateException("redis down"))
+                .thenThrow(new IllegalStateException("redis down"))
+                .thenThrow(new IllegalStateException("redis down"))
+                .thenReturn(change);
+
+        pipeline.submit(submission(1L, 100L, 0, "a"));
+
+        assertThat(deadLetters).singleElement().satisfies(entry ->
+                assertThat(entry(entry)).containsEntry("stage", "TRACE").containsEntry("requestId", "a"));
+        // The answer is logged: the claim is completed so client retries are acknowledged
+        verify(deduplicator).complete(1L, "a");
+        verify(submitService, never()).schedule(any(), any());
+
+        assertThat(pipeline.replayDeadLetters(10)).isEqualTo(1);
+
+        verify(submitService, times(1)).persist(any());
+        verify(submitService).schedule(any(), eq(change));
+        assertThat(deadLetters).isEmpty();
+    }
+
+    @Test
+    void scheduleReplayReusesTheTracedChange() {
+        SubmitPipeline pipeline = pipeline(false, 1);
+        MasteryChange change = new MasteryChange(1L, 10L, 0.3, 0.4);
+        when(submitService.trace(any())).thenReturn(change);
+        doThrow(new IllegalStateException("mq down")).doThrow(new IllegalStateException("mq down"))
+                .doThrow(new IllegalStateException("mq down")).doNothing()
+                .when(submitService).schedule(any(), any());
+
+        pipeline.submit(submission(1L, 100L, 0, "a"));
+        assertThat(deadLetters).singleElement().satisfies(entry ->
+                assertThat(entry(entry)).containsEntry("stage", "SCHEDULE").containsEntry("knowledgePointId", "10"));
+
+        pipeline.replayDeadLetters(10);
+
+        verify(submitService, times(1)).trace(any());
+        verify(submitService, times(MAX_ATTEMPTS + 1)).schedule(any(), eq(change));
+    }
+
+    @Test
+    void replayRunsEachStudentsAnswersInAnswerOrder() {
+        SubmitPipeline pipeline = pipeline(false, 1);
+        when(submitService.trace(any())).thenThrow(new IllegalStateException("redis down"));
+        pipeline.submit(submission(1L, 100L, 5, "late"));
+        pipeline.submit(submission(2L, 100L, 3, "other"));
+        pipeline.submit(submission(1L, 101L, 1, "early"));
+        assertThat(deadLetters).hasSize(3);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            order.add(invocation.<Submission>getArgument(0).requestId());
+            return null;
+        }).when(submitService).trace(any());
+        pipeline.replayDeadLetters(10);
+
+        assertThat(order).containsExactly("early", "late", "other");
+    }
+
+    @Test
+    void lanesKeepEachStudentsSubmissionOrder() throws InterruptedException {
+        SubmitPipeline pipeline = pipeline(true, 2);
+        Map<Long, List<Long>> persisted = Map.of(1L, syncList(), 2L, syncList(), 3L, syncList());
+        CountDownLatch done = new CountDownLatch(300);
+        when(submitService.persist(any())).thenAnswer(invocation -> {
+            Submission submission = invocation.getArgument(0);
+            persisted.get(submission.studentId()).add(submission.questionId());
+            done.countDown();
+            return true;
+        });
+
+        for (long q = 0; q < 100; q++) {
+            for (long studentId = 1; studentId <= 3; studentId++) {
+                pipeline.submit(submission(studentId, q, 0, studentId + "-" + q));
+            }
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        for (List<Long> questions : persisted.values()) {
+            assertThat(questions).hasSize(100).isSorted();
+        }
+    }
+
+    @Test
+    void fullLaneRejectsAndReleasesTheClaim() throws InterruptedException {
+        SubmitPipeline pipeline = new SubmitPipeline(submitService, deduplicator, redisUtils, new SimpleMeterRegistry(),
+                true, 1, 1, 10, 1000, 30000, MAX_ATTEMPTS, 1);
+        pipelines.add(pipeline);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(submitService.persist(any())).thenAnswer(invocation -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+
+        pipeline.submit(submission(1L, 100L, 0, "a"));
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        pipeline.submit(submission(1L, 101L, 0, "b"));
+        assertThatThrownBy(() -> pipeline.submit(submission(1L, 102L, 0, "c"))).isInstanceOf(RuntimeException.class);
+        release.countDown();
+
+        verify(deduplicator).release(1L, "c");
+        verify(deduplicator, never()).release(1L, "b");
+    }
+
+    @Test
+    void batchTracesEveryClaimedAnswerButSchedulesOnlyNewRows() {
+        Submission logged = submission(1L, 100L, 0, "logged");
+        Submission fresh = submission(1L, 101L, 1, "fresh");
+        Submission other = submission(2L, 100L, 2, "other");
+        when(deduplicator.claim(1L, "dup")).thenReturn(Claim.DONE);
+        when(submitService.persistBatch(anyList())).thenAnswer(invocation -> {
+            List<Submission> batch = invocation.getArgument(0);
+            return batch.stream().filter(s -> !s.requestId().equals("logged")).toList();
+        });
+        List<MasteryChange> changes = List.of(new MasteryChange(1L, 10L, 0.3, 0.5));
+        when(submitService.traceBatch(anyList())).thenReturn(changes, List.of());
+
+        BatchResult result = pipeline(false, 1).submitBatch(
+                List.of(fresh, submission(1L, 102L, 3, "dup"), logged, other));
+
+        assertThat(result.accepted()).isEqualTo(3);
+        assertThat(result.duplicates()).isEqualTo(1);
+        assertThat(result.changes()).isEqualTo(changes);
+        verify(submitService).traceBatch(List.of(logged, fresh));
+        verify(submitService).scheduleBatch(List.of(fresh), changes);
+        verify(submitService).scheduleBatch(List.of(other), List.of());
+        for (String requestId : List.of("logged", "fresh")) {
+            verify(deduplicator).complete(1L, requestId);
+        }
+    }
+
+    @Test
+    void batchTraceFailureDeadLettersTheWholeOrderedBatch() {
+        when(submitService.persistBatch(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(submitService.traceBatch(anyList())).thenThrow(new IllegalStateException("redis down"));
+
+        BatchResult result = pipeline(false, 1).submitBatch(
+                List.of(submission(1L, 101L, 1, "b"), submission(1L, 100L, 0, "a")));
+
+        assertThat(result.changes()).isEmpty();
+        assertThat(deadLetters).extracting(entry -> entry(entry).get("requestId")).containsExactly("a", "b");
+        verify(submitService, never()).scheduleBatch(anyList(), anyList());
+        verify(deduplicator, never()).release(anyLong(), anyString());
+    }
+
+    @Test
+    void asyncBatchTimesOutWithRetryableError() {
+        SubmitPipeline pipeline = new SubmitPipeline(submitService, deduplicator, redisUtils, new SimpleMeterRegistry(),
+                true, 1, 16, 200, 1000, 100, MAX_ATTEMPTS, 1);
+        pipelines.add(pipeline);
+        CountDownLatch release = new CountDownLatch(1);
+        when(submitService.persist(any())).thenAnswer(invocation -> release.await(5, TimeUnit.SECONDS));
+        pipeline.submit(submission(1L, 100L, 0, "slow"));
+
+        try {
+            assertThatThrownBy(() -> pipeline.submitBatch(List.of(submission(1L, 101L, 0, "queued"))))
+                    .hasMessageContaining("超时");
+        } finally {
+            release.countDown();
+        }
+        // The batch never started: once the lane frees up its claim is dropped for the client's retry
+        verify(deduplicator, timeout(5000)).release(1L, "queued");
+        verify(submitService, never()).persistBatch(anyList());
+    }
+
+    private SubmitPipeline pipeline(boolean async, int lanes) {
+        SubmitPipeline pipeline = new SubmitPipeline(submitService, deduplicator, redisUtils, new SimpleMeterRegistry(),
+                async, lanes, 1024, 200, 1000, 30000, MAX_ATTEMPTS, 1);
+        pipelines.add(pipeline);
+        return pipeline;
+    }
+
+    private static Submission submission(Long studentId, Long questionId, int minute, String requestId) {
+        return new Submission(studentId, questionId, true, 10, AT.plusMinutes(minute), requestId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> entry(Object deadLetter) {
+        return (Map<String, String>) deadLetter;
+    }
+
+    private static List<Long> syncList() {
+        return Collections.synchronizedList(new ArrayList<>());
+    }
+}
@@ -0,0 +1,66 @@
+package com.edtech.web.service.strategy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class AliasTableTest {
+
+    private static final int SAMPLES = 400_000;
+
+    @Test
+    void samplesProportionallyToWeights() {
+        double[] weights = {1, 2, 3, 4, 0, 10};
+        AliasTable table = new AliasTable(weights);
+
+        int[] counts = sample(table);
+
+        double total = 20;
+        for (int i = 0; i < weights.length; i++) {
+            // 5 sigma of the binomial standard error keeps the test stable
+            double expected = weights[i] / total;
+            double tolerance = 5 * Math.sqrt(expected * (1 - expected) / SAMPLES) + 1e-9;
+            assertThat(counts[i] / (double) SAMPLES).as("index %d", i).isCloseTo(expected, within(tolerance));
+        }
+        assertThat(counts[4]).isZero();
+    }
+
+    @Test
+    void handlesSkewedAndUniformWeights() {
+        int[] skewed = sample(new AliasTable(new double[]{1e-6, 1, 1e-6}));
+        assertThat(skewed[1] / (double) SAMPLES).isGreaterThan(0.999);
+
+        int[] uniform = sample(new AliasTable(new double[]{5, 5, 5, 5}));
+        for (int count : uniform) {
+            assertThat(count / (double) SAMPLES).isCloseTo(0.25, within(0.005));
+        }
+    }
+
+    @Test
+    void singleWeightAlwaysWins() {
+        AliasTable table = new AliasTable(new double[]{0.3});
+
+        assertThat(table.size()).isEqualTo(1);
+        for (int i = 0; i < 100; i++) {
+            assertThat(table.sample()).isZero();
+        }
+    }
+
+    @Test
+    void rejectsInvalidWeights() {
+        assertThatThrownBy(() -> new AliasTable(new double[0])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AliasTable(new double[]{0, 0})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AliasTable(new double[]{1, -1})).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AliasTable(new double[]{1, Double.NaN})).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int[] sample(AliasTable table) {
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[table.sample()]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,257 @@
+package com.edtech.web.service.strategy;
+
+import cn.hutool.json.JSONUtil;
+import com.edtech.common.redis.StudentKey;
+import com.edtech.core.util.RedisUtils;
+import com.edtech.kt.model.MasteryChange;
+import com.edtech.model.entity.Question;
+import com.edtech.web.service.strategy.PracticeStrategyService.QuestionSelection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 预取队列的命中、补齐、清空与代号比较 (Redis 由内存中的 list / 计数器代替，脚本语义与 lua/prefetch_*.lua 一致)
+ */
+class PracticePrefetchServiceTest {
+
+    private static final long STUDENT = 7L;
+    private static final int DEPTH = 5;
+    private static final String QUEUE = StudentKey.NEXT_QUESTIONS.of(STUDENT);
+    private static final String EPOCH = StudentKey.NEXT_QUESTIONS_EPOCH.of(STUDENT);
+
+    private final PracticeStrategyService strategyService = mock(PracticeStrategyService.class);
+    private final RedisUtils redisUtils = mock(RedisUtils.class);
+
+    private final Map<String, Deque<String>> queues = new HashMap<>();
+    private final Map<String, Long> counters = new HashMap<>();
+    private final AtomicLong nextQuestionId = new AtomicLong(1);
+    private volatile String phase = "before";
+    private int rejectedPushes;
+
+    private PracticePrefetchService service;
+
+    @BeforeEach
+    void setUp() {
+        when(strategyService.selectNextQuestion(STUDENT)).thenAnswer(invocation -> selection());
+        when(redisUtils.studentKey(any(), any())).thenAnswer(invocation ->
+                invocation.<StudentKey>getArgument(0).of(invocation.getArgument(1)));
+        when(redisUtils.studentKeys(any(), any(StudentKey[].class))).thenAnswer(invocation -> {
+            Object studentId = invocation.getArgument(0);
+            return Arrays.stream(Arrays.copyOfRange(invocation.getArguments(), 1, invocation.getArguments().length))
+                    .map(type -> ((StudentKey) type).of(studentId)).toList();
+        });
+        when(redisUtils.script(anyString(), any())).thenAnswer(invocation -> RedisScript.of(invocation.<String>getArgument(0)));
+        when(redisUtils.eval(any(), any(), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            return eval(((RedisScript<?>) args[0]).getScriptAsString(), invocation.getArgument(1),
+                    Arrays.copyOfRange(args, 2, args.length));
+        });
+        when(redisUtils.pipelined(any())).thenAnswer(invocation -> pipelined(invocation.getArgument(0)));
+
+        service = new PracticePrefetchService(strategyService, redisUtils, new SimpleMeterRegistry(),
+                true, DEPTH, 2, 30, 0.05, 1, 0.8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void missSelectsSynchronouslyThenServesFromRefilledQueue() throws InterruptedException {
+        QuestionSelection first = service.next(STUDENT);
+        assertThat(first.question().getId()).isEqualTo(1L);
+        awaitQueue(DEPTH);
+
+        QuestionSelection second = service.next(STUDENT);
+
+        // Served from the queue: no further synchronous selection
+        assertThat(second.question().getId()).isEqualTo(2L);
+        assertThat(second.strategyCode()).isEqualTo("before");
+        assertThat(queue()).hasSize(DEPTH - 1);
+        verify(strategyService, times(1 + DEPTH)).selectNextQuestion(STUDENT);
+    }
+
+    @Test
+    void smallMasteryChangeKeepsQueue() throws InterruptedException {
+        service.onAnswer(STUDENT, false, null);
+        awaitQueue(DEPTH);
+
+        service.onAnswer(STUDENT, false, new MasteryChange(STUDENT, 1L, 0.40, 0.42));
+        service.onAnswers(STUDENT, false, List.of(new MasteryChange(STUDENT, 1L, 0.42, 0.44)));
+
+        assertThat(epoch()).isNull();
+        assertThat(queue()).hasSize(DEPTH);
+    }
+
+    @Test
+    void selectionChangingAnswersDropAndRefillQueue() throws InterruptedException {
+        service.onAnswer(STUDENT, false, null);
+        awaitQueue(DEPTH);
+
+        phase = "after";
+        // Crossing the strong threshold matters even for a small step
+        service.onAnswer(STUDENT, false, new MasteryChange(STUDENT, 1L, 0.79, 0.81));
+        awaitQueue(DEPTH);
+        assertThat(epoch()).isEqualTo(1L);
+        assertThat(strategies()).containsOnly("after");
+
+        service.onAnswers(STUDENT, false, List.of(new MasteryChange(STUDENT, 1L, 0.3, 0.31),
+                new MasteryChange(STUDENT, 2L, 0.3, 0.4)));
+        service.onAnswer(STUDENT, true, null);
+        awaitQueue(DEPTH);
+        assertThat(epoch()).isEqualTo(3L);
+    }
+
+    @Test
+    void refillRacingAnInvalidationIsDiscardedAndRedone() throws InterruptedException {
+        CountDownLatch selecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(strategyService.selectNextQuestion(STUDENT)).thenAnswer(invocation -> {
+            if ("before".equals(phase)) {
+                selecting.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return selection();
+        });
+
+        service.onAnswer(STUDENT, false, null);
+        assertThat(selecting.await(5, TimeUnit.SECONDS)).isTrue();
+        phase = "after";
+        service.invalidate(STUDENT);
+        release.countDown();
+        awaitQueue(DEPTH);
+
+        // The batch computed against the old state never reached the queue
+        assertThat(rejectedPushes).isEqualTo(1);
+        assertThat(strategies()).containsOnly("after");
+    }
+
+    @Test
+    void redisFailureFallsBackToSynchronousSelection() {
+        when(redisUtils.eval(any(), any(), any(Object[].class))).thenThrow(new IllegalStateException("redis down"));
+
+        assertThat(service.next(STUDENT).question().getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void disabledServiceOnlyDelegates() {
+        PracticePrefetchService disabled = new PracticePrefetchService(strategyService, redisUtils,
+                new SimpleMeterRegistry(), false, DEPTH, 2, 30, 0.05, 1, 0.8);
+        try {
+            assertThat(disabled.next(STUDENT).question().getId()).isEqualTo(1L);
+            disabled.onAnswer(STUDENT, true, null);
+            verifyNoInteractions(redisUtils);
+        } finally {
+            disabled.shutdown();
+        }
+    }
+
+    private QuestionSelection selection() {
+        Question question = new Question();
+        question.setId(nextQuestionId.getAndIncrement());
+        return new QuestionSelection(question, phase, "test");
+    }
+
+    /**
+     * lua/prefetch_pop.lua 与 lua/prefetch_push.lua 的语义
+     */
+    private synchronized Object eval(String script, List<String> keys, Object[] args) {
+        Deque<String> queue = queues.computeIfAbsent(keys.get(0), k -> new ArrayDeque<>());
+        if (script.equals("lua/prefetch_pop.lua")) {
+            String entry = queue.pollFirst();
+            return List.of(entry == null ? "" : entry, String.valueOf(queue.size()));
+        }
+        Long epoch = counters.get(keys.get(1));
+        if (!(epoch == null ? "" : epoch.toString()).equals(String.valueOf(args[0]))) {
+            rejectedPushes++;
+            return 0L;
+        }
+        for (int i = 2; i < args.length; i++) {
+            queue.addLast(String.valueOf(args[i]));
+        }
+        return 1L;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized List<Object> pipelined(Consumer<RedisOperations<String, Object>> block) {
+        List<Object> results = new ArrayList<>();
+        RedisOperations<String, Object> ops = mock(RedisOperations.class);
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        ListOperations<String, Object> lists = mock(ListOperations.class);
+        when(ops.opsForValue()).thenReturn(values);
+        when(ops.opsForList()).thenReturn(lists);
+        when(values.increment(anyString())).thenAnswer(invocation -> {
+            results.add(counters.merge(invocation.getArgument(0), 1L, Long::sum));
+            return null;
+        });
+        when(values.get(anyString())).thenAnswer(invocation -> {
+            results.add(counters.get(invocation.<String>getArgument(0)));
+            return null;
+        });
+        when(lists.size(anyString())).thenAnswer(invocation -> {
+            Deque<String> queue = queues.get(invocation.<String>getArgument(0));
+            results.add(queue == null ? 0L : (long) queue.size());
+            return null;
+        });
+        when(ops.expire(anyString(), anyLong(), eq(TimeUnit.MINUTES))).thenAnswer(invocation -> {
+            results.add(true);
+            return null;
+        });
+        when(ops.delete(anyString())).thenAnswer(invocation -> {
+            results.add(queues.remove(invocation.<String>getArgument(0)) != null);
+            return null;
+        });
+        block.accept(ops);
+        return results;
+    }
+
+    private synchronized List<String> queue() {
+        return new ArrayList<>(queues.getOrDefault(QUEUE, new ArrayDeque<>()));
+    }
+
+    private synchronized Long epoch() {
+        return counters.get(EPOCH);
+    }
+
+    private List<String> strategies() {
+        return queue().stream().map(entry -> JSONUtil.parseObj(entry).getStr("strategyCode")).toList();
+    }
+
+    private void awaitQueue(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue().size() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(queue()).hasSize(size);
+    }
+}
@@ -0,0 +1,165 @@
+package com.edtech.web.service.strategy;
+
+import com.edtech.kt.decay.ForgettingCurve;
+import com.edtech.kt.store.MasteryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * lua/practice_select.lua 在 LuaJ 中执行 (redis.call 由内存中的 hash / ZSET 实现)
+ */
+class PracticeSelectScriptTest {
+
+    private static final String DRILL = "student:{1}:drill_mode";
+    private static final String WRONG = "student:{1}:wrong_freq";
+    private static final String WEAK = "student:{1}:profile:weak";
+    private static final String REVIEW = "student:{1}:review_due";
+    private static final String STRONG = "student:{1}:profile:strong";
+    private static final String STATE = "student:{1}:kt:state";
+    private static final long NOW = 1_718_000_000L;
+    private static final long DAY = 86_400;
+    private static final ForgettingCurve CURVE = new ForgettingCurve(true, 30, 0.1);
+
+    private String source;
+
+    private final Map<String, Map<String, String>> hashes = new HashMap<>();
+    private final Map<String, Map<String, Double>> zsets = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("lua/practice_select.lua")) {
+            source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        hashes.put(STATE, new HashMap<>(Map.of(MasteryStore.WARM_FIELD, "1")));
+    }
+
+    @Test
+    void strongPointDecayedBelowThresholdIsWeak() {
+        zsets.put(STRONG, new HashMap<>(Map.of("7", 0.9)));
+        hashes.get(STATE).put("7", "9000:" + (NOW - 60 * DAY));
+
+        assertThat(eval(1, 0)).containsExactly("WEAK_POINT", "7");
+    }
+
+    @Test
+    void weakPointsAreRankedByDecayedMastery() {
+        zsets.put(WEAK, new HashMap<>(Map.of("1", 0.7, "2", 0.5)));
+        hashes.get(STATE).put("1", "3000:" + NOW);
+        hashes.get(STATE).put("2", "5000:" + (NOW - 90 * DAY));
+
+        // KP 2 was observed higher but has since decayed well below KP 1
+        assertThat(eval(1, 0)).containsExactly("WEAK_POINT", "2");
+    }
+
+    @Test
+    void advancedSkipsDecayedStrongPoints() {
+        zsets.put(STRONG, new HashMap<>(Map.of("7", 0.9, "8", 0.85)));
+        hashes.get(STATE).put("7", "9000:" + (NOW - 60 * DAY));
+        hashes.get(STATE).put("8", "8500:" + NOW);
+
+        assertThat(eval(3, 0)).containsExactly("ADVANCED", "8");
+    }
+
+    @Test
+    void allStrongPointsDecayedFallsThroughToExploration() {
+        zsets.put(STRONG, new HashMap<>(Map.of("7", 0.9)));
+        hashes.get(STATE).put("7", "9000:" + (NOW - 60 * DAY));
+
+        assertThat(eval(3, 0)).containsExactly("EXPLORATION");
+    }
+
+    @Test
+    void freshStrongPointStaysAdvanced() {
+        zsets.put(STRONG, new HashMap<>(Map.of("7", 0.9)));
+        hashes.get(STATE).put("7", "9000:" + (NOW - DAY));
+
+        assertThat(eval(1, 0)).containsExactly("ADVANCED", "7");
+    }
+
+    private List<String> eval(int strategy, double pick) {
+        Globals globals = JsePlatform.standardGlobals();
+        globals.set("KEYS", table(List.of(DRILL, WRONG, WEAK, REVIEW, STRONG, STATE)));
+        globals.set("ARGV", table(List.of(String.valueOf(strategy), String.valueOf(NOW), String.valueOf(pick), "64",
+                MasteryStore.WARM_FIELD, String.valueOf(CURVE.scriptHalfLifeSeconds()),
+                String.valueOf(CURVE.getFloor()), "8000")));
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs a) {
+                return dispatch(a);
+            }
+        });
+        globals.set("redis", redis);
+
+        LuaValue reply = globals.load(source, "practice_select").call();
+        List<String> out = new ArrayList<>();
+        for (int i = 1; i <= reply.length(); i++) {
+            out.add(reply.get(i).tojstring());
+        }
+        return out;
+    }
+
+    private LuaValue dispatch(Varargs a) {
+        String command = a.arg1().tojstring();
+        String key = a.arg(2).tojstring();
+        switch (command) {
+            case "GET":
+                return LuaValue.FALSE;
+            case "HEXISTS":
+                return LuaValue.valueOf(hashes.getOrDefault(key, Map.of()).containsKey(a.arg(3).tojstring()) ? 1 : 0);
+            case "HMGET": {
+                LuaTable values = new LuaTable();
+                for (int i = 3; i <= a.narg(); i++) {
+                    String value = hashes.getOrDefault(key, Map.of()).get(a.arg(i).tojstring());
+                    values.set(i - 2, value == null ? LuaValue.FALSE : LuaValue.valueOf(value));
+                }
+                return values;
+            }
+            case "ZRANGE":
+            case "ZREVRANGE": {
+                List<Map.Entry<String, Double>> entries = new ArrayList<>(zsets.getOrDefault(key, Map.of()).entrySet());
+                Comparator<Map.Entry<String, Double>> byScore = Map.Entry.comparingByValue();
+                entries.sort(command.equals("ZRANGE") ? byScore : byScore.reversed());
+                int stop = Math.min(entries.size() - 1, a.arg(4).toint());
+                boolean withScores = a.narg() >= 5;
+                LuaTable out = new LuaTable();
+                for (int i = a.arg(3).toint(); i <= stop; i++) {
+                    out.insert(0, LuaValue.valueOf(entries.get(i).getKey()));
+                    if (withScores) {
+                        out.insert(0, LuaValue.valueOf(String.valueOf(entries.get(i).getValue())));
+                    }
+                }
+                return out;
+            }
+            case "ZRANGEBYSCORE":
+                return new LuaTable();
+            default:
+                throw new UnsupportedOperationException(command);
+        }
+    }
+
+    private static LuaTable table(List<String> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(values.get(i)));
+        }
+        return table;
+    }
+}
@@ -0,0 +1,128 @@
+package com.edtech.web.service.strategy;
+
+import com.edtech.kt.catalog.KnowledgeCatalog;
+import com.edtech.kt.catalog.QuestionIndex;
+import com.edtech.kt.model.BktParams;
+import com.edtech.kt.service.MasteryQueryService;
+import com.edtech.model.entity.Question;
+import com.edtech.model.mapper.QuestionMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProximalDifficultySelectorTest {
+
+    private static final long KP = 1L;
+    private static final double MASTERY = 0.7;
+
+    private final QuestionMapper questionMapper = mock(QuestionMapper.class);
+    private final MasteryQueryService masteryQueryService = mock(MasteryQueryService.class);
+    private final KnowledgeCatalog catalog = mock(KnowledgeCatalog.class);
+    private final QuestionIndex index = new QuestionIndex(questionMapper, catalog);
+    private final ProximalDifficultySelector selector =
+            new ProximalDifficultySelector(index, masteryQueryService, catalog, 0.6, 0.8, 6.0);
+
+    @BeforeEach
+    void setUp() {
+        // Empty preload; each test registers its own questions
+        when(questionMapper.selectMaps(any())).thenReturn(List.of());
+        index.load();
+    }
+
+    @Test
+    void selectsQuestionsInsideTheSuccessBand() {
+        // Question 100 + i has difficulty i * 0.05; at mastery 0.7 the band is about [0.47, 0.63]
+        register(0, 20);
+        when(masteryQueryService.getMastery(1L, KP)).thenReturn(MASTERY);
+
+        Set<Long> selected = draw(() -> selector.select(1L, KP));
+
+        assertThat(selected).containsExactlyInAnyOrder(110L, 111L, 112L);
+        for (long id : selected) {
+            assertThat(selector.successProbability(MASTERY, (id - 100) * 0.05)).isBetween(0.6, 0.8);
+        }
+    }
+
+    @Test
+    void fallsBackToNearestBandCentre() {
+        register(2, 2);
+        register(18, 18);
+        when(masteryQueryService.getMastery(1L, KP)).thenReturn(MASTERY);
+
+        assertThat(selector.select(1L, KP)).isEqualTo(118L);
+    }
+
+    @Test
+    void avoidsExcludedQuestionsUntilNoneAreLeft() {
+        register(0, 20);
+        when(masteryQueryService.getMastery(1L, KP)).thenReturn(MASTERY);
+
+        // Band and the next-closest question above it excluded: nearest remaining is 0.45
+        assertThat(selector.select(1L, KP, id -> id >= 110 && id <= 113)).isEqualTo(109L);
+        // Everything excluded: repeat a question from the band rather than return nothing
+        assertThat(selector.select(1L, KP, id -> true)).isBetween(110L, 112L);
+    }
+
+    @Test
+    void usesPriorWithoutObservedMastery() {
+        register(0, 20);
+        when(catalog.getParams(anyLong())).thenReturn(new BktParams(0.3, 0.1, 0.2, 0.1));
+        when(masteryQueryService.getMastery(1L, KP)).thenReturn(null);
+        when(masteryQueryService.getMastery(2L, KP)).thenThrow(new IllegalStateException("redis down"));
+
+        // Band at P(L0) = 0.3 is about [0.07, 0.23]
+        assertThat(draw(() -> selector.select(1L, KP))).containsExactlyInAnyOrder(102L, 103L, 104L);
+        assertThat(draw(() -> selector.select(2L, KP))).containsExactlyInAnyOrder(102L, 103L, 104L);
+    }
+
+    @Test
+    void emptyKnowledgePointHasNoQuestion() {
+        register(0, 20);
+        when(masteryQueryService.getMastery(1L, 2L)).thenReturn(MASTERY);
+
+        assertThat(selector.select(1L, 2L, id -> false)).isEqualTo(QuestionIndex.NO_QUESTION);
+    }
+
+    @Test
+    void rejectsInvalidBand() {
+        assertThatThrownBy(() -> new ProximalDifficultySelector(index, masteryQueryService, catalog, 0.8, 0.6, 6.0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ProximalDifficultySelector(index, masteryQueryService, catalog, 0.6, 1.0, 6.0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ProximalDifficultySelector(index, masteryQueryService, catalog, 0.6, 0.8, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 登记题目 100 + i (i = from..to)，难度 i * 0.05
+     */
+    private void register(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            Question question = new Question();
+            question.setId(100L + i);
+            question.setKnowledgePointId(KP);
+            question.setDifficulty(BigDecimal.valueOf(i * 0.05));
+            index.register(question);
+        }
+    }
+
+    private static Set<Long> draw(LongSupplier select) {
+        Set<Long> selected = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            selected.add(select.getAsLong());
+        }
+        return selected;
+    }
+}